@@ -0,0 +1,248 @@
+package core.game;
+
+import core.Types;
+import core.actions.Action;
+import core.actions.unitactions.StepMove;
+import core.actors.Tribe;
+import core.actors.units.Unit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import players.mcts.MCTSParams;
+import players.mcts.MCTSPlayer;
+import utils.ElapsedCpuTimer;
+import utils.graph.Pathfinder;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of the forward model and of a full agent decision. All of them start from game states reached by
+ * playing the same seeded random actions on the fixed levels in levels/, so results are comparable across runs.
+ * Benchmarks that modify the state they work on get a fresh copy for each call, made outside the measured time
+ * (the states below with Level.Invocation setups).
+ * This class is in core.game to reach the package-private parts of the forward model (e.g. computePlayerActions).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ForwardModelBench
+{
+    //Levels the benchmarks are run on (the values of the level parameter below).
+    public static final String[] LEVELS = new String[]{"levels/SampleLevel2p.csv", "levels/SampleLevel4p_2.csv"};
+
+    //Number of random actions played from the start of the level to reach the benchmarked states.
+    public static int RANDOM_STEPS = 150;
+
+    //Seed for the random actions played, and for the ones benchmarked.
+    public static long SEED = 1234;
+
+    //Iterations of MCTS for each call to act().
+    public static final int MCTS_ITERATIONS = 50;
+
+    //Level the state is reached on. Relative to the root of the project, where benchmarks must be run from.
+    @Param({"levels/SampleLevel2p.csv", "levels/SampleLevel4p_2.csv"})
+    public String level;
+
+    private GameState gs;
+    private ArrayList<Unit> units;
+    private Pathfinder pathfinder;
+    private MCTSPlayer mcts;
+
+    @Setup
+    public void setUp()
+    {
+        gs = midGameState(level, RANDOM_STEPS, SEED);
+        units = gs.getUnits(gs.getActiveTribeID());
+        pathfinder = new Pathfinder(gs.getBoard().getSize());
+
+        ArrayList<Integer> allIds = new ArrayList<>();
+        for(int i = 0; i < gs.getTribes().length; i++)
+            allIds.add(i);
+        MCTSParams params = new MCTSParams();
+        params.stop_type = params.STOP_ITERATIONS;
+        params.num_iterations = MCTS_ITERATIONS;
+        mcts = new MCTSPlayer(SEED, params);
+        mcts.setPlayerIDs(gs.getActiveTribeID(), allIds);
+    }
+
+    /**
+     * Plays random actions from the start of a level.
+     * @param level file with the level to play.
+     * @param steps number of actions to play.
+     * @param seed seed of the game and the actions played.
+     * @return the game state after the actions have been played.
+     */
+    public static GameState midGameState(String level, int steps, long seed)
+    {
+        Random rnd = new Random(seed);
+        GameState gs = new GameState(new Random(seed), Types.GAME_MODE.CAPITALS);
+        gs.init(level);
+        gs.initTurn(gs.getTribe(0));
+        gs.computePlayerActions(gs.getTribe(0));
+
+        for(int i = 0; i < steps && !gs.isGameOver(); i++)
+        {
+            ArrayList<Action> actions = gs.getAllAvailableActions();
+            Action action = actions.get(rnd.nextInt(actions.size()));
+            //Give a second chance to ending the turn so tribes grow before the state is benchmarked.
+            if(action.getActionType() == Types.ACTION.END_TURN)
+                action = actions.get(rnd.nextInt(actions.size()));
+
+            gs.advance(action, true);
+            if(action.getActionType() == Types.ACTION.END_TURN && gs.getActiveTribeID() == 0)
+                gs.incTick();
+        }
+        return gs;
+    }
+
+    /**
+     * Full copy of the benchmarked state, and a random generator to pick the actions played on it.
+     */
+    @State(Scope.Thread)
+    public static class Copy
+    {
+        GameState state;
+        Random rnd;
+
+        @Setup(Level.Trial)
+        public void setUpTrial() { rnd = new Random(SEED); }
+
+        @Setup(Level.Invocation)
+        public void setUp(ForwardModelBench bench) { state = bench.gs.copy(); }
+    }
+
+    /**
+     * Full copy of the benchmarked state, hashed before and after playing a random action on it.
+     */
+    @State(Scope.Thread)
+    public static class AdvancedCopy
+    {
+        GameState state;
+        Random rnd;
+
+        @Setup(Level.Trial)
+        public void setUpTrial() { rnd = new Random(SEED); }
+
+        @Setup(Level.Invocation)
+        public void setUp(ForwardModelBench bench)
+        {
+            state = bench.gs.copy();
+            state.getHash();
+            ArrayList<Action> actions = state.getAllAvailableActions();
+            state.advance(actions.get(rnd.nextInt(actions.size())), true);
+        }
+    }
+
+    /**
+     * Copy of the benchmarked state for its active player.
+     */
+    @State(Scope.Thread)
+    public static class PlayerCopy
+    {
+        GameState state;
+
+        @Setup(Level.Invocation)
+        public void setUp(ForwardModelBench bench) { state = bench.gs.copy(bench.gs.getActiveTribeID()); }
+    }
+
+    /**
+     * Copy of the board of the benchmarked state.
+     */
+    @State(Scope.Thread)
+    public static class BoardCopy
+    {
+        Board board;
+
+        @Setup(Level.Invocation)
+        public void setUp(ForwardModelBench bench) { board = bench.gs.getBoard().copy(); }
+    }
+
+    @Benchmark
+    public GameState copy()
+    {
+        return gs.copy();
+    }
+
+    @Benchmark
+    public GameState copyForPlayer()
+    {
+        return gs.copy(gs.getActiveTribeID());
+    }
+
+    @Benchmark
+    public GameState advance(Copy c)
+    {
+        ArrayList<Action> actions = c.state.getAllAvailableActions();
+        c.state.advance(actions.get(c.rnd.nextInt(actions.size())), true);
+        return c.state;
+    }
+
+    @Benchmark
+    public long hashFromScratch(PlayerCopy c)
+    {
+        return c.state.getHash();
+    }
+
+    //A full copy of a hashed state keeps its hash, so only what the action changed is hashed again.
+    @Benchmark
+    public long hashAfterAdvance(AdvancedCopy c)
+    {
+        return c.state.getHash();
+    }
+
+    //Observations of a player don't carry the actions of the state they come from, so they're computed from scratch.
+    @Benchmark
+    public ArrayList<Action> computePlayerActions(PlayerCopy c)
+    {
+        c.state.computePlayerActions(c.state.getActiveTribe());
+        return c.state.getAllAvailableActions();
+    }
+
+    @Benchmark
+    public Board boardCopyPartialObs()
+    {
+        return gs.getBoard().copy(true, gs.getActiveTribeID());
+    }
+
+    @Benchmark
+    public int findPaths()
+    {
+        int reached = 0;
+        for(Unit unit : units)
+        {
+            pathfinder.reset(unit.getPosition(), new StepMove(gs, unit));
+            reached += pathfinder.findPaths().size();
+        }
+        return reached;
+    }
+
+    //Board copies don't keep the connectivity of the network, so each call computes it from scratch.
+    @Benchmark
+    public Board tradeNetwork(BoardCopy c)
+    {
+        for(Tribe tribe : c.board.getTribes())
+            c.board.getTradeNetwork().computeTradeNetworkTribe(c.board, tribe);
+        return c.board;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Action mctsAct(PlayerCopy c)
+    {
+        return mcts.act(c.state, new ElapsedCpuTimer());
+    }
+}
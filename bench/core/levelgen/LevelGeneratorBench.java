@@ -0,0 +1,73 @@
+package core.levelgen;
+
+import core.TribesConfig;
+import core.Types;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of the level generator, with the default map size for the number of tribes and a new seed for each
+ * level: one level at a time, and a batch of levels generated with as many threads as available processors.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LevelGeneratorBench
+{
+    //Levels generated by each call to the bulk level generator.
+    public static final int BATCH = 64;
+
+    //Seed the seeds of the levels are drawn from.
+    public static final long SEED = 1234;
+
+    @Param({"2", "4"})
+    public int nTribes;
+
+    private Types.TRIBE[] tribes;
+    private Random seeds;
+    private long[] batchSeeds;
+    private int nThreads;
+
+    @Setup
+    public void setUp()
+    {
+        tribes = new Types.TRIBE[nTribes];
+        for(int i = 0; i < nTribes; i++)
+            tribes[i] = Types.TRIBE.values()[i];
+        seeds = new Random(SEED);
+        batchSeeds = new long[BATCH];
+        nThreads = Runtime.getRuntime().availableProcessors();
+    }
+
+    @Benchmark
+    public String[] generate()
+    {
+        LevelGenerator levelGen = new LevelGenerator(seeds.nextLong());
+        levelGen.init(TribesConfig.DEFAULT_MAP_SIZE[nTribes - 1], 3, 4, 0.5, tribes);
+        levelGen.generate();
+        return levelGen.gelLevelLines();
+    }
+
+    @Benchmark
+    public String[][] generateBatch()
+    {
+        for(int i = 0; i < batchSeeds.length; i++)
+            batchSeeds[i] = seeds.nextLong();
+        return LevelGenerator.generate(batchSeeds, TribesConfig.DEFAULT_MAP_SIZE[nTribes - 1], 3, 4, 0.5, tribes, nThreads);
+    }
+}
@@ -0,0 +1,126 @@
+package players;
+
+import core.game.ForwardModelBench;
+import core.game.GameState;
+import players.oep.OEPAgent;
+import players.oep.OEPParams;
+import players.rhea.RHEAAgent;
+import players.rhea.RHEAParams;
+import utils.ElapsedCpuTimer;
+
+import java.util.ArrayList;
+
+/**
+ * Measures the throughput of the evolutionary agents (RHEA and OEP) with their population evaluated by 1 to N threads
+ * (see PopulationEvaluator), deciding from the same states of the levels of ForwardModelBench, reached by playing seeded
+ * random actions. For each agent and number of threads, reports the individuals evaluated per decision, the time per
+ * decision and the individuals evaluated per second.
+ * Arguments (all optional, in any order):
+ *   -f N   forward model calls per decision (default 5000)
+ *   -p N   population size (default: the agents' default)
+ *   -d N   decisions measured per level (default 10)
+ *   -t N   maximum number of threads, tried in powers of 2 (default: available processors)
+ */
+public class PopulationEvaluationBench
+{
+    public static void main(String[] args)
+    {
+        int fmCalls = 5000;
+        int popSize = -1;
+        int decisions = 10;
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+
+        for(int i = 0; i < args.length; i++)
+        {
+            switch (args[i]) {
+                case "-f": fmCalls = Integer.parseInt(args[++i]); break;
+                case "-p": popSize = Integer.parseInt(args[++i]); break;
+                case "-d": decisions = Integer.parseInt(args[++i]); break;
+                case "-t": maxThreads = Integer.parseInt(args[++i]); break;
+            }
+        }
+
+        System.out.println("RHEA and OEP, " + fmCalls + " forward model calls per decision.");
+        for(String level : ForwardModelBench.LEVELS)
+        {
+            String tag = level.substring(level.lastIndexOf('/') + 1);
+            for(int threads = 1; threads <= maxThreads; threads = nextThreads(threads, maxThreads))
+            {
+                measure(tag, "RHEA", new RHEAAgent(ForwardModelBench.SEED, rheaParams(fmCalls, popSize, threads)),
+                        level, decisions, threads);
+                measure(tag, "OEP", new OEPAgent(ForwardModelBench.SEED, oepParams(fmCalls, popSize, threads)),
+                        level, decisions, threads);
+            }
+        }
+    }
+
+    private static int nextThreads(int threads, int maxThreads)
+    {
+        return threads < maxThreads && threads * 2 > maxThreads ? maxThreads : threads * 2;
+    }
+
+    /**
+     * Parameters of the agents, as used by Run.getAgent(). A popSize of -1 keeps the default.
+     */
+    private static RHEAParams rheaParams(int fmCalls, int popSize, int threads)
+    {
+        RHEAParams params = new RHEAParams();
+        params.stop_type = params.STOP_FMCALLS;
+        params.num_fmcalls = fmCalls;
+        params.heuristic_method = params.DIFF_HEURISTIC;
+        if(popSize > 0)
+            params.POP_SIZE = popSize;
+        params.NUM_THREADS = threads;
+        return params;
+    }
+
+    private static OEPParams oepParams(int fmCalls, int popSize, int threads)
+    {
+        OEPParams params = new OEPParams();
+        params.stop_type = params.STOP_FMCALLS;
+        params.num_fmcalls = fmCalls;
+        params.heuristic_method = params.DIFF_HEURISTIC;
+        if(popSize > 0)
+            params.POP_SIZE = popSize;
+        params.NUM_THREADS = threads;
+        return params;
+    }
+
+    private static void measure(String tag, String name, Agent agent, String level, int decisions, int threads)
+    {
+        long evaluations = 0, nanos = 0;
+        int measured = 0;
+
+        //The first decisions warm up the JIT.
+        int warmup = Math.max(decisions / 4, 1);
+        for(int d = -warmup; d < decisions; d++)
+        {
+            long seed = ForwardModelBench.SEED + d + warmup;
+            GameState gs = ForwardModelBench.midGameState(level, ForwardModelBench.RANDOM_STEPS, seed);
+            if(gs.isGameOver())
+                continue;
+
+            ArrayList<Integer> allIds = new ArrayList<>();
+            for(int i = 0; i < gs.getTribes().length; i++)
+                allIds.add(i);
+            agent.setPlayerIDs(gs.getActiveTribeID(), allIds);
+
+            long start = System.nanoTime();
+            agent.act(gs.copy(), new ElapsedCpuTimer());
+            long time = System.nanoTime() - start;
+
+            if(d < 0)
+                continue;
+            measured++;
+            nanos += time;
+            evaluations += agent instanceof RHEAAgent ? ((RHEAAgent) agent).getLastEvaluations() :
+                    ((OEPAgent) agent).getLastEvaluations();
+        }
+
+        if(measured == 0)
+            return;
+        System.out.printf("[%s] %s, %d threads, %d decisions: %.1f evaluations, %.2f ms per decision, %.0f evaluations/s.%n",
+                tag, name, threads, measured, (double) evaluations / measured, nanos / 1e6 / measured,
+                evaluations / (nanos / 1e9));
+    }
+}
@@ -0,0 +1,168 @@
+package players.mcts;
+
+import core.Types;
+import core.game.ForwardModelBench;
+import core.game.GameState;
+import core.game.SelfPlay;
+import core.game.TribeResult;
+import players.Agent;
+import utils.ElapsedCpuTimer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Compares MCGSPlayer (graph search) with MCTSPlayer (tree search) on some levels (by default, those of
+ * ForwardModelBench), with the same parameters and budget of forward model calls:
+ *   - Decisions: both players decide from the same states, reached by playing seeded random actions on each level.
+ *     Reports the iterations done for each decision, the time it took and, for MCGS, the size of the graph and the
+ *     iterations that stopped at a transposition.
+ *   - Games: headless games in Score mode between both players on each level, swapping seats between games (on
+ *     levels with more players, seats alternate between both players). Reports the wins of each.
+ * Arguments (all optional, in any order):
+ *   -f N   forward model calls per decision (default 2000)
+ *   -d N   decisions measured per level (default 20)
+ *   -g N   games played per level (default 20, 0 skips games)
+ *   -t N   threads to play games with (default: available processors)
+ *   -l F   level file to compare on, relative to the root of the project (can be repeated)
+ */
+public class GraphSearchComparison
+{
+    public static void main(String[] args)
+    {
+        int fmCalls = 2000;
+        int decisions = 20;
+        int games = 20;
+        int threads = Runtime.getRuntime().availableProcessors();
+        ArrayList<String> levels = new ArrayList<>();
+
+        for(int i = 0; i < args.length; i++)
+        {
+            switch (args[i]) {
+                case "-f": fmCalls = Integer.parseInt(args[++i]); break;
+                case "-d": decisions = Integer.parseInt(args[++i]); break;
+                case "-g": games = Integer.parseInt(args[++i]); break;
+                case "-t": threads = Integer.parseInt(args[++i]); break;
+                case "-l": levels.add(args[++i]); break;
+            }
+        }
+        if(levels.isEmpty())
+            levels.addAll(Arrays.asList(ForwardModelBench.LEVELS));
+
+        System.out.println("MCGS vs MCTS, " + fmCalls + " forward model calls per decision.");
+        for(String level : levels)
+        {
+            String tag = level.substring(level.lastIndexOf('/') + 1);
+            compareDecisions(level, tag, fmCalls, decisions);
+            if(games > 0)
+                playGames(level, tag, fmCalls, games, threads);
+        }
+    }
+
+    /**
+     * Parameters of both players, as used by Run.getAgent() (without turn limit in rollouts, which are forced to
+     * end every 5 actions).
+     */
+    private static MCTSParams params(int fmCalls)
+    {
+        MCTSParams params = new MCTSParams();
+        params.stop_type = params.STOP_FMCALLS;
+        params.num_fmcalls = fmCalls;
+        params.heuristic_method = params.DIFF_HEURISTIC;
+        params.PRIORITIZE_ROOT = true;
+        params.ROLLOUT_LENGTH = 20;
+        params.FORCE_TURN_END = 5;
+        return params;
+    }
+
+    private static void compareDecisions(String level, String tag, int fmCalls, int decisions)
+    {
+        MCTSPlayer mcts = new MCTSPlayer(ForwardModelBench.SEED, params(fmCalls));
+        MCGSPlayer mcgs = new MCGSPlayer(ForwardModelBench.SEED, params(fmCalls));
+
+        long mctsIters = 0, mcgsIters = 0, mctsNanos = 0, mcgsNanos = 0, nodes = 0, hits = 0;
+        int measured = 0;
+
+        //The first decisions warm up the JIT.
+        int warmup = Math.max(decisions / 4, 1);
+        for(int d = -warmup; d < decisions; d++)
+        {
+            long seed = ForwardModelBench.SEED + d + warmup;
+            GameState gs = ForwardModelBench.midGameState(level, ForwardModelBench.RANDOM_STEPS, seed);
+            if(gs.isGameOver())
+                continue;
+
+            int playerID = gs.getActiveTribeID();
+            ArrayList<Integer> allIds = new ArrayList<>();
+            for(int i = 0; i < gs.getTribes().length; i++)
+                allIds.add(i);
+            mcts.setPlayerIDs(playerID, allIds);
+            mcgs.setPlayerIDs(playerID, allIds);
+
+            long start = System.nanoTime();
+            mcts.act(gs.copy(), new ElapsedCpuTimer());
+            long mctsTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            mcgs.act(gs.copy(), new ElapsedCpuTimer());
+            long mcgsTime = System.nanoTime() - start;
+
+            if(d < 0)
+                continue;
+            measured++;
+            mctsIters += mcts.getLastIterations();
+            mcgsIters += mcgs.getLastIterations();
+            mctsNanos += mctsTime;
+            mcgsNanos += mcgsTime;
+            nodes += mcgs.getLastNodes();
+            hits += mcgs.getLastTranspositionHits();
+        }
+
+        if(measured == 0)
+            return;
+        System.out.printf("[%s] %d decisions. MCTS: %.1f iterations, %.2f ms per decision. " +
+                        "MCGS: %.1f iterations, %.2f ms, %.1f nodes, %.1f transposition hits per decision.%n",
+                tag, measured, (double) mctsIters / measured, mctsNanos / 1e6 / measured,
+                (double) mcgsIters / measured, mcgsNanos / 1e6 / measured,
+                (double) nodes / measured, (double) hits / measured);
+    }
+
+    private static void playGames(String level, String tag, int fmCalls, int games, int threads)
+    {
+        int nPlayers = ForwardModelBench.midGameState(level, 0, ForwardModelBench.SEED).getTribes().length;
+
+        //Wins of MCGS and MCTS, and games that neither won (only one tribe wins a game in Score mode).
+        int[] wins = new int[3];
+
+        //Tribes are given by the level file.
+        SelfPlay selfPlay = new SelfPlay(new Types.TRIBE[0], Types.GAME_MODE.SCORE, ForwardModelBench.SEED);
+        selfPlay.setLevelFile(level);
+        selfPlay.setThreads(threads);
+        selfPlay.run(games, (gameIdx, agentSeed) -> {
+            ArrayList<Agent> players = new ArrayList<>();
+            for(int i = 0; i < nPlayers; i++)
+                players.add(isMCGS(gameIdx, i) ? new MCGSPlayer(agentSeed + i, params(fmCalls)) :
+                        new MCTSPlayer(agentSeed + i, params(fmCalls)));
+            return players;
+        }, (gameIdx, gs, stats) -> {
+            int winner = 2;
+            for(TribeResult tr : gs.getCurrentRanking())
+                if(tr.getResult() == Types.RESULT.WIN)
+                    winner = isMCGS(gameIdx, tr.getId()) ? 0 : 1;
+            synchronized (wins) {
+                wins[winner]++;
+            }
+        });
+
+        System.out.printf("[%s] %d games. MCGS wins: %d (%.1f%%), MCTS wins: %d (%.1f%%), no winner: %d.%n",
+                tag, games, wins[0], 100.0 * wins[0] / games, wins[1], 100.0 * wins[1] / games, wins[2]);
+    }
+
+    /**
+     * MCGS plays the even seats in even games, and the odd seats in odd games.
+     */
+    private static boolean isMCGS(int gameIdx, int seat)
+    {
+        return (gameIdx + seat) % 2 == 0;
+    }
+}
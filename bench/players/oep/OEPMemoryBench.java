@@ -0,0 +1,131 @@
+package players.oep;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import core.game.ForwardModelBench;
+import core.game.GameState;
+import utils.ElapsedCpuTimer;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the memory used by OEPAgent to decide, for populations of different sizes, from the same states of the levels
+ * of ForwardModelBench (reached by playing seeded random actions). For each population size, reports:
+ *   - Peak heap: the largest heap in use after a garbage collection during a decision, minus the heap in use before
+ *     it, which is the memory the agent keeps alive (mostly its population). Only collections during the decision
+ *     count, so run it with a small young generation (e.g. -Xmn16m) for them to be frequent.
+ *   - Allocated: memory allocated by the thread that decides, per decision.
+ *   - Time per decision.
+ * Arguments (all optional, in any order):
+ *   -p N,M...  population sizes (default 50,200,500)
+ *   -f N       forward model calls per decision (default 20000)
+ *   -d N       decisions measured per level and population size (default 5)
+ */
+public class OEPMemoryBench
+{
+    //Heap in use after the largest collection since the last reset, and collections since then.
+    private static final AtomicLong peakHeap = new AtomicLong();
+    private static final AtomicInteger collections = new AtomicInteger();
+
+    public static void main(String[] args) throws InterruptedException
+    {
+        String popSizes = "50,200,500";
+        int fmCalls = 20000;
+        int decisions = 5;
+
+        for(int i = 0; i < args.length; i++)
+        {
+            switch (args[i]) {
+                case "-p": popSizes = args[++i]; break;
+                case "-f": fmCalls = Integer.parseInt(args[++i]); break;
+                case "-d": decisions = Integer.parseInt(args[++i]); break;
+            }
+        }
+
+        for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            ((NotificationEmitter) gc).addNotificationListener((notification, handback) -> {
+                if(!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION))
+                    return;
+                GarbageCollectionNotificationInfo info =
+                        GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                long used = 0;
+                for(MemoryUsage usage : info.getGcInfo().getMemoryUsageAfterGc().values())
+                    used += usage.getUsed();
+                peakHeap.accumulateAndGet(used, Math::max);
+                collections.incrementAndGet();
+            }, null, null);
+        }
+
+        System.out.println("OEP, " + fmCalls + " forward model calls per decision.");
+        for(String level : ForwardModelBench.LEVELS)
+        {
+            String tag = level.substring(level.lastIndexOf('/') + 1);
+            for(String popSize : popSizes.split(","))
+                measure(level, tag, Integer.parseInt(popSize.trim()), fmCalls, decisions);
+        }
+    }
+
+    private static void measure(String level, String tag, int popSize, int fmCalls, int decisions) throws InterruptedException
+    {
+        OEPParams params = new OEPParams();
+        params.stop_type = params.STOP_FMCALLS;
+        params.num_fmcalls = fmCalls;
+        params.heuristic_method = params.DIFF_HEURISTIC;
+        params.POP_SIZE = popSize;
+        OEPAgent agent = new OEPAgent(ForwardModelBench.SEED, params);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        long peak = 0, allocated = 0, nanos = 0;
+        int gcs = 0, measured = 0;
+
+        //The first decision warms up the JIT.
+        for(int d = -1; d < decisions; d++)
+        {
+            long seed = ForwardModelBench.SEED + d + 1;
+            GameState gs = ForwardModelBench.midGameState(level, ForwardModelBench.RANDOM_STEPS, seed);
+            if(gs.isGameOver())
+                continue;
+
+            ArrayList<Integer> allIds = new ArrayList<>();
+            for(int i = 0; i < gs.getTribes().length; i++)
+                allIds.add(i);
+            agent.setPlayerIDs(gs.getActiveTribeID(), allIds);
+
+            //Notifications of collections are delivered shortly after them, from another thread.
+            peakHeap.set(0);
+            System.gc();
+            Thread.sleep(100);
+            long heapBefore = peakHeap.get();
+            peakHeap.set(0);
+            collections.set(0);
+
+            long allocatedBefore = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            long start = System.nanoTime();
+            agent.act(gs, new ElapsedCpuTimer());
+            long time = System.nanoTime() - start;
+            long allocatedDecision = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedBefore;
+            Thread.sleep(100);
+
+            if(d < 0)
+                continue;
+            measured++;
+            peak = Math.max(peak, peakHeap.get() - heapBefore);
+            gcs += collections.get();
+            allocated += allocatedDecision;
+            nanos += time;
+        }
+
+        if(measured == 0)
+            return;
+        System.out.printf("[%s] Population %d, %d decisions: peak heap %.1f MB (%d collections), %.1f MB allocated, " +
+                        "%.2f ms per decision.%n", tag, popSize, measured, peak / 1048576.0, gcs,
+                allocated / 1048576.0 / measured, nanos / 1e6 / measured);
+    }
+}
@@ -1,4 +1,3 @@
-import core.Constants;
 import core.Types;
 import core.game.Game;
 import org.json.JSONArray;
@@ -16,8 +15,10 @@ import static core.Types.GAME_MODE.*;
 public class Play {
 
     private static boolean RUN_VERBOSE = true;
+    private static boolean VERBOSE = true;
     private static long AGENT_SEED = -1;
     private static long GAME_SEED = -1;
+    private static Run.AgentConfig AGENT_CONFIG = new Run.AgentConfig();
 
     public static void main(String[] args) {
 
@@ -26,7 +27,7 @@ public class Play {
 
             if (config != null && !config.isEmpty()) {
                 String runMode = config.getString("Run Mode");
-                Constants.VERBOSE = config.getBoolean("Verbose");
+                VERBOSE = config.getBoolean("Verbose");
 
                 JSONArray playersArray = (JSONArray) config.get("Players");
                 JSONArray tribesArray = (JSONArray) config.get("Tribes");
@@ -44,23 +45,23 @@ public class Play {
                 Types.GAME_MODE gameMode = config.getString("Game Mode").equalsIgnoreCase("Capitals") ?
                         CAPITALS : SCORE;
 
-                Run.MAX_LENGTH = config.getInt("Search Depth");
-                Run.FORCE_TURN_END = config.getBoolean("Force End");
-                Run.MCTS_ROLLOUTS = config.getBoolean("Rollouts");
-                Run.POP_SIZE = config.getInt("Population Size");
+                AGENT_CONFIG.MAX_LENGTH = config.getInt("Search Depth");
+                AGENT_CONFIG.FORCE_TURN_END = config.getBoolean("Force End");
+                AGENT_CONFIG.MCTS_ROLLOUTS = config.getBoolean("Rollouts");
+                AGENT_CONFIG.POP_SIZE = config.getInt("Population Size");
 
                 //Portfolio and pruning variables:
-                Run.PRUNING = config.getBoolean("Pruning");
-                Run.PROGBIAS = config.getBoolean("Progressive Bias");
-                Run.K_INIT_MULT = config.getDouble("K init mult");
-                Run.T_MULT = config.getDouble("T mult");
-                Run.A_MULT = config.getDouble("A mult");
-                Run.B = config.getDouble("B");
+                AGENT_CONFIG.PRUNING = config.getBoolean("Pruning");
+                AGENT_CONFIG.PROGBIAS = config.getBoolean("Progressive Bias");
+                AGENT_CONFIG.K_INIT_MULT = config.getDouble("K init mult");
+                AGENT_CONFIG.T_MULT = config.getDouble("T mult");
+                AGENT_CONFIG.A_MULT = config.getDouble("A mult");
+                AGENT_CONFIG.B = config.getDouble("B");
 
                 JSONArray weights = null;
                 if(config.has("pMCTS Weights"))
                     weights = (JSONArray) config.get("pMCTS Weights");
-                Run.pMCTSweights = Run.getWeights(weights);
+                AGENT_CONFIG.pMCTSweights = Run.getWeights(weights);
 
                 AGENT_SEED = config.getLong("Agents Seed");
                 GAME_SEED = config.getLong("Game Seed");
@@ -78,7 +79,8 @@ public class Play {
                 //3. Play one game with visuals from a savegame
                 } else if (runMode.equalsIgnoreCase("Replay")) {
                     String saveGameFile = config.getString("Replay File Name");
-                    load(playerTypes, saveGameFile);
+                    int replayTurn = config.optInt("Replay Turn", Integer.MAX_VALUE);
+                    load(playerTypes, saveGameFile, replayTurn);
                 } else {
                     System.out.println("ERROR: run mode '" + runMode + "' not recognized.");
                 }
@@ -111,14 +113,14 @@ public class Play {
     }
 
 
-    private static void load(Run.PlayerType[] playerTypes, String saveGameFile)
+    private static void load(Run.PlayerType[] playerTypes, String saveGameFile, int replayTurn)
     {
         KeyController ki = new KeyController(true);
         ActionController ac = new ActionController();
 
         long agentSeed = AGENT_SEED == -1 ? System.currentTimeMillis() + new Random().nextInt() : AGENT_SEED;
 
-        Game game = _loadGame(playerTypes, saveGameFile, agentSeed, ac);
+        Game game = _loadGame(playerTypes, saveGameFile, replayTurn, agentSeed, ac);
         Run.runGame(game, ki, ac);
     }
 
@@ -131,6 +133,7 @@ public class Play {
         ArrayList<Agent> players = getPlayers(playerTypes, ac);
 
         Game game = new Game();
+        game.setVerbose(VERBOSE);
         game.init(players, levelFile, gameSeed, gameMode);
         return game;
     }
@@ -144,6 +147,7 @@ public class Play {
         ArrayList<Agent> players = getPlayers(playerTypes, ac);
 
         Game game = new Game();
+        game.setVerbose(VERBOSE);
 
         long levelGenSeed = levelSeed;
         if(levelGenSeed == -1)
@@ -169,7 +173,7 @@ public class Play {
 
         for(int i = 0; i < playerTypes.length; ++i)
         {
-            Agent ag = Run.getAgent(playerTypes[i], agentSeed, ac);
+            Agent ag = Run.getAgent(playerTypes[i], agentSeed, AGENT_CONFIG, ac);
             assert ag != null;
             ag.setPlayerIDs(i, allIds);
             players.add(ag);
@@ -177,7 +181,7 @@ public class Play {
         return players;
     }
 
-    private static Game _loadGame(Run.PlayerType[] playerTypes, String saveGameFile, long agentSeed, ActionController ac)
+    private static Game _loadGame(Run.PlayerType[] playerTypes, String saveGameFile, int replayTurn, long agentSeed, ActionController ac)
     {
         ArrayList<Agent> players = new ArrayList<>();
         ArrayList<Integer> allIds = new ArrayList<>();
@@ -186,14 +190,19 @@ public class Play {
 
         for(int i = 0; i < playerTypes.length; ++i)
         {
-            Agent ag = Run.getAgent(playerTypes[i], agentSeed, ac);
+            Agent ag = Run.getAgent(playerTypes[i], agentSeed, AGENT_CONFIG, ac);
             assert ag != null;
             ag.setPlayerIDs(i, allIds);
             players.add(ag);
         }
 
+        //JSON savegames (from older versions) are loaded as they are, binary ones at the start of a turn.
         Game game = new Game();
-        game.init(players, saveGameFile);
+        game.setVerbose(VERBOSE);
+        if(saveGameFile.endsWith(".json"))
+            game.init(players, saveGameFile);
+        else
+            game.init(players, saveGameFile, replayTurn);
         return game;
     }
 
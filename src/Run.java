@@ -9,6 +9,7 @@ import players.emcts.EMCTSParams;
 import players.heuristics.PrunePortfolioHeuristic;
 import players.mc.MCParams;
 import players.mc.MonteCarloAgent;
+import players.mcts.MCGSPlayer;
 import players.mcts.MCTSParams;
 import players.mcts.MCTSPlayer;
 import players.oep.OEPAgent;
@@ -66,24 +67,32 @@ class Run {
         MC,
         SIMPLE,
         MCTS,
+        MCGS,
         RHEA,
         OEP,
         EMCTS,
         PORTFOLIO_MCTS
     }
 
-    public static double K_INIT_MULT = 0.5;
-    public static double T_MULT = 2.0;
-    public static double A_MULT = 1.5;
-    public static double B = 1.3;
-    public static double[] pMCTSweights;
-
-    public static int MAX_LENGTH;
-    public static boolean PRUNING;
-    public static boolean PROGBIAS;
-    public static boolean FORCE_TURN_END;
-    public static boolean MCTS_ROLLOUTS;
-    public static int POP_SIZE;
+    /**
+     * Settings used to build agents. Each entry point owns its own instance, so games constructed
+     * from different configurations (or on different threads) don't share mutable state.
+     */
+    static class AgentConfig
+    {
+        double K_INIT_MULT = 0.5;
+        double T_MULT = 2.0;
+        double A_MULT = 1.5;
+        double B = 1.3;
+        double[] pMCTSweights;
+
+        int MAX_LENGTH;
+        boolean PRUNING;
+        boolean PROGBIAS;
+        boolean FORCE_TURN_END;
+        boolean MCTS_ROLLOUTS;
+        int POP_SIZE;
+    }
 
 
     static Run.PlayerType parsePlayerTypeStr(String arg) throws Exception
@@ -96,6 +105,7 @@ class Run {
             case "OSLA" -> PlayerType.OSLA;
             case "MC" -> PlayerType.MC;
             case "MCTS" -> PlayerType.MCTS;
+            case "MCGS" -> PlayerType.MCGS;
             case "RHEA" -> PlayerType.RHEA;
             case "OEP" -> PlayerType.OEP;
             case "pMCTS" -> PlayerType.PORTFOLIO_MCTS;
@@ -133,7 +143,7 @@ class Run {
         return weights;
     }
 
-    public static Agent getAgent(Run.PlayerType playerType, long agentSeed)
+    public static Agent getAgent(Run.PlayerType playerType, long agentSeed, AgentConfig config)
     {
         switch (playerType)
         {
@@ -150,35 +160,44 @@ class Run {
                 mcparams.stop_type = mcparams.STOP_FMCALLS;
                 mcparams.heuristic_method = mcparams.DIFF_HEURISTIC;
                 mcparams.PRIORITIZE_ROOT = true;
-                mcparams.ROLLOUT_LENGTH = MAX_LENGTH;
-                mcparams.FORCE_TURN_END = FORCE_TURN_END ? 5 : mcparams.ROLLOUT_LENGTH + 1;
+                mcparams.ROLLOUT_LENGTH = config.MAX_LENGTH;
+                mcparams.FORCE_TURN_END = config.FORCE_TURN_END ? 5 : mcparams.ROLLOUT_LENGTH + 1;
                 return new MonteCarloAgent(agentSeed, mcparams);
             case MCTS:
                 MCTSParams mctsParams = new MCTSParams();
                 mctsParams.stop_type = mctsParams.STOP_FMCALLS;
                 mctsParams.heuristic_method = mctsParams.DIFF_HEURISTIC;
                 mctsParams.PRIORITIZE_ROOT = true;
-                mctsParams.ROLLOUT_LENGTH = MAX_LENGTH;
-                mctsParams.FORCE_TURN_END = FORCE_TURN_END ? 5 : mctsParams.ROLLOUT_LENGTH + 1;
-                mctsParams.ROLOUTS_ENABLED = MCTS_ROLLOUTS;
+                mctsParams.ROLLOUT_LENGTH = config.MAX_LENGTH;
+                mctsParams.FORCE_TURN_END = config.FORCE_TURN_END ? 5 : mctsParams.ROLLOUT_LENGTH + 1;
+                mctsParams.ROLOUTS_ENABLED = config.MCTS_ROLLOUTS;
                 return new MCTSPlayer(agentSeed, mctsParams);
+            case MCGS:
+                MCTSParams mcgsParams = new MCTSParams();
+                mcgsParams.stop_type = mcgsParams.STOP_FMCALLS;
+                mcgsParams.heuristic_method = mcgsParams.DIFF_HEURISTIC;
+                mcgsParams.PRIORITIZE_ROOT = true;
+                mcgsParams.ROLLOUT_LENGTH = config.MAX_LENGTH;
+                mcgsParams.FORCE_TURN_END = config.FORCE_TURN_END ? 5 : mcgsParams.ROLLOUT_LENGTH + 1;
+                mcgsParams.ROLOUTS_ENABLED = config.MCTS_ROLLOUTS;
+                return new MCGSPlayer(agentSeed, mcgsParams);
             case PORTFOLIO_MCTS:
                 PortfolioMCTSParams portfolioMCTSParams = new PortfolioMCTSParams();
                 portfolioMCTSParams.stop_type = portfolioMCTSParams.STOP_FMCALLS;
                 portfolioMCTSParams.heuristic_method = portfolioMCTSParams.DIFF_HEURISTIC;
                 portfolioMCTSParams.PRIORITIZE_ROOT = false;
-                portfolioMCTSParams.ROLLOUT_LENGTH = MAX_LENGTH;
-                portfolioMCTSParams.PRUNING = PRUNING;
-                portfolioMCTSParams.PROGBIAS = PROGBIAS;
-                portfolioMCTSParams.K_init_mult = K_INIT_MULT;
-                portfolioMCTSParams.A_mult = A_MULT;
-                portfolioMCTSParams.B = B;
-                portfolioMCTSParams.T_mult = T_MULT;
+                portfolioMCTSParams.ROLLOUT_LENGTH = config.MAX_LENGTH;
+                portfolioMCTSParams.PRUNING = config.PRUNING;
+                portfolioMCTSParams.PROGBIAS = config.PROGBIAS;
+                portfolioMCTSParams.K_init_mult = config.K_INIT_MULT;
+                portfolioMCTSParams.A_mult = config.A_MULT;
+                portfolioMCTSParams.B = config.B;
+                portfolioMCTSParams.T_mult = config.T_MULT;
                 Portfolio p = new SimplePortfolio(agentSeed);
                 portfolioMCTSParams.setPortfolio(p);
                 portfolioMCTSParams.pruneHeuristic = new PrunePortfolioHeuristic(p);
-                if(Run.pMCTSweights != null)
-                    portfolioMCTSParams.pruneHeuristic.setWeights(Run.pMCTSweights);
+                if(config.pMCTSweights != null)
+                    portfolioMCTSParams.pruneHeuristic.setWeights(config.pMCTSweights);
                 return new PortfolioMCTSPlayer(agentSeed, portfolioMCTSParams);
             case OEP:
                 OEPParams oepParams = new OEPParams();
@@ -194,16 +213,16 @@ class Run {
                 RHEAParams rheaParams = new RHEAParams();
                 rheaParams.stop_type = rheaParams.STOP_FMCALLS;
                 rheaParams.heuristic_method = rheaParams.DIFF_HEURISTIC;
-                rheaParams.INDIVIDUAL_LENGTH = MAX_LENGTH;
+                rheaParams.INDIVIDUAL_LENGTH = config.MAX_LENGTH;
                 rheaParams.FORCE_TURN_END = rheaParams.INDIVIDUAL_LENGTH + 1;
-                rheaParams.POP_SIZE = POP_SIZE;
+                rheaParams.POP_SIZE = config.POP_SIZE;
                 return new RHEAAgent(agentSeed, rheaParams);
         }
         return null;
     }
 
-    public static Agent getAgent(Run.PlayerType playerType, long agentSeed, ActionController ac) {
+    public static Agent getAgent(Run.PlayerType playerType, long agentSeed, AgentConfig config, ActionController ac) {
         if (playerType == PlayerType.HUMAN) return new HumanAgent(ac);
-        return getAgent(playerType, agentSeed);
+        return getAgent(playerType, agentSeed, config);
     }
 }
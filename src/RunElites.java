@@ -1,4 +1,3 @@
-import core.Constants;
 import core.Types;
 import core.game.Game;
 import core.game.TribeResult;
@@ -54,7 +53,6 @@ public class RunElites {
         Types.GAME_MODE gameMode = CAPITALS; //SCORE;
         int nRepetitions = 4;
         boolean shiftTribes = true;
-        Constants.VERBOSE = true;
         int nWeights = 11;
         boolean master = true;
         boolean fileBased = false;
@@ -78,22 +76,22 @@ public class RunElites {
 
                 nRepetitions = config.getInt("Repetitions");
 
-                Run.MAX_LENGTH = config.getInt("Search Depth");
-                Run.FORCE_TURN_END = config.getBoolean("Force End");
-                Run.MCTS_ROLLOUTS = config.getBoolean("Rollouts");
+                agentConfig.MAX_LENGTH = config.getInt("Search Depth");
+                agentConfig.FORCE_TURN_END = config.getBoolean("Force End");
+                agentConfig.MCTS_ROLLOUTS = config.getBoolean("Rollouts");
 
                 //Portfolio and pruning variables:
-                Run.PRUNING = config.getBoolean("Pruning");
-                Run.PROGBIAS = config.getBoolean("Progressive Bias");
-                Run.K_INIT_MULT = config.getDouble("K init mult");
-                Run.T_MULT = config.getDouble("T mult");
-                Run.A_MULT = config.getDouble("A mult");
-                Run.B = config.getDouble("B");
+                agentConfig.PRUNING = config.getBoolean("Pruning");
+                agentConfig.PROGBIAS = config.getBoolean("Progressive Bias");
+                agentConfig.K_INIT_MULT = config.getDouble("K init mult");
+                agentConfig.T_MULT = config.getDouble("T mult");
+                agentConfig.A_MULT = config.getDouble("A mult");
+                agentConfig.B = config.getDouble("B");
                 nWeights = config.getInt("nWeights");
                 master = config.getBoolean("Master");
                 fileBased = config.getBoolean("File based");
 
-                Run.POP_SIZE = config.getInt("Population Size");
+                agentConfig.POP_SIZE = config.getInt("Population Size");
                 shiftTribes = config.getBoolean("Shift Tribes");
                 int numElitesIterations = config.getInt("Elites iterations");
                 int numRandomInits = config.getInt("Random inits");
@@ -131,7 +129,7 @@ public class RunElites {
                 this.setNumRepetitions(nRepetitions);
                 this.setShiftTribes(shiftTribes);
 
-                Constants.VERBOSE = config.getBoolean("Verbose");
+                this.verbose = config.getBoolean("Verbose");
                 JSONArray seeds = (JSONArray) config.get("Level Seeds");
                 this.setSeeds(seeds);
 
@@ -269,6 +267,7 @@ public class RunElites {
         ArrayList<Agent> players = getPlayers(playerTypes);
 
         Game game = new Game();
+        game.setVerbose(verbose);
 
         long levelGenSeed = levelSeed;
         if(levelGenSeed == -1)
@@ -294,7 +293,7 @@ public class RunElites {
 
         for(int i = 0; i < playerTypes.length; ++i)
         {
-            Agent ag = Run.getAgent(playerTypes[i], agentSeed);
+            Agent ag = Run.getAgent(playerTypes[i], agentSeed, agentConfig);
             assert ag != null;
             ag.setPlayerIDs(i, allIds);
             players.add(ag);
@@ -373,6 +372,8 @@ public class RunElites {
     private Feature[] features;
     private int numRepetitions;
     private boolean shift;
+    private boolean verbose = true;
+    private Run.AgentConfig agentConfig = new Run.AgentConfig();
 
 
 
@@ -0,0 +1,103 @@
+import core.game.GameState;
+import core.game.Replay;
+import core.game.TribeResult;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Entry point to replay binary savegames with the forward model alone (see core.game.Replay), for analysis and
+ * regression testing. For each savegame, prints the results of the game as replayed and the replay throughput.
+ * Arguments (options first):
+ *   -c     check the states replayed against the keyframes of the savegames.
+ *   -r N   replay each savegame N times, to measure the throughput (default 1).
+ *   savegames, or directories with savegames (*.sav), to replay.
+ */
+public class RunReplay {
+
+    public static void main(String[] args) {
+        boolean check = false;
+        int repetitions = 1;
+        ArrayList<String> files = new ArrayList<>();
+
+        for(int i = 0; i < args.length; i++)
+        {
+            switch (args[i]) {
+                case "-c": check = true; break;
+                case "-r": repetitions = Integer.parseInt(args[++i]); break;
+                default: addSavegames(new File(args[i]), files);
+            }
+        }
+        if(files.isEmpty()) {
+            System.out.println("Usage: 'java RunReplay [-c] [-r repetitions] <savegame or directory>...'");
+            return;
+        }
+
+        long totalTurns = 0, totalNanos = 0;
+        int mismatches = 0;
+        for(String file : files)
+        {
+            Replay replay = null;
+            long nanos = Long.MAX_VALUE;
+            for (int r = 0; r < repetitions; r++) {
+                long start = System.nanoTime();
+                replay = new Replay(file);
+                replay.setCheckKeyframes(check);
+                replay.playAll();
+                nanos = Math.min(nanos, System.nanoTime() - start);
+            }
+            totalTurns += replay.getTurn();
+            totalNanos += nanos;
+            mismatches += replay.getNumMismatches();
+            printReplay(file, replay, nanos, check);
+        }
+
+        System.out.printf("%d savegames, %d turns in %.3f s: %.1f turns/s%n", files.size(), totalTurns,
+                totalNanos / 1e9, totalTurns / (totalNanos / 1e9));
+        if(check)
+            System.out.println(mismatches == 0 ? "All keyframes match." : mismatches + " keyframes don't match.");
+    }
+
+    private static void addSavegames(File file, ArrayList<String> files)
+    {
+        if(file.isDirectory()) {
+            File[] saves = file.listFiles((dir, name) -> name.endsWith(".sav"));
+            if(saves != null) {
+                Arrays.sort(saves);
+                for (File save : saves)
+                    files.add(save.getPath());
+            }
+        }else {
+            files.add(file.getPath());
+        }
+    }
+
+    /**
+     * Prints the results of a replayed game (as Game does at the end of a game) and the time taken to replay it.
+     * @param nanos time taken by the fastest replay, in nanoseconds.
+     */
+    private static void printReplay(String file, Replay replay, long nanos, boolean check)
+    {
+        GameState gs = replay.getGameState();
+        double secs = nanos / 1e9;
+        System.out.printf("%s (seed %d, %s): %d turns, %d ticks, %d actions in %.3f s: %.1f turns/s, %.0f actions/s%n",
+                file, replay.getSeed(), replay.getGameMode(), replay.getTurn(), gs.getTick(), replay.getNumActions(),
+                secs, replay.getTurn() / secs, replay.getNumActions() / secs);
+        if(!gs.isGameOver())
+            System.out.println(" The savegame ends before the game does.");
+
+        int rank = 1;
+        for (TribeResult tr : gs.getCurrentRanking()) {
+            System.out.println(" #" + rank + ": Tribe " + gs.getTribes()[tr.getId()].getType() + ": " + tr.getResult() +
+                    ", " + (int) tr.getScore() + " points; #tech: " + tr.getNumTechsResearched() + ", #cities: " +
+                    tr.getNumCities() + ", production: " + tr.getProduction());
+            rank++;
+        }
+
+        if(check)
+            System.out.println(" Keyframes checked: " + replay.getNumKeyframesChecked() + ", mismatches: " +
+                    replay.getNumMismatches() + (replay.getFirstMismatch() == -1 ? "" :
+                    " (first at turn " + replay.getFirstMismatch() + ")"));
+    }
+}
@@ -0,0 +1,88 @@
+import core.Types;
+import core.game.GameState;
+import core.game.SelfPlay;
+import core.game.TribeResult;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import players.Agent;
+import utils.file.IO;
+
+import java.util.ArrayList;
+
+import static core.Types.GAME_MODE.CAPITALS;
+import static core.Types.GAME_MODE.SCORE;
+
+/**
+ * Entry point to play many headless games between AI players as fast as possible (see core.game.SelfPlay).
+ * The configuration is read from the JSON file given as first argument (selfplay.json by default).
+ */
+public class RunSelfPlay {
+
+    public static void main(String[] args) {
+
+        JSONObject config = new IO().readJSON(args.length > 0 ? args[0] : "selfplay.json");
+        if(config == null || config.isEmpty()) {
+            System.out.println("Usage: 'java RunSelfPlay <jsonConfigFile>'");
+            return;
+        }
+
+        try {
+            Types.GAME_MODE gameMode = config.getString("Game Mode").equalsIgnoreCase("Capitals") ? CAPITALS : SCORE;
+            int nGames = config.getInt("Games");
+
+            Run.AgentConfig agentConfig = new Run.AgentConfig();
+            agentConfig.MAX_LENGTH = config.getInt("Search Depth");
+            agentConfig.FORCE_TURN_END = config.getBoolean("Force End");
+            agentConfig.MCTS_ROLLOUTS = config.getBoolean("Rollouts");
+            agentConfig.POP_SIZE = config.getInt("Population Size");
+
+            JSONArray playersArray = (JSONArray) config.get("Players");
+            JSONArray tribesArray = (JSONArray) config.get("Tribes");
+            if (playersArray.length() != tribesArray.length())
+                throw new Exception("Number of players must be equal to number of tribes");
+
+            int nPlayers = playersArray.length();
+            Run.PlayerType[] playerTypes = new Run.PlayerType[nPlayers];
+            Types.TRIBE[] tribes = new Types.TRIBE[nPlayers];
+            for (int i = 0; i < nPlayers; ++i) {
+                playerTypes[i] = Run.parsePlayerTypeStr(playersArray.getString(i));
+                tribes[i] = Run.parseTribeStr(tribesArray.getString(i));
+            }
+
+            long seed = config.has("Seed") ? config.getLong("Seed") : System.currentTimeMillis();
+            SelfPlay selfPlay = new SelfPlay(tribes, gameMode, seed);
+            if(config.has("Threads"))
+                selfPlay.setThreads(config.getInt("Threads"));
+            if(config.has("Level File"))
+                selfPlay.setLevelFile(config.getString("Level File"));
+
+            //Wins and total score of each player.
+            int[] wins = new int[nPlayers];
+            long[] scores = new long[nPlayers];
+
+            selfPlay.run(nGames, (gameIdx, agentSeed) -> {
+                ArrayList<Agent> players = new ArrayList<>();
+                for (Run.PlayerType playerType : playerTypes)
+                    players.add(Run.getAgent(playerType, agentSeed, agentConfig));
+                return players;
+            }, (gameIdx, gs, stats) -> addResults(gs, wins, scores));
+
+            for (int i = 0; i < nPlayers; ++i)
+                System.out.printf("Player %d (%s, %s): %d wins, average score %.2f%n", i, playerTypes[i], tribes[i],
+                        wins[i], (double) scores[i] / nGames);
+
+        } catch (Exception e) {
+            System.out.println("Malformed JSON config file: " + e);
+            e.printStackTrace();
+        }
+    }
+
+    private static synchronized void addResults(GameState gs, int[] wins, long[] scores)
+    {
+        for (TribeResult tr : gs.getCurrentRanking()) {
+            if (tr.getResult() == Types.RESULT.WIN)
+                wins[tr.getId()]++;
+            scores[tr.getId()] += tr.getScore();
+        }
+    }
+}
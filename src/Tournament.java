@@ -1,14 +1,19 @@
-import core.Constants;
 import core.Types;
 import core.game.Game;
+import core.game.LevelCache;
 import core.game.TribeResult;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import players.*;
+import utils.Utils;
 import utils.file.IO;
 import utils.stats.MultiStatSummary;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static core.Types.GAME_MODE.*;
 import static core.Types.TRIBE.*;
@@ -24,7 +29,6 @@ public class Tournament {
         Tournament t = new Tournament(gameMode);
         int nRepetitions = 4;
         boolean shiftTribes = true;
-        Constants.VERBOSE = true;
 
         JSONObject config = new IO().readJSON("tournament.json");
         if(args.length > 0)
@@ -44,19 +48,28 @@ public class Tournament {
                 t = new Tournament(gameMode);
                 nRepetitions = config.getInt("Repetitions");
 
-                Run.MAX_LENGTH = config.getInt("Search Depth");
-                Run.FORCE_TURN_END = config.getBoolean("Force End");
-                Run.MCTS_ROLLOUTS = config.getBoolean("Rollouts");
-                Run.POP_SIZE = config.getInt("Population Size");
+                Run.AgentConfig agentConfig = t.agentConfig;
+                agentConfig.MAX_LENGTH = config.getInt("Search Depth");
+                agentConfig.FORCE_TURN_END = config.getBoolean("Force End");
+                agentConfig.MCTS_ROLLOUTS = config.getBoolean("Rollouts");
+                agentConfig.POP_SIZE = config.getInt("Population Size");
                 shiftTribes = config.getBoolean("Shift Tribes");
 
                 //Portfolio and pruning variables:
-                Run.PRUNING = config.getBoolean("Pruning");
-                Run.PROGBIAS = config.getBoolean("Progressive Bias");
-                Run.K_INIT_MULT = config.getDouble("K init mult");
-                Run.T_MULT = config.getDouble("T mult");
-                Run.A_MULT = config.getDouble("A mult");
-                Run.B = config.getDouble("B");
+                agentConfig.PRUNING = config.getBoolean("Pruning");
+                agentConfig.PROGBIAS = config.getBoolean("Progressive Bias");
+                agentConfig.K_INIT_MULT = config.getDouble("K init mult");
+                agentConfig.T_MULT = config.getDouble("T mult");
+                agentConfig.A_MULT = config.getDouble("A mult");
+                agentConfig.B = config.getDouble("B");
+
+                //Parallel execution: number of games played at the same time, and master seed for all games.
+                if(config.has("Threads"))
+                    t.nThreads = config.getInt("Threads");
+                if(config.has("Tournament Seed"))
+                    t.tournamentSeed = config.getLong("Tournament Seed");
+                if(config.has("Level Cache"))
+                    t.levelCache = new LevelCache(config.getString("Level Cache"));
 
                 JSONArray playersArray = (JSONArray) config.get("Players");
                 JSONArray tribesArray = (JSONArray) config.get("Tribes");
@@ -75,14 +88,14 @@ public class Tournament {
                 t.setPlayers(playerTypes);
                 t.setTribes(tribes);
 
-                Constants.VERBOSE = config.getBoolean("Verbose");
+                t.verbose = config.getBoolean("Verbose");
                 JSONArray seeds = (JSONArray) config.get("Level Seeds");
                 t.setSeeds(seeds);
 
                 JSONArray weights = null;
                 if(config.has("pMCTS Weights"))
                     weights = (JSONArray) config.get("pMCTS Weights");
-                Run.pMCTSweights = Run.getWeights(weights);
+                agentConfig.pMCTSweights = Run.getWeights(weights);
 
             } catch (Exception e) {
                 System.out.println("Malformed JSON config file: " + e);
@@ -101,6 +114,17 @@ public class Tournament {
     private MultiStatSummary[] stats;
     private Types.TRIBE[] tribes;
     private long[] seeds;
+    private boolean verbose = true;
+    private Run.AgentConfig agentConfig = new Run.AgentConfig();
+
+    //Number of games played concurrently (1 plays them all in the calling thread).
+    private int nThreads = 1;
+
+    //Seed from which all level, game and agent seeds of this tournament are derived.
+    private long tournamentSeed = System.currentTimeMillis();
+
+    //Levels of this tournament: each level is generated once, and its games start from a copy of its board.
+    private LevelCache levelCache = new LevelCache();
 
 
     private Tournament(Types.GAME_MODE gameMode)
@@ -137,15 +161,19 @@ public class Tournament {
 
     private void run(int repetitions, boolean shift)
     {
+        //Printed so that the tournament can be played again, passing it as "Tournament Seed" in the config.
+        System.out.println("Tournament seed: " + tournamentSeed);
+
+        //First, plan all games in the order they would be played sequentially.
+        ArrayList<GameSetup> setups = new ArrayList<>();
+        Random seedRnd = new Random(tournamentSeed);
         int starter = 0;
-        int nseed = 0;
         for (long levelSeed : seeds) {
 
             if(levelSeed == -1)
             {
-                levelSeed = System.currentTimeMillis() + new Random().nextInt();
+                levelSeed = seedRnd.nextLong();
             }
-            System.out.println("**** Playing level with seed " + levelSeed + " ****");
 
             for (int rep = 0; rep < repetitions; rep++) {
 
@@ -154,47 +182,110 @@ public class Tournament {
                 Run.PlayerType[] players = new Run.PlayerType[participants.size()];
 
                 int playersIn = 0;
-                System.out.print("Playing with [");
                 while(playersIn < participants.size())
                 {
                     Participant p = participants.get(next);
-                    System.out.print(p.participantId + ":" + p.playerType + "(" + tribes[playersIn] + ")");
                     players[playersIn] = p.playerType;
                     assignment.put(tribes[playersIn], p);
 
                     playersIn++;
                     next = (next + 1) % participants.size();
+                }
+
+                setups.add(new GameSetup(setups.size(), levelSeed, players, assignment));
 
-                    if (playersIn < participants.size())
-                        System.out.print(", ");
+                //Shift arrays for position changes.
+                if (shift) {
+                    starter = (starter + 1) % participants.size();
                 }
-                System.out.println("] (" + (nseed*repetitions + rep + 1) + "/" + (seeds.length*repetitions) + ")");
+            }
+        }
 
-                Game game = _prepareGame(tribes, levelSeed, players, gameMode);
+        //Play them, either in this thread or distributed among a pool of workers.
+        ArrayList<GameRecord> records = new ArrayList<>();
+        if(nThreads <= 1)
+        {
+            for(GameSetup setup : setups)
+                records.add(playGame(setup, setups.size()));
+        }else
+        {
+            ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+            ArrayList<Future<GameRecord>> futures = new ArrayList<>();
+            for(GameSetup setup : setups)
+                futures.add(pool.submit(() -> playGame(setup, setups.size())));
 
-                try {
-                    Run.runGame(game);
+            //Games are retried until they finish without errors, so a failed one means the tournament can't complete:
+            // the games still pending are cancelled and the error is passed on, instead of printing partial results.
+            try {
+                for (Future<GameRecord> f : futures)
+                    records.add(f.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Tournament interrupted", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Error playing a game of the tournament", e.getCause());
+            } finally {
+                for (Future<GameRecord> f : futures)
+                    f.cancel(true);
+                pool.shutdownNow();
+            }
+        }
 
-                    _addGameResults(game, assignment);
+        //Results are merged in game order, so the summary doesn't depend on which games finished first.
+        for(GameRecord record : records)
+            _addGameResults(record);
 
-                    //Shift arrays for position changes.
-                    if (shift) {
-                        starter = (starter + 1) % participants.size();
-                    }
-                }catch (Exception e)
-                {
-                    e.printStackTrace();
-                    System.out.println("Error running a game, trying again.");
-                    rep--;
-                }
+        _printRunResults();
+
+    }
 
+    /**
+     * Plays a game of the tournament until it finishes without errors. All seeds are derived from the tournament
+     * seed, the index of the game and the attempt number, so games are reproducible regardless of when they are run.
+     * @param setup game to play
+     * @param nGames total number of games in this tournament.
+     * @return the results of the game for each participant.
+     */
+    private GameRecord playGame(GameSetup setup, int nGames)
+    {
+        int attempt = 0;
+        while(true)
+        {
+            StringBuilder sb = new StringBuilder("**** Level seed " + setup.levelSeed + ". Playing with [");
+            for(int i = 0; i < tribes.length; ++i)
+            {
+                Participant p = setup.assignment.get(tribes[i]);
+                sb.append(p.participantId).append(":").append(p.playerType).append("(").append(tribes[i]).append(")");
+                if(i < tribes.length - 1) sb.append(", ");
             }
+            sb.append("] (").append(setup.index + 1).append("/").append(nGames).append(")");
+            System.out.println(sb);
 
-            nseed++;
+            try {
+                long gameSeed = deriveSeed(setup.index, attempt, 0);
+                long agentSeed = deriveSeed(setup.index, attempt, 1);
+                Game game = _prepareGame(tribes, setup.levelSeed, setup.players, gameMode, gameSeed, agentSeed);
+                Run.runGame(game);
+                return _collectGameResults(game, setup.assignment);
+            }catch (Exception e)
+            {
+                e.printStackTrace();
+                System.out.println("Error running a game, trying again.");
+                attempt++;
+            }
         }
+    }
 
-        _printRunResults();
-
+    /**
+     * Derives a seed for a game of this tournament.
+     * @param gameIdx index of the game in the tournament
+     * @param attempt number of times this game has been tried before.
+     * @param stream different seeds for the same game (i.e. game and agents)
+     * @return the seed.
+     */
+    private long deriveSeed(int gameIdx, int attempt, int stream)
+    {
+        return Utils.deriveSeed(tournamentSeed, ((long) gameIdx << 20) + ((long) attempt << 2) + stream);
     }
 
     private MultiStatSummary initMultiStat(Participant p)
@@ -210,31 +301,26 @@ public class Tournament {
         return mss;
     }
 
-    private Game _prepareGame(Types.TRIBE[] tribes, long levelSeed, Run.PlayerType[] playerTypes, Types.GAME_MODE gameMode)
+    private Game _prepareGame(Types.TRIBE[] tribes, long levelSeed, Run.PlayerType[] playerTypes, Types.GAME_MODE gameMode,
+                              long gameSeed, long agentSeed)
     {
-        long gameSeed = System.currentTimeMillis();
-
         if(RUN_VERBOSE) System.out.println("Game seed: " + gameSeed);
 
-        ArrayList<Agent> players = getPlayers(playerTypes);
+        ArrayList<Agent> players = getPlayers(playerTypes, agentSeed);
 
         Game game = new Game();
+        game.setVerbose(verbose);
 
-        long levelGenSeed = levelSeed;
-        if(levelGenSeed == -1)
-            levelGenSeed = System.currentTimeMillis() + new Random().nextInt();
-
-        if(RUN_VERBOSE) System.out.println("Level seed: " + levelGenSeed);
+        if(RUN_VERBOSE) System.out.println("Level seed: " + levelSeed);
 
-        game.init(players, levelGenSeed, tribes, gameSeed, gameMode);
+        game.init(players, levelCache.get(levelSeed, tribes), gameSeed, gameMode);
 
         return game;
     }
 
-    private ArrayList<Agent> getPlayers(Run.PlayerType[] playerTypes)
+    private ArrayList<Agent> getPlayers(Run.PlayerType[] playerTypes, long agentSeed)
     {
         ArrayList<Agent> players = new ArrayList<>();
-        long agentSeed = System.currentTimeMillis();
 
         if(RUN_VERBOSE)  System.out.println("Agents random seed: " + agentSeed);
 
@@ -244,7 +330,7 @@ public class Tournament {
 
         for(int i = 0; i < playerTypes.length; ++i)
         {
-            Agent ag = Run.getAgent(playerTypes[i], agentSeed);
+            Agent ag = Run.getAgent(playerTypes[i], agentSeed, agentConfig);
             assert ag != null;
             ag.setPlayerIDs(i, allIds);
             players.add(ag);
@@ -253,8 +339,9 @@ public class Tournament {
     }
 
 
-    private void _addGameResults(Game game, HashMap<Types.TRIBE, Participant> assignment)
+    private GameRecord _collectGameResults(Game game, HashMap<Types.TRIBE, Participant> assignment)
     {
+        GameRecord record = new GameRecord();
         TreeSet<TribeResult> ranking = game.getCurrentRanking();
         for(TribeResult tr : ranking)
         {
@@ -262,13 +349,21 @@ public class Tournament {
             int pId = assignment.get(tribe).participantId;
 
             int victoryCount = tr.getResult() == Types.RESULT.WIN ? 1 : 0;
-            stats[pId].getVariable("v").add(victoryCount);
-            stats[pId].getVariable("s").add(tr.getScore());
-            stats[pId].getVariable("t").add(tr.getNumTechsResearched());
-            stats[pId].getVariable("c").add(tr.getNumCities());
-            stats[pId].getVariable("p").add(tr.getProduction());
-            stats[pId].getVariable("d").add(tr.getNumWars());
-            stats[pId].getVariable("r").add(tr.getNumStars());
+            record.participantIds.add(pId);
+            record.values.add(new double[]{victoryCount, tr.getScore(), tr.getNumTechsResearched(), tr.getNumCities(),
+                    tr.getProduction(), tr.getNumWars(), tr.getNumStars()});
+        }
+        return record;
+    }
+
+    private void _addGameResults(GameRecord record)
+    {
+        for(int i = 0; i < record.participantIds.size(); ++i)
+        {
+            int pId = record.participantIds.get(i);
+            double[] values = record.values.get(i);
+            for(int v = 0; v < GameRecord.VARIABLES.length; ++v)
+                stats[pId].getVariable(GameRecord.VARIABLES[v]).add(values[v]);
         }
     }
 
@@ -365,5 +460,34 @@ public class Tournament {
         }
     }
 
+    /**
+     * One game of the tournament: level, player order and which participant controls each tribe.
+     */
+    private static class GameSetup
+    {
+        int index;
+        long levelSeed;
+        Run.PlayerType[] players;
+        HashMap<Types.TRIBE, Participant> assignment;
+
+        GameSetup(int index, long levelSeed, Run.PlayerType[] players, HashMap<Types.TRIBE, Participant> assignment)
+        {
+            this.index = index;
+            this.levelSeed = levelSeed;
+            this.players = players;
+            this.assignment = assignment;
+        }
+    }
+
+    /**
+     * Results of one game, in ranking order, waiting to be merged in the tournament stats.
+     */
+    private static class GameRecord
+    {
+        static final String[] VARIABLES = {"v", "s", "t", "c", "p", "d", "r"};
+        ArrayList<Integer> participantIds = new ArrayList<>();
+        ArrayList<double[]> values = new ArrayList<>();
+    }
+
 
 }
\ No newline at end of file
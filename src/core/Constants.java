@@ -2,9 +2,11 @@ package core;
 
 public class Constants {
     public static boolean LOG_STATS = true;
-    public static boolean VERBOSE = true;
     public static boolean VISUALS = true;
     public static boolean WRITE_SAVEGAMES = false;
+    public static int SAVEGAME_KEYFRAME_TURNS = 20; // Savegames have the full game state every this number of turns, and the actions played in between (0: only the first turn).
+    public static boolean CHECK_ACTION_UPDATES = false; // If true, actions updated after each move are checked against the ones computed from scratch (slow, for debugging).
+    public static boolean CHECK_STATE_HASH = false; // If true, the hash of the board is checked against one computed from scratch every time it's read (slow, for debugging).
     public static boolean DISABLE_NON_HUMAN_GRID_HIGHLIGHT = true;  // If true, human observing/playing doesn't have access to actions of non-human players
     public static int FRAME_DELAY = 0;// 500; //1000;
     public static boolean TURN_TIME_LIMITED = false; // if true, agents have a limited amount of time to finish their turn, which is specified by TURN_TIME_MILLIS
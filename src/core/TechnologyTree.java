@@ -58,6 +58,17 @@ public class TechnologyTree {
         return false;
     }
 
+    /**
+     * Returns the researched technologies as a bit mask.
+     * @return a mask with bit i set if the technology with ordinal i is researched.
+     */
+    public long getResearchedBits() {
+        long bits = 0;
+        for (int i = 0; i < researched.length; i++)
+            if (researched[i]) bits |= 1L << i;
+        return bits;
+    }
+
     /**
      * Copies this tree and returns it.
      * @return a copy of this tree.
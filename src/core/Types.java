@@ -820,43 +820,54 @@ public class Types {
             return ImageIO.GetInstance().getImage(a.getActionType().imgPath);
         }
 
+        /**
+         * Commands that execute each type of action. There's one instance of each command, shared by all game states
+         * and threads, so commands can't have state of their own (see ActionCommandTest).
+         */
+        private static final EnumMap<ACTION, ActionCommand> COMMANDS = new EnumMap<>(ACTION.class);
+        static {
+            //City actions
+            COMMANDS.put(BUILD, new BuildCommand());
+            COMMANDS.put(BURN_FOREST, new BurnForestCommand());
+            COMMANDS.put(CLEAR_FOREST, new ClearForestCommand());
+            COMMANDS.put(DESTROY, new DestroyCommand());
+            COMMANDS.put(GROW_FOREST, new GrowForestCommand());
+            COMMANDS.put(LEVEL_UP, new LevelUpCommand());
+            COMMANDS.put(RESOURCE_GATHERING, new ResourceGatheringCommand());
+            COMMANDS.put(SPAWN, new SpawnCommand());
+
+            //Tribe actions
+            COMMANDS.put(BUILD_ROAD, new BuildRoadCommand());
+            COMMANDS.put(END_TURN, new EndTurnCommand());
+            COMMANDS.put(RESEARCH_TECH, new ResearchTechCommand());
+            COMMANDS.put(DECLARE_WAR, new DeclareWarCommand());
+            COMMANDS.put(SEND_STARS, new SendStarsCommand());
+
+            //Unit actions
+            COMMANDS.put(ATTACK, new AttackCommand());
+            COMMANDS.put(CAPTURE, new CaptureCommand());
+            COMMANDS.put(CONVERT, new ConvertCommand());
+            COMMANDS.put(DISBAND, new DisbandCommand());
+            COMMANDS.put(EXAMINE, new ExamineCommand());
+            COMMANDS.put(HEAL_OTHERS, new HealOthersCommand());
+            COMMANDS.put(MAKE_VETERAN, new MakeVeteranCommand());
+            COMMANDS.put(MOVE, new MoveCommand());
+            COMMANDS.put(RECOVER, new RecoverCommand());
+            UpgradeCommand upgrade = new UpgradeCommand();
+            COMMANDS.put(UPGRADE_BOAT, upgrade);
+            COMMANDS.put(UPGRADE_SHIP, upgrade);
+        }
+
+        /**
+         * Gets the command that executes actions of this type, shared by all callers (see COMMANDS).
+         * @return the command, null if this type of action has none.
+         */
         public ActionCommand getCommand()
         {
-            switch (this)
-            {
-                //City actions
-                case BUILD: return new BuildCommand();
-                case BURN_FOREST: return new BurnForestCommand();
-                case CLEAR_FOREST: return new ClearForestCommand();
-                case DESTROY: return new DestroyCommand();
-                case GROW_FOREST: return new GrowForestCommand();
-                case LEVEL_UP: return new LevelUpCommand();
-                case RESOURCE_GATHERING: return new ResourceGatheringCommand();
-                case SPAWN: return new SpawnCommand();
-
-                //Tribe actions
-                case BUILD_ROAD: return new BuildRoadCommand();
-                case END_TURN: return new EndTurnCommand();
-                case RESEARCH_TECH: return new ResearchTechCommand();
-                case DECLARE_WAR: return new DeclareWarCommand();
-                case SEND_STARS: return new SendStarsCommand();
-
-                //Unit actions
-                case ATTACK: return new AttackCommand();
-                case CAPTURE: return new CaptureCommand();
-                case CONVERT: return new ConvertCommand();
-                case DISBAND: return new DisbandCommand();
-                case EXAMINE: return new ExamineCommand();
-                case HEAL_OTHERS: return new HealOthersCommand();
-                case MAKE_VETERAN: return new MakeVeteranCommand();
-                case MOVE: return new MoveCommand();
-                case RECOVER: return new RecoverCommand();
-                case UPGRADE_BOAT:
-                case UPGRADE_SHIP: return new UpgradeCommand();
-
-            }
-            System.out.println("ERROR: ActionCommand for action type " + this + " not implemented.");
-            return null;
+            ActionCommand command = COMMANDS.get(this);
+            if (command == null)
+                System.out.println("ERROR: ActionCommand for action type " + this + " not implemented.");
+            return command;
         }
     }
 }
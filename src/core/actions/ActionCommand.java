@@ -11,9 +11,11 @@ public interface ActionCommand
      *  ResearchTech researchAction = new ResearchTech(myTribe);
      *  researchAction.setTech(Types.TECHNOLOGY.ARCHERY);
      *  ...
-     *  new ResearchTechCommand().execute(researchAction, currentGameState);
+     *  Types.ACTION.RESEARCH_TECH.getCommand().execute(researchAction, currentGameState);
      *
-     * Implementations of this function will likely modify the GameState gs passed by parameter.
+     * Implementations of this function will likely modify the GameState gs passed by parameter, but not the command
+     * itself: commands can't have state, as one instance of each is shared by all game states and threads (see
+     * Types.ACTION.getCommand()).
      *
      * @param a action to execute in the game state gs
      * @param gs the game state where the action must be executed.
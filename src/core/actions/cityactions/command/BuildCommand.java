@@ -18,7 +18,7 @@ public class BuildCommand implements ActionCommand {
     public boolean execute(Action a, GameState gs) {
         Build action = (Build)a;
         int cityId = action.getCityId();
-        City city = (City) gs.getActor(cityId);
+        City city = (City) gs.getActorForWrite(cityId);
         Tribe tribe = gs.getTribe(city.getTribeId());
         Board board = gs.getBoard();
 
@@ -17,7 +17,7 @@ public class BurnForestCommand implements ActionCommand {
     public boolean execute(Action a, GameState gs) {
         BurnForest action = (BurnForest)a;
         int cityId = action.getCityId();
-        City city = (City) gs.getActor(cityId);
+        City city = (City) gs.getActorForWrite(cityId);
         if (action.isFeasible(gs)){
             Vector2d targetPos = action.getTargetPos();
             Board b = gs.getBoard();
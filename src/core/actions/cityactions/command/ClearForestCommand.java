@@ -16,7 +16,7 @@ public class ClearForestCommand implements ActionCommand {
         ClearForest action = (ClearForest)a;
         if (action.isFeasible(gs)){
             int cityId = action.getCityId();
-            City city = (City) gs.getActor(cityId);
+            City city = (City) gs.getActorForWrite(cityId);
             Vector2d targetPos = action.getTargetPos();
             gs.getBoard().setTerrainAt(targetPos.x, targetPos.y, Types.TERRAIN.PLAIN);
             gs.getTribe(city.getTribeId()).addStars(TribesConfig.CLEAR_FOREST_STAR);
@@ -18,7 +18,7 @@ public class DestroyCommand implements ActionCommand {
         if (action.isFeasible(gs)){
             int cityId = action.getCityId();
             Vector2d targetPos = action.getTargetPos();
-            City city = (City) gs.getActor(cityId);
+            City city = (City) gs.getActorForWrite(cityId);
             Building buildingToRemove = city.getBuilding(targetPos.x, targetPos.y);
 
             Board b = gs.getBoard();
@@ -18,7 +18,7 @@ public class GrowForestCommand implements ActionCommand {
         if (action.isFeasible(gs)){
             Board b = gs.getBoard();
             int cityId = action.getCityId();
-            City city = (City) gs.getActor(cityId);
+            City city = (City) gs.getActorForWrite(cityId);
             Vector2d targetPos = action.getTargetPos();
             b.setTerrainAt(targetPos.x, targetPos.y, Types.TERRAIN.FOREST);
             b.setResourceAt(targetPos.x, targetPos.y, null);
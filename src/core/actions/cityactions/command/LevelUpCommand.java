@@ -21,7 +21,7 @@ public class LevelUpCommand implements ActionCommand {
             return false;
 
         int cityId = action.getCityId();
-        City city = (City) gs.getActor(cityId);
+        City city = (City) gs.getActorForWrite(cityId);
         Tribe tribe = gs.getBoard().getTribe(city.getTribeId());
         Vector2d cityPos = city.getPosition();
         CITY_LEVEL_UP bonus = action.getBonus();
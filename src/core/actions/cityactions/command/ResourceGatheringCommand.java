@@ -17,7 +17,7 @@ public class ResourceGatheringCommand implements ActionCommand {
         ResourceGathering action = (ResourceGathering)a;
         if(action.isFeasible(gs)){
             int cityId = action.getCityId();
-            City city = (City) gs.getActor(cityId);
+            City city = (City) gs.getActorForWrite(cityId);
             Vector2d position = action.getTargetPos();
             gs.getBoard().setResourceAt(position.x, position.y, null);
             Tribe tribe = gs.getTribe(city.getTribeId());
@@ -18,7 +18,7 @@ public class SpawnCommand implements ActionCommand {
         if (action.isFeasible(gs)){
             int cityId = action.getCityId();
             Types.UNIT unit_type = action.getUnitType();
-            City city = (City) gs.getActor(cityId);
+            City city = (City) gs.getActorForWrite(cityId);
             Vector2d cityPos = city.getPosition();
             Unit newUnit = Types.UNIT.createUnit(cityPos, 0, false, city.getActorId(), city.getTribeId(), unit_type);
             gs.getBoard().addUnit(city, newUnit);
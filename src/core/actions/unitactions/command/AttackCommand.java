@@ -32,8 +32,8 @@ public class AttackCommand implements ActionCommand {
             int unitId = action.getUnitId();
             int targetId = action.getTargetId();
 
-            Unit attacker = (Unit) gs.getActor(unitId);
-            Unit target = (Unit) gs.getActor(targetId);
+            Unit attacker = (Unit) gs.getActorForWrite(unitId);
+            Unit target = (Unit) gs.getActorForWrite(targetId);
 
             attacker.transitionToStatus(Types.TURN_STATUS.ATTACKED);
             Tribe attackerTribe = gs.getTribe(attacker.getTribeId());
@@ -25,12 +25,12 @@ public class CaptureCommand implements ActionCommand {
             int unitId = action.getUnitId();
             int targetCityId = action.getTargetCity();
             // Change city tribe id to execute action
-            Unit unit = (Unit) gs.getActor(unitId);
+            Unit unit = (Unit) gs.getActorForWrite(unitId);
             Board b = gs.getBoard();
             Tribe thisTribe = b.getTribe(unit.getTribeId());
 
             if (captureType == Types.TERRAIN.CITY) {
-                City targetCity = (City) gs.getActor(targetCityId);
+                City targetCity = (City) gs.getActorForWrite(targetCityId);
                 Tribe targetTribe = b.getTribe(targetCity.getTribeId());
 
                 //Update scores
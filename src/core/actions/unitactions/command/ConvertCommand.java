@@ -25,17 +25,17 @@ public class ConvertCommand implements ActionCommand {
         if (action.isFeasible(gs)) {
             int unitId = action.getUnitId();
             int targetId = action.getTargetId();
-            Unit target = (Unit) gs.getActor(targetId);
-            Unit unit = (Unit) gs.getActor(unitId);
+            Unit target = (Unit) gs.getActorForWrite(targetId);
+            Unit unit = (Unit) gs.getActorForWrite(unitId);
             Tribe targetTribe = gs.getTribe(target.getTribeId());
 
             //remove the unit from its original city.
             int cityId = target.getCityId();
-            City c = (City) gs.getActor(cityId);
+            City c = (City) gs.getActorForWrite(cityId);
             gs.getBoard().removeUnitFromCity(target, c, targetTribe);
 
             //add tribe to converted unit
-            target.setTribeId(unit.getTribeId());
+            gs.getBoard().setUnitTribe(target, unit.getTribeId());
             gs.getActiveTribe().addExtraUnit(target);
 
             // Updating relationship between tribes, deducting 5
@@ -16,10 +16,10 @@ public class DisbandCommand implements ActionCommand {
         Disband action = (Disband)a;
         int unitId = action.getUnitId();
 
-        Unit unit = (Unit) gs.getActor(unitId);
+        Unit unit = (Unit) gs.getActorForWrite(unitId);
         Board b = gs.getBoard();
         Tribe t = gs.getTribe(unit.getTribeId());
-        City c = (City) b.getActor(unit.getCityId());
+        City c = (City) b.getActorForWrite(unit.getCityId());
 
         if(action.isFeasible(gs))
         {
@@ -26,7 +26,7 @@ public class ExamineCommand implements ActionCommand {
         int unitId = action.getUnitId();
 
         if(action.isFeasible(gs)) {
-            Unit unit = (Unit) gs.getActor(unitId);
+            Unit unit = (Unit) gs.getActorForWrite(unitId);
             Tribe t = gs.getTribe(unit.getTribeId());
             Random rnd = gs.getRandomGenerator();
             TechnologyTree technologyTree = t.getTechTree();
@@ -59,7 +59,7 @@ public class ExamineCommand implements ActionCommand {
                     if(unitInCity != null)
                         gs.pushUnit(unitInCity, spawnPos.x, spawnPos.y);
 
-                    board.addUnit((City)gs.getActor(handlerCityId), newUnit);
+                    board.addUnit((City)gs.getActorForWrite(handlerCityId), newUnit);
 
                     gs.getBoard().setResourceAt(spawnPos.x, spawnPos.y, null);
                     break;
@@ -71,7 +71,7 @@ public class ExamineCommand implements ActionCommand {
                     break;
 
                 case POP_GROWTH:
-                    City c = (City) gs.getActor(handlerCityId);
+                    City c = (City) gs.getActorForWrite(handlerCityId);
                     c.addPopulation(t, bonus.getBonus());
                     break;
 
@@ -17,10 +17,11 @@ public class HealOthersCommand implements ActionCommand {
         int unitId = action.getUnitId();
 
         if (action.isFeasible(gs)) {
-            Unit unit = (Unit) gs.getActor(unitId);
+            Unit unit = (Unit) gs.getActorForWrite(unitId);
             ArrayList<Unit> targets = action.getTargets(gs);
 
-            for (Unit target: targets) {
+            for (Unit u: targets) {
+                Unit target = (Unit) gs.getActorForWrite(u.getActorId());
                 target.setCurrentHP(Math.min(target.getCurrentHP() + TribesConfig.MINDBENDER_HEAL, target.getMaxHP()));
             }
 
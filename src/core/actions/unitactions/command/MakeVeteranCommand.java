@@ -13,7 +13,7 @@ public class MakeVeteranCommand implements ActionCommand {
     public boolean execute(Action a, GameState gs) {
         MakeVeteran action = (MakeVeteran)a;
         int unitId = action.getUnitId();
-        Unit unit = (Unit) gs.getActor(unitId);
+        Unit unit = (Unit) gs.getActorForWrite(unitId);
         if(action.isFeasible(gs))
         {
             unit.setVeteran(true);
@@ -18,7 +18,7 @@ public class MoveCommand implements ActionCommand {
         if(action.isFeasible(gs)) {
             int unitId = action.getUnitId();
             Vector2d destination = action.getDestination();
-            Unit unit = (Unit) gs.getActor(unitId);
+            Unit unit = (Unit) gs.getActorForWrite(unitId);
             Board board = gs.getBoard();
             Tribe tribe = gs.getTribe(unit.getTribeId());
             Types.TERRAIN destinationTerrain = board.getTerrainAt(destination.x, destination.y);
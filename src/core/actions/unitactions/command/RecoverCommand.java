@@ -19,7 +19,7 @@ public class RecoverCommand implements ActionCommand {
         Recover action = (Recover)a;
         int unitId = action.getUnitId();
 
-        Unit unit = (Unit) gs.getActor(unitId);
+        Unit unit = (Unit) gs.getActorForWrite(unitId);
         if(unit == null)
             return false;
 
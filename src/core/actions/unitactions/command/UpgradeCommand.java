@@ -22,10 +22,10 @@ public class UpgradeCommand implements ActionCommand {
         Upgrade action = (Upgrade)a;
         int unitId = action.getUnitId();
 
-        Unit unit = (Unit) gs.getActor(unitId);
+        Unit unit = (Unit) gs.getActorForWrite(unitId);
         Tribe tribe = gs.getTribe(unit.getTribeId());
         Board board = gs.getBoard();
-        City city = (City) board.getActor(unit.getCityId());
+        City city = (City) board.getActorForWrite(unit.getCityId());
 
         if(action.isFeasible(gs)){
             Types.UNIT unitType = unit.getType();
@@ -6,14 +6,18 @@ import core.actions.unitactions.Move;
 import core.actions.unitactions.StepMove;
 import core.actors.Actor;
 import core.actors.units.Unit;
+import core.game.Board;
 import core.game.GameState;
-import utils.graph.PathNode;
+import utils.Vector2d;
 import utils.graph.Pathfinder;
 
 import java.util.LinkedList;
 
 public class MoveFactory implements ActionFactory {
 
+    //Reused for all the units this factory computes moves for.
+    private Pathfinder pathfinder;
+
     @Override
     public LinkedList<Action> computeActionVariants(final Actor actor, final GameState gs) {
         Unit unit = (Unit) actor;
@@ -22,11 +26,17 @@ public class MoveFactory implements ActionFactory {
 
         //If a units turn is FINISHED don't do unnecessary calculations.
         if(unit.canMove()) {
-            Pathfinder tp = new Pathfinder(unit.getPosition(), new StepMove(gs, unit));
-            for(PathNode tile : tp.findPaths()) {
-                if(gs.getBoard().getUnitAt(tile.getX(), tile.getY()) == null) {
+            Board board = gs.getBoard();
+            if(pathfinder == null || pathfinder.getSize() != board.getSize())
+                pathfinder = new Pathfinder(board.getSize());
+            pathfinder.reset(unit.getPosition(), new StepMove(gs, unit));
+
+            int nReached = pathfinder.getNumReached();
+            for(int i = 0; i < nReached; i++) {
+                int x = pathfinder.getReachedX(i), y = pathfinder.getReachedY(i);
+                if(board.getUnitAt(x, y) == null) {
                     Move action = new Move(unit.getActorId());
-                    action.setDestination(tile.getPosition());
+                    action.setDestination(new Vector2d(x, y));
                     moves.add(action);
                 }
             }
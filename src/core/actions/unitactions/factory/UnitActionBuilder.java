@@ -8,6 +8,8 @@ import java.util.ArrayList;
 
 public class UnitActionBuilder
 {
+    //Move factory is kept, as it reuses its pathfinder for all units.
+    private final MoveFactory moveFactory = new MoveFactory();
 
     public ArrayList<Action> getActions(GameState gs, Unit unit)
     {
@@ -48,7 +50,7 @@ public class UnitActionBuilder
         allActions.addAll(new MakeVeteranFactory().computeActionVariants(unit, gs));
 
         //Move
-        allActions.addAll(new MoveFactory().computeActionVariants(unit, gs));
+        allActions.addAll(moveFactory.computeActionVariants(unit, gs));
 
         //Recover
         allActions.addAll(new RecoverFactory().computeActionVariants(unit, gs));
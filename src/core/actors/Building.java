@@ -4,6 +4,8 @@ import core.Types;
 import org.json.JSONObject;
 import utils.Vector2d;
 
+import java.nio.ByteBuffer;
+
 public class Building {
 
     //Position of this building
@@ -39,6 +41,17 @@ public class Building {
         this.cityId = cityID;
     }
 
+    /**
+     * Creates a building from its binary form in a savegame (see GameSaver.writeBuilding()).
+     * @param buf buffer to read the building from.
+     * @param cityID id of the city
+     */
+    public Building(ByteBuffer buf, int cityID){
+        this.type = Types.BUILDING.values()[buf.get()];
+        this.position = new Vector2d(buf.getShort(), buf.getShort());
+        this.cityId = cityID;
+    }
+
     /**
      * Returns a copy of this building.
      * @return a copy of this building.
@@ -7,6 +7,9 @@ import core.game.GameState;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import utils.Vector2d;
+import utils.file.BinaryIO;
+
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.LinkedList;
 
@@ -91,6 +94,32 @@ public class City extends Actor{
         }
     }
 
+    /**
+     * Creates a city from its binary form in a savegame (see GameSaver.writeCity()).
+     * @param buf buffer to read the city from.
+     * @param cityID id of this city.
+     */
+    public City(ByteBuffer buf, int cityID){
+        this.position = new Vector2d(buf.getShort(), buf.getShort());
+        this.tribeId = buf.get();
+        level = buf.getInt();
+        population = buf.getInt();
+        population_need = buf.getInt();
+        production = buf.getInt();
+        bound = buf.getInt();
+        pointsWorth = buf.getInt();
+        isCapital = buf.get() != 0;
+        hasWalls = buf.get() != 0;
+        unitsID = BinaryIO.getIds(buf);
+
+        int nBuildings = buf.get();
+        for (int i = 0; i < nBuildings; i++){
+            //The type of the building comes first.
+            Types.BUILDING type = Types.BUILDING.values()[buf.get(buf.position())];
+            buildings.add(type.isTemple() ? new Temple(buf, cityID) : new Building(buf, cityID));
+        }
+    }
+
     /**
      * Adds population to this city.
      * @param tribe tribe this city belongs to
@@ -229,7 +258,7 @@ public class City extends Actor{
                     existingBuilding = this.getBuilding(adjPosition.x, adjPosition.y);
                 }else if(tribe.controlsCity(cityId)) {
                     //the matching building belongs to a city from a different tribe
-                    City city = (City) gameState.getActor(cityId);
+                    City city = (City) gameState.getActorForWrite(cityId);
                     existingBuilding = city.getBuilding(adjPosition.x, adjPosition.y);
                     cityToAddTo = city;
 
@@ -362,6 +391,7 @@ public class City extends Actor{
         c.production = hideInfo ? 0 : production;
         c.hasWalls = hasWalls;
         c.bound = bound;
+        c.pointsWorth = pointsWorth;
         c.actorId = actorId;
         c.buildings = copyBuildings();
         c.unitsID = hideInfo ? new ArrayList<>(0) : new ArrayList<>(unitsID);
@@ -436,6 +466,15 @@ public class City extends Actor{
         this.population = popValue;
     }
 
+    /**
+     * Gets the production added to this city by its buildings and resources, without the
+     * level and capital bonuses that getProduction() includes.
+     * @return the base production of this city
+     */
+    public int getBaseProduction() {
+        return production;
+    }
+
     public void setProduction(int prodValue) {
         this.production = prodValue;
     }
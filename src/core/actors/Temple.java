@@ -4,6 +4,8 @@ import core.TribesConfig;
 import core.Types;
 import org.json.JSONObject;
 
+import java.nio.ByteBuffer;
+
 public class Temple extends Building
 {
     //Level of this Temple
@@ -35,6 +37,17 @@ public class Temple extends Building
         turnsToScore = obj.getInt("turnsToScore");
     }
 
+    /**
+     * Creates a temple from its binary form in a savegame (see GameSaver.writeBuilding()).
+     * @param buf buffer to read the temple from.
+     * @param cityID id of the city this temple belongs to.
+     */
+    public Temple(ByteBuffer buf, int cityID){
+        super(buf, cityID);
+        level = buf.getInt();
+        turnsToScore = buf.getInt();
+    }
+
     /**
      * Levels the temple up, also resetting how many turns are needed for the next score up.
      */
@@ -7,13 +7,15 @@ import core.Types;
 import core.actors.units.Unit;
 import core.game.Board;
 import core.game.GameState;
+import core.game.Zobrist;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import utils.Vector2d;
-import utils.graph.PathNode;
-import utils.graph.Pathfinder;
+import utils.file.BinaryIO;
 
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.function.Predicate;
 
 import static core.Types.BUILDING.*;
 
@@ -44,6 +46,14 @@ public class Tribe extends Actor {
     //Indicates if the position in the board is visible
     private boolean[][] obsGrid;
 
+    //Rows of obsGrid that this tribe can modify in place. Rows not owned are shared with a copy of this tribe.
+    private boolean[] ownedObsRows;
+
+    //XOR of the Zobrist keys of the visible tiles (see Zobrist.visibleKey()), kept up to date as tiles are revealed
+    // once it's been computed. Not computed until first needed if visibleHashValid is false.
+    private long visibleHash;
+    private boolean visibleHashValid;
+
     //List of city ids connected to the capital (capital not included)
     private ArrayList<Integer> connectedCities = new ArrayList<>();
 
@@ -127,6 +137,44 @@ public class Tribe extends Actor {
 
     }
 
+    /**
+     * Creates a tribe from its binary form in a savegame (see GameSaver.writeTribe()).
+     * @param id id of the tribe.
+     * @param buf buffer to read the tribe from.
+     */
+    public Tribe(int id, ByteBuffer buf){
+        tribeId = id;
+        tribe = Types.TRIBE.values()[buf.get()];
+        capitalID = buf.getInt();
+        stars = buf.getInt();
+        score = buf.getInt();
+        winner = Types.RESULT.values()[buf.get()];
+        nKills = buf.getInt();
+        nPacifistCount = buf.getInt();
+        starsSent = buf.getInt();
+        nWarsDeclared = buf.getInt();
+        nStarsSent = buf.getInt();
+        hasDeclaredWar = buf.get() != 0;
+
+        boolean[] researched = new boolean[buf.getShort()];
+        BinaryIO.getBits(buf, researched);
+        techTree = new TechnologyTree(researched);
+
+        initObsGrid(buf.getShort());
+        for (boolean[] row : obsGrid)
+            BinaryIO.getBits(buf, row);
+
+        citiesID = BinaryIO.getIds(buf);
+        connectedCities = BinaryIO.getIds(buf);
+        tribesMet = BinaryIO.getIds(buf);
+        extraUnits = BinaryIO.getIds(buf);
+
+        monuments = new HashMap<>();
+        int nMonuments = buf.get();
+        for (int i = 0; i < nMonuments; i++)
+            monuments.put(Types.BUILDING.values()[buf.get()], MONUMENT_STATUS.values()[buf.get()]);
+    }
+
     private void init() {
         techTree = new TechnologyTree();
         Types.TECHNOLOGY initTech = tribe.getInitialTech();
@@ -149,10 +197,24 @@ public class Tribe extends Actor {
 
     public void initObsGrid(int size) {
         obsGrid = new boolean[size][size];
+        ownedObsRows = new boolean[size];
+        Arrays.fill(ownedObsRows, true);
         if(Constants.PLAY_WITH_FULL_OBS)
         {
             for (boolean[] booleans : obsGrid) Arrays.fill(booleans, true);
         }
+        visibleHashValid = false;
+    }
+
+    /**
+     * Computes the XOR of the Zobrist keys of all visible tiles from scratch.
+     */
+    private long computeVisibleHash() {
+        long h = 0;
+        for (int x = 0; x < obsGrid.length; x++)
+            for (int y = 0; y < obsGrid[x].length; y++)
+                if (obsGrid[x][y]) h ^= Zobrist.visibleKey(x, y);
+        return h;
     }
 
 
@@ -173,13 +235,20 @@ public class Tribe extends Actor {
 
         tribeCopy.techTree = hideInfo ? new TechnologyTree() : this.techTree.copy();
 
-        tribeCopy.obsGrid = new boolean[obsGrid.length][obsGrid.length];
-        for (int i = 0; i < obsGrid.length; ++i)
-            if(!hideInfo)
-                System.arraycopy(obsGrid[i], 0, tribeCopy.obsGrid[i], 0, obsGrid.length);
-            else //copy all visible (or enemy units won't be able to move in the FM). Assumes other tribes see everything.
-                for(int j = 0; j < obsGrid[i].length; j++)
-                    tribeCopy.obsGrid[i][j] = true;
+        if(!hideInfo)
+        {
+            //Both tribes share the rows of the grid until one of them reveals a tile in it.
+            tribeCopy.obsGrid = obsGrid.clone();
+            tribeCopy.ownedObsRows = new boolean[obsGrid.length];
+            Arrays.fill(ownedObsRows, false);
+            tribeCopy.visibleHash = visibleHash;
+            tribeCopy.visibleHashValid = visibleHashValid;
+        }else
+        {
+            //copy all visible (or enemy units won't be able to move in the FM). Assumes other tribes see everything.
+            tribeCopy.initObsGrid(obsGrid.length);
+            for (boolean[] row : tribeCopy.obsGrid) Arrays.fill(row, true);
+        }
 
         tribeCopy.citiesID = new ArrayList<>();
         if(!hideInfo) tribeCopy.citiesID.addAll(citiesID);
@@ -203,13 +272,12 @@ public class Tribe extends Actor {
     }
 
     public boolean clearView(int x, int y, int range, Random r, Board b) {
-        int size = obsGrid.length;
-        Vector2d center = new Vector2d(x, y);
+        Vector2d.Neighborhoods neighborhoods = Vector2d.neighborhoods(range, obsGrid.length);
         boolean requiresNetworkUpdate = false;
 
-        for (Vector2d tile : center.neighborhood(range, 0, size))
-            requiresNetworkUpdate |= clearTileAndCheckForNetworkUpdate(tile, r, b);
-        requiresNetworkUpdate |= clearTileAndCheckForNetworkUpdate(center, r, b);
+        for (int i = neighborhoods.start(x, y), end = neighborhoods.end(x, y); i < end; i++)
+            requiresNetworkUpdate |= clearTileAndCheckForNetworkUpdate(neighborhoods.x(i), neighborhoods.y(i), r, b);
+        requiresNetworkUpdate |= clearTileAndCheckForNetworkUpdate(x, y, r, b);
 
         //We may be clearing the last tiles of the board, which grants a monument.
         // The boost is only available when playing with partial observability.
@@ -228,36 +296,42 @@ public class Tribe extends Actor {
         return requiresNetworkUpdate;
     }
 
-    private boolean clearTileAndCheckForNetworkUpdate(Vector2d tile, Random r, Board b) {
+    private boolean clearTileAndCheckForNetworkUpdate(int x, int y, Random r, Board b) {
         boolean requiresNetworkUpdate = false;
 
-        if (!obsGrid[tile.x][tile.y]) {
+        if (!obsGrid[x][y]) {
             //Points and visibility.
-            obsGrid[tile.x][tile.y] = true;
+            if(!ownedObsRows[x])
+            {
+                obsGrid[x] = obsGrid[x].clone();
+                ownedObsRows[x] = true;
+            }
+            obsGrid[x][y] = true;
+            if(visibleHashValid) visibleHash ^= Zobrist.visibleKey(x, y);
             this.score += TribesConfig.CLEAR_VIEW_POINTS;
 
             //Network updates for this tribe, only if a road or a water tile has been revealed.
-            Types.TERRAIN terr = b.getTerrainAt(tile.x, tile.y);
-            if (b.isRoad(tile.x, tile.y) || ((terr != null) && terr.isWater()))
+            Types.TERRAIN terr = b.getTerrainAt(x, y);
+            if (b.isRoad(x, y) || ((terr != null) && terr.isWater()))
                 requiresNetworkUpdate = true;
         }
 
         //Meeting other tribes
-        Unit u = b.getUnitAt(tile.x, tile.y);
-        City c = b.getCityInBorders(tile.x, tile.y);
+        Unit u = b.getUnitAt(x, y);
+        City c = b.getCityInBorders(x, y);
 
         //This tribe meets other tribe when clearing view if other tribe's unit or city is visible
         if (u != null){
             meetTribe(r, b.getTribes(), u.getTribeId());
             //other tribe meets this tribe if moving into visible area
-            if (b.getTribe(u.tribeId).obsGrid[tile.x][tile.y]){
+            if (b.getTribe(u.tribeId).obsGrid[x][y]){
                 meetTribe(r, b.getTribes(), this.tribeId);
             }
         }
         if (c != null){
             meetTribe(r, b.getTribes(), c.getTribeId());
             //other tribe meets this tribe if moving into visible area
-            if (b.getTribe(c.tribeId).obsGrid[tile.x][tile.y]){
+            if (b.getTribe(c.tribeId).obsGrid[x][y]){
                 meetTribe(r, b.getTribes(), this.tribeId);
             }
         }
@@ -311,6 +385,29 @@ public class Tribe extends Actor {
         return obsGrid;
     }
 
+    /**
+     * Returns the visibility grid as it is now. The grid shares its rows with this tribe, which clones a row
+     * before revealing a tile in it from now on. Hence, the rows that differ by reference from the ones of
+     * getObsGrid() are those where tiles have been revealed since.
+     * @return a snapshot of the visibility grid.
+     */
+    public boolean[][] snapshotObsGrid() {
+        Arrays.fill(ownedObsRows, false);
+        return obsGrid.clone();
+    }
+
+    /**
+     * Returns the XOR of the Zobrist keys of the tiles visible for this tribe (see Zobrist.visibleKey()).
+     * @return the hash of the visible tiles.
+     */
+    public long getVisibleHash() {
+        if (!visibleHashValid) {
+            visibleHash = computeVisibleHash();
+            visibleHashValid = true;
+        }
+        return visibleHash;
+    }
+
     public boolean isVisible(int x, int y) {
         return obsGrid[x][y];
     }
@@ -436,7 +533,15 @@ public class Tribe extends Actor {
 
 
 
-    public void updateNetwork(Pathfinder tp, Board b, boolean thisTribesTurn) {
+    /**
+     * Updates the cities connected to the capital, adjusting the population of the cities that join or leave
+     * the trade network.
+     * @param connectedToCapital tells if a tile is connected to the capital by the trade network. Null if it
+     *                           hasn't been computed.
+     * @param b board of the game.
+     * @param thisTribesTurn true if it's this tribe's turn. Only then cities that join the network gain population.
+     */
+    public void updateNetwork(Predicate<Vector2d> connectedToCapital, Board b, boolean thisTribesTurn) {
         ArrayList<Integer> lostCities = new ArrayList<>();
         ArrayList<Integer> addedCities = new ArrayList<>();
 
@@ -446,19 +551,17 @@ public class Tribe extends Actor {
             lostCities.addAll(connectedCities);
             connectedCities.clear();
 
-        } else if (tp != null) {
+        } else if (connectedToCapital != null) {
 
-            City capital = (City) b.getActor(capitalID);
+            City capital = (City) b.getActorForWrite(capitalID);
 
             for (int cityId : citiesID) {
                 if (cityId != capitalID) {
 
                     //Check if the city is connected to the capital
-                    City nonCapitalCity = (City) b.getActor(cityId);
+                    City nonCapitalCity = (City) b.getActorForWrite(cityId);
                     Vector2d nonCapitalPos = nonCapitalCity.getPosition();
-                    ArrayList<PathNode> pathToCity = tp.findPathTo(nonCapitalPos);
-
-                    boolean connectedNow = (pathToCity != null) && (!pathToCity.isEmpty());
+                    boolean connectedNow = connectedToCapital.test(nonCapitalPos);
 
                     //This was previously connected
                     if (connectedCities.contains(cityId)) {
@@ -482,7 +585,7 @@ public class Tribe extends Actor {
             {
                 if(!this.controlsCity(cityId))
                 {
-                    dropCityFromNetwork((City) b.getActor(cityId));
+                    dropCityFromNetwork((City) b.getActorForWrite(cityId));
                     lostCities.add(cityId);
                 }
             }
@@ -503,7 +606,7 @@ public class Tribe extends Actor {
 
             //All cities that gained connection with the capital gain 1 population.
             for (int cityId : addedCities) {
-                City nonCapitalCity = (City) b.getActor(cityId);
+                City nonCapitalCity = (City) b.getActorForWrite(cityId);
                 nonCapitalCity.addPopulation(this, 1);
             }
         }
@@ -616,7 +719,7 @@ public class Tribe extends Actor {
         //All units must disappear.
         for(int cityId : citiesID)
         {
-            City c = (City) gs.getActor(cityId);
+            City c = (City) gs.getActorForWrite(cityId);
             for(int unitId : c.getUnitsID())
             {
                 Unit u = (Unit) gs.getActor(unitId);
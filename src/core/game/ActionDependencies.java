@@ -0,0 +1,172 @@
+package core.game;
+
+import core.actors.Actor;
+import core.actors.City;
+import core.actors.Tribe;
+import core.actors.units.Unit;
+import utils.Vector2d;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Inputs from which the actions available to a tribe were computed: the tiles of the board, the state of the tribe
+ * and the state of every city and unit. Comparing them with the current game state tells which cities and units
+ * may have different actions now, so only those need to be computed again (see GameState.computePlayerActions()).
+ * Tiles and visibility are kept in snapshots that share rows with the board and the tribe, which copy them on write.
+ * Hence, these inputs never change once taken and can be shared between copies of the game state.
+ */
+class ActionDependencies
+{
+    // Tribe the actions were computed for.
+    private final int tribeId;
+
+    // Tiles of the board.
+    private final Board.TileSnapshot tiles;
+
+    // Copy of the tribe, which keeps its visibility grid, stars, technologies, cities, monuments...
+    private final Tribe tribe;
+
+    // Values of the fields of each city and unit that their actions depend on, by actor id.
+    private final HashMap<Integer, int[]> actorFields;
+
+    /**
+     * Takes the inputs of the actions of a tribe from the current game state.
+     * @param board board of the game.
+     * @param tribe tribe whose actions are being computed.
+     */
+    ActionDependencies(Board board, Tribe tribe)
+    {
+        this.tribeId = tribe.getTribeId();
+        this.tiles = board.snapshotTiles();
+        this.tribe = tribe.copy(false);
+        this.actorFields = new HashMap<>();
+        for (Actor actor : board.getActors())
+            if(actor != null)
+                actorFields.put(actor.getActorId(), fieldsOf(actor));
+    }
+
+    /**
+     * Checks if the actions computed from these inputs can be updated for a tribe, rather than computed from scratch.
+     * This is only possible if they're for the same tribe and the state of the tribe hasn't changed, as anything
+     * the tribe has (stars, technologies, cities, monuments...) can change the actions of all its cities and units.
+     * @param t tribe whose actions are being computed.
+     * @return true if only the actions of the cities and units that changed need to be computed again.
+     */
+    boolean canUpdate(Tribe t)
+    {
+        return t.getTribeId() == tribeId
+                && t.getStars() == tribe.getStars()
+                && t.getTechTree().getNumResearched() == tribe.getTechTree().getNumResearched()
+                && t.getCapitalID() == tribe.getCapitalID()
+                && t.getnKills() == tribe.getnKills()
+                && t.getnPacifistCount() == tribe.getnPacifistCount()
+                && t.getCitiesID().equals(tribe.getCitiesID())
+                && t.getConnectedCities().equals(tribe.getConnectedCities())
+                && t.getTribesMet().equals(tribe.getTribesMet())
+                && t.getMonuments().equals(tribe.getMonuments());
+    }
+
+    /**
+     * Finds the tiles of the board that changed since these inputs were taken. This includes tiles where
+     * something changed on the board, tiles revealed to the tribe, and the positions of cities and units whose
+     * fields changed (or that were created).
+     * @param board current board of the game.
+     * @param now inputs taken from the current state of the game.
+     * @param changedActors set where the ids of the actors that changed are added.
+     * @return the positions of the tiles that changed.
+     */
+    ArrayList<Vector2d> findChanges(Board board, ActionDependencies now, HashSet<Integer> changedActors)
+    {
+        int size = board.getSize();
+        boolean[][] changed = new boolean[size][size];
+        board.flagChangedTiles(tiles, changed);
+
+        boolean[][] obsGrid = now.tribe.getObsGrid(), oldObsGrid = tribe.getObsGrid();
+        for (int x = 0; x < size; x++)
+            if(obsGrid[x] != oldObsGrid[x])
+                for (int y = 0; y < size; y++) changed[x][y] |= obsGrid[x][y] != oldObsGrid[x][y];
+
+        for (Actor actor : board.getActors())
+        {
+            if(actor == null)
+                continue;
+            int id = actor.getActorId();
+            if(!Arrays.equals(now.actorFields.get(id), actorFields.get(id)))
+            {
+                changedActors.add(id);
+                Vector2d pos = actor.getPosition();
+                changed[pos.x][pos.y] = true;
+            }
+        }
+
+        ArrayList<Vector2d> changedTiles = new ArrayList<>();
+        for (int x = 0; x < size; x++)
+            for (int y = 0; y < size; y++)
+                if(changed[x][y]) changedTiles.add(new Vector2d(x, y));
+        return changedTiles;
+    }
+
+    /**
+     * Indicates if any of the given tiles is within a distance of a position.
+     * @param tiles tiles to check.
+     * @param pos position.
+     * @param radius maximum distance (in tiles, diagonals included).
+     * @return true if a tile is within radius of pos.
+     */
+    static boolean anyWithin(ArrayList<Vector2d> tiles, Vector2d pos, int radius)
+    {
+        for (Vector2d tile : tiles)
+            if(Math.abs(tile.x - pos.x) <= radius && Math.abs(tile.y - pos.y) <= radius)
+                return true;
+        return false;
+    }
+
+    /**
+     * Maximum distance from a unit at which a change on the board can alter the unit's actions. Units can move
+     * up to twice their movement range on roads, and enemy units next to a tile exert zone of control on it.
+     * @param unit unit to check.
+     * @return distance, in tiles.
+     */
+    static int reach(Unit unit)
+    {
+        return Math.max(2 * unit.MOV + 1, unit.RANGE) + 1;
+    }
+
+    /**
+     * Maximum distance from a city at which a change on the board can alter the city's actions. Buildings may
+     * depend on the tiles next to the city borders.
+     * @param city city to check.
+     * @return distance, in tiles.
+     */
+    static int reach(City city)
+    {
+        return city.getBound() + 2;
+    }
+
+    /**
+     * Returns the values of the fields of a city or a unit that its actions depend on.
+     * @param actor city or unit.
+     * @return values of its fields.
+     */
+    private static int[] fieldsOf(Actor actor)
+    {
+        Vector2d pos = actor.getPosition();
+        if(actor instanceof Unit)
+        {
+            Unit u = (Unit) actor;
+            return new int[]{u.getType().ordinal(), u.getTribeId(), pos.x, pos.y, u.getStatus().ordinal(), u.getCurrentHP(),
+                    u.getMaxHP(), u.getKills(), u.isVeteran() ? 1 : 0, u.getCityId(), u.ATK, u.DEF, u.MOV};
+        }
+        if(actor instanceof City)
+        {
+            City c = (City) actor;
+            return new int[]{c.getTribeId(), pos.x, pos.y, c.getLevel(), c.getPopulation(), c.getPopulation_need(),
+                    c.getProduction(), c.isCapital() ? 1 : 0, c.hasWalls() ? 1 : 0, c.getBound(),
+                    c.getNumUnits(), c.getBuildings().size()};
+        }
+        return new int[]{actor.getTribeId(), pos.x, pos.y};
+    }
+}
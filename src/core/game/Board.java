@@ -1,5 +1,6 @@
 package core.game;
 
+import core.Constants;
 import core.TechnologyTree;
 import core.Diplomacy;
 import core.TribesConfig;
@@ -11,21 +12,22 @@ import core.actors.units.*;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import utils.Vector2d;
+import utils.file.BinaryIO;
 
+import java.nio.ByteBuffer;
 import java.util.*;
 
 import static core.Types.TERRAIN.*;
 
 public class Board {
 
-    // Array for the type of terrain that each tile of board will have
-    private Types.TERRAIN[][] terrains;
-
-    // Array for resource each tile of the board will have
-    private Types.RESOURCE[][] resources;
-
-    // Array for buildings each tile of the board will have
-    private Types.BUILDING[][] buildings;
+    // Terrain, resource and building of each tile of the board, packed in an int: their ordinal + 1 in the byte
+    // given by TERRAIN_SHIFT, RESOURCE_SHIFT and BUILDING_SHIFT, or 0 if the tile has none.
+    private int[][] tiles;
+    private static final int TERRAIN_SHIFT = 0, RESOURCE_SHIFT = 8, BUILDING_SHIFT = 16, FIELD_MASK = 0xFF;
+    private static final Types.TERRAIN[] TERRAINS = Types.TERRAIN.values();
+    private static final Types.RESOURCE[] RESOURCES = Types.RESOURCE.values();
+    private static final Types.BUILDING[] BUILDINGS = Types.BUILDING.values();
 
     // Array for units each tile of the board will have
     private int[][] units;
@@ -39,8 +41,15 @@ public class Board {
     // Array for id of the city that owns each tile. -1 if no city owns the tile.
     private int[][] tileCityId;
 
-    //Actors in the game
-    private HashMap<Integer, Actor> gameActors;
+    //Actors in the game, indexed by their id. Ids are given in increasing order and never reused, so this grows
+    //with actorIDcounter. Null for ids with no actor (removed, or not visible in a partially observable copy).
+    private Actor[] gameActors;
+
+    // Copy-on-write bookkeeping for the actors, as ownedRows for the tile layers. Copies share the actors they don't
+    // hide information of with the board they were copied from. ownedActors[id] is true if this board owns the actor
+    // with that id (i.e. it can be modified in place). Actors not owned are never modified: getActorForWrite()
+    // clones them, as the caller is going to modify them.
+    private boolean[] ownedActors;
 
     //variable to declare size of board
     private int size;
@@ -60,9 +69,49 @@ public class Board {
     //Indicate if this model is native (not a copy of the game one) or not.
     private boolean isNative;
 
+    // Copy-on-write bookkeeping for the tile layers. Full observable copies share the rows of these layers with
+    // the board they were copied from. Each entry has one bit per layer, set if this board owns that row
+    // (i.e. it can be written in place). Rows not owned are cloned before the first write.
+    private byte[] ownedRows;
+    private static final byte TILE_LAYER = 1, UNIT_LAYER = 2, CITY_LAYER = 4;
+    private static final byte ALL_LAYERS = TILE_LAYER | UNIT_LAYER | CITY_LAYER;
+
+    // Initial capacity of gameActors.
+    private static final int INITIAL_ACTORS = 64;
+
+    // Zone of control layer: zoneOfControl[t][x * size + y] is the number of units of tribe t adjacent to tile x,y,
+    // and zoneOfControl[tribes.length] counts the adjacent units of all tribes. Kept up to date as units are placed on
+    // and removed from the board. Null until first needed (see underZoneOfControl()) or when it has to be rebuilt.
+    private int[][] zoneOfControl;
+
+    // Last undo frame pushed (see pushFrame()), null if there are no changes to undo.
+    private Frame frame;
+
+    // Indicates if the last undo frame is still recording the changes made to this board.
+    private boolean recording;
+
+    // Zobrist hash of the tiles: their terrain, resource and building, the city that owns them and the trade network.
+    // Kept up to date as tiles change while tileHashValid, which is false until first needed (see getHash()).
+    private long tileHash;
+    private boolean tileHashValid;
+
+    // Zobrist hash of the actors, the XOR of actorHashes: the key of each actor, indexed by id, when it was last hashed.
+    // Actors retrieved with getActorForWrite() since then are flagged in staleActors, as the caller may have modified
+    // them.
+    // Null until first needed (see getHash()).
+    private long actorsHash;
+    private long[] actorHashes;
+    private boolean[] staleActors;
+
     // Constructor for board
     public Board() {
-        this.gameActors = new HashMap<>();
+        this(new Actor[INITIAL_ACTORS]);
+    }
+
+    // Constructor for copies, with the actors they start with, none of them owned.
+    private Board(Actor[] gameActors) {
+        this.gameActors = gameActors;
+        this.ownedActors = new boolean[gameActors.length];
     }
 
     /**
@@ -73,7 +122,8 @@ public class Board {
      * @param tribes All tribes in the game
      */
     public Board(JSONObject JBoard, int[] capitalIDs, int activeTribeID, Tribe[] tribes){
-        this.gameActors = new HashMap<>();
+        this.gameActors = new Actor[INITIAL_ACTORS];
+        this.ownedActors = new boolean[INITIAL_ACTORS];
         this.capitalIDs = capitalIDs;
         JSONArray JResource = JBoard.getJSONArray("resource");
         JSONArray JTerrain = JBoard.getJSONArray("terrain");
@@ -83,11 +133,10 @@ public class Board {
         JSONArray JBuilding = JBoard.getJSONArray("building");
 
         size = JResource.length();
-        terrains = new Types.TERRAIN[size][size];
-        resources = new Types.RESOURCE[size][size];
-        buildings = new Types.BUILDING[size][size];
+        tiles = new int[size][size];
         units = new int[size][size];
         tileCityId = new int[size][size];
+        ownedRows = newOwnedRows(size);
         isNative = true;
         actorIDcounter = JBoard.getInt("actorIDcounter");
         this.activeTribeID = activeTribeID;
@@ -102,16 +151,17 @@ public class Board {
             JSONArray networkItem = JNetwork.getJSONArray(i);
             JSONArray buildingItem = JBuilding.getJSONArray(i);
             for (int j=0; j<size; j++){
-                terrains[i][j] = Types.TERRAIN.getTypeByKey(terrainItem.getInt(j));
+                int tile = pack(0, TERRAIN_SHIFT, Types.TERRAIN.getTypeByKey(terrainItem.getInt(j)));
                 if (resourceItem.getInt(j) != -1) {
-                    resources[i][j] = Types.RESOURCE.getTypeByKey(resourceItem.getInt(j));
+                    tile = pack(tile, RESOURCE_SHIFT, Types.RESOURCE.getTypeByKey(resourceItem.getInt(j)));
                 }
                 units[i][j] = unitIDItem.getInt(j);
                 tileCityId[i][j] = cityIDItem.getInt(j);
                 networkTiles[i][j] = networkItem.getBoolean(j);
                 if(buildingItem.getInt(j) != -1) {
-                    buildings[i][j] = Types.BUILDING.getTypeByKey(buildingItem.getInt(j));
+                    tile = pack(tile, BUILDING_SHIFT, Types.BUILDING.getTypeByKey(buildingItem.getInt(j)));
                 }
+                tiles[i][j] = tile;
             }
 
         }
@@ -120,6 +170,51 @@ public class Board {
         diplomacy = new Diplomacy(tribes.length);
     }
 
+    /**
+     * Loads a board from its binary form in a savegame (see GameSaver.writeBoard()). Actors are not part of it, they
+     * must be added afterwards.
+     * @param buf buffer to read the board from.
+     * @param tribes All tribes in the game
+     */
+    Board(ByteBuffer buf, Tribe[] tribes){
+        this.gameActors = new Actor[INITIAL_ACTORS];
+        this.ownedActors = new boolean[INITIAL_ACTORS];
+        size = buf.getShort();
+        actorIDcounter = buf.getInt();
+        activeTribeID = buf.get();
+        capitalIDs = new int[tribes.length];
+        for (int i = 0; i < tribes.length; i++)
+            capitalIDs[i] = buf.getInt();
+
+        tiles = new int[size][size];
+        units = new int[size][size];
+        tileCityId = new int[size][size];
+        ownedRows = newOwnedRows(size);
+        isNative = true;
+        this.assignTribes(tribes);
+
+        // Terrain, resource and building codes are the ones of the packed tiles (ordinal + 1, 0 for none).
+        for (int x = 0; x < size; x++)
+            for (int y = 0; y < size; y++)
+                tiles[x][y] = (buf.get() << TERRAIN_SHIFT) | (buf.get() << RESOURCE_SHIFT) | (buf.get() << BUILDING_SHIFT);
+        for (int[] row : units)
+            for (int y = 0; y < size; y++)
+                row[y] = buf.getInt();
+        for (int[] row : tileCityId)
+            for (int y = 0; y < size; y++)
+                row[y] = buf.getInt();
+
+        boolean[][] networkTiles = new boolean[size][size];
+        for (boolean[] row : networkTiles)
+            BinaryIO.getBits(buf, row);
+        tradeNetwork = new TradeNetwork(networkTiles);
+
+        diplomacy = new Diplomacy(tribes.length);
+        for (int i = 0; i < tribes.length; i++)
+            for (int j = 0; j < tribes.length; j++)
+                diplomacy.setAllegianceStatus(i, j, buf.getInt());
+    }
+
 
     /**
      * Inits the board given its size and array of playing tribes. Initializes all the data structures for the board
@@ -130,11 +225,10 @@ public class Board {
 
         this.size = size;
         this.capitalIDs = new int[tribes.length];
-        terrains = new Types.TERRAIN[size][size];
-        resources = new Types.RESOURCE[size][size];
-        buildings = new Types.BUILDING[size][size];
+        tiles = new int[size][size];
         units = new int[size][size];
         tileCityId = new int[size][size];
+        ownedRows = newOwnedRows(size);
         tradeNetwork = new TradeNetwork(size);
         diplomacy = new Diplomacy(tribes.length);
         isNative = true;
@@ -153,7 +247,7 @@ public class Board {
     }
 
     /**
-     * Deep copies the board and returns the copy. It's copied as full not hiding any information
+     * Copies the board and returns the copy. It's copied as full not hiding any information
      * @return copy of the current board.
      */
     public Board copy() {
@@ -161,23 +255,29 @@ public class Board {
     }
 
     /**
-     * Returns a copy of the board.
+     * Returns a full copy of this board to start a new game from (see LevelCache). Unlike copies made for agents,
+     * it is the board of the game.
+     * @return copy of the current board.
+     */
+    Board copyForGame() {
+        Board copyBoard = copy();
+        copyBoard.isNative = true;
+        return copyBoard;
+    }
+
+    /**
+     * Returns a copy of the board. Tile layers and actors are shared with this board until either of them modifies
+     * them, so actors must not be modified through references obtained before the copy (see getActorForWrite()).
      * @param partialObs indicates if the board should be copied at full or some information needs to be hid
      * @param playerId if partialObs is true, id of the player who will receive this copy.
      * @return a copy of the board
      */
     public Board copy(boolean partialObs, int playerId) {
-        Board copyBoard = new Board();
+        Board copyBoard = new Board(gameActors.clone());
         copyBoard.size = this.size;
         copyBoard.tribes = new Tribe[this.tribes.length];
-        copyBoard.terrains = new Types.TERRAIN[size][size];
-        copyBoard.resources = new Types.RESOURCE[size][size];
-        copyBoard.buildings = new Types.BUILDING[size][size];
-        copyBoard.units = new int[size][size];
-        copyBoard.tileCityId = new int[size][size];
         copyBoard.activeTribeID = activeTribeID;
         copyBoard.actorIDcounter = actorIDcounter;
-        copyBoard.tradeNetwork = new TradeNetwork(size);
         copyBoard.diplomacy = diplomacy.copy();
         copyBoard.isNative = false;
         copyBoard.capitalIDs = new int[tribes.length];
@@ -185,20 +285,82 @@ public class Board {
         //copy capital IDs
         System.arraycopy(capitalIDs, 0, copyBoard.capitalIDs, 0, tribes.length);
 
-        // Copy board objects (they are all ids)
-        for (int x = 0; x < this.size; x++) {
-            for (int y = 0; y < this.size; y++) {
+        if(!partialObs)
+        {
+            // Nothing to hide: the copy shares all rows with this board, and both clone them on write.
+            copyBoard.tiles = tiles.clone();
+            copyBoard.units = units.clone();
+            copyBoard.tileCityId = tileCityId.clone();
+            copyBoard.ownedRows = new byte[size];
+            Arrays.fill(ownedRows, (byte) 0);
+            copyBoard.tradeNetwork = tradeNetwork.copy();
+            if(zoneOfControl != null)
+            {
+                copyBoard.zoneOfControl = new int[zoneOfControl.length][];
+                for (int i = 0; i < zoneOfControl.length; i++)
+                    copyBoard.zoneOfControl[i] = zoneOfControl[i].clone();
+            }
+            copyBoard.tileHash = tileHash;
+            copyBoard.tileHashValid = tileHashValid;
+            if(actorHashes != null)
+            {
+                copyBoard.actorsHash = actorsHash;
+                copyBoard.actorHashes = actorHashes.clone();
+                copyBoard.staleActors = staleActors.clone();
+            }
+        }else
+        {
+            copyBoard.tiles = new int[size][];
+            copyBoard.units = new int[size][];
+            copyBoard.tileCityId = new int[size][];
+            copyBoard.ownedRows = new byte[size];
+            copyBoard.tradeNetwork = tradeNetwork.copy();
+
+            // Rows with nothing to hide are shared with this board as in a full copy, and both clone them on write.
+            // The rest are built for the copy, hiding the tiles the player can't see and the resources it can't know of.
+            Tribe player = tribes[playerId];
+            for (int x = 0; x < this.size; x++) {
+                boolean rowVisible = true, resourcesVisible = true;
+                for (int y = 0; y < this.size && rowVisible; y++) {
+                    rowVisible = player.isVisible(x, y);
+                    resourcesVisible &= maskResource(playerId, x, y) == getResourceAt(x, y);
+                }
 
-                if(!partialObs || tribes[playerId].isVisible(x,y))
+                if(rowVisible)
                 {
-                    copyBoard.units[x][y] = units[x][y];
-                    copyBoard.setTerrainAt(x, y, terrains[x][y]);
-                    copyBoard.setResourceAt(x, y, maskResource(playerId, x, y));
-                    copyBoard.setBuildingAt(x, y, buildings[x][y]);
-                    copyBoard.tileCityId[x][y] = tileCityId[x][y];
-                    copyBoard.tradeNetwork.setTradeNetworkValue(x,y,tradeNetwork.getTradeNetworkValue(x,y));
-                }else{
-                    copyBoard.setTerrainAt(x, y, FOG);
+                    byte shared = UNIT_LAYER | CITY_LAYER;
+                    copyBoard.units[x] = units[x];
+                    copyBoard.tileCityId[x] = tileCityId[x];
+                    if(resourcesVisible)
+                    {
+                        shared |= TILE_LAYER;
+                        copyBoard.tiles[x] = tiles[x];
+                    }else
+                    {
+                        copyBoard.tiles[x] = new int[size];
+                        for (int y = 0; y < this.size; y++)
+                            copyBoard.tiles[x][y] = pack(tiles[x][y], RESOURCE_SHIFT, maskResource(playerId, x, y));
+                    }
+                    copyBoard.ownedRows[x] = (byte) (ALL_LAYERS & ~shared);
+                    ownedRows[x] &= (byte) ~shared;
+                    continue;
+                }
+
+                copyBoard.tiles[x] = new int[size];
+                copyBoard.units[x] = new int[size];
+                copyBoard.tileCityId[x] = new int[size];
+                copyBoard.ownedRows[x] = ALL_LAYERS;
+                for (int y = 0; y < this.size; y++) {
+
+                    if(player.isVisible(x,y))
+                    {
+                        copyBoard.units[x][y] = units[x][y];
+                        copyBoard.tiles[x][y] = pack(tiles[x][y], RESOURCE_SHIFT, maskResource(playerId, x, y));
+                        copyBoard.tileCityId[x][y] = tileCityId[x][y];
+                    }else{
+                        copyBoard.tiles[x][y] = pack(0, TERRAIN_SHIFT, FOG);
+                        copyBoard.tradeNetwork.setTradeNetworkValue(x, y, false);
+                    }
                 }
             }
         }
@@ -210,35 +372,60 @@ public class Board {
 
         }
 
-        //Deep copy of all actors in the board
-        copyBoard.gameActors = new HashMap<>();
-        for (Actor act : gameActors.values()) {
-            int id = act.getActorId();
-            int actTribeId = act.getTribeId();
-            boolean actorVisible = playerId == -1 || tribes[playerId].isVisible(act.getPosition().x, act.getPosition().y);
+        //The copy starts with all the actors of this board, shared: neither board owns them anymore, so both clone
+        // them before they're modified (see getActorForWrite()).
+        if(!partialObs)
+        {
+            Arrays.fill(ownedActors, false);
+            return copyBoard;
+        }
 
-            //When do we copy? if it's the tribe (id==playerId), full observable or actor visible if part. obs.
-            if(actTribeId == playerId || !partialObs || actorVisible)
+        //Actors of other tribes are hidden if the player can't see them, and copied hiding their information if it can.
+        for (int id = 1; id < gameActors.length; id++) {
+            Actor act = gameActors[id];
+            if(act == null)
+                continue;
+            int actTribeId = act.getTribeId();
+            if(actTribeId == playerId)
             {
-                boolean hideInfo = (actTribeId != playerId) && partialObs;
-                Actor actorCopy = act.copy(hideInfo);
-                copyBoard.gameActors.put(id, actorCopy);
+                ownedActors[id] = false;
+                continue;
+            }
 
-                //If we're hiding info, the other tribes don't copy cityIDs and unitIDs by default in the arrays. But we need to copy the ones we see.
-                if(hideInfo)
-                {
-                    int tribeId = actorCopy.getTribeId();
-                    if(actorCopy instanceof City)
-                        copyBoard.tribes[tribeId].addCity(actorCopy.getActorId());
-                    else if(actorCopy instanceof Unit)
-                        copyBoard.tribes[tribeId].addExtraUnit((Unit)actorCopy);
-                }
+            if(!tribes[playerId].isVisible(act.getPosition().x, act.getPosition().y))
+            {
+                copyBoard.gameActors[id] = null;
+                continue;
             }
+
+            Actor actorCopy = act.copy(true);
+            copyBoard.gameActors[id] = actorCopy;
+            copyBoard.ownedActors[id] = true;
+
+            //If we're hiding info, the other tribes don't copy cityIDs and unitIDs by default in the arrays. But we need to copy the ones we see.
+            int tribeId = actorCopy.getTribeId();
+            if(actorCopy instanceof City)
+                copyBoard.tribes[tribeId].addCity(actorCopy.getActorId());
+            else if(actorCopy instanceof Unit)
+                copyBoard.tribes[tribeId].addExtraUnit((Unit)actorCopy);
         }
 
         return copyBoard;
     }
 
+    /**
+     * Returns a full copy of this board that is discarded before this board changes again, e.g. to read from it in the
+     * middle of an action. This board keeps owning its actors, so the references to them held by the action remain
+     * valid (see getActorForWrite()).
+     * @return copy of the current board.
+     */
+    private Board scratchCopy() {
+        boolean[] owned = ownedActors.clone();
+        Board copyBoard = copy();
+        ownedActors = owned;
+        return copyBoard;
+    }
+
     /**
      * Masks a resource that can only be revealed after researching a specific technology.
      * @param playerID if -1 we don not mask any resources.
@@ -247,12 +434,13 @@ public class Board {
      * @return Returns the resource at x,y or null if there is no resource, or the resource is hidden.
      */
     private Types.RESOURCE maskResource(int playerID, int x, int y) {
-        if(playerID == -1) { return resources[x][y]; }
+        Types.RESOURCE resource = getResourceAt(x, y);
+        if(playerID == -1 || resource == null) { return resource; }
         else {
             TechnologyTree t = tribes[playerID].getTechTree();
 
             try {
-                switch (resources[x][y]) {
+                switch (resource) {
                     case CROPS:
                         if (!t.isResearched(Types.TECHNOLOGY.ORGANIZATION)) {
                             return null;
@@ -269,7 +457,7 @@ public class Board {
                         }
                         break;
                 }
-                return resources[x][y];
+                return resource;
             } catch (Exception e) {
                 return null;
             }
@@ -332,7 +520,7 @@ public class Board {
         int tribeId = tribe.getTribeId();
 
         //climbable mountain?
-        Types.TERRAIN terrain = terrains[x][y];
+        Types.TERRAIN terrain = getTerrainAt(x, y);
         if (terrain == Types.TERRAIN.MOUNTAIN) {
             if (tribes[tribeId].getTechTree().isResearched(Types.TECHNOLOGY.CLIMBING)) {
                 moveUnit(toPush, startX, startY, x, y, r);
@@ -342,7 +530,7 @@ public class Board {
 
 
         //Water with a port this tribe owns?
-        Types.BUILDING b = buildings[x][y];
+        Types.BUILDING b = getBuildingAt(x, y);
         if (terrain == SHALLOW_WATER || terrain == DEEP_WATER) {
 
             if(toPush.getType().isWaterUnit())
@@ -378,7 +566,7 @@ public class Board {
      */
     public void embark(Unit unit, Tribe tribe, int x, int y) {
 
-        City city = (City) gameActors.get(unit.getCityId());
+        City city = (City) getActorForWrite(unit.getCityId());
         removeUnitFromBoard(unit);
         removeUnitFromCity(unit, city, tribe);
 
@@ -400,7 +588,7 @@ public class Board {
      * @param y y coordinate of the position where the unit is disembarking
      */
     public void disembark(Unit unit, Tribe tribe, int x, int y) {
-        City city = (City) gameActors.get(unit.getCityId());
+        City city = (City) getActorForWrite(unit.getCityId());
         removeUnitFromBoard(unit);
         removeUnitFromCity(unit, city, tribe);
         Types.UNIT baseLandUnit = getBaseLandUnit(unit);
@@ -447,8 +635,8 @@ public class Board {
      * @param r random generator
      */
     public void moveUnit(Unit unit, int x0, int y0, int xF, int yF, Random r) {
-        units[x0][y0] = 0;
-        units[xF][yF] = unit.getActorId();
+        setUnitIdAt(x0, y0, 0);
+        setUnitIdAt(xF, yF, unit.getActorId());
         unit.setPosition(xF, yF);
         Tribe t = tribes[unit.getTribeId()];
 
@@ -513,15 +701,15 @@ public class Board {
         TechnologyTree tt = tribes[tribeId].getTechTree();
 
         //if mountain and climbing not researched
-        if (terrains[x][y] == Types.TERRAIN.MOUNTAIN && !tt.isResearched(Types.TECHNOLOGY.CLIMBING))
+        if (getTerrainAt(x, y) == Types.TERRAIN.MOUNTAIN && !tt.isResearched(Types.TECHNOLOGY.CLIMBING))
             return false;
 
         //Shallow water and no sailing
-        if (terrains[x][y] == SHALLOW_WATER && !tt.isResearched(Types.TECHNOLOGY.SAILING))
+        if (getTerrainAt(x, y) == SHALLOW_WATER && !tt.isResearched(Types.TECHNOLOGY.SAILING))
             return false;
 
         //Deep water and no navigation
-        return terrains[x][y] != DEEP_WATER || tt.isResearched(Types.TECHNOLOGY.NAVIGATION);
+        return getTerrainAt(x, y) != DEEP_WATER || tt.isResearched(Types.TECHNOLOGY.NAVIGATION);
     }
 
 
@@ -548,7 +736,7 @@ public class Board {
      */
     public Unit getUnitAt(int x, int y){
 
-        Actor act = gameActors.get(units[x][y]);
+        Actor act = getActor(units[x][y]);
         if(act != null)
             return (Unit) act;
         return null;
@@ -564,7 +752,7 @@ public class Board {
         if(tileCityId[x][y] == -1)
             return null;
         else
-            return (City) gameActors.get(tileCityId[x][y]);
+            return (City) getActor(tileCityId[x][y]);
     }
 
     /**
@@ -575,14 +763,19 @@ public class Board {
     void assignCityTiles(City c, int radius){
         Vector2d cityPos = c.getPosition();
         Tribe t = getTribe(c.getTribeId());
-        assignCityTile(c, t, cityPos);
-        for (Vector2d tile: cityPos.neighborhood(radius, 0, size))
-            assignCityTile(c, t, tile);
+        assignCityTile(c, t, cityPos.x, cityPos.y);
+        Vector2d.Neighborhoods neighborhoods = Vector2d.neighborhoods(radius, size);
+        for (int i = neighborhoods.start(cityPos.x, cityPos.y), end = neighborhoods.end(cityPos.x, cityPos.y); i < end; i++)
+            assignCityTile(c, t, neighborhoods.x(i), neighborhoods.y(i));
     }
 
-    private void assignCityTile(City c, Tribe t, Vector2d tile) {
-        if (tileCityId[tile.x][tile.y] == -1){
-            tileCityId[tile.x][tile.y] = c.getActorId();
+    private void assignCityTile(City c, Tribe t, int x, int y) {
+        if (tileCityId[x][y] == -1){
+            ownRow(tileCityId, x, CITY_LAYER)[y] = c.getActorId();
+            if(tileHashValid)
+                tileHash ^= Zobrist.key(Zobrist.CITY_TILE, Zobrist.tileIndex(x, y), -1) ^
+                        Zobrist.key(Zobrist.CITY_TILE, Zobrist.tileIndex(x, y), c.getActorId());
+            tradeNetwork.invalidate(); // The tile may now be part of this city's tribe network, or an obstacle for others'.
             t.addScore(TribesConfig.CITY_BORDER_POINTS); // Add score to tribe on border creation
             c.addPointsWorth(TribesConfig.CITY_BORDER_POINTS);
         }
@@ -604,7 +797,8 @@ public class Board {
      * @return if there's a road in that position.
      */
     public boolean isRoad(int x, int y) {
-        return tradeNetwork.getTradeNetworkValue(x,y) && terrains[x][y] != SHALLOW_WATER && terrains[x][y] != DEEP_WATER && terrains[x][y] != CITY;
+        Types.TERRAIN terrain = getTerrainAt(x, y);
+        return tradeNetwork.getTradeNetworkValue(x,y) && terrain != SHALLOW_WATER && terrain != DEEP_WATER && terrain != CITY;
     }
 
     public boolean checkTradeNetwork(int x, int y) {
@@ -619,7 +813,7 @@ public class Board {
      */
     public LinkedList<Vector2d> getCityTiles(int cityID){
         LinkedList<Vector2d> tiles = new LinkedList<>();
-        City targetCity = (City) gameActors.get(cityID);
+        City targetCity = (City) actorAt(cityID);
         Vector2d targetCityPos = targetCity.getPosition();
         int radius;
 
@@ -648,7 +842,7 @@ public class Board {
     public boolean capture(GameState gameState, Tribe capturingTribe, int x, int y){
 
         Random rnd = gameState.getRandomGenerator();
-        Types.TERRAIN ter = terrains[x][y];
+        Types.TERRAIN ter = getTerrainAt(x, y);
 
         if(ter == Types.TERRAIN.VILLAGE)
         {
@@ -670,7 +864,7 @@ public class Board {
 
         }else if(ter == CITY)
         {
-            City capturedCity = (City) gameActors.get(tileCityId[x][y]);
+            City capturedCity = (City) getActorForWrite(tileCityId[x][y]);
             Tribe previousOwner = tribes[capturedCity.getTribeId()];
 
             //The city exists, needs to change owner, tribes notified and production & population updated
@@ -697,7 +891,7 @@ public class Board {
             return false;
         }
 
-        tradeNetwork.setTradeNetwork(this, x, y, true);
+        setNetworkAt(x, y, true);
         return true;
     }
 
@@ -712,7 +906,7 @@ public class Board {
     {
         //Capital is special, we start taking units from there.
         boolean ownsCapital = tribe.controlsCapital();
-        City capital = (City) getActor(tribe.getCapitalID());
+        City capital = (City) getActorForWrite(tribe.getCapitalID());
         LinkedList<Integer> cities = new LinkedList<>(tribe.getCitiesID());
         cities.remove((Integer)tribe.getCapitalID());
 
@@ -724,7 +918,7 @@ public class Board {
             //Capital is empty or not owned. Check the other cities at random
             Collections.shuffle(cities, rnd);
             while (!moved && !cities.isEmpty()){
-                City originalCity = (City)getActor(cities.removeFirst());
+                City originalCity = (City)getActorForWrite(cities.removeFirst());
                 if (!originalCity.getUnitsID().isEmpty()){
                     moveLastUnitFromCity(originalCity, destCity);
                     moved = true;
@@ -744,7 +938,7 @@ public class Board {
     {
         //Capital is special, we start taking units from there.
         boolean ownsCapital = tribe.controlsCapital();
-        City capital = (City) getActor(tribe.getCapitalID());
+        City capital = (City) getActorForWrite(tribe.getCapitalID());
 
         //First to capital
         if(ownsCapital) while (capital.canAddUnit() && fromCity.getNumUnits() > 0){
@@ -758,7 +952,7 @@ public class Board {
             cities.remove((Integer)tribe.getCapitalID());
             Collections.shuffle(cities, rnd);
             while (!cities.isEmpty() && fromCity.getNumUnits() > 0){
-                City destCity = (City)getActor(cities.removeFirst());
+                City destCity = (City)getActorForWrite(cities.removeFirst());
                 while (destCity.canAddUnit() && fromCity.getNumUnits() > 0){
                     moveLastUnitFromCity(fromCity, destCity);
                 }
@@ -770,7 +964,7 @@ public class Board {
                 //for(Integer unitId: fromCity.getUnitsID())
                 {
                     int unitId = fromCity.getUnitsID().get(0);
-                    Unit removedUnit = (Unit) gameActors.get(unitId);
+                    Unit removedUnit = (Unit) getActorForWrite(unitId);
                     if(removedUnit != null) {
                         tribe.addExtraUnit(removedUnit);
                         fromCity.removeUnit(unitId);
@@ -794,7 +988,7 @@ public class Board {
         targetCity.addUnit(actorID);
 
         //Assign new city to unit
-        Unit removedUnit = (Unit) gameActors.get(actorID);
+        Unit removedUnit = (Unit) getActorForWrite(actorID);
         removedUnit.setCityId(targetCity.getActorId());
     }
 
@@ -822,10 +1016,10 @@ public class Board {
         tribes[c.getTribeId()].addCity(c.getActorId());
 
         //cities provide visibility, which needs updating
-        tribes[c.getTribeId()].clearView(c.getPosition().x, c.getPosition().y, TribesConfig.NEW_CITY_CLEAR_RANGE, r, this.copy());
+        tribes[c.getTribeId()].clearView(c.getPosition().x, c.getPosition().y, TribesConfig.NEW_CITY_CLEAR_RANGE, r, scratchCopy());
 
         //By default, cities are considered to be roads for trade network purposes.
-        tradeNetwork.setTradeNetwork(this, c.getPosition().x, c.getPosition().y, true);
+        setNetworkAt(c.getPosition().x, c.getPosition().y, true);
     }
 
     /**
@@ -835,7 +1029,7 @@ public class Board {
     public void removeUnitFromBoard(Unit u)
     {
         Vector2d pos = u.getPosition();
-        units[pos.x][pos.y] = 0;
+        setUnitIdAt(pos.x, pos.y, 0);
         removeActor(u.getActorId());
     }
 
@@ -851,7 +1045,7 @@ public class Board {
 
         //Place it in the board
         Vector2d pos = u.getPosition();
-        units[pos.x][pos.y] = u.getActorId();
+        setUnitIdAt(pos.x, pos.y, u.getActorId());
 
         //Finally, add the unit to the city that created it, unless it belongs to the tribe.
         if(u.getCityId() != -1)
@@ -860,6 +1054,81 @@ public class Board {
             tribes[u.getTribeId()].addExtraUnit(u);
     }
 
+    /**
+     * Changes the tribe a unit on the board belongs to (i.e. when it's converted).
+     * @param u unit to change.
+     * @param tribeId id of the new tribe of the unit.
+     */
+    public void setUnitTribe(Unit u, int tribeId)
+    {
+        Vector2d pos = u.getPosition();
+        boolean onBoard = units[pos.x][pos.y] == u.getActorId();
+        if(onBoard) setUnitIdAt(pos.x, pos.y, 0);
+        u.setTribeId(tribeId);
+        if(onBoard) setUnitIdAt(pos.x, pos.y, u.getActorId());
+    }
+
+    /**
+     * Places a unit on a tile of the board, or removes the unit that is there (id 0), updating the zone of control.
+     * @param x x coordinate of the tile
+     * @param y y coordinate of the tile
+     * @param unitId id of the unit to place, 0 to leave the tile empty.
+     */
+    private void setUnitIdAt(int x, int y, int unitId)
+    {
+        if(zoneOfControl != null)
+        {
+            addZoneOfControl(units[x][y], x, y, -1);
+            addZoneOfControl(unitId, x, y, 1);
+        }
+        ownRow(units, x, UNIT_LAYER)[y] = unitId;
+    }
+
+    /**
+     * Adds (or removes) the zone of control exerted by a unit on the tiles adjacent to its position.
+     * @param unitId id of the unit, 0 if there's no unit.
+     * @param x x coordinate of the unit's position
+     * @param y y coordinate of the unit's position
+     * @param delta 1 to add the zone of control, -1 to remove it.
+     */
+    private void addZoneOfControl(int unitId, int x, int y, int delta)
+    {
+        Actor unit = actorAt(unitId);
+        if(unit == null)
+            return;
+
+        int[] tribeZoc = zoneOfControl[unit.getTribeId()], allZoc = zoneOfControl[tribes.length];
+        for (int i = Math.max(x - 1, 0); i <= Math.min(x + 1, size - 1); i++) {
+            for (int j = Math.max(y - 1, 0); j <= Math.min(y + 1, size - 1); j++) {
+                if(i != x || j != y) {
+                    tribeZoc[i * size + j] += delta;
+                    allZoc[i * size + j] += delta;
+                }
+            }
+        }
+    }
+
+    /**
+     * Indicates if a tile is in the zone of control of an enemy of a tribe, this is, adjacent to a unit of
+     * another tribe. Units can move into these tiles, but they can't move further in the same turn.
+     * @param x x coordinate of the tile
+     * @param y y coordinate of the tile
+     * @param tribeId id of the tribe.
+     * @return true if there is a unit of another tribe next to x,y
+     */
+    public boolean underZoneOfControl(int x, int y, int tribeId)
+    {
+        if(zoneOfControl == null)
+        {
+            zoneOfControl = new int[tribes.length + 1][size * size];
+            for (int i = 0; i < size; i++)
+                for (int j = 0; j < size; j++)
+                    addZoneOfControl(units[i][j], i, j, 1);
+        }
+        int idx = x * size + y;
+        return zoneOfControl[tribes.length][idx] > zoneOfControl[tribeId][idx];
+    }
+
     /**
      * Removes a unit from the city that has it assigned. If no city has it assigned, it removes it
      * for the Tribe's control.
@@ -883,30 +1152,103 @@ public class Board {
     private void addActor(core.actors.Actor actor)
     {
         actorIDcounter++;
-        gameActors.put(actorIDcounter, actor);
+        recordActor(actorIDcounter, null);
+        putActor(actorIDcounter, actor);
         actor.setActorId(actorIDcounter);
     }
 
     /**
      * Adds an actor to the set of game actors with the supplied id
      * @param actor actor to add
-     * @param actorID id of the actor, which is set in actor and as key in gameActors hash
+     * @param actorID id of the actor, which is set in actor and as index in gameActors
      */
     void addActor(core.actors.Actor actor, int actorID)
     {
-        gameActors.put(actorID, actor);
+        recordActor(actorID, actorAt(actorID));
+        putActor(actorID, actor);
         actor.setActorId(actorID);
     }
 
     /**
-     * Gets a game actor from its tileCityId.
+     * Gets a game actor from its tileCityId. The actor may be shared with other boards (see copy()), so it must
+     * not be modified: use getActorForWrite() to get an actor that is going to change.
      * @param actorId the tileCityId of the actor to retrieve
      * @return the actor, null if the tileCityId doesn't correspond to an actor (note that it may have
      * been deleted if the actor was removed from the game).
      */
     public Actor getActor(int actorId)
     {
-        return gameActors.get(actorId);
+        return actorAt(actorId);
+    }
+
+    /**
+     * Gets a game actor from its tileCityId to modify it. An actor shared with other boards is cloned for this
+     * one (see copy()), and if an undo frame is being recorded, the actor is saved the first time it's retrieved.
+     * @param actorId the tileCityId of the actor to retrieve
+     * @return the actor, null if the tileCityId doesn't correspond to an actor.
+     */
+    public Actor getActorForWrite(int actorId)
+    {
+        Actor actor = actorAt(actorId);
+        if(actor != null)
+        {
+            if(!ownedActors[actorId])
+            {
+                //A shared actor never changes, so it's saved as it is.
+                if(recording && !frame.actors.containsKey(actorId))
+                    frame.actors.put(actorId, actor);
+                actor = actor.copy(false);
+                gameActors[actorId] = actor;
+                ownedActors[actorId] = true;
+            }else
+                recordActor(actorId, actor);
+            if(staleActors != null)
+                staleActors[actorId] = true;
+        }
+        return actor;
+    }
+
+    /**
+     * Returns all the actors in the game (excluding tribes), in increasing order of id. The array must not be
+     * modified, and may be replaced when new actors are added.
+     * @return the game actors indexed by id, null for ids with no actor.
+     */
+    Actor[] getActors()
+    {
+        return gameActors;
+    }
+
+    /**
+     * Returns the actor with an id, without saving it in the undo frame being recorded (see getActorForWrite()).
+     * @param actorId id of the actor.
+     * @return the actor, or null if there's no actor with this id.
+     */
+    private Actor actorAt(int actorId)
+    {
+        return actorId > 0 && actorId < gameActors.length ? gameActors[actorId] : null;
+    }
+
+    /**
+     * Sets the actor with an id, owned by this board, growing gameActors if needed.
+     * @param actorId id of the actor.
+     * @param actor actor to set, null to remove it.
+     */
+    private void putActor(int actorId, Actor actor)
+    {
+        if(actorId >= gameActors.length)
+        {
+            gameActors = Arrays.copyOf(gameActors, Math.max(actorId + 1, gameActors.length * 2));
+            ownedActors = Arrays.copyOf(ownedActors, gameActors.length);
+            if(actorHashes != null)
+            {
+                actorHashes = Arrays.copyOf(actorHashes, gameActors.length);
+                staleActors = Arrays.copyOf(staleActors, gameActors.length);
+            }
+        }
+        gameActors[actorId] = actor;
+        ownedActors[actorId] = true;
+        if(staleActors != null)
+            staleActors[actorId] = true;
     }
 
     /**
@@ -916,9 +1258,259 @@ public class Board {
      */
     private boolean removeActor(int actorId)
     {
-        return gameActors.remove(actorId) != null;
+        Actor actor = actorAt(actorId);
+        if(actor != null) {
+            recordActor(actorId, actor);
+            gameActors[actorId] = null;
+            if(staleActors != null)
+                staleActors[actorId] = true;
+        }
+        return actor != null;
+    }
+
+    /**
+     * Saves the state of an actor in the current undo frame, unless it has been saved already in this frame.
+     * @param actorId id of the actor.
+     * @param actor actor as it is now, or null if there's no actor with this id (it's being created).
+     */
+    private void recordActor(int actorId, Actor actor)
+    {
+        if(recording && !frame.actors.containsKey(actorId))
+            frame.actors.put(actorId, actor == null ? null : actor.copy(false));
+    }
+
+    /**
+     * Starts recording an undo frame. All changes made to this board until endFrame() is called can be reverted
+     * with undoFrame(). Frames can be nested: undoFrame() always reverts the last one pushed.
+     * Tile layers and the trade network are saved in a snapshot (see snapshotTiles()), tribes and diplomacy
+     * are saved when the frame starts and game actors are saved the first time they are retrieved.
+     */
+    void pushFrame()
+    {
+        Frame f = new Frame(frame);
+        f.activeTribeID = activeTribeID;
+        f.actorIDcounter = actorIDcounter;
+        f.capitalIDs = capitalIDs.clone();
+        f.diplomacy = diplomacy.copy();
+        f.tiles = snapshotTiles();
+        f.tileHash = tileHash;
+        f.tileHashValid = tileHashValid;
+
+        f.tribes = new Tribe[tribes.length];
+        for (int i = 0; i < tribes.length; i++)
+            f.tribes[i] = tribes[i].copy(false);
+
+        frame = f;
+        recording = true;
+    }
+
+    /**
+     * Stops recording the last undo frame. Changes made after this call are not reverted by undoFrame().
+     */
+    void endFrame()
+    {
+        recording = false;
+    }
+
+    /**
+     * Reverts all the changes recorded in the last undo frame, and discards it.
+     * Tribes and game actors are restored as new objects: references to them obtained before the undo are stale.
+     */
+    void undoFrame()
+    {
+        Frame f = frame;
+        frame = f.previous;
+        recording = false;
+
+        activeTribeID = f.activeTribeID;
+        actorIDcounter = f.actorIDcounter;
+        capitalIDs = f.capitalIDs;
+        diplomacy = f.diplomacy;
+        restoreTiles(f.tiles);
+        tileHash = f.tileHash;
+        tileHashValid = f.tileHashValid;
+
+        System.arraycopy(f.tribes, 0, tribes, 0, tribes.length);
+
+        //Saved actors may be shared with other boards (see getActorForWrite()).
+        for (Map.Entry<Integer, Actor> entry : f.actors.entrySet()) {
+            putActor(entry.getKey(), entry.getValue());
+            ownedActors[entry.getKey()] = false;
+        }
+    }
+
+    /**
+     * Stops recording all undo frames, keeping the current state of the board.
+     */
+    void clearFrames()
+    {
+        frame = null;
+        recording = false;
+    }
+
+    /**
+     * Takes a snapshot of the tile layers and the trade network of this board. The snapshot shares all rows with
+     * this board, which copies them on write from now on, so taking it is cheap and the snapshot never changes.
+     * @return the snapshot of the tiles of the board.
+     */
+    TileSnapshot snapshotTiles()
+    {
+        TileSnapshot s = new TileSnapshot(tiles.clone(), units.clone(), tileCityId.clone(), tradeNetwork.copy());
+        Arrays.fill(ownedRows, (byte) 0);
+        return s;
+    }
+
+    /**
+     * Sets the tile layers and the trade network of this board back to a snapshot taken with snapshotTiles().
+     * The snapshot can't be used again after this.
+     * @param s snapshot to restore.
+     */
+    private void restoreTiles(TileSnapshot s)
+    {
+        // The rows of the snapshot may still be shared with copies of this board, so this board doesn't own them.
+        tiles = s.tiles;
+        units = s.units;
+        tileCityId = s.tileCityId;
+        tradeNetwork = s.tradeNetwork;
+        Arrays.fill(ownedRows, (byte) 0);
+        zoneOfControl = null;
+    }
+
+    /**
+     * Flags all tiles whose terrain, resource, building, unit, city or trade network value differ from the ones
+     * in a snapshot. Only the rows written since the snapshot was taken need to be checked, as those are the only
+     * ones that have been copied.
+     * @param s snapshot taken with snapshotTiles().
+     * @param changed grid where the tiles that changed are set to true.
+     */
+    void flagChangedTiles(TileSnapshot s, boolean[][] changed)
+    {
+        for (int x = 0; x < size; x++) {
+            if(tiles[x] != s.tiles[x])
+                for (int y = 0; y < size; y++) changed[x][y] |= tiles[x][y] != s.tiles[x][y];
+            if(units[x] != s.units[x])
+                for (int y = 0; y < size; y++) changed[x][y] |= units[x][y] != s.units[x][y];
+            if(tileCityId[x] != s.tileCityId[x])
+                for (int y = 0; y < size; y++) changed[x][y] |= tileCityId[x][y] != s.tileCityId[x][y];
+        }
+        tradeNetwork.flagChangedTiles(s.tradeNetwork, changed);
+    }
+
+    /**
+     * Tile layers and trade network of a board at some point of the game (see snapshotTiles()).
+     */
+    static class TileSnapshot
+    {
+        private final int[][] tiles, units, tileCityId;
+        private final TradeNetwork tradeNetwork;
+
+        private TileSnapshot(int[][] tiles, int[][] units, int[][] tileCityId, TradeNetwork tradeNetwork)
+        {
+            this.tiles = tiles;
+            this.units = units;
+            this.tileCityId = tileCityId;
+            this.tradeNetwork = tradeNetwork;
+        }
+    }
+
+    /**
+     * State of the board saved when an undo frame started (see pushFrame()).
+     */
+    private static class Frame
+    {
+        final Frame previous;
+        int activeTribeID, actorIDcounter;
+        int[] capitalIDs;
+        Diplomacy diplomacy;
+        TileSnapshot tiles;
+        long tileHash;
+        boolean tileHashValid;
+        Tribe[] tribes;
+
+        // Actors as they were before being retrieved for the first time in this frame, null for actors created in it.
+        final HashMap<Integer, Actor> actors = new HashMap<>();
+
+        Frame(Frame previous) { this.previous = previous; }
+    }
+
+
+    /**
+     * Returns the Zobrist hash of this board: its tiles, units, cities, tribes, diplomacy and active tribe. Two boards
+     * with the same hash are taken to be the same. The hash is computed from scratch the first time, and updated
+     * afterwards with the tiles that changed and the actors retrieved with getActorForWrite() since the last call (so actors
+     * must not be modified through references obtained before it). Tribes and diplomacy are hashed on each call.
+     * @return the hash of the board.
+     */
+    long getHash()
+    {
+        if(!tileHashValid)
+        {
+            tileHash = computeTileHash();
+            tileHashValid = true;
+        }
+
+        if(actorHashes == null)
+        {
+            actorsHash = 0;
+            actorHashes = new long[gameActors.length];
+            staleActors = new boolean[gameActors.length];
+            Arrays.fill(staleActors, true);
+        }
+        for (int id = 1; id < gameActors.length; id++) {
+            if(staleActors[id])
+            {
+                long key = Zobrist.actorKey(gameActors[id]);
+                actorsHash ^= actorHashes[id] ^ key;
+                actorHashes[id] = key;
+                staleActors[id] = false;
+            }
+        }
+
+        long hash = tileHash ^ actorsHash ^ stateHash();
+        if(Constants.CHECK_STATE_HASH && hash != computeHash())
+            System.out.println("ERROR: board hash " + hash + " differs from the one computed from scratch, " + computeHash());
+        return hash;
+    }
+
+    /**
+     * Computes the hash of this board from scratch, without updating the one kept up to date by getHash().
+     * @return the hash of the board.
+     */
+    long computeHash()
+    {
+        long hash = computeTileHash() ^ stateHash();
+        for (Actor actor : gameActors)
+            hash ^= Zobrist.actorKey(actor);
+        return hash;
+    }
+
+    /**
+     * Computes the hash of the tiles of this board from scratch.
+     */
+    private long computeTileHash()
+    {
+        long hash = 0;
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                int idx = Zobrist.tileIndex(x, y);
+                hash ^= Zobrist.key(Zobrist.TILE, idx, tiles[x][y]) ^ Zobrist.key(Zobrist.CITY_TILE, idx, tileCityId[x][y]);
+                if(tradeNetwork.getTradeNetworkValue(x, y))
+                    hash ^= Zobrist.key(Zobrist.ROAD, idx, 1);
+            }
+        }
+        return hash;
     }
 
+    /**
+     * Hashes the tribes, the diplomacy and the active tribe of this board, which are not kept up to date.
+     */
+    private long stateHash()
+    {
+        long hash = Zobrist.key(Zobrist.ACTIVE_TRIBE, 0, activeTribeID) ^ Zobrist.diplomacyKey(diplomacy);
+        for (Tribe t : tribes)
+            hash ^= Zobrist.tribeKey(t);
+        return hash;
+    }
 
     /**
      * Indicates if there's an enemy of tribeId unnit at x,y
@@ -935,7 +1527,7 @@ public class Board {
         else
         {
             //Or it is from my tribe.
-            Unit u = (Unit) gameActors.get(units[x][y]);
+            Unit u = (Unit) actorAt(units[x][y]);
             return u.getTribeId() != tribeId;
         }
     }
@@ -948,7 +1540,7 @@ public class Board {
      */
     public void addRoad(int x, int y)
     {
-        tradeNetwork.setTradeNetwork(this, x, y, true);
+        setNetworkAt(x, y, true);
     }
 
     /**
@@ -963,7 +1555,8 @@ public class Board {
         if(tribes[tribeId].isVisible(x, y))
         {
             // Only on certain terrain types.
-            if(terrains[x][y] == Types.TERRAIN.VILLAGE || terrains[x][y] == Types.TERRAIN.PLAIN || terrains[x][y] == Types.TERRAIN.FOREST)
+            Types.TERRAIN terrain = getTerrainAt(x, y);
+            if(terrain == Types.TERRAIN.VILLAGE || terrain == Types.TERRAIN.PLAIN || terrain == Types.TERRAIN.FOREST)
             {
                 //Only on tiles that are neutral or in my cities
                 int cityId = tileCityId[x][y];
@@ -1006,7 +1599,7 @@ public class Board {
      */
     public void destroyPort(int x, int y)
     {
-        this.tradeNetwork.setTradeNetwork(this, x, y,false);
+        setNetworkAt(x, y, false);
     }
 
     /**
@@ -1016,7 +1609,102 @@ public class Board {
      */
     public void buildPort(int x, int y)
     {
-        this.tradeNetwork.setTradeNetwork(this, x, y,true);
+        setNetworkAt(x, y, true);
+    }
+
+    /**
+     * Sets whether a tile is part of the trade network, updating the network and the hash of the tiles.
+     * @param x x coordinate of the tile.
+     * @param y y coordinate of the tile.
+     * @param trade true if the tile is part of the network.
+     */
+    private void setNetworkAt(int x, int y, boolean trade)
+    {
+        if(tileHashValid && tradeNetwork.getTradeNetworkValue(x, y) != trade)
+            tileHash ^= Zobrist.key(Zobrist.ROAD, Zobrist.tileIndex(x, y), 1);
+        tradeNetwork.setTradeNetwork(this, x, y, trade);
+    }
+
+    /**
+     * Classifies terrain types by how they take part in the trade network: water (navigable), cities, and
+     * land tiles (which can have roads).
+     */
+    private static int tradeClass(Types.TERRAIN t)
+    {
+        if(t == null) return -1;
+        return t.isWater() ? 0 : (t == CITY ? 1 : 2);
+    }
+
+    /**
+     * Creates the copy-on-write bookkeeping for a board that owns all of its rows.
+     * @param size size of the board
+     * @return ownership flags for all rows and layers.
+     */
+    private static byte[] newOwnedRows(int size)
+    {
+        byte[] owned = new byte[size];
+        Arrays.fill(owned, ALL_LAYERS);
+        return owned;
+    }
+
+    /**
+     * Returns row x of a tile layer, ready to be written. If the row is shared with another board, it's cloned first.
+     * @param layer tile layer to write to.
+     * @param x index of the row
+     * @param layerBit bit that identifies the layer in ownedRows
+     * @return the row of the layer, owned by this board.
+     */
+    private int[] ownRow(int[][] layer, int x, byte layerBit)
+    {
+        if((ownedRows[x] & layerBit) == 0)
+        {
+            layer[x] = layer[x].clone();
+            ownedRows[x] |= layerBit;
+        }
+        return layer[x];
+    }
+
+    /**
+     * Writes one of the fields of a tile (see tiles).
+     * @param x x coordinate of the tile.
+     * @param y y coordinate of the tile.
+     * @param shift position of the field in the tile.
+     * @param value new value of the field, null for none.
+     */
+    private void setTileField(int x, int y, int shift, Enum<?> value)
+    {
+        int[] row = ownRow(tiles, x, TILE_LAYER);
+        int tile = pack(row[y], shift, value);
+        if(tileHashValid)
+            tileHash ^= Zobrist.key(Zobrist.TILE, Zobrist.tileIndex(x, y), row[y]) ^
+                    Zobrist.key(Zobrist.TILE, Zobrist.tileIndex(x, y), tile);
+        row[y] = tile;
+    }
+
+    /**
+     * Sets one of the fields of a packed tile (see tiles).
+     * @param tile packed tile.
+     * @param shift position of the field in the tile.
+     * @param value new value of the field, null for none.
+     * @return the packed tile with the new value.
+     */
+    private static int pack(int tile, int shift, Enum<?> value)
+    {
+        int code = value == null ? 0 : value.ordinal() + 1;
+        return (tile & ~(FIELD_MASK << shift)) | (code << shift);
+    }
+
+    /**
+     * Reads one of the fields of a packed tile (see tiles).
+     * @param tile packed tile.
+     * @param shift position of the field in the tile.
+     * @param values all values of the field, by ordinal.
+     * @return the value of the field, or null if none.
+     */
+    private static <T> T unpack(int tile, int shift, T[] values)
+    {
+        int code = (tile >>> shift) & FIELD_MASK;
+        return code == 0 ? null : values[code - 1];
     }
 
     // Simple getters and setters
@@ -1025,17 +1713,32 @@ public class Board {
     public Tribe getTribe(int tribeId) { return tribes[tribeId]; }
     public int getActiveTribeID() { return activeTribeID; }
     public void setActiveTribeID(int activeTribeID) { this.activeTribeID = activeTribeID; }
-    public void setTribes(Tribe[] t){ this.tribes = t; }
+    public void setTribes(Tribe[] t){ this.tribes = t; zoneOfControl = null; }
     boolean getNetworkTilesAt(int x, int y) { return this.tradeNetwork.getTradeNetworkValue(x,y); }
+    TradeNetwork getTradeNetwork() { return tradeNetwork; }
     public int[][] getUnits(){ return this.units; }
-    public Types.TERRAIN getTerrainAt(int x, int y){ return terrains[x][y]; }
+    public Types.TERRAIN getTerrainAt(int x, int y){ return unpack(tiles[x][y], TERRAIN_SHIFT, TERRAINS); }
     int getUnitIDAt(int x, int y){ return units[x][y]; }
-    public void setResourceAt(int x, int y, Types.RESOURCE r){ resources[x][y] =  r; }
-    public void setTerrainAt(int x, int y, Types.TERRAIN t){ terrains[x][y] =  t; }
-    public void setBuildingAt(int x, int y, Types.BUILDING b){ buildings[x][y] = b; }
-    public Types.RESOURCE getResourceAt(int x, int y){ return resources[x][y]; }
-    public Types.BUILDING getBuildingAt(int x, int y){ return buildings[x][y]; }
-    public void setUnits(int[][] u){ this.units = u; }
+    public void setResourceAt(int x, int y, Types.RESOURCE r){ setTileField(x, y, RESOURCE_SHIFT, r); }
+    public void setBuildingAt(int x, int y, Types.BUILDING b){
+        //Ports in the network link cities by water.
+        if((b == Types.BUILDING.PORT) != (getBuildingAt(x, y) == Types.BUILDING.PORT) && tradeNetwork.getTradeNetworkValue(x, y))
+            tradeNetwork.invalidate();
+        setTileField(x, y, BUILDING_SHIFT, b);
+    }
+    public void setTerrainAt(int x, int y, Types.TERRAIN t){
+        //Whether a tile is water, a city or land decides how it takes part in the trade network.
+        if(tradeClass(t) != tradeClass(getTerrainAt(x, y)))
+            tradeNetwork.invalidate();
+        setTileField(x, y, TERRAIN_SHIFT, t);
+    }
+    public Types.RESOURCE getResourceAt(int x, int y){ return unpack(tiles[x][y], RESOURCE_SHIFT, RESOURCES); }
+    public Types.BUILDING getBuildingAt(int x, int y){ return unpack(tiles[x][y], BUILDING_SHIFT, BUILDINGS); }
+    public void setUnits(int[][] u){
+        this.units = u;
+        for (int x = 0; x < ownedRows.length; x++) ownedRows[x] |= UNIT_LAYER;
+        zoneOfControl = null;
+    }
     public int getCityIdAt(int x, int y) { return tileCityId[x][y]; }
     public int[] getCapitalIDs() {return capitalIDs;}
     boolean isNative() { return isNative; }
@@ -24,7 +24,8 @@ public class Game {
     // State of the game (objects, ticks, etc).
     private GameState gs;
 
-    // GameState objects for players to make decisions
+    // GameState objects for players to make decisions. They're created when needed (see getObservation()),
+    // null entries are out of date.
     private GameState[] gameStateObservations;
 
     // Seed for the game state.
@@ -48,10 +49,28 @@ public class Game {
     // Gameplay stats for each player.
     private GameplayStats[] gpStats;
 
+    // Run settings for this game. Apart from verbose (true unless set with setVerbose()), they take the values in
+    // Constants by default, but are kept per game so that several games can run concurrently with different settings.
+    private boolean verbose, visuals, logStats, writeSavegames;
+
+    // Savegame of this game, created when the first turn starts if savegames are written.
+    private GameSaver saver;
+
+    // Number of actions played in this game, not counting the ends of turn.
+    private long actionsPlayed;
+
+    // Tribe that plays first in the next tick. Only different from 0 when a game is loaded at the start of a turn in
+    // the middle of a tick.
+    private int firstTribe;
+
     /**
      * Constructor of the game
      */
     public Game() {
+        this.verbose = true;
+        this.visuals = VISUALS;
+        this.logStats = LOG_STATS;
+        this.writeSavegames = WRITE_SAVEGAMES;
     }
 
     /**
@@ -107,6 +126,27 @@ public class Game {
         updateAssignedGameStates();
     }
 
+    /**
+     * Initializes the game on a level of a LevelCache. Same as init(players, levelgen_seed, tribes, seed, gameMode)
+     * with the seed and tribes the level was generated with, but the board is copied from the level.
+     *
+     * @param players  Players of the game.
+     * @param level    Level to play on.
+     * @param seed     Seed for the game.
+     * @param gameMode Game Mode for this game.
+     */
+    public void init(ArrayList<Agent> players, LevelCache.Level level, long seed, Types.GAME_MODE gameMode) {
+
+        //Initiate the bare bones of the main game classes
+        this.seed = seed;
+        this.rnd = new Random(seed);
+        this.gs = new GameState(rnd, gameMode);
+
+        this.gs.init(level);
+        initGameStructures(players, level.getTribes());
+        updateAssignedGameStates();
+    }
+
     /**
      * Initializes the game from a savegame file
      *
@@ -125,6 +165,25 @@ public class Game {
         updateAssignedGameStates();
     }
 
+    /**
+     * Initializes the game from a binary savegame (see GameSaver), at the start of one of its turns. The game
+     * continues exactly as it would have from there if the players take the same actions.
+     *
+     * @param players  Players who will play this game.
+     * @param fileName savegame
+     * @param turn     turn to start from, counting the turns of all players from 0 (see GameLoader).
+     */
+    public void init(ArrayList<Agent> players, String fileName, int turn) {
+
+        GameLoader gameLoader = new GameLoader(fileName, turn);
+        this.seed = gameLoader.getSeed();
+        this.gs = gameLoader.getGameState();
+        this.rnd = gs.getRandomGenerator();
+        this.firstTribe = Math.max(gameLoader.getTurnTribeID(), 0);
+        initGameStructures(players, gs.getTribes().length);
+        updateAssignedGameStates();
+    }
+
     /**
      * Initializes game structures depending on number of players and tribes
      *
@@ -203,7 +262,7 @@ public class Game {
      */
     public void run(GUI frame, WindowInput wi) {
         if (frame == null || wi == null)
-            VISUALS = false;
+            visuals = false;
 
         boolean firstEnd = true;
 
@@ -216,47 +275,88 @@ public class Game {
             // Check end of game
             if (firstEnd && gameOver) {
                 terminate();
+                closeSavegame(true);
 
                 firstEnd = false;
 
                 printGameResults();
-                if (LOG_STATS) {
-                    TreeSet<TribeResult> ranking = getCurrentRanking();
-                    for (TribeResult tr : ranking) {
-                        int idx = tr.getId();
-                        AIStats ais = aiStats[idx];
-                        if(VERBOSE) ais.print();
-                        GameplayStats gps = gpStats[idx];
-                        gps.logGameEnd(tr);
-                        if(VERBOSE) {
-                            gps.print();
-
-                            ArrayList<GameplayStats> agps = new ArrayList<>();
-                            agps.add(gps);
-                            for (Feature f : Feature.values()) {
-                                double val = f.getFeatureValue(agps);
-
-                                String[] agentChunks = players[gps.getPlayerID()].getClass().toString().split("\\.");
-                                String agentName = agentChunks[agentChunks.length - 1];
-                                System.out.println("GPS:" + gps.getPlayerID() + ":" + agentName + ":" + f + ":" + val);
-                            }
-                        }
-
+                logGameEnd();
 
-                    }
-                }
-
-                if (!VISUALS || frame == null) {
+                if (!visuals || frame == null) {
                     // The game has ended, end the loop if we're running without visuals.
                     break;
                 }
             }
             if (!gameOver) {
-                tick(frame);
+                try {
+                    tick(frame);
+                } catch (RuntimeException e) {
+                    // Keep the savegame up to the failure.
+                    closeSavegame(false);
+                    throw e;
+                }
             } else {
                 frame.update(getGameState(-1), null);
             }
         }
+
+        // The window was closed before the game ended.
+        closeSavegame(false);
+    }
+
+    /**
+     * Plays the game until it's over with no visuals, savegames or printed results, for engines that play many games
+     * (see SelfPlay). Turns are played as in run(), so both give the same game for the same seeds and agents.
+     */
+    void play() {
+        visuals = false;
+        writeSavegames = false;
+        while (!gameOver())
+            tick(null);
+
+        terminate();
+        logGameEnd();
+    }
+
+    /**
+     * Logs the end of the game in the gameplay stats of the players, if stats are logged, and prints them if verbose.
+     */
+    private void logGameEnd() {
+        if (!logStats)
+            return;
+
+        TreeSet<TribeResult> ranking = getCurrentRanking();
+        for (TribeResult tr : ranking) {
+            int idx = tr.getId();
+            AIStats ais = aiStats[idx];
+            if(verbose) ais.print();
+            GameplayStats gps = gpStats[idx];
+            gps.logGameEnd(tr);
+            if(verbose) {
+                gps.print();
+
+                ArrayList<GameplayStats> agps = new ArrayList<>();
+                agps.add(gps);
+                for (Feature f : Feature.values()) {
+                    double val = f.getFeatureValue(agps);
+
+                    String[] agentChunks = players[gps.getPlayerID()].getClass().toString().split("\\.");
+                    String agentName = agentChunks[agentChunks.length - 1];
+                    System.out.println("GPS:" + gps.getPlayerID() + ":" + agentName + ":" + f + ":" + val);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the rest of the savegame of this game, if any, and closes it.
+     * @param gameOver true if the game is over.
+     */
+    private void closeSavegame(boolean gameOver) {
+        if (saver != null) {
+            saver.close(gameOver);
+            saver = null;
+        }
     }
 
     /**
@@ -268,34 +368,38 @@ public class Game {
 
 //        System.out.println("Tick: " + gs.getTick());
         Tribe[] tribes = gs.getTribes();
-        for (int i = 0; i < numPlayers; i++) {
+        int first = firstTribe;
+        firstTribe = 0;
+        for (int i = first; i < numPlayers; i++) {
             Tribe tribe = tribes[i];
 
             if (tribe.getWinner() != Types.RESULT.INCOMPLETE)
                 continue; //We don't do anything for tribes that have already finished.
 
+            // Save Game
+            if (writeSavegames) {
+                if (saver == null)
+                    saver = new GameSaver("save/" + seed + ".sav", seed, gs.getGameMode(), SAVEGAME_KEYFRAME_TURNS);
+                saver.writeTurn(gs, i);
+            }
 
             //play the full turn for this player
             processTurn(i, tribe, frame);
 
-            // Save Game
-            if (Constants.WRITE_SAVEGAMES)
-                GameSaver.writeTurnFile(gs, getBoard(), seed);
-
             //it may be that this player won the game, no more playing.
             if (gameOver()) {
                 return;
             }
 
             // Check if game should be paused automatically after this turn
-            if (VISUALS && frame != null && frame.pauseAfterTurn()) {
+            if (visuals && frame != null && frame.pauseAfterTurn()) {
                 paused = true;
                 frame.setPauseAfterTurn(false);
             }
         }
 
         // Check if game should be paused automatically after this tick
-        if (VISUALS && frame != null && frame.pauseAfterTick()) {
+        if (visuals && frame != null && frame.pauseAfterTick()) {
             paused = true;
             frame.setPauseAfterTick(false);
         }
@@ -337,7 +441,7 @@ public class Game {
         // make sure all updates are executed and displayed to humans.
         ElapsedCpuTimer actionDelayTimer = null;
         ElapsedCpuTimer endTurnDelay = null;
-        if (VISUALS && frame != null) {
+        if (visuals && frame != null) {
             actionDelayTimer = new ElapsedCpuTimer();
             actionDelayTimer.setMaxTimeMillis(FRAME_DELAY);
         }
@@ -353,19 +457,20 @@ public class Game {
                 // Action request and execution if turn should be continued
                 if (continueTurn) {
                     //noinspection ConstantConditions
-                    if ((!VISUALS || frame == null) || actionDelayTimer.remainingTimeMillis() <= 0 || isHumanPlayer) {
+                    if ((!visuals || frame == null) || actionDelayTimer.remainingTimeMillis() <= 0 || isHumanPlayer) {
                         // Get one action from the player
                         ect.setMaxTimeMillis(remainingECT);  // Reset timer ignoring all other timers or updates
-                        action = ag.act(gameStateObservations[playerID], ect);
+                        GameState observation = getObservation(playerID);
+                        action = ag.act(observation, ect);
                         remainingECT = ect.remainingTimeMillis(); // Note down the remaining time to use it for the next iteration
 
                         // If human player hasn't inputted an action, skip processing
                         if (action != null || !isHumanPlayer) {
-                            if (LOG_STATS && !isHumanPlayer)
-                                updateBranchingFactor(aiStats[playerID], gs.getTick(), gameStateObservations[playerID], ag);
+                            if (logStats && !isHumanPlayer)
+                                updateBranchingFactor(aiStats[playerID], gs.getTick(), observation, ag);
 
-                            if (LOG_STATS)
-                                updateGameplayStatsMove(gpStats[playerID], action, gameStateObservations[playerID]);
+                            if (logStats)
+                                updateGameplayStatsMove(gpStats[playerID], action, observation);
 
                             curActionCounter++;
 
@@ -392,11 +497,11 @@ public class Game {
             }
 
             // Update GUI after every iteration
-            if (VISUALS && frame != null) {
+            if (visuals && frame != null) {
                 boolean showAllBoard = Constants.GUI_FORCE_FULL_OBS || Constants.PLAY_WITH_FULL_OBS;
 
                 if (showAllBoard) frame.update(getGameState(-1), action);  // Full Obs
-                else frame.update(gameStateObservations[gs.getActiveTribeID()], action);        // Partial Obs
+                else frame.update(getObservation(gs.getActiveTribeID()), action);        // Partial Obs
 
                 // Turn should be ending, start timer for delay of next action and show all updates
                 if (action != null && action.getActionType() == END_TURN) {
@@ -414,12 +519,16 @@ public class Game {
                 break;
             }
 
-            if (action != null && !VISUALS || frame != null && (action != null && !(action.getActionType() == ATTACK) ||
+            if (action != null && !visuals || frame != null && (action != null && !(action.getActionType() == ATTACK) ||
                     (action = frame.getAnimatedAction()) != null)) {
                 // Play the action in the game and update the available actions list and observations
                 // Some actions are animated, the condition above checks if this animation is finished and retrieves
                 // the action after all the GUI updates.
                 gs.next(action);
+                if (action.getActionType() != END_TURN)
+                    actionsPlayed++;
+                if (saver != null)
+                    saver.writeAction(action);
                 gs.computePlayerActions(tribe);
                 updateAssignedGameStates();
             }
@@ -429,7 +538,7 @@ public class Game {
             }
         }
 
-        if(LOG_STATS)
+        if(logStats)
             updateGameplayStatsTurn(gpStats[playerID], gs);
 
         // Ends the turn for this tribe (units that didn't move heal).
@@ -529,15 +638,26 @@ public class Game {
     }
 
     /**
-     * Updates the state observations for all players with copies of the
-     * current game state, adapted for PO.
+     * Marks the state observations of all players as out of date, after the game state has changed.
+     * They're created again when needed, usually only for the active player.
      */
     private void updateAssignedGameStates() {
+        Arrays.fill(gameStateObservations, null);
+    }
 
-        //TODO: Probably we don't need to do this for all players, just the active one.
-        for (int i = 0; i < numPlayers; i++) {
-            gameStateObservations[i] = getGameState(i);
+    /**
+     * Returns the observation of the current game state for a player, creating it if it's out of date. Agents
+     * that don't need their own copy of the game state receive a view of it when playing with full
+     * observability, so no copy is made unless they modify it (see GameState.view()).
+     * @param playerIdx index of the player.
+     * @return the observation of the player.
+     */
+    private GameState getObservation(int playerIdx) {
+        if (gameStateObservations[playerIdx] == null) {
+            boolean view = PLAY_WITH_FULL_OBS && !players[playerIdx].needsObservationCopy();
+            gameStateObservations[playerIdx] = view ? gs.view(playerIdx) : getGameState(playerIdx);
         }
+        return gameStateObservations[playerIdx];
     }
 
     /**
@@ -590,4 +710,24 @@ public class Game {
     public GameplayStats getGamePlayStats(int id) {
         return gpStats[id];
     }
+
+    public long getActionsPlayed() {
+        return actionsPlayed;
+    }
+
+    GameState getState() {
+        return gs;
+    }
+
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    public void setLogStats(boolean logStats) {
+        this.logStats = logStats;
+    }
+
+    public void setWriteSavegames(boolean writeSavegames) {
+        this.writeSavegames = writeSavegames;
+    }
 }
@@ -1,6 +1,11 @@
 package core.game;
 
 import core.Types;
+import core.actions.Action;
+import core.actions.cityactions.*;
+import core.actions.tribeactions.*;
+import core.actions.unitactions.*;
+import core.actors.Actor;
 import core.actors.City;
 import core.actors.Tribe;
 import core.actors.units.Battleship;
@@ -11,7 +16,14 @@ import org.json.JSONObject;
 import utils.Vector2d;
 
 import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Iterator;
+import java.util.Random;
+
+import static core.game.GameSaver.*;
 
 public class GameLoader
 {
@@ -31,6 +43,11 @@ public class GameLoader
     private int[] allCapitalIds;
     private Types.GAME_MODE game_mode;
 
+    //Only for binary savegames: the state loaded, the turn it starts and the tribe that plays it (-1 if the game is over).
+    private GameState gameState;
+    private int turn;
+    private int turnTribeID;
+
     GameLoader(String fileName) {
 
         String jsonData = readFile(fileName);
@@ -56,6 +73,268 @@ public class GameLoader
 
     }
 
+    /**
+     * Loads the state of a game at the start of a turn from a binary savegame (see GameSaver). The state is restored
+     * from the last keyframe before the turn, and the turns since are replayed on it with the actions recorded.
+     * @param fileName savegame.
+     * @param turn number of the turn, from 0 in the order turns were played. If the savegame doesn't get that far,
+     *             the state is loaded at the start of its last turn, or at the end of the game if it's over.
+     */
+    GameLoader(String fileName, int turn) {
+
+        ByteBuffer buf = openSavegame(fileName);
+        this.seed = buf.getLong();
+        this.game_mode = Types.GAME_MODE.values()[buf.get()];
+        buf.getInt(); //Keyframe interval.
+
+        //Find the number of turns and the last keyframe before the turn to load. Turns may be cut short at the end of
+        // the file if the game didn't finish writing it.
+        int nTurns = 0, keyframe = -1, keyframeTurn = -1, keyframeTribe = -1, lastTribe = -1;
+        boolean ended = false;
+        try {
+            while (buf.hasRemaining() && !ended) {
+                int pos = buf.position();
+                switch (buf.get()) {
+                    case TURN:
+                        buf.getInt();
+                        lastTribe = buf.get();
+                        nTurns++;
+                        break;
+                    case KEYFRAME:
+                        int length = buf.getInt();
+                        if (nTurns - 1 <= turn && buf.remaining() >= length) {
+                            keyframe = pos;
+                            keyframeTurn = nTurns - 1;
+                            keyframeTribe = lastTribe;
+                        }
+                        buf.position(Math.min(buf.position() + length, buf.limit()));
+                        break;
+                    case ACTION:
+                        readAction(buf);
+                        break;
+                    case END:
+                        ended = true;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Corrupt savegame " + fileName + " at byte " + pos);
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            //The last turn is incomplete.
+        }
+        if(keyframe == -1)
+            throw new IllegalArgumentException("Savegame " + fileName + " has no complete keyframe.");
+        this.turn = Math.max(Math.min(turn, ended ? nTurns : nTurns - 1), keyframeTurn);
+
+        //Restore the keyframe and play the turns until the one to load starts.
+        buf.position(keyframe);
+        Replay replay = new Replay(buf, game_mode, seed, keyframeTurn, keyframeTribe);
+        while (replay.getTurn() < this.turn)
+            replay.playTurn();
+        GameState gs = replay.getGameState();
+        turnTribeID = replay.getTribeID();
+
+        this.gameState = gs;
+        this.board = gs.getBoard();
+        this.tribes = board.getTribes();
+        this.tick = gs.getTick();
+        this.gameIsOver = gs.isGameOver();
+        this.activeTribeID = board.getActiveTribeID();
+    }
+
+    /**
+     * Reads the state of a game written by GameSaver.writeState().
+     * @param buf buffer to read the state from.
+     * @param gameMode game mode of the game.
+     * @return the game state.
+     */
+    static GameState readState(ByteBuffer buf, Types.GAME_MODE gameMode) {
+        int tick = buf.getInt();
+        boolean gameIsOver = buf.get() != 0;
+        byte[] rnd = new byte[buf.getShort()];
+        buf.get(rnd);
+
+        Tribe[] tribes = new Tribe[buf.get()];
+        for (int i = 0; i < tribes.length; i++)
+            tribes[i] = new Tribe(i, buf);
+        Board board = new Board(buf, tribes);
+
+        int nActors = buf.getInt();
+        for (int i = 0; i < nActors; i++) {
+            int id = buf.getInt();
+            Actor actor = buf.get() == 0 ? new City(buf, id) : readUnit(buf);
+            board.addActor(actor, id);
+        }
+
+        return new GameState(readRandom(rnd), gameMode, board, tick, gameIsOver);
+    }
+
+    private static Random readRandom(byte[] bytes) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (Random) in.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalArgumentException("Corrupt random generator state in savegame", e);
+        }
+    }
+
+    /**
+     * Reads a unit written by GameSaver.writeUnit().
+     */
+    private static Unit readUnit(ByteBuffer buf) {
+        Types.UNIT unitType = Types.UNIT.values()[buf.get()];
+        Vector2d pos = new Vector2d(buf.getShort(), buf.getShort());
+        int tribeId = buf.get();
+        int cityId = buf.getInt();
+        int kills = buf.getInt();
+        boolean isVeteran = buf.get() != 0;
+        Unit unit = Types.UNIT.createUnit(pos, kills, isVeteran, cityId, tribeId, unitType);
+        unit.setCurrentHP(buf.getInt());
+        unit.setMaxHP(buf.getInt());
+        unit.setStatus(Types.TURN_STATUS.values()[buf.get()]);
+
+        Types.UNIT baseLandUnit = value(Types.UNIT.values(), buf.get());
+        if (unitType == Types.UNIT.BOAT){
+            ((Boat)unit).setBaseLandUnit(baseLandUnit);
+        }else if (unitType == Types.UNIT.SHIP){
+            ((Ship)unit).setBaseLandUnit(baseLandUnit);
+        }else if (unitType == Types.UNIT.BATTLESHIP){
+            ((Battleship)unit).setBaseLandUnit(baseLandUnit);
+        }
+        return unit;
+    }
+
+    /**
+     * Reads an action written by GameSaver.writeAction().
+     * @param buf buffer to read the action from.
+     * @return the action.
+     */
+    static Action readAction(ByteBuffer buf) {
+        Types.ACTION type = Types.ACTION.values()[buf.get()];
+        switch (type) {
+            //City actions
+            case BUILD:
+            case BURN_FOREST:
+            case CLEAR_FOREST:
+            case DESTROY:
+            case GROW_FOREST:
+            case LEVEL_UP:
+            case RESOURCE_GATHERING:
+            case SPAWN:
+                int cityId = buf.getInt();
+                Vector2d target = readPosition(buf);
+                CityAction ca;
+                if (type == Types.ACTION.BUILD) {
+                    Build build = new Build(cityId);
+                    build.setBuildingType(value(Types.BUILDING.values(), buf.get()));
+                    ca = build;
+                } else if (type == Types.ACTION.LEVEL_UP) {
+                    LevelUp levelUp = new LevelUp(cityId);
+                    levelUp.setBonus(value(Types.CITY_LEVEL_UP.values(), buf.get()));
+                    ca = levelUp;
+                } else if (type == Types.ACTION.RESOURCE_GATHERING) {
+                    ResourceGathering gathering = new ResourceGathering(cityId);
+                    gathering.setResource(value(Types.RESOURCE.values(), buf.get()));
+                    ca = gathering;
+                } else if (type == Types.ACTION.SPAWN) {
+                    Spawn spawn = new Spawn(cityId);
+                    spawn.setUnitType(value(Types.UNIT.values(), buf.get()));
+                    ca = spawn;
+                } else if (type == Types.ACTION.BURN_FOREST) {
+                    ca = new BurnForest(cityId);
+                } else if (type == Types.ACTION.CLEAR_FOREST) {
+                    ca = new ClearForest(cityId);
+                } else if (type == Types.ACTION.DESTROY) {
+                    ca = new Destroy(cityId);
+                } else {
+                    ca = new GrowForest(cityId);
+                }
+                ca.setTargetPos(target);
+                return ca;
+
+            //Tribe actions
+            case BUILD_ROAD:
+                BuildRoad buildRoad = new BuildRoad(buf.get());
+                buildRoad.setPosition(readPosition(buf));
+                return buildRoad;
+            case END_TURN:
+                return new EndTurn(buf.get());
+            case RESEARCH_TECH:
+                ResearchTech researchTech = new ResearchTech(buf.get());
+                researchTech.setTech(value(Types.TECHNOLOGY.values(), buf.get()));
+                return researchTech;
+            case DECLARE_WAR:
+                DeclareWar declareWar = new DeclareWar(buf.get());
+                declareWar.setTargetID(buf.get());
+                return declareWar;
+            case SEND_STARS:
+                SendStars sendStars = new SendStars(buf.get());
+                sendStars.setTargetID(buf.get());
+                sendStars.setNumStars(buf.getInt());
+                return sendStars;
+
+            //Unit actions
+            case ATTACK:
+                Attack attack = new Attack(buf.getInt());
+                attack.setTargetId(buf.getInt());
+                return attack;
+            case CONVERT:
+                Convert convert = new Convert(buf.getInt());
+                convert.setTargetId(buf.getInt());
+                return convert;
+            case MOVE:
+                Move move = new Move(buf.getInt());
+                move.setDestination(readPosition(buf));
+                return move;
+            case CAPTURE:
+                Capture capture = new Capture(buf.getInt());
+                capture.setTargetCity(buf.getInt());
+                capture.setCaptureType(value(Types.TERRAIN.values(), buf.get()));
+                return capture;
+            case DISBAND: return new Disband(buf.getInt());
+            case EXAMINE: return new Examine(buf.getInt());
+            case HEAL_OTHERS: return new HealOthers(buf.getInt());
+            case MAKE_VETERAN: return new MakeVeteran(buf.getInt());
+            case RECOVER: return new Recover(buf.getInt());
+            case UPGRADE_BOAT:
+            case UPGRADE_SHIP:
+                return new Upgrade(type, buf.getInt());
+            default:
+                throw new IllegalArgumentException("Action " + type + " can't be read from a savegame.");
+        }
+    }
+
+    private static Vector2d readPosition(ByteBuffer buf) {
+        int x = buf.getShort(), y = buf.getShort();
+        return x == -1 ? null : new Vector2d(x, y);
+    }
+
+    /**
+     * Returns the value of an enum written as its ordinal + 1, or null if the code is 0.
+     */
+    private static <T> T value(T[] values, byte code) {
+        return code == 0 ? null : values[code - 1];
+    }
+
+    /**
+     * Opens a binary savegame, checking its format.
+     * @param fileName savegame.
+     * @return the content of the savegame, positioned after its format and version (at the seed).
+     */
+    static ByteBuffer openSavegame(String fileName) {
+        ByteBuffer buf = readBinaryFile(fileName);
+        if(buf.remaining() < HEADER_BYTES || buf.getInt() != MAGIC || buf.getInt() != VERSION)
+            throw new IllegalArgumentException(fileName + " is not a binary savegame of version " + VERSION);
+        return buf;
+    }
+
+    private static ByteBuffer readBinaryFile(String fileName) {
+        try (FileChannel channel = FileChannel.open(new File(fileName).toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't read savegame " + fileName, e);
+        }
+    }
+
     private void loadTribes(){
         Iterator<String> keys = JTribe.keys();
         tribes = new Tribe[JTribe.length()];
@@ -150,4 +429,26 @@ public class GameLoader
     public boolean getGameIsOver() {
         return gameIsOver;
     }
+
+    /**
+     * Returns the state loaded from a binary savegame (null for JSON savegames).
+     */
+    GameState getGameState() {
+        return gameState;
+    }
+
+    /**
+     * Returns the number of the turn the state loaded from a binary savegame starts.
+     */
+    public int getTurn() {
+        return turn;
+    }
+
+    /**
+     * Returns the id of the tribe that plays the turn the state loaded from a binary savegame starts, -1 if the game
+     * is over.
+     */
+    public int getTurnTribeID() {
+        return turnTribeID;
+    }
 }
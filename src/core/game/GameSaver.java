@@ -1,6 +1,11 @@
 package core.game;
 
 import core.Types;
+import core.actions.Action;
+import core.actions.cityactions.*;
+import core.actions.tribeactions.*;
+import core.actions.unitactions.*;
+import core.actors.Actor;
 import core.actors.Building;
 import core.actors.City;
 import core.actors.Temple;
@@ -9,263 +14,474 @@ import core.actors.units.Battleship;
 import core.actors.units.Boat;
 import core.actors.units.Ship;
 import core.actors.units.Unit;
-import org.json.JSONArray;
-import org.json.JSONObject;
-
-import java.io.*;
-import java.util.ArrayList;
+import utils.Vector2d;
+import utils.file.BinaryIO;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
-import java.util.LinkedList;
-
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes the savegame of a game as it's played, in a compact binary format: the full state of the game at the start
+ * of one in every keyframeInterval turns (keyframes), and the actions played in between. GameLoader restores the
+ * state at the start of any turn from the keyframe before it, replaying the actions played since (see Replay).
+ *
+ * The file (big endian) starts with MAGIC and VERSION (ints), the seed of the game (long), the game mode (byte) and
+ * the keyframe interval (int), followed by records that start with their tag (byte):
+ *   TURN: a tribe starts its turn. Tick (int) and id of the tribe (byte). Turns are numbered from 0 in this order.
+ *   KEYFRAME: state of the game at the start of the turn that just started, before it's initialized. Its length in
+ *             bytes (int) followed by the state (see writeState()). The first turn always has one.
+ *   ACTION: action played in the current turn (see writeAction()).
+ *   END: the game is over, after the end of the last turn.
+ * Enums are written as their ordinal.
+ *
+ * The game thread only collects records in a buffer and takes copies of the game state for keyframes. These are
+ * handed in batches to a writer thread, which serializes the keyframes and writes everything to the file. At most
+ * QUEUE_BATCHES batches wait to be written: if the writer falls behind, the game waits for it. close() returns once
+ * all records are in the file.
+ */
 class GameSaver {
 
+    static final int MAGIC = 0x5452534D; // "TRSM"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 21;
+    static final byte TURN = 1, KEYFRAME = 2, ACTION = 3, END = 4;
+
+    private static final int BUFFER_BYTES = 1 << 16;
+    private static final int QUEUE_BATCHES = 8;
+
+    /**
+     * Records collected by the game thread, followed by a keyframe if it's not null. Nothing in a batch changes
+     * once it's queued: the keyframe is a copy of the game state that only the writer uses.
+     */
+    private static class Batch {
+        final ByteBuffer records;
+        final GameState keyframe;
+        final byte[] random; //State of the random generator of the game when the keyframe was copied.
+        final boolean last;
+
+        Batch(ByteBuffer records, GameState keyframe, byte[] random, boolean last) {
+            this.records = records;
+            this.keyframe = keyframe;
+            this.random = random;
+            this.last = last;
+        }
+    }
 
-    static void writeTurnFile(GameState gs, Board gameBoard, long seed) {
-        try{
-            File rootFileLoc = new File("save/" + seed);
-            File turnFile = new File(rootFileLoc, gs.getTick() + "_" + gs.getBoard().getActiveTribeID());
-
-            // Only create root file for first time
-            if(gs.getTick() == 0 && gs.getActiveTribeID() == 0){
-                //Create dictionary
-                rootFileLoc.mkdirs();
-            }
-
-            turnFile.mkdir();
-
-            // JSON
-            JSONObject game = new JSONObject();
-
-            // Board INFO (2D array) - Terrain, Resource, UnitID, CityID, NetWorks
-            JSONObject board = new JSONObject();
-            JSONArray terrain2D = new JSONArray();
-            JSONArray terrain;
-
-            JSONArray resource2D = new JSONArray();
-            JSONArray resource;
-
-            JSONArray unit2D = new JSONArray();
-            JSONArray units;
+    //Channel of the savegame file, null if it couldn't be written. Only used by the writer thread.
+    private FileChannel channel;
+
+    //Records not handed to the writer yet.
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+    //Batches waiting to be written, and record buffers already written, to be reused.
+    private final BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(QUEUE_BATCHES);
+    private final BlockingQueue<ByteBuffer> written = new ArrayBlockingQueue<>(QUEUE_BATCHES + 1);
+
+    private final Thread writer;
+
+    //Buffer the writer serializes keyframes to, which grows if a state doesn't fit.
+    private ByteBuffer state = ByteBuffer.allocate(BUFFER_BYTES);
+
+    private final int keyframeInterval;
+
+    //Number of turns started.
+    private int nTurns;
+
+    /**
+     * Creates the savegame file of a game, writes its header and starts the thread that writes the rest.
+     * @param fileName name of the file, which is replaced if it exists.
+     * @param seed seed of the game.
+     * @param gameMode game mode of the game.
+     * @param keyframeInterval a keyframe is written every this number of turns. If 0, only the first turn has one.
+     */
+    GameSaver(String fileName, long seed, Types.GAME_MODE gameMode, int keyframeInterval) {
+        this.keyframeInterval = Math.max(keyframeInterval, 0);
+        try {
+            File file = new File(fileName);
+            if(file.getParentFile() != null)
+                file.getParentFile().mkdirs();
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(seed).put((byte) gameMode.ordinal()).putInt(this.keyframeInterval);
 
-            JSONArray city2D = new JSONArray();
-            JSONArray cities;
+        writer = new Thread(this::writeBatches, "savegame-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
 
-            JSONArray building2D = new JSONArray();
-            JSONArray JBuildings;
+    /**
+     * Records the start of the turn of a tribe, with a keyframe if it's due. Called before the turn is initialized.
+     * @param gs game state.
+     * @param tribeId id of the tribe whose turn starts.
+     */
+    void writeTurn(GameState gs, int tribeId) {
+        ensure(6);
+        buffer.put(TURN).putInt(gs.getTick()).put((byte) tribeId);
+
+        if(keyframeInterval > 0 ? nTurns % keyframeInterval == 0 : nTurns == 0)
+            submit(gs.copy(), randomState(gs.getRandomGenerator()), false);
+        nTurns++;
+    }
 
-            JSONArray network2D = new JSONArray();
-            JSONArray networks;
+    /**
+     * Records an action played in the current turn.
+     * @param action action played.
+     */
+    void writeAction(Action action) {
+        ensure(16);
+        buffer.put(ACTION);
+        writeAction(action, buffer);
+    }
 
-            // Unit INFO: id:{type, x, y, kills, isVeteran, cityId, tribeId, HP}
-            JSONObject unit = new JSONObject();
+    /**
+     * Writes the records left to the file and closes it, waiting for the writer to finish.
+     * @param gameOver true if the game is over, so the savegame ends with the last turn played.
+     */
+    void close(boolean gameOver) {
+        if(gameOver) {
+            ensure(1);
+            buffer.put(END);
+        }
+        submit(null, null, true);
+
+        boolean interrupted = false;
+        while(writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if(interrupted)
+            Thread.currentThread().interrupt();
+    }
 
-            // City INFO: id:{x, y, tribeId, population_need, bound, level, isCapital, population,
-            //                production, hasWalls, pointsWorth, building(array)}
-            JSONObject city = new JSONObject();
+    /**
+     * Makes room in the buffer for a number of bytes, handing its content to the writer if needed.
+     */
+    private void ensure(int bytes) {
+        if(buffer.remaining() < bytes)
+            submit(null, null, false);
+    }
 
-            // Building INFO: {x, y, type, level(optional), turnsToScore(optional), bonus}
-            JSONObject building = new JSONObject();
+    /**
+     * Queues the records collected so far for the writer, followed by a keyframe, and starts collecting records in
+     * another buffer. Waits if the queue is full: records are never dropped, even if the game thread is interrupted.
+     */
+    private void submit(GameState keyframe, byte[] random, boolean last) {
+        buffer.flip();
+        Batch batch = new Batch(buffer, keyframe, random, last);
+        boolean interrupted = false;
+        while(true) {
+            try {
+                queue.put(batch);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if(interrupted)
+            Thread.currentThread().interrupt();
 
-            for (int i=0; i<gameBoard.getSize(); i++){
+        buffer = written.poll();
+        if(buffer == null)
+            buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    }
 
-                // Initial JSON Object for each row
-                terrain = new JSONArray();
-                resource = new JSONArray();
-                units = new JSONArray();
-                cities = new JSONArray();
-                networks = new JSONArray();
-                JBuildings = new JSONArray();
+    /**
+     * Writes the batches queued to the file, until the last one. Runs in the writer thread.
+     */
+    private void writeBatches() {
+        try {
+            while(true) {
+                Batch batch = queue.take();
+                write(batch.records);
+                batch.records.clear();
+                written.offer(batch.records);
+
+                if(batch.keyframe != null)
+                    writeKeyframe(batch.keyframe, batch.random);
+                if(batch.last)
+                    break;
+            }
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
 
-                for(int j=0; j<gameBoard.getSize(); j++){
-                    // Save Terrain INFO
-                    terrain.put(gs.getBoard().getTerrainAt(i, j).getKey());
-                    // Save Resource INFO
-                    resource.put(gs.getBoard().getResourceAt(i, j) != null? gs.getBoard().getResourceAt(i, j).getKey():-1);
+        try {
+            if(channel != null)
+                channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        channel = null;
+    }
 
-                    // Save unit INFO
-                    units.put(gs.getBoard().getUnitIDAt(i, j));
+    /**
+     * Serializes a keyframe and writes it to the file.
+     */
+    private void writeKeyframe(GameState gs, byte[] random) {
+        while(true) {
+            try {
+                state.clear();
+                state.put(KEYFRAME).putInt(0);
+                writeState(gs, random, state);
+                break;
+            } catch (BufferOverflowException e) {
+                state = ByteBuffer.allocate(state.capacity() * 2);
+            }
+        }
+        state.putInt(1, state.position() - 5);
+        state.flip();
+        write(state);
+    }
 
-                    // Save cityTile INFO
-                    cities.put(gs.getBoard().getCityIdAt(i, j));
+    private void write(ByteBuffer buf) {
+        try {
+            while(channel != null && buf.hasRemaining())
+                channel.write(buf);
+        } catch (IOException e) {
+            e.printStackTrace();
+            channel = null;
+        }
+    }
 
-                    // Save Building INFO
-                    JBuildings.put(gs.getBoard().getBuildingAt(i, j)!= null? gs.getBoard().getBuildingAt(i, j).getKey():-1);
+    /**
+     * Writes the full state of a game: tick, whether the game is over, the state of the random generator of the
+     * game, the tribes (see writeTribe()), the board (see writeBoard()) and all its actors by id (see writeCity()
+     * and writeUnit()). GameLoader.readState() restores it.
+     * @param gs game state to write.
+     * @param buf buffer to write to.
+     */
+    static void writeState(GameState gs, ByteBuffer buf) {
+        writeState(gs, randomState(gs.getRandomGenerator()), buf);
+    }
 
-                    // Save network INFO
-                    networks.put(gs.getBoard().getNetworkTilesAt(i, j));
+    /**
+     * Writes the full state of a game as writeState(GameState, ByteBuffer), with the state of its random generator
+     * serialized beforehand (see randomState()). Copies of the game state don't share its random generator.
+     */
+    private static void writeState(GameState gs, byte[] random, ByteBuffer buf) {
+        buf.putInt(gs.getTick());
+        buf.put((byte) (gs.isGameOver() ? 1 : 0));
+        buf.putShort((short) random.length).put(random);
 
-                }
-                // Update row value
-                terrain2D.put(terrain);
-                resource2D.put(resource);
-                unit2D.put(units);
-                city2D.put(cities);
-                network2D.put(networks);
-                building2D.put(JBuildings);
+        Board board = gs.getBoard();
+        Tribe[] tribes = board.getTribes();
+        buf.put((byte) tribes.length);
+        for (Tribe t : tribes)
+            writeTribe(t, buf);
+        writeBoard(board, buf);
+
+        Actor[] actors = board.getActors();
+        int nActors = 0;
+        for (Actor a : actors)
+            if (a != null) nActors++;
+        buf.putInt(nActors);
+        for (Actor a : actors) {
+            if (a instanceof City) {
+                buf.putInt(a.getActorId()).put((byte) 0);
+                writeCity((City) a, buf);
+            } else if (a instanceof Unit) {
+                buf.putInt(a.getActorId()).put((byte) 1);
+                writeUnit((Unit) a, buf);
             }
+        }
+    }
 
-            ArrayList<Unit> unitList = getAllUnits(gameBoard);
-            for(Unit u: unitList){
-                JSONObject uInfo = new JSONObject();
-                uInfo.put("type", u.getType().getKey());
-                if (u.getType() == Types.UNIT.BOAT){
-                    uInfo.put("baseLandType", ((Boat)u).getBaseLandUnit().getKey());
-                }else if (u.getType() == Types.UNIT.SHIP){
-                    uInfo.put("baseLandType", ((Ship)u).getBaseLandUnit().getKey());
-                }else if (u.getType() == Types.UNIT.BATTLESHIP){
-                    uInfo.put("baseLandType", ((Battleship)u).getBaseLandUnit().getKey());
-                }
-                uInfo.put("x", u.getPosition().x);
-                uInfo.put("y", u.getPosition().y);
-                uInfo.put("kill", u.getKills());
-                uInfo.put("isVeteran", u.isVeteran());
-                uInfo.put("cityID", u.getCityId());
-                uInfo.put("tribeId", u.getTribeId());
-                uInfo.put("currentHP", u.getCurrentHP());
-                unit.put(String.valueOf(u.getActorId()), uInfo);
-            }
+    /**
+     * Serializes a random generator, so it can be restored in the same state (java.util.Random doesn't expose it).
+     */
+    private static byte[] randomState(Random rnd) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(rnd);
+        } catch (IOException e) {
+            throw new RuntimeException(e); //Can't happen, it's written to memory.
+        }
+        return bytes.toByteArray();
+    }
 
-            ArrayList<City> citiesList = getAllCities(gameBoard);
-            for(City c: citiesList){
-                // City INFO: id:{x, y, tribeId, population_need, bound, level, isCapital, population,
-                //                production, hasWalls, pointsWorth, building(array)}
-                JSONObject cInfo = new JSONObject();
-                cInfo.put("x", c.getPosition().x);
-                cInfo.put("y", c.getPosition().y);
-                cInfo.put("tribeID", c.getTribeId());
-                cInfo.put("population_need", c.getPopulation_need());
-                cInfo.put("bound", c.getBound());
-                cInfo.put("level", c.getLevel());
-                cInfo.put("isCapital", c.isCapital());
-                cInfo.put("population", c.getPopulation());
-                cInfo.put("production", c.getProduction());
-                cInfo.put("hasWalls", c.hasWalls());
-                cInfo.put("pointsWorth", c.getPointsWorth());
-                // Save Buildings INFO
-                JSONArray buildingList = new JSONArray();
-                LinkedList<Building> buildings = c.getBuildings();
-                if (buildings != null) {
-                    for (Building b : buildings) {
-                        JSONObject bInfo = new JSONObject();
-                        bInfo.put("x", b.position.x);
-                        bInfo.put("y", b.position.y);
-                        bInfo.put("type", b.type.getKey());
-                        if (b.type.isTemple()) {
-                            Temple t = (Temple) b;
-                            bInfo.put("level", t.getLevel());
-                            bInfo.put("turnsToScore", t.getTurnsToScore());
-                        }
-                        buildingList.put(bInfo);
-                    }
-                }
-                cInfo.put("buildings", buildingList);
-                cInfo.put("units", c.getUnitsID());
-                city.put(String.valueOf(c.getActorId()), cInfo);
-            }
+    /**
+     * Writes a tribe, read by Tribe(int, ByteBuffer).
+     */
+    private static void writeTribe(Tribe t, ByteBuffer buf) {
+        buf.put((byte) t.getType().ordinal());
+        buf.putInt(t.getCapitalID()).putInt(t.getStars()).putInt(t.getScore());
+        buf.put((byte) t.getWinner().ordinal());
+        buf.putInt(t.getnKills()).putInt(t.getnPacifistCount()).putInt(t.getStarsSent());
+        buf.putInt(t.getnWarsDeclared()).putInt(t.getnStarsSent());
+        buf.put((byte) (t.getHasDeclaredWar() ? 1 : 0));
+
+        boolean[] researched = t.getTechTree().getResearched();
+        buf.putShort((short) researched.length);
+        BinaryIO.putBits(buf, researched);
+
+        boolean[][] obsGrid = t.getObsGrid();
+        buf.putShort((short) obsGrid.length);
+        for (boolean[] row : obsGrid)
+            BinaryIO.putBits(buf, row);
+
+        BinaryIO.putIds(buf, t.getCitiesID());
+        BinaryIO.putIds(buf, t.getConnectedCities());
+        BinaryIO.putIds(buf, t.getTribesMet());
+        BinaryIO.putIds(buf, t.getExtraUnits());
+
+        HashMap<Types.BUILDING, Types.BUILDING.MONUMENT_STATUS> monuments = t.getMonuments();
+        buf.put((byte) monuments.size());
+        //In the order of the buildings, as the order of the map changes from run to run.
+        for (Types.BUILDING b : Types.BUILDING.values())
+            if (monuments.containsKey(b))
+                buf.put((byte) b.ordinal()).put((byte) monuments.get(b).ordinal());
+    }
 
-            board.put("terrain", terrain2D);
-            board.put("resource", resource2D);
-            board.put("unitID", unit2D);
-            board.put("cityID", city2D);
-            board.put("network", network2D);
-            board.put("building", building2D);
-            board.put("actorIDcounter", gameBoard.getActorIDcounter());
-
-            game.put("board", board);
-            game.put("unit", unit);
-            game.put("city", city);
-
-            // Save Tribes Information () - id: {citiesID, capitalID, type, techTree, stars, winner, score, obsGrid,
-            //                                   connectedCities, monuments:{type: status}, tribesMet, extraUnits,
-            //                                   nKills, nPacifistCount}
-            JSONObject tribesINFO = new JSONObject();
-            Tribe[] tribes = gs.getTribes();
-            for(Tribe t: tribes){
-                JSONObject tribeInfo = new JSONObject();
-                tribeInfo.put("citiesID", t.getCitiesID());
-                tribeInfo.put("capitalID", t.getCapitalID());
-                tribeInfo.put("type", t.getType().getKey());
-                JSONObject techINFO = new JSONObject();
-                techINFO.put("researched", t.getTechTree().getResearched());
-                techINFO.put("everythingResearched", t.getTechTree().isEverythingResearched());
-                tribeInfo.put("technology", techINFO);
-                tribeInfo.put("star", t.getStars());
-                tribeInfo.put("winner", t.getWinner().getKey());
-                tribeInfo.put("score", t.getScore());
-                tribeInfo.put("obsGrid", t.getObsGrid());
-                tribeInfo.put("connectedCities", t.getConnectedCities());
-                HashMap<Types.BUILDING, Types.BUILDING.MONUMENT_STATUS> m = t.getMonuments();
-                JSONObject monumentInfo = new JSONObject();
-                for (Types.BUILDING key : m.keySet()) {
-                    monumentInfo.put(String.valueOf(key.getKey()), m.get(key).getKey());
-                }
-                tribeInfo.put("monuments", monumentInfo);
-                JSONArray tribesMetInfo = new JSONArray();
-                ArrayList<Integer> tribesMet= t.getTribesMet();
-                for (Integer tribeId : tribesMet){
-                    tribesMetInfo.put(tribeId);
-                }
-                tribeInfo.put("tribesMet", tribesMetInfo);
-                tribeInfo.put("extraUnits", t.getExtraUnits());
-                tribeInfo.put("nKills", t.getnKills());
-                tribeInfo.put("nPacifistCount", t.getnPacifistCount());
-                tribesINFO.put(String.valueOf(t.getActorId()), tribeInfo);
-            }
+    /**
+     * Writes a board without its actors, read by Board(ByteBuffer, Tribe[]): size, actor id counter, active tribe,
+     * capitals, the terrain, resource and building of each tile, the unit and the city of each tile, the trade network
+     * and the diplomacy between tribes.
+     */
+    private static void writeBoard(Board board, ByteBuffer buf) {
+        int size = board.getSize();
+        buf.putShort((short) size).putInt(board.getActorIDcounter()).put((byte) board.getActiveTribeID());
+        for (int capitalID : board.getCapitalIDs())
+            buf.putInt(capitalID);
+
+        for (int x = 0; x < size; x++)
+            for (int y = 0; y < size; y++)
+                buf.put(code(board.getTerrainAt(x, y))).put(code(board.getResourceAt(x, y))).put(code(board.getBuildingAt(x, y)));
+        for (int x = 0; x < size; x++)
+            for (int y = 0; y < size; y++)
+                buf.putInt(board.getUnitIDAt(x, y));
+        for (int x = 0; x < size; x++)
+            for (int y = 0; y < size; y++)
+                buf.putInt(board.getCityIdAt(x, y));
+
+        boolean[] row = new boolean[size];
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++)
+                row[y] = board.getNetworkTilesAt(x, y);
+            BinaryIO.putBits(buf, row);
+        }
 
-            game.put("tribes", tribesINFO);
-            game.put("seed", seed);
-            game.put("tick", gs.getTick());
-            game.put("gameIsOver", gs.isGameOver());
-            game.put("activeTribeID", gs.getActiveTribeID());
-            game.put("gameMode", gs.getGameMode().getKey());
+        for (int[] allegiances : board.getDiplomacy().getAllegianceStatus())
+            for (int a : allegiances)
+                buf.putInt(a);
+    }
 
-            FileWriter fw_game = new FileWriter(turnFile.getPath() + "/game.json");
-            fw_game.write(game.toString(4));
-            fw_game.close();
+    private static byte code(Enum<?> value) {
+        return (byte) (value == null ? 0 : value.ordinal() + 1);
+    }
 
-        } catch (IOException e){
-            e.printStackTrace();
-        }
+    /**
+     * Writes a city, read by City(ByteBuffer, int).
+     */
+    private static void writeCity(City c, ByteBuffer buf) {
+        buf.putShort((short) c.getPosition().x).putShort((short) c.getPosition().y).put((byte) c.getTribeId());
+        buf.putInt(c.getLevel()).putInt(c.getPopulation()).putInt(c.getPopulation_need());
+        buf.putInt(c.getBaseProduction()).putInt(c.getBound()).putInt(c.getPointsWorth());
+        buf.put((byte) (c.isCapital() ? 1 : 0)).put((byte) (c.hasWalls() ? 1 : 0));
+        BinaryIO.putIds(buf, c.getUnitsID());
+
+        buf.put((byte) c.getBuildings().size());
+        for (Building b : c.getBuildings())
+            writeBuilding(b, buf);
     }
 
-    private static ArrayList<City> getAllCities(Board board)
-    {
-        Tribe[] tribes = board.getTribes();
-        ArrayList<City> cityActors = new ArrayList<>();
-        for(Tribe t: tribes){
-            ArrayList<Integer> cities = t.getCitiesID();
-            for(Integer cityId : cities)
-            {
-                cityActors.add((City)board.getActor(cityId));
-            }
+    /**
+     * Writes a building, read by Building(ByteBuffer, int) or Temple(ByteBuffer, int).
+     */
+    private static void writeBuilding(Building b, ByteBuffer buf) {
+        buf.put((byte) b.type.ordinal()).putShort((short) b.position.x).putShort((short) b.position.y);
+        if (b.type.isTemple()) {
+            Temple t = (Temple) b;
+            buf.putInt(t.getLevel()).putInt(t.getTurnsToScore());
         }
-
-        return cityActors;
     }
 
-    private static ArrayList<Unit> getAllUnits(Board board)
-    {
-        Tribe[] tribes = board.getTribes();
-        ArrayList<Unit> unitActors = new ArrayList<>();
-        for(Tribe t: tribes){
-            ArrayList<Integer> cities = t.getCitiesID();
-            for(Integer cityId : cities)
-            {
-                City c = (City)board.getActor(cityId);
-                for(Integer unitId : c.getUnitsID())
-                {
-                    Unit unit = (Unit) board.getActor(unitId);
-                    unitActors.add(unit);
-                }
-            }
+    /**
+     * Writes a unit, read by GameLoader.readUnit(): type, position, tribe, city, kills, veteran status, hit points,
+     * turn status and, for boats and ships, the unit they carry.
+     */
+    private static void writeUnit(Unit u, ByteBuffer buf) {
+        buf.put((byte) u.getType().ordinal());
+        buf.putShort((short) u.getPosition().x).putShort((short) u.getPosition().y).put((byte) u.getTribeId());
+        buf.putInt(u.getCityId()).putInt(u.getKills()).put((byte) (u.isVeteran() ? 1 : 0));
+        buf.putInt(u.getCurrentHP()).putInt(u.getMaxHP()).put((byte) u.getStatus().ordinal());
+
+        Types.UNIT baseLandUnit = null;
+        if (u instanceof Boat) baseLandUnit = ((Boat) u).getBaseLandUnit();
+        else if (u instanceof Ship) baseLandUnit = ((Ship) u).getBaseLandUnit();
+        else if (u instanceof Battleship) baseLandUnit = ((Battleship) u).getBaseLandUnit();
+        buf.put(code(baseLandUnit));
+    }
 
-            for(Integer unitId : t.getExtraUnits())
-            {
-                Unit unit = (Unit) board.getActor(unitId);
-                unitActors.add(unit);
-            }
+    /**
+     * Writes an action, read by GameLoader.readAction(): its type followed by the actor that plays it (city, tribe
+     * or unit) and its parameters. Positions are written as two shorts, -1 if not set.
+     * @param action action to write.
+     * @param buf buffer to write to.
+     */
+    static void writeAction(Action action, ByteBuffer buf) {
+        Types.ACTION type = action.getActionType();
+        buf.put((byte) type.ordinal());
+        switch (type) {
+            //City actions
+            case BUILD:
+            case BURN_FOREST:
+            case CLEAR_FOREST:
+            case DESTROY:
+            case GROW_FOREST:
+            case LEVEL_UP:
+            case RESOURCE_GATHERING:
+            case SPAWN:
+                CityAction ca = (CityAction) action;
+                buf.putInt(ca.getCityId());
+                putPosition(ca.getTargetPos(), buf);
+                if (type == Types.ACTION.BUILD) buf.put(code(((Build) ca).getBuildingType()));
+                else if (type == Types.ACTION.LEVEL_UP) buf.put(code(((LevelUp) ca).getBonus()));
+                else if (type == Types.ACTION.RESOURCE_GATHERING) buf.put(code(((ResourceGathering) ca).getResource()));
+                else if (type == Types.ACTION.SPAWN) buf.put(code(((Spawn) ca).getUnitType()));
+                break;
+
+            //Tribe actions
+            case BUILD_ROAD:
+            case END_TURN:
+            case RESEARCH_TECH:
+            case DECLARE_WAR:
+            case SEND_STARS:
+                buf.put((byte) ((TribeAction) action).getTribeId());
+                if (type == Types.ACTION.BUILD_ROAD) putPosition(((BuildRoad) action).getPosition(), buf);
+                else if (type == Types.ACTION.RESEARCH_TECH) buf.put(code(((ResearchTech) action).getTech()));
+                else if (type == Types.ACTION.DECLARE_WAR) buf.put((byte) ((DeclareWar) action).getTargetID());
+                else if (type == Types.ACTION.SEND_STARS)
+                    buf.put((byte) ((SendStars) action).getTargetID()).putInt(((SendStars) action).getNumStars());
+                break;
+
+            //Unit actions
+            default:
+                buf.putInt(((UnitAction) action).getUnitId());
+                if (type == Types.ACTION.ATTACK) buf.putInt(((Attack) action).getTargetId());
+                else if (type == Types.ACTION.CONVERT) buf.putInt(((Convert) action).getTargetId());
+                else if (type == Types.ACTION.MOVE) putPosition(((Move) action).getDestination(), buf);
+                else if (type == Types.ACTION.CAPTURE)
+                    buf.putInt(((Capture) action).getTargetCity()).put(code(((Capture) action).getCaptureType()));
         }
+    }
 
-        return unitActors;
+    private static void putPosition(Vector2d pos, ByteBuffer buf) {
+        buf.putShort((short) (pos == null ? -1 : pos.x)).putShort((short) (pos == null ? -1 : pos.y));
     }
 }
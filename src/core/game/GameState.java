@@ -1,5 +1,6 @@
 package core.game;
 
+import core.Constants;
 import core.TechnologyTree;
 import core.TribesConfig;
 import core.Types;
@@ -59,6 +60,21 @@ public class GameState {
     //Ranking of the game
     private TreeSet<TribeResult> ranking;
 
+    //Inputs the computed actions were obtained from, so they can be updated instead of computed from scratch.
+    // Null if they can't be updated.
+    private ActionDependencies actionDependencies;
+
+    //Undo frames of the actions applied with apply(), last one first. Null if there's nothing to undo.
+    private UndoFrame undoFrame;
+
+    //Actions reverted with undo() that can be applied again with redo(), last one first.
+    private ArrayDeque<Action> redoActions;
+
+    //If not null, this state is a view of that game state for player viewPlayer, which becomes a copy of it when
+    // it's going to be modified (see view()).
+    private GameState viewed;
+    private int viewPlayer;
+
     //Constructor.
     public GameState(Random rnd, Types.GAME_MODE gameMode) {
         this.rnd = rnd;
@@ -91,6 +107,17 @@ public class GameState {
         computePlayerActions(tribes[board.getActiveTribeID()]);
     }
 
+    //This Constructor is used when restoring a keyframe of a binary savegame, with the state as it was when saved
+    // (at the start of a turn, before it's initialized).
+    GameState(Random rnd, Types.GAME_MODE gameMode, Board board, int tick, boolean gameIsOver){
+        this(rnd, gameMode);
+        this.tick = tick;
+        this.board = board;
+        this.gameIsOver = gameIsOver;
+        canEndTurn = new boolean[board.getTribes().length];
+        computeGameRanking();
+    }
+
     /**
      * Initializes the GameState using a level generator.
      */
@@ -111,6 +138,13 @@ public class GameState {
         initGameState(lines);
     }
 
+    /**
+     * Initializes the GameState from a level of a LevelCache.
+     */
+    void init(LevelCache.Level level) {
+        initGameState(level.newBoard(rnd));
+    }
+
     /**
      * Initializes a game state from a series of Strings that determine the initial level disposition
      * @param lines all components for the board in its initial state.
@@ -118,7 +152,16 @@ public class GameState {
     private void initGameState(String[] lines) {
 
         LevelLoader ll = new LevelLoader();
-        board = ll.buildLevel(lines, rnd);
+        initGameState(ll.buildLevel(lines, rnd));
+    }
+
+    /**
+     * Initializes a game state from the board of a level in its initial state.
+     * @param board board built from the level.
+     */
+    private void initGameState(Board board) {
+
+        this.board = board;
 
         Tribe[] tribes = board.getTribes();
         for(Tribe tribe : tribes)
@@ -144,6 +187,17 @@ public class GameState {
         return board.getActor(actorId);
     }
 
+    /**
+     * Gets a game actor from its id to modify it (see Board.getActorForWrite()).
+     * @param actorId the id of the actor to retrieve
+     * @return the actor, null if the id doesn't correspond to an actor.
+     */
+    public Actor getActorForWrite(int actorId)
+    {
+        materialize();
+        return board.getActorForWrite(actorId);
+    }
+
     /**
      * Returns the current tick of the game. One tick encompasses a turn for all
      * players in the game.
@@ -165,6 +219,8 @@ public class GameState {
      * Computes all the actions that a player can take given the current game state.
      * Warning: This method can be expensive. In game loop, its computation sits outside the
      * agent's decision time, but agents can use it on their forward models at real expense.
+     * To reduce this cost, if actions were computed for the same tribe before, only the actions of the cities and
+     * units affected by the changes since then are computed again (see ActionDependencies).
      * @param tribe Tribe for which actions are being computed.
      */
     void computePlayerActions(Tribe tribe)
@@ -178,13 +234,41 @@ public class GameState {
         }
 
         computedActionTribeIdFlag = tribe.getTribeId();
-        this.cityActions = new HashMap<>();
-        this.unitActions = new HashMap<>();
-        this.tribeActions = new ArrayList<>();
+        ActionDependencies previous = actionDependencies;
+        actionDependencies = null;
 
         if(gameIsOver)
+        {
+            this.cityActions = new HashMap<>();
+            this.unitActions = new HashMap<>();
+            this.tribeActions = new ArrayList<>();
             return; // no actions available if the game is over
+        }
 
+        ActionDependencies dependencies = new ActionDependencies(board, tribe);
+        if(previous != null && previous.canUpdate(tribe) && updatePlayerActions(tribe, previous, dependencies))
+        {
+            if(Constants.CHECK_ACTION_UPDATES)
+                checkPlayerActions(tribe);
+        }else
+        {
+            computeAllPlayerActions(tribe);
+        }
+
+        //Actions computed while a city levels up can't be updated, as they're not computed for all cities and units.
+        if(!levelingUp)
+            actionDependencies = dependencies;
+    }
+
+    /**
+     * Computes all the actions that a player can take from scratch.
+     * @param tribe Tribe for which actions are being computed.
+     */
+    private void computeAllPlayerActions(Tribe tribe)
+    {
+        this.cityActions = new HashMap<>();
+        this.unitActions = new HashMap<>();
+        this.tribeActions = new ArrayList<>();
 
         ArrayList<Integer> cities = tribe.getCitiesID();
         ArrayList<Integer> allUnits = new ArrayList<>();
@@ -248,6 +332,92 @@ public class GameState {
         tribeActions.addAll(actions);
     }
 
+    /**
+     * Updates the actions that a player can take, computing again only those of the cities and units that changed,
+     * or that are close enough to a tile that changed, since the previous actions were computed. Tribe actions are
+     * always computed again. The previous actions must have been computed for the same tribe, with no city leveling up.
+     * @param tribe Tribe for which actions are being computed.
+     * @param previous inputs the previous actions were computed from.
+     * @param current inputs taken from the current game state.
+     * @return false if a city levels up, in which case actions must be computed from scratch.
+     */
+    private boolean updatePlayerActions(Tribe tribe, ActionDependencies previous, ActionDependencies current)
+    {
+        HashSet<Integer> changedActors = new HashSet<>();
+        ArrayList<Vector2d> changedTiles = previous.findChanges(board, current, changedActors);
+
+        HashMap<Integer, ArrayList<Action>> prevCityActions = cityActions;
+        HashMap<Integer, ArrayList<Action>> prevUnitActions = unitActions;
+        HashMap<Integer, ArrayList<Action>> newCityActions = new HashMap<>();
+        HashMap<Integer, ArrayList<Action>> newUnitActions = new HashMap<>();
+        ArrayList<Integer> allUnits = new ArrayList<>();
+        CityActionBuilder cab = new CityActionBuilder();
+
+        for(int cityId : tribe.getCitiesID())
+        {
+            City c = (City) board.getActor(cityId);
+            ArrayList<Action> actions;
+            if(changedActors.contains(cityId) || ActionDependencies.anyWithin(changedTiles, c.getPosition(), ActionDependencies.reach(c)))
+            {
+                actions = cab.getActions(this, c);
+                if(cab.cityLevelsUp())
+                    return false;
+            }else
+            {
+                actions = prevCityActions.get(cityId);
+            }
+
+            if(actions != null && !actions.isEmpty())
+                newCityActions.put(cityId, actions);
+            allUnits.addAll(c.getUnitsID());
+        }
+
+        //Add the extra units that don't belong to any city.
+        allUnits.addAll(tribe.getExtraUnits());
+
+        UnitActionBuilder uab = new UnitActionBuilder();
+        for(Integer unitId : allUnits)
+        {
+            Unit u = (Unit) board.getActor(unitId);
+            ArrayList<Action> actions;
+            if(changedActors.contains(unitId) || ActionDependencies.anyWithin(changedTiles, u.getPosition(), ActionDependencies.reach(u)))
+                actions = uab.getActions(this, u);
+            else
+                actions = prevUnitActions.get(unitId);
+
+            if(actions != null && !actions.isEmpty())
+                newUnitActions.put(unitId, actions);
+        }
+
+        levelingUp = false;
+        canEndTurn[board.getActiveTribeID()] = true;
+        cityActions = newCityActions;
+        unitActions = newUnitActions;
+        tribeActions = new TribeActionBuilder().getActions(this, tribe);
+        return true;
+    }
+
+    /**
+     * Checks that the actions updated by updatePlayerActions() are the same ones that would be computed from scratch.
+     * If they aren't, an error is reported and the actions computed from scratch are kept.
+     * @param tribe Tribe for which actions were computed.
+     */
+    private void checkPlayerActions(Tribe tribe)
+    {
+        HashMap<Integer, ArrayList<Action>> updatedCityActions = cityActions;
+        HashMap<Integer, ArrayList<Action>> updatedUnitActions = unitActions;
+        ArrayList<Action> updatedTribeActions = tribeActions;
+        computeAllPlayerActions(tribe);
+
+        String updated = updatedCityActions + " " + updatedUnitActions + " " + updatedTribeActions;
+        String computed = cityActions + " " + unitActions + " " + tribeActions;
+        if(!updated.equals(computed))
+        {
+            System.out.println("ERROR: tick " + tick + ", actions updated for tribe " + tribe.getTribeId() +
+                    " differ from the ones computed from scratch.\n  Updated:  " + updated + "\n  Computed: " + computed);
+        }
+    }
+
     /**
      * Checks if there are actions that the given tribe can take.
      * @param tribe to check if can execute actions.
@@ -307,6 +477,7 @@ public class GameState {
      */
     public void advance(Action action, boolean computeActions)
     {
+        materialize();
         if(action != null)
         {
             boolean executed = false;
@@ -366,6 +537,120 @@ public class GameState {
         //return false;
     }
 
+    /**
+     * Advances the game state applying a single action, so it can be reverted later with undo(). Actions available
+     * after the action has been executed are computed. This is equivalent to advance(action, true), but instead
+     * of copying the game state to try an action out, a forward model can apply it and undo it afterwards.
+     * Applying an action forgets the actions that could be redone.
+     * @param action to be executed in the current game state.
+     */
+    public void apply(Action action)
+    {
+        materialize();
+        redoActions = null;
+        applyAndRecord(action);
+    }
+
+    /**
+     * Reverts the last action applied with apply() (or redo()), restoring the game state as it was before it.
+     * Only the changes made while applying the action are reverted. Game actors and tribes are restored as new objects, so references to them must be retrieved again.
+     * @return true if an action was undone, false if there was nothing to undo.
+     */
+    public boolean undo()
+    {
+        materialize();
+        if(undoFrame == null)
+            return false;
+
+        UndoFrame f = undoFrame;
+        undoFrame = f.previous;
+        board.undoFrame();
+
+        tick = f.tick;
+        turnMustEnd = f.turnMustEnd;
+        gameIsOver = f.gameIsOver;
+        levelingUp = f.levelingUp;
+        canEndTurn = f.canEndTurn;
+        ranking = f.ranking;
+        computedActionTribeIdFlag = f.computedActionTribeIdFlag;
+        cityActions = f.cityActions;
+        unitActions = f.unitActions;
+        tribeActions = f.tribeActions;
+        actionDependencies = f.actionDependencies;
+
+        if(redoActions == null)
+            redoActions = new ArrayDeque<>();
+        redoActions.push(f.action);
+        return true;
+    }
+
+    /**
+     * Applies again the last action reverted with undo(). Note that the random generator of this state is
+     * not rewound by undo(), so actions with a stochastic outcome may not lead to the same state they led to before.
+     * @return true if an action was redone, false if there was nothing to redo.
+     */
+    public boolean redo()
+    {
+        materialize();
+        if(redoActions == null || redoActions.isEmpty())
+            return false;
+
+        applyAndRecord(redoActions.pop());
+        return true;
+    }
+
+    /**
+     * Returns the number of actions that can be reverted with undo().
+     * @return number of actions that can be undone.
+     */
+    public int getUndoDepth()
+    {
+        int depth = 0;
+        for(UndoFrame f = undoFrame; f != null; f = f.previous) depth++;
+        return depth;
+    }
+
+    /**
+     * Forgets all the actions that can be undone or redone, keeping the current state. This stops the board from
+     * keeping the information required to revert them.
+     */
+    public void clearUndoHistory()
+    {
+        materialize();
+        undoFrame = null;
+        redoActions = null;
+        board.clearFrames();
+    }
+
+    /**
+     * Applies an action, saving what's needed to revert it in a new undo frame.
+     * @param action to be executed in the current game state.
+     */
+    private void applyAndRecord(Action action)
+    {
+        UndoFrame f = new UndoFrame(undoFrame, action);
+        f.tick = tick;
+        f.turnMustEnd = turnMustEnd;
+        f.gameIsOver = gameIsOver;
+        f.levelingUp = levelingUp;
+        f.canEndTurn = canEndTurn.clone();
+        f.ranking = ranking;
+        f.computedActionTribeIdFlag = computedActionTribeIdFlag;
+        f.cityActions = cityActions;
+        f.unitActions = unitActions;
+        f.tribeActions = tribeActions;
+        f.actionDependencies = actionDependencies;
+        undoFrame = f;
+
+        board.pushFrame();
+        advance(action, false);
+        board.endFrame();
+
+        //Computing the actions doesn't modify the state, so it's left out of the frame.
+        if(computedActionTribeIdFlag == -1)
+            computePlayerActions(getActiveTribe());
+    }
+
     /**
      * Ends this turn. Executes a Recover action on all the units that are not fresh
      * @param tribe tribe whose turn is ending.
@@ -416,7 +701,7 @@ public class GameState {
         //1. Compute stars per turn.
         int acumProd = 0;
         for (int cityId : tribeCities) {
-            City city = (City) getActor(cityId);
+            City city = (City) board.getActorForWrite(cityId);
 
             //Cities with an enemy unit in the city's tile don't generate production.
             boolean produces = true;
@@ -456,7 +741,7 @@ public class GameState {
         allTribeUnits.addAll(tribe.getExtraUnits());    //Add the extra units that don't belong to a city.
         for(int unitId : allTribeUnits)
         {
-            Unit unit = (Unit) getActor(unitId);
+            Unit unit = (Unit) board.getActorForWrite(unitId);
             if(unit.getStatus() == Types.TURN_STATUS.PUSHED)
                 //Pushed units in the previous turn start as if they moved already.
                 unit.setStatus(Types.TURN_STATUS.MOVED);
@@ -481,6 +766,8 @@ public class GameState {
      */
     public void pushUnit(Unit toPush, int startX, int startY)
     {
+        materialize();
+        toPush = (Unit) board.getActorForWrite(toPush.getActorId());
         Tribe tribe = getTribe(toPush.getTribeId());
         boolean pushed = board.pushUnit(tribe, toPush, startX, startY, rnd);
         if(!pushed)
@@ -495,8 +782,10 @@ public class GameState {
      */
     public void killUnit(Unit toKill)
     {
+        materialize();
+        toKill = (Unit) board.getActorForWrite(toKill.getActorId());
         board.removeUnitFromBoard(toKill);
-        City c = (City) getActor(toKill.getCityId());
+        City c = (City) board.getActorForWrite(toKill.getCityId());
         Tribe tribe = getTribe(toKill.getTribeId());
         board.removeUnitFromCity(toKill, c, tribe);
         Tribe t = getTribe(toKill.getTribeId());
@@ -513,15 +802,90 @@ public class GameState {
     }
 
     /**
-     * Creates a deep copy of this game state, given player index. Sets up the game state so that it contains
-     * only information available to the given player. If -1, state contains all information.
+     * Creates a copy of this game state, given player index. Sets up the game state so that it contains
+     * only information available to the given player. If -1, state contains all information. Tile layers
+     * and observation grids are shared with this state and copied on write (see Board.copy()).
      * @param playerIdx player index that indicates who is this copy for.
      * @return a copy of this game state.
      */
     GameState copy(int playerIdx)
     {
 //        GameState copy = new GameState(this.rnd, this.gameMode); //use this for a 100% repetition of the game based on random seed and game seed.
-        GameState copy = new GameState(new Random(), this.gameMode); //copies of the game state can't have the same random generator.
+        return copy(playerIdx, new Random()); //copies of the game state can't have the same random generator.
+    }
+
+    /**
+     * Creates a copy of this game state whose random events (e.g. examining ruins) are drawn from the given random
+     * generator, instead of a new unseeded one. Agents that simulate from their own seeded generators use it so that
+     * the same seed leads to the same simulations. Otherwise, as copy().
+     * @param rnd random generator of the copy. It's not copied, so the copy and its owner share it.
+     * @return a copy of the current game state.
+     */
+    public GameState copy(Random rnd)
+    {
+        return copy(-1, rnd);
+    }
+
+    private GameState copy(int playerIdx, Random rnd)
+    {
+        //A view has the information of the state it views, so it's copied hiding what its player can't see.
+        if(viewed != null)
+            return viewed.copy(playerIdx == -1 ? viewPlayer : playerIdx, rnd);
+
+        GameState copy = new GameState(rnd, this.gameMode);
+        copyInto(copy, playerIdx);
+        return copy;
+    }
+
+    /**
+     * Creates a read-only view of this game state for a player, which shares the board, the computed actions and
+     * everything else with this state instead of copying it. The first time a method that modifies the game state
+     * (advance(), apply(), etc.) is called on the view, it becomes a copy of this state for the player, as the one
+     * returned by copy(playerIdx). Copies of the view are copies for the player too.
+     * A view is only valid while this state doesn't change, and it doesn't hide any information from the player:
+     * it's meant for agents that only read the state they receive (see Agent.needsObservationCopy()). The board,
+     * tribes and actors obtained from a view are the ones of this state, so they must not be modified directly.
+     * @param playerIdx player index that indicates who is this view for.
+     * @return the view of this game state.
+     */
+    GameState view(int playerIdx)
+    {
+        GameState view = new GameState(new Random(), this.gameMode);
+        view.viewed = this;
+        view.viewPlayer = playerIdx;
+        view.board = board;
+        view.tick = tick;
+        view.turnMustEnd = turnMustEnd;
+        view.gameIsOver = gameIsOver;
+        view.canEndTurn = canEndTurn;
+        view.levelingUp = levelingUp;
+        view.tribeActions = tribeActions;
+        view.unitActions = unitActions;
+        view.cityActions = cityActions;
+        view.ranking = ranking;
+        return view;
+    }
+
+    /**
+     * If this state is a view, turns it into a copy of the state it views so it can be modified.
+     */
+    private void materialize()
+    {
+        if(viewed != null)
+        {
+            GameState source = viewed;
+            viewed = null;
+            source.copyInto(this, viewPlayer);
+        }
+    }
+
+    /**
+     * Copies this game state into another one.
+     * @param copy game state that receives the copy.
+     * @param playerIdx player index that indicates who is this copy for, -1 for a copy with all information.
+     */
+    private void copyInto(GameState copy, int playerIdx)
+    {
         copy.board = board.copy(playerIdx!=-1, playerIdx);
         copy.tick = this.tick;
         copy.turnMustEnd = turnMustEnd;
@@ -532,40 +896,40 @@ public class GameState {
         System.arraycopy(canEndTurn, 0, copy.canEndTurn, 0, numTribes);
         copy.levelingUp = levelingUp;
 
-        copy.tribeActions = new ArrayList<>();
-        for(Action ta : tribeActions)
-        {
-            copy.tribeActions.add(ta.copy());
-        }
-
-        copy.unitActions = new HashMap<>();
-        for(int unitId : unitActions.keySet())
-        {
-            ArrayList<Action> actions = unitActions.get(unitId);
-            ArrayList<Action> actionsC = new ArrayList<>();
-            for(Action act : actions)
-            {
-                actionsC.add(act.copy());
-            }
-            copy.unitActions.put(unitId, actionsC);
-        }
-
-        copy.cityActions = new HashMap<>();
-        for(int cityId : cityActions.keySet())
-        {
-            ArrayList<Action> actions = cityActions.get(cityId);
-            ArrayList<Action> actionsC = new ArrayList<>();
-            for(Action act : actions)
-            {
-                actionsC.add(act.copy());
-            }
-            copy.cityActions.put(cityId, actionsC);
-        }
+        //Computed actions are never modified: computePlayerActions() replaces the containers when actions are
+        // recomputed, so the copy can share them with this state.
+        copy.tribeActions = tribeActions;
+        copy.unitActions = unitActions;
+        copy.cityActions = cityActions;
+        //Inputs are never modified either, but they don't match a board that hides information.
+        copy.actionDependencies = playerIdx == -1 ? actionDependencies : null;
 
         copy.ranking = new TreeSet<>();
         for(TribeResult tr : ranking) copy.ranking.add(tr.copy());
+    }
 
-        return copy;
+    /**
+     * State of the game saved when an action is applied with apply(). The board keeps its own undo frame.
+     */
+    private static class UndoFrame
+    {
+        final UndoFrame previous;
+        final Action action;
+        int tick;
+        boolean turnMustEnd, gameIsOver, levelingUp;
+        boolean[] canEndTurn;
+        TreeSet<TribeResult> ranking;
+        int computedActionTribeIdFlag;
+        HashMap<Integer, ArrayList<Action>> cityActions;
+        HashMap<Integer, ArrayList<Action>> unitActions;
+        ArrayList<Action> tribeActions;
+        ActionDependencies actionDependencies;
+
+        UndoFrame(UndoFrame previous, Action action)
+        {
+            this.previous = previous;
+            this.action = action;
+        }
     }
 
 
@@ -639,12 +1003,25 @@ public class GameState {
         return isEnded;
     }
 
+    /**
+     * Returns a 64-bit Zobrist hash of this game state, which covers the tiles, units, cities (with their temples),
+     * tribes (stars, technologies, score, visible tiles and monuments), diplomacy, active tribe and tick. Game states reached by playing the
+     * same actions in a different order have the same hash, so it can be used to detect transpositions. The hash is
+     * kept up to date as actions are executed (see Board.getHash()), so getting it again after an action is cheap.
+     * @return the hash of this game state.
+     */
+    public long getHash()
+    {
+        return board.getHash() ^ Zobrist.key(Zobrist.TICK, 0, tick);
+    }
+
     /**
      * Computes the current game ranking based on the current state of the tribes.
      * Updates the field 'ranking' from GameState
      */
     public void computeGameRanking()
     {
+        materialize();
         ranking = new TreeSet<>();
         for(int i = 0; i < canEndTurn.length; ++i)
         {
@@ -677,6 +1054,7 @@ public class GameState {
      */
     public void setEndTurn(boolean endTurn)
     {
+        materialize();
         turnMustEnd = endTurn;
     }
 
@@ -855,7 +1233,7 @@ public class GameState {
     public ArrayList<City> getCities(int playerId)
     {
         ArrayList<Integer> cities = getTribe(playerId).getCitiesID();
-        ArrayList<City> cityActors = new ArrayList<>();
+        ArrayList<City> cityActors = new ArrayList<>(cities.size());
         for(Integer cityId : cities)
         {
             cityActors.add((City)board.getActor(cityId));
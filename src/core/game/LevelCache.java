@@ -0,0 +1,240 @@
+package core.game;
+
+import core.TribesConfig;
+import core.Types;
+import core.levelgen.LevelGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of generated levels, identified by the seed of the level generator, the tribes and the map size. Each level
+ * is generated and parsed once, and kept in memory as the board it starts with: games on it start from a copy of
+ * that board instead of generating and parsing the level again. It can be used by several threads at the same time.
+ *
+ * If the cache has a directory, levels are also stored there, parsed, and read from it (memory mapped) instead of
+ * being generated again, so later runs on the same seeds don't generate them either. The format of these files is
+ * (big endian): MAGIC, VERSION and the size of the map (ints), followed by the tiles of the level as parsed by
+ * LevelLoader.parseLevel(): 3 bytes per tile in row-major order with the map char of the terrain, the map char of
+ * the resource (0 if none) and, for cities, the key of the tribe (-1 for other tiles).
+ */
+public class LevelCache
+{
+    private static final int MAGIC = 0x54524C56; // "TRLV"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 12;
+
+    //Directory where levels are stored, null if they're only kept in memory.
+    private final File directory;
+
+    //Levels in memory, by key (see key()).
+    private final ConcurrentHashMap<String, Level> levels = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a cache that keeps levels in memory only.
+     */
+    public LevelCache()
+    {
+        this(null);
+    }
+
+    /**
+     * Creates a cache that stores levels in a directory.
+     * @param directory directory for the level files, created if it doesn't exist. Null to keep levels in memory only.
+     */
+    public LevelCache(String directory)
+    {
+        this.directory = directory == null ? null : new File(directory);
+        if(this.directory != null && !this.directory.isDirectory() && !this.directory.mkdirs())
+            System.out.println("WARNING: can't create level cache directory " + directory + ", levels won't be stored.");
+    }
+
+    /**
+     * Returns the level generated with a seed for some tribes, in a map of the default size for them. This is the
+     * same level GameState.init(levelgen_seed, tribes) generates.
+     * @param levelgenSeed seed of the level generator.
+     * @param tribes tribes of the level.
+     * @return the level.
+     */
+    public Level get(long levelgenSeed, Types.TRIBE[] tribes)
+    {
+        return get(levelgenSeed, tribes, TribesConfig.DEFAULT_MAP_SIZE[tribes.length - 1]);
+    }
+
+    /**
+     * Returns the level generated with a seed for some tribes, in a map of a given size.
+     * @param levelgenSeed seed of the level generator.
+     * @param tribes tribes of the level.
+     * @param mapSize size of the map.
+     * @return the level.
+     */
+    public Level get(long levelgenSeed, Types.TRIBE[] tribes, int mapSize)
+    {
+        String key = key(levelgenSeed, tribes, mapSize);
+        return levels.computeIfAbsent(key, k -> {
+            byte[] tiles = read(k, mapSize);
+            if(tiles == null)
+            {
+                LevelGenerator levelGen = new LevelGenerator(levelgenSeed);
+                levelGen.init(mapSize, 3, 4, 0.5, tribes);
+                levelGen.generate();
+                tiles = LevelLoader.parseLevel(levelGen.gelLevelLines());
+                write(k, mapSize, tiles);
+            }
+            return new Level(tribes.clone(), mapSize, tiles);
+        });
+    }
+
+    /**
+     * Returns the number of levels in memory.
+     * @return number of levels.
+     */
+    public int size()
+    {
+        return levels.size();
+    }
+
+    private static String key(long levelgenSeed, Types.TRIBE[] tribes, int mapSize)
+    {
+        StringBuilder sb = new StringBuilder().append(levelgenSeed).append('_');
+        for (int i = 0; i < tribes.length; i++)
+            sb.append(i == 0 ? "" : "-").append(tribes[i].getKey());
+        return sb.append('_').append(mapSize).toString();
+    }
+
+    private File file(String key)
+    {
+        return new File(directory, "level_" + key + ".bin");
+    }
+
+    /**
+     * Reads the tiles of a level from its file.
+     * @param key key of the level.
+     * @param mapSize size of the map.
+     * @return the parsed tiles of the level, or null if there's no valid file for it.
+     */
+    private byte[] read(String key, int mapSize)
+    {
+        if(directory == null || !file(key).isFile())
+            return null;
+
+        byte[] tiles = new byte[mapSize * mapSize * LevelLoader.TILE_BYTES];
+        try (FileChannel channel = FileChannel.open(file(key).toPath(), StandardOpenOption.READ)) {
+            if(channel.size() != HEADER_BYTES + tiles.length)
+                return null;
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getInt() != mapSize)
+                return null;
+            buffer.get(tiles);
+            return tiles;
+        } catch (IOException e) {
+            System.out.println("WARNING: can't read level file " + file(key) + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the tiles of a level to its file. The file is written under a temporary name and then renamed, so
+     * other processes sharing the directory never read an incomplete file.
+     * @param key key of the level.
+     * @param mapSize size of the map.
+     * @param tiles parsed tiles of the level.
+     */
+    private void write(String key, int mapSize, byte[] tiles)
+    {
+        if(directory == null || !directory.isDirectory())
+            return;
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + tiles.length);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(mapSize).put(tiles).flip();
+        try {
+            Path tmp = Files.createTempFile(directory.toPath(), "level_", ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                while(buffer.hasRemaining())
+                    channel.write(buffer);
+            }
+            Files.move(tmp, file(key).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("WARNING: can't write level file " + file(key) + ": " + e);
+        }
+    }
+
+    /**
+     * A level of the cache, with the board games on it start with.
+     */
+    public static class Level
+    {
+        private final Types.TRIBE[] tribes;
+        private final int size;
+        private final byte[] tiles;
+
+        //Board of the level, as built by LevelLoader. Null if building it uses the random generator of the game
+        // (i.e. tribes that meet as they're placed when playing with partial observability), as boards must then be
+        // built again for each game.
+        private final Board template;
+
+        private Level(Types.TRIBE[] tribes, int size, byte[] tiles)
+        {
+            this.tribes = tribes;
+            this.size = size;
+            this.tiles = tiles;
+
+            UseCheckRandom rnd = new UseCheckRandom();
+            Board board = new LevelLoader().buildLevel(size, tiles, rnd);
+            this.template = rnd.used ? null : board;
+        }
+
+        /**
+         * Returns the board a game on this level starts with.
+         * @param rnd random generator of the game.
+         * @return a new board.
+         */
+        Board newBoard(Random rnd)
+        {
+            if(template == null)
+                return new LevelLoader().buildLevel(size, tiles, rnd);
+
+            //Copying sets the copy-on-write flags of the template, so copies can't be made concurrently.
+            synchronized (template) {
+                return template.copyForGame();
+            }
+        }
+
+        /**
+         * Returns the tribes this level was generated for.
+         * @return the tribes.
+         */
+        public Types.TRIBE[] getTribes() { return tribes; }
+
+        /**
+         * Returns the size of the map of this level.
+         * @return the size.
+         */
+        public int getSize() { return size; }
+    }
+
+    /**
+     * Random generator that records whether it has been used. It's never serialized.
+     */
+    @SuppressWarnings("serial")
+    private static class UseCheckRandom extends Random
+    {
+        private boolean used;
+
+        @Override
+        protected int next(int bits) {
+            used = true;
+            return super.next(bits);
+        }
+    }
+}
@@ -20,17 +20,62 @@ class LevelLoader
         size = new Dimension();
     }
 
+    //Bytes of each tile in a parsed level (see parseLevel()).
+    static final int TILE_BYTES = 3;
+
     /**
      * Builds a level, receiving a file name.
      * @param lines lines containing the level
      */
     Board buildLevel(String[] lines, Random rnd) {
+        return buildLevel(lines.length, parseLevel(lines), rnd);
+    }
+
+    /**
+     * Parses the lines of a level. For each tile, in row-major order, the parsed level has TILE_BYTES bytes: the map
+     * char of its terrain (0 if the tile is missing from the lines), the char after ':' (0 if there's none) and,
+     * for cities, the key of their tribe (-1 for other tiles).
+     * @param lines lines containing the level
+     * @return the parsed level.
+     */
+    static byte[] parseLevel(String[] lines) {
+        int size = lines.length;
+        byte[] level = new byte[size * size * TILE_BYTES];
+
+        for (int i = 0; i < size; ++i) {
+            String[] tile = lines[i].split(",");
+            if(tile.length > size)
+                throw new IllegalArgumentException("Level row " + i + " has " + tile.length + " tiles, " + size + " expected.");
+
+            for(int j = 0; j < tile.length; ++j)
+            {
+                //Format <terrain_char>:[<resource_char>]
+                // (<resource_char> is optional)
+                String[] tileSplit = tile[j].split(":");
+                char terrainChar = tileSplit[0].charAt(0);
+                int t = (i * size + j) * TILE_BYTES;
+
+                level[t] = (byte) terrainChar;
+                level[t + 1] = tileSplit.length == 2 ? (byte) tileSplit[1].charAt(0) : 0;
+                level[t + 2] = terrainChar == Types.TERRAIN.CITY.getMapChar() ? (byte) Integer.parseInt(tileSplit[1]) : -1;
+            }
+        }
+        return level;
+    }
+
+    /**
+     * Builds a level from its parsed tiles (see parseLevel()).
+     * @param levelSize size of the level.
+     * @param level parsed tiles of the level.
+     * @param rnd random generator of the game.
+     */
+    Board buildLevel(int levelSize, byte[] level, Random rnd) {
 
         // Dimensions of the level read from the file.
-        size.width = lines.length;
-        size.height = lines.length;
+        size.width = levelSize;
+        size.height = levelSize;
 
-        Tribe[] tribes = extractTribes(lines);
+        Tribe[] tribes = extractTribes(level);
         Board board = new Board();
 
         int tribeCounter = 0;
@@ -39,28 +84,25 @@ class LevelLoader
         board.init(size.width, tribes);
         boolean[] hasAssignedCapital = new boolean[numTribes];
 
-        //Go through every token in the level file
+        //Go through every tile of the level
         for (int i = 0; i < size.height; ++i) {
-            String line = lines[i];
-
-            String[] tile = line.split(",");
-            for(int j = 0; j < tile.length; ++j)
+            for(int j = 0; j < size.width; ++j)
             {
-                //Format <terrain_char>:[<resource_char>]
-                // (<resource_char> is optional)
                 // Retrieve the chars and assign the corresponding enum values in the board.
-                String[] tileSplit = tile[j].split(":");
-                char terrainChar = tileSplit[0].charAt(0);
+                int t = (i * size.width + j) * TILE_BYTES;
+                char terrainChar = (char) level[t];
+                if(terrainChar == 0)
+                    continue;
 
                 if(terrainChar == Types.TERRAIN.CITY.getMapChar())
                 {
-                    int tribeType = Integer.parseInt(tileSplit[1]);
+                    int tribeType = level[t + 2];
                     int tribeID = -1;
 
-                    for(Tribe t : tribes)
+                    for(Tribe tr : tribes)
                     {
-                        if(t.getType().getKey() == tribeType && !hasAssignedCapital[t.getTribeId()]) {
-                            tribeID = t.getTribeId();
+                        if(tr.getType().getKey() == tribeType && !hasAssignedCapital[tr.getTribeId()]) {
+                            tribeID = tr.getTribeId();
                             hasAssignedCapital[tribeID] = true;
                             break;
                         }
@@ -105,9 +147,9 @@ class LevelLoader
 
                 board.setTerrainAt(i,j, Types.TERRAIN.getType(terrainChar));
 
-                if(tileSplit.length == 2)
+                if(level[t + 1] != 0)
                 {
-                    char resourceChar = tileSplit[1].charAt(0);
+                    char resourceChar = (char) level[t + 1];
                     board.setResourceAt(i,j,Types.RESOURCE.getType(resourceChar));
                 }
             }
@@ -116,25 +158,18 @@ class LevelLoader
     }
 
     /**
-     * Extracts the tribes from the file lines initializing them
-     * @param lines information
+     * Extracts the tribes from the parsed level initializing them
+     * @param level parsed tiles of the level.
      * @return initialized array of tribes.
      */
-    private Tribe[] extractTribes(String[] lines)
+    private Tribe[] extractTribes(byte[] level)
     {
         ArrayList<Types.TRIBE> tribes_list = new ArrayList<>();
-        for (int i = 0; i < size.height; ++i) {
-            String line = lines[i];
-            String[] tile = line.split(",");
-            for (String s : tile) {
-                String[] tileSplit = s.split(":");
-                char terrainChar = tileSplit[0].charAt(0);
-                boolean isCity = terrainChar == Types.TERRAIN.CITY.getMapChar();
-
-                if (isCity) {
-                    int tribeID = Integer.parseInt(tileSplit[1]);
-                    tribes_list.add(Types.TRIBE.getTypeByKey(tribeID));
-                }
+        for (int t = 0; t < level.length; t += TILE_BYTES) {
+            boolean isCity = level[t] == Types.TERRAIN.CITY.getMapChar();
+            if (isCity) {
+                int tribeID = level[t + 2];
+                tribes_list.add(Types.TRIBE.getTypeByKey(tribeID));
             }
         }
 
@@ -0,0 +1,247 @@
+package core.game;
+
+import core.Types;
+import core.actions.Action;
+import core.actors.Tribe;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import static core.game.GameLoader.readAction;
+import static core.game.GameLoader.readState;
+import static core.game.GameSaver.*;
+
+/**
+ * Replays a game from its savegame (see GameSaver) with the forward model alone, without agents or GUI: the state is
+ * restored from a keyframe and the actions recorded are played on it turn by turn, as Game plays them. Games are
+ * deterministic given their state, which includes the state of their random generator, so the replay goes through
+ * the same states the game did. A savegame written with Constants.SAVEGAME_KEYFRAME_TURNS = 0 only holds the level
+ * at the start of the game and the actions played. If a savegame has more keyframes, the replay can check that the
+ * states it reaches are the ones recorded in them.
+ */
+public class Replay
+{
+    private final ByteBuffer buf;
+    private final Types.GAME_MODE gameMode;
+    private final long seed;
+
+    private GameState gs;
+
+    //Turn the state is at the start of, from 0, and tribe that plays it (-1 if the game is over or the savegame
+    // has no more turns).
+    private int turn;
+    private int tribeID;
+
+    //If true, the state is checked against the keyframes found, written to this buffer to compare them.
+    private boolean checkKeyframes;
+    private ByteBuffer state;
+
+    private int nActions, nKeyframes, nMismatches;
+    private int firstMismatch = -1;
+
+    /**
+     * Creates a replay of a savegame from its start.
+     * @param fileName savegame.
+     */
+    public Replay(String fileName)
+    {
+        buf = GameLoader.openSavegame(fileName);
+        seed = buf.getLong();
+        gameMode = Types.GAME_MODE.values()[buf.get()];
+        buf.getInt(); //Keyframe interval.
+
+        if(buf.get() != TURN)
+            throw new IllegalArgumentException("Savegame " + fileName + " has no turns.");
+        buf.getInt(); //Tick.
+        tribeID = buf.get();
+        if(buf.get(buf.position()) != KEYFRAME)
+            throw new IllegalArgumentException("Savegame " + fileName + " has no keyframe at its start.");
+        gs = readKeyframe();
+    }
+
+    /**
+     * Creates a replay of a savegame from one of its keyframes.
+     * @param buf content of the savegame, positioned at the keyframe.
+     * @param gameMode game mode of the game.
+     * @param seed seed of the game.
+     * @param turn turn the keyframe starts.
+     * @param tribeID tribe that plays that turn.
+     */
+    Replay(ByteBuffer buf, Types.GAME_MODE gameMode, long seed, int turn, int tribeID)
+    {
+        this.buf = buf;
+        this.gameMode = gameMode;
+        this.seed = seed;
+        this.turn = turn;
+        this.tribeID = tribeID;
+        gs = readKeyframe();
+    }
+
+    private GameState readKeyframe()
+    {
+        buf.get();
+        buf.getInt(); //Length.
+        return readState(buf, gameMode);
+    }
+
+    /**
+     * Plays the current turn with the actions recorded for it, and starts the next one.
+     * @return false if there was no turn to play, or the savegame ends before the turn does (the state is left
+     * after the actions recorded).
+     */
+    public boolean playTurn()
+    {
+        if(tribeID == -1)
+            return false;
+
+        //As Game.processTurn() does, without computing the actions available: they're not part of the state.
+        Tribe tribe = gs.getTribes()[tribeID];
+        gs.initTurn(tribe);
+        gs.getBoard().setActiveTribeID(tribeID);
+
+        try {
+            byte tag;
+            while ((tag = buf.get()) == ACTION) {
+                Action action = readAction(buf);
+                nActions++;
+
+                //Turns end where the savegame says. Ending one only affects the actions available.
+                if (action.getActionType() != Types.ACTION.END_TURN)
+                    gs.next(action);
+                gs.gameOver();
+            }
+
+            gs.endTurn(tribe);
+            gs.gameOver();
+            turn++;
+            tribeID = -1;
+            if (tag == TURN) {
+                int tick = buf.getInt();
+                tribeID = buf.get();
+                while (gs.getTick() < tick)
+                    gs.incTick();
+                if (buf.hasRemaining() && buf.get(buf.position()) == KEYFRAME)
+                    keyframe();
+            } else if (tag == END) {
+                if (!gs.isGameOver()) {
+                    //The game ran out of ticks: it's over once the last tick ends.
+                    gs.incTick();
+                    gs.gameOver();
+                }
+            } else {
+                throw new IllegalArgumentException("Corrupt savegame at byte " + (buf.position() - 1));
+            }
+        } catch (BufferUnderflowException e) {
+            //The game didn't finish writing this turn.
+            tribeID = -1;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Plays all the turns left in the savegame.
+     */
+    public void playAll()
+    {
+        while(playTurn());
+    }
+
+    /**
+     * Skips the keyframe at the start of the current turn, or checks the state against it if keyframes are checked.
+     */
+    private void keyframe()
+    {
+        buf.get();
+        int length = buf.getInt();
+        if(length > buf.remaining())
+        {
+            //Keyframe cut short: the turn that follows isn't there either.
+            buf.position(buf.limit());
+            return;
+        }
+
+        if(checkKeyframes)
+        {
+            while(true) {
+                try {
+                    state.clear();
+                    GameSaver.writeState(gs, state);
+                    break;
+                } catch (BufferOverflowException e) {
+                    state = ByteBuffer.allocate(state.capacity() * 2);
+                }
+            }
+            state.flip();
+            ByteBuffer recorded = buf.slice();
+            recorded.limit(length);
+
+            nKeyframes++;
+            if(!state.equals(recorded))
+            {
+                nMismatches++;
+                if(firstMismatch == -1)
+                    firstMismatch = turn;
+            }
+        }
+        buf.position(buf.position() + length);
+    }
+
+    /**
+     * Sets if the states reached are checked against the keyframes of the savegame.
+     * @param checkKeyframes true to check them.
+     */
+    public void setCheckKeyframes(boolean checkKeyframes)
+    {
+        this.checkKeyframes = checkKeyframes;
+        if(checkKeyframes && state == null)
+            state = ByteBuffer.allocate(1 << 16);
+    }
+
+    public GameState getGameState() {
+        return gs;
+    }
+
+    public Types.GAME_MODE getGameMode() {
+        return gameMode;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return number of the turn the state is at the start of, from 0. It's the number of turns played if there are
+     * no more.
+     */
+    public int getTurn() {
+        return turn;
+    }
+
+    /**
+     * @return id of the tribe that plays the current turn, -1 if the game is over or the savegame has no more turns.
+     */
+    public int getTribeID() {
+        return tribeID;
+    }
+
+    public int getNumActions() {
+        return nActions;
+    }
+
+    public int getNumKeyframesChecked() {
+        return nKeyframes;
+    }
+
+    public int getNumMismatches() {
+        return nMismatches;
+    }
+
+    /**
+     * @return first turn whose state didn't match its keyframe, -1 if none.
+     */
+    public int getFirstMismatch() {
+        return firstMismatch;
+    }
+}
@@ -0,0 +1,188 @@
+package core.game;
+
+import core.Types;
+import players.Agent;
+import utils.Utils;
+import utils.stats.GameplayStats;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Headless engine to play large numbers of games between AI agents. Each game is a Game played without visuals,
+ * savegames or printed output (see Game.play()), so it's played exactly as Game.run() would, and:
+ *  - Only the active player's observation is created. Agents that don't need their own copy of the game state
+ *    (see Agent.needsObservationCopy()) receive a view of it instead when the game is fully observable.
+ *  - Gameplay and AI stats are optional, and off by default.
+ *  - Each thread plays a batch of games, taking the next one to play when it finishes the previous one.
+ * All seeds of a game are derived from the seed of the run and the index of the game, so results don't depend
+ * on the number of threads.
+ */
+public class SelfPlay
+{
+    /**
+     * Creates the agents that play a game.
+     */
+    public interface AgentFactory
+    {
+        /**
+         * Creates the agents of a game, one per tribe and in the same order.
+         * @param gameIdx index of the game.
+         * @param agentSeed seed for the agents of this game.
+         * @return the agents of the game.
+         */
+        ArrayList<Agent> create(int gameIdx, long agentSeed);
+    }
+
+    /**
+     * Receives the games played. It's called from the thread that played the game, so it must be thread safe
+     * when more than one thread is used.
+     */
+    public interface GameListener
+    {
+        /**
+         * A game is over.
+         * @param gameIdx index of the game.
+         * @param gs final state of the game.
+         * @param stats gameplay stats of each player, null if stats are not logged.
+         */
+        void gameOver(int gameIdx, GameState gs, GameplayStats[] stats);
+    }
+
+    //Tribes that play each game.
+    private Types.TRIBE[] tribes;
+
+    //Game mode of the games.
+    private Types.GAME_MODE gameMode;
+
+    //Seed from which all level, game and agent seeds are derived.
+    private long seed;
+
+    //Number of threads that play games.
+    private int nThreads = 1;
+
+    //If not null, all games are played on this level. Otherwise, each game generates its own.
+    private String levelFile;
+
+    //If true, gameplay stats are logged for all players.
+    private boolean logStats;
+
+    //Counters of the games played and actions executed in the last run.
+    private AtomicInteger gamesPlayed = new AtomicInteger();
+    private AtomicLong actionsPlayed = new AtomicLong();
+
+    /**
+     * Creates the engine.
+     * @param tribes tribes that play each game.
+     * @param gameMode game mode of the games.
+     * @param seed seed from which all level, game and agent seeds are derived.
+     */
+    public SelfPlay(Types.TRIBE[] tribes, Types.GAME_MODE gameMode, long seed)
+    {
+        this.tribes = tribes;
+        this.gameMode = gameMode;
+        this.seed = seed;
+    }
+
+    /**
+     * Plays a number of games and prints the throughput achieved.
+     * @param nGames number of games to play.
+     * @param agents creates the agents for each game.
+     * @param listener receives each game when it's over. Can be null.
+     * @return number of games played per second.
+     */
+    public double run(int nGames, AgentFactory agents, GameListener listener)
+    {
+        gamesPlayed.set(0);
+        actionsPlayed.set(0);
+        AtomicInteger nextGame = new AtomicInteger();
+        long start = System.nanoTime();
+
+        if(nThreads <= 1)
+        {
+            playBatch(nGames, nextGame, agents, listener);
+        }else
+        {
+            ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+            ArrayList<Future<?>> futures = new ArrayList<>();
+            for(int i = 0; i < nThreads; i++)
+                futures.add(pool.submit(() -> playBatch(nGames, nextGame, agents, listener)));
+
+            try {
+                for (Future<?> f : futures)
+                    f.get();
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double gamesPerSecond = gamesPlayed.get() / seconds;
+        System.out.printf("Self-play: %d games, %d actions in %.2f s (%d threads): %.2f games/s, %.0f actions/s%n",
+                gamesPlayed.get(), actionsPlayed.get(), seconds, Math.max(nThreads, 1), gamesPerSecond,
+                actionsPlayed.get() / seconds);
+        return gamesPerSecond;
+    }
+
+    /**
+     * Plays games until all nGames have been taken.
+     * @param nGames number of games of the run.
+     * @param nextGame index of the next game to play, shared by all threads.
+     * @param agents creates the agents for each game.
+     * @param listener receives each game when it's over. Can be null.
+     */
+    private void playBatch(int nGames, AtomicInteger nextGame, AgentFactory agents, GameListener listener)
+    {
+        int gameIdx;
+        while((gameIdx = nextGame.getAndIncrement()) < nGames)
+        {
+            ArrayList<Agent> players = agents.create(gameIdx, deriveSeed(gameIdx, 2));
+            Game game = new Game();
+            game.setVerbose(false);
+            game.setLogStats(logStats);
+            if(levelFile != null)
+                game.init(players, levelFile, deriveSeed(gameIdx, 1), gameMode);
+            else
+                game.init(players, deriveSeed(gameIdx, 0), tribes, deriveSeed(gameIdx, 1), gameMode);
+
+            game.play();
+            actionsPlayed.addAndGet(game.getActionsPlayed());
+            gamesPlayed.incrementAndGet();
+
+            if(listener != null)
+            {
+                GameplayStats[] stats = null;
+                if(logStats)
+                {
+                    stats = new GameplayStats[players.size()];
+                    for(int i = 0; i < players.size(); i++)
+                        stats[i] = game.getGamePlayStats(i);
+                }
+                listener.gameOver(gameIdx, game.getState(), stats);
+            }
+        }
+    }
+
+    /**
+     * Derives a seed for a game of this run.
+     * @param gameIdx index of the game.
+     * @param stream different seeds for the same game (i.e. level, game and agents)
+     * @return the seed.
+     */
+    private long deriveSeed(int gameIdx, int stream)
+    {
+        return Utils.deriveSeed(seed, ((long) gameIdx << 2) + stream);
+    }
+
+    public int getGamesPlayed() { return gamesPlayed.get(); }
+    public long getActionsPlayed() { return actionsPlayed.get(); }
+    public void setThreads(int nThreads) { this.nThreads = nThreads; }
+    public void setLevelFile(String levelFile) { this.levelFile = levelFile; }
+    public void setLogStats(boolean logStats) { this.logStats = logStats; }
+}
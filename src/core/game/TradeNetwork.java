@@ -2,15 +2,15 @@ package core.game;
 
 import core.TribesConfig;
 import core.Types;
-import core.actors.City;
 import core.actors.Tribe;
 import utils.Vector2d;
+import utils.graph.NeighbourConsumer;
 import utils.graph.NeighbourHelper;
 import utils.graph.PathNode;
 import utils.graph.Pathfinder;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 
 import static core.Types.TERRAIN.*;
 
@@ -23,14 +23,23 @@ class TradeNetwork
     //Size of this trade network.
     private int size;
 
+    //Rows of networkTiles that this network can modify in place. Rows not owned are shared with a copy.
+    private boolean[] ownedRows;
+
+    //Connectivity of the trade network of each tribe, by tribe id. Null entries (or a null array) need to be
+    // computed from scratch. Copies of this network don't share it, they compute it again when needed.
+    private TribeNetwork[] tribeNetworks;
+
+    //Search used to find the ports linked by water, created when first needed.
+    private Pathfinder waterSearch;
+
     /**
      * Creates a trade network for a size by size board
      * @param size side of the board
      */
     TradeNetwork(int size)
     {
-        this.size = size;
-        this.networkTiles = new boolean[size][size];
+        this(new boolean[size][size]);
     }
 
     /**
@@ -40,6 +49,21 @@ class TradeNetwork
     TradeNetwork(boolean[][] networkTiles){
         this.size = networkTiles.length;
         this.networkTiles = networkTiles;
+        this.ownedRows = new boolean[size];
+        Arrays.fill(ownedRows, true);
+    }
+
+    /**
+     * Creates a copy of this network. Both networks share the connectivity grid, and clone a row of it
+     * before modifying it for the first time.
+     * @return the copy of this network.
+     */
+    TradeNetwork copy()
+    {
+        TradeNetwork copy = new TradeNetwork(networkTiles.clone());
+        Arrays.fill(copy.ownedRows, false);
+        Arrays.fill(ownedRows, false);
+        return copy;
     }
 
     /**
@@ -51,176 +75,325 @@ class TradeNetwork
      */
     void setTradeNetwork(Board board, int x, int y, boolean trade)
     {
-        networkTiles[x][y] = trade;
-        computeTradeNetwork(board);
-    }
+        boolean changed = networkTiles[x][y] != trade;
+        setTradeNetworkValue(x, y, trade);
 
+        //Removing a tile may split components, which can't be done incrementally.
+        if(changed && !trade)
+            invalidate();
+
+        for(Tribe tribe : board.getTribes())
+            updateTribe(board, tribe, changed && trade ? x * size + y : -1);
+    }
 
     /**
-     * Computes the trade network for all tribes. Calls computeTradeNetworkTribe(...) on all tribes of the game.
+     * Computes the trade network for one tribe, and updates the populations of the cities according to
+     * changes in the network.
      * @param board board of the game.
+     * @param tribe tribe which network has to be computed.
      */
-    private void computeTradeNetwork(Board board)
+    void computeTradeNetworkTribe(Board board, Tribe tribe)
     {
-        Tribe[] tribes = board.getTribes();
-        for(Tribe tribe : tribes)
-            this.computeTradeNetworkTribe(board, tribe);
+        updateTribe(board, tribe, -1);
     }
 
     /**
-     * Computes the trade network for one tribe. It builds to complementary graphs: connected tiles (via roads)
-     * and connected cities (via ports and water tiles). It updates the populations of the cities according to
-     * changes in the network.
+     * Discards the connectivity computed for all tribes. Must be called when something other than the network
+     * tiles changes the network of a tribe: tiles changing owner, and terrain or ports changing in a way that
+     * affects which tiles are roads, cities, ports or navigable water.
+     */
+    void invalidate()
+    {
+        tribeNetworks = null;
+    }
+
+    /**
+     * Brings the trade network of a tribe up to date and updates the cities connected to its capital. If the
+     * connectivity computed for the tribe is still valid, it's only extended with the tile just added to the
+     * network (if any). Otherwise, it's computed from scratch.
      * @param board board of the game.
      * @param tribe tribe which network has to be computed.
+     * @param addedTile index (x * size + y) of the tile added to the network, -1 if none.
      */
-    void computeTradeNetworkTribe(Board board, Tribe tribe)
+    private void updateTribe(Board board, Tribe tribe, int addedTile)
     {
+        int tribeId = tribe.getTribeId();
+        if(tribeNetworks == null)
+            tribeNetworks = new TribeNetwork[board.getTribes().length];
+
         //We only update the trade network of all tribes for the current tribe if this is not native
-        if(tribe.getTribeId() != board.getActiveTribeID() && !board.isNative())
+        if(tribeId != board.getActiveTribeID() && !board.isNative())
+        {
+            //This network misses the current changes, so it'll have to be computed again.
+            tribeNetworks[tribeId] = null;
             return;
+        }
 
         if (tribe.controlsCapital()) {
-            boolean[][] connectedTiles = new boolean[networkTiles.length][networkTiles[0].length];
-            boolean[][] navigable = new boolean[networkTiles.length][networkTiles[0].length];
-
-            ArrayList<Vector2d> ports = new ArrayList<>();
-
-            //First, set up the graph. Including all tiles that correspond to active trade points (roads, cities, ports)
-            for (int i = 0; i < networkTiles.length; ++i) {
-                for (int j = 0; j < networkTiles[0].length; ++j) {
-                    //Only for this tribe
-                    int cityId = board.getCityIdAt(i,j);
-                    boolean myCity = tribe.controlsCity(cityId);
-                    boolean notEnemy = myCity || cityId == -1;
-
-                    //cities and ports, must be within my city boundaries.
-                    Types.TERRAIN ter = board.getTerrainAt(i,j);
-                    Types.BUILDING build = board.getBuildingAt(i,j);
-                    if(myCity && (ter == CITY || build == Types.BUILDING.PORT))
-                    {
-                        connectedTiles[i][j] = networkTiles[i][j];
-                        if(build == Types.BUILDING.PORT)
-                            ports.add(new Vector2d(i, j));
-
-                        //Roads, must be within my city boundaries OR in a neutral tile.
-                    }else if (notEnemy && board.isRoad(i,j))
-                    {
-                        connectedTiles[i][j] = networkTiles[i][j];
-                    }
-
-                    //And navigable tiles: WATER, VISIBLE AND NOT ENEMY
-                    if ((ter == SHALLOW_WATER || ter == DEEP_WATER)
-                            && tribe.isVisible(i, j) && notEnemy) {
-                        navigable[i][j] = true;
-                    }
-                }
-            }
-
-            TradeNetworkStep tns = new TradeNetworkStep(connectedTiles);
-
-            //Now, we need to add jump links. In this case, two ports are connected if
-            // separated by [0,TribesConfig.PORT_TRADE_DISTANCE] WATER, VISIBLE, NON-ENEMY tiles
-            int nPorts = ports.size();
-            for (int i = 0; i < nPorts - 1; ++i) {
-                for (int j = i; j < nPorts; ++j) {
-                    if (i != j) {
-                        Vector2d portFrom = ports.get(i);
-                        Vector2d portTo = ports.get(j);
-
-                        Pathfinder tp = new Pathfinder(portFrom, new TradeWaterStep(navigable));
-                        ArrayList<PathNode> path = tp.findPathTo(portTo);
+            TribeNetwork network = tribeNetworks[tribeId];
+            if(network == null || !network.isValid(board, tribe))
+                tribeNetworks[tribeId] = network = new TribeNetwork(board, tribe);
+            else if(addedTile != -1)
+                network.addTile(board, tribe, addedTile / size, addedTile % size);
 
-                        if (path != null) //+1 because path includes destination
-                        {
-                            //We add this as a link between ports.
-                            tns.addJumpLink(portFrom, portTo, true);
-                        }
-
-                    }
-                }
-            }
-
-            City capital = (City) board.getActor(tribe.getCapitalID());
-            tribe.updateNetwork(new Pathfinder(capital.getPosition(), tns), board, tribe.getTribeId() == board.getActiveTribeID());
+            tribe.updateNetwork(network::connectedToCapital, board, tribe.getTribeId() == board.getActiveTribeID());
         }else {
+            tribeNetworks[tribeId] = null;
             tribe.updateNetwork(null, board, tribe.getTribeId() == board.getActiveTribeID());
         }
     }
 
+    /**
+     * Indicates if a tile belongs to the trade network of a tribe: cities and ports within the tribe's borders,
+     * and roads within its borders or in neutral tiles.
+     */
+    private boolean isTradeTile(Board board, Tribe tribe, int x, int y)
+    {
+        if(!networkTiles[x][y])
+            return false;
+
+        int cityId = board.getCityIdAt(x, y);
+        boolean myCity = tribe.controlsCity(cityId);
+        if(myCity && (board.getTerrainAt(x, y) == CITY || board.getBuildingAt(x, y) == Types.BUILDING.PORT))
+            return true;
+        return (myCity || cityId == -1) && board.isRoad(x, y);
+    }
+
+    /**
+     * Indicates if a tile is a port within the borders of a tribe.
+     */
+    private boolean isPort(Board board, Tribe tribe, int x, int y)
+    {
+        return board.getBuildingAt(x, y) == Types.BUILDING.PORT && tribe.controlsCity(board.getCityIdAt(x, y));
+    }
+
+    /**
+     * Indicates if ships of a tribe can trade through a tile: water tiles visible to the tribe, that are neutral or
+     * within its borders.
+     */
+    private boolean isNavigable(Board board, Tribe tribe, int x, int y)
+    {
+        Types.TERRAIN ter = board.getTerrainAt(x, y);
+        int cityId = board.getCityIdAt(x, y);
+        return (ter == SHALLOW_WATER || ter == DEEP_WATER) && tribe.isVisible(x, y)
+                && (cityId == -1 || tribe.controlsCity(cityId));
+    }
 
-    void setTradeNetworkValue(int x, int y, boolean trade) {  this.networkTiles[x][y] = trade;  }
+    void setTradeNetworkValue(int x, int y, boolean trade) {
+        if(!ownedRows[x])
+        {
+            networkTiles[x] = networkTiles[x].clone();
+            ownedRows[x] = true;
+        }
+        this.networkTiles[x][y] = trade;
+    }
     boolean getTradeNetworkValue(int x, int y) { return networkTiles[x][y]; }
 
+    /**
+     * Flags the tiles whose value differs from the one they have in another network that shares rows with this one
+     * (see copy()). Rows that are still shared are not checked.
+     * @param other network to compare with.
+     * @param changed grid where the tiles that changed are set to true.
+     */
+    void flagChangedTiles(TradeNetwork other, boolean[][] changed)
+    {
+        for (int x = 0; x < size; x++)
+            if(networkTiles[x] != other.networkTiles[x])
+                for (int y = 0; y < size; y++) changed[x][y] |= networkTiles[x][y] != other.networkTiles[x][y];
+    }
+
 
     /**
-     * Private class that is used by Pathfinding to determine water node connectivity in a graph, considering
-     * also distance between friendly ports.
+     * Connectivity of the trade network of a tribe: a union-find forest over the tiles of the network, where
+     * tiles are joined if they are adjacent or if they are ports linked by water. A city is connected to the capital
+     * if both are in the same component. Tiles can be added to the network incrementally (see addTile()).
+     * It also keeps the state of the tribe it was computed for, to tell if it's still valid (see isValid()).
      */
-    private class TradeWaterStep implements NeighbourHelper
+    private class TribeNetwork
     {
-        //Indicates which positions in the grid can be navigated (depends on terrain type,
-        // technology and visibility).
-        private boolean [][]navigable;
+        //Parent of each tile (x * size + y) in the forest. Roots are their own parents.
+        private final int[] parent;
+
+        //Tiles that belong to the network. The capital is always included, as the network is traversed from it.
+        private final boolean[] inNetwork;
+
+        //Ports of the tribe in the network.
+        private final ArrayList<Integer> ports;
+
+        //Capital, cities and visibility grid of the tribe when this was computed.
+        private final int capitalID, capitalTile;
+        private final ArrayList<Integer> citiesID;
+        private boolean[][] obsGrid;
+
+        /**
+         * Computes the network of a tribe from scratch.
+         * @param board board of the game.
+         * @param tribe tribe whose network is computed.
+         */
+        TribeNetwork(Board board, Tribe tribe)
+        {
+            parent = new int[size * size];
+            inNetwork = new boolean[size * size];
+            ports = new ArrayList<>();
+            capitalID = tribe.getCapitalID();
+            citiesID = new ArrayList<>(tribe.getCitiesID());
+            obsGrid = tribe.snapshotObsGrid();
+
+            Vector2d capitalPos = board.getActor(capitalID).getPosition();
+            capitalTile = capitalPos.x * size + capitalPos.y;
+
+            for (int x = 0; x < size; ++x) {
+                for (int y = 0; y < size; ++y) {
+                    int tile = x * size + y;
+                    parent[tile] = tile;
+                    inNetwork[tile] = tile == capitalTile || isTradeTile(board, tribe, x, y);
+                    if(inNetwork[tile] && isPort(board, tribe, x, y))
+                        ports.add(tile);
+                }
+            }
 
-        TradeWaterStep(boolean [][]navigable)
+            //Join adjacent tiles. Each pair is visited once, from the tile with the lowest x (or y, in the same row).
+            for (int x = 0; x < size; ++x) {
+                for (int y = 0; y < size; ++y) {
+                    if(!inNetwork[x * size + y]) continue;
+                    if(y + 1 < size) join(x, y, x, y + 1);
+                    if(x + 1 < size) {
+                        for (int j = Math.max(y - 1, 0); j <= Math.min(y + 1, size - 1); j++)
+                            join(x, y, x + 1, j);
+                    }
+                }
+            }
+
+            //Now, join the ports. Two ports are connected if separated by [0,TribesConfig.PORT_TRADE_DISTANCE]
+            // WATER, VISIBLE, NON-ENEMY tiles
+            for (int i = 0; i < ports.size() - 1; ++i)
+                joinPortsFrom(board, tribe, ports.get(i), i + 1);
+        }
+
+        /**
+         * Checks if this network is still valid for a tribe. Changes to the board tiles invalidate all networks
+         * (see TradeNetwork.invalidate()), so here it only needs to check changes in the tribe: its capital, its cities
+         * and any water tiles revealed to it since this was computed.
+         * @param board board of the game.
+         * @param tribe tribe this network belongs to.
+         * @return true if this network is up to date.
+         */
+        boolean isValid(Board board, Tribe tribe)
         {
-            this.navigable = navigable;
+            if(tribe.getCapitalID() != capitalID || !tribe.getCitiesID().equals(citiesID))
+                return false;
+
+            boolean[][] now = tribe.getObsGrid();
+            boolean revealed = false;
+            for (int x = 0; x < size; ++x) {
+                if(now[x] == obsGrid[x]) continue;
+                revealed = true;
+                for (int y = 0; y < size; ++y)
+                    if(now[x][y] && !obsGrid[x][y] && board.getTerrainAt(x, y).isWater())
+                        return false;
+            }
+
+            //Tiles were revealed, but no water: take the new visibility as the reference.
+            if(revealed)
+                obsGrid = tribe.snapshotObsGrid();
+            return true;
         }
 
         /**
-         * Returns the neighbours of a given node in this data structure.
-         * @param from position from which we need neighbours
-         * @param costFrom is the total move cost computed up to "from"
-         * @return  all the adjacent neighbours to tile in position "from"
+         * Adds a tile to the network, if it belongs to the network of this tribe.
+         * @param board board of the game.
+         * @param tribe tribe this network belongs to.
+         * @param x x coordinate of the tile added.
+         * @param y y coordinate of the tile added.
          */
-        @Override
-        public ArrayList<PathNode> getNeighbours(Vector2d from, double costFrom) {
+        void addTile(Board board, Tribe tribe, int x, int y)
+        {
+            int tile = x * size + y;
+            if(inNetwork[tile] || !isTradeTile(board, tribe, x, y))
+                return;
 
-            ArrayList<PathNode> neighbours = new ArrayList<>();
-            double stepCost = 1.0;
+            inNetwork[tile] = true;
+            for (int i = Math.max(x - 1, 0); i <= Math.min(x + 1, size - 1); i++)
+                for (int j = Math.max(y - 1, 0); j <= Math.min(y + 1, size - 1); j++)
+                    if(inNetwork[i * size + j]) join(x, y, i, j);
 
-            for(Vector2d tile : from.neighborhood(1, 0, size)) {
-                if(navigable[tile.x][tile.y] && costFrom+stepCost <= TribesConfig.PORT_TRADE_DISTANCE)
-                {
-                    neighbours.add(new PathNode(tile, stepCost));
-                }
+            if(isPort(board, tribe, x, y))
+            {
+                ports.add(tile);
+                joinPortsFrom(board, tribe, tile, 0);
             }
+        }
 
-            return neighbours;
+        /**
+         * Indicates if a position is connected to the capital through this network (the capital itself is not).
+         * @param pos position to check.
+         * @return true if pos is in the same component as the capital.
+         */
+        boolean connectedToCapital(Vector2d pos)
+        {
+            int tile = pos.x * size + pos.y;
+            return tile != capitalTile && inNetwork[tile] && find(tile) == find(capitalTile);
         }
 
-        @Override
-        public void addJumpLink(Vector2d from, Vector2d to, boolean reverse) {
-            //No jump links
+        /**
+         * Joins a port with the ports it can reach by water.
+         * @param board board of the game.
+         * @param tribe tribe this network belongs to.
+         * @param port tile of the port to join.
+         * @param firstPort index, in ports, of the first port to check.
+         */
+        private void joinPortsFrom(Board board, Tribe tribe, int port, int firstPort)
+        {
+            if(waterSearch == null)
+                waterSearch = new Pathfinder(size);
+            waterSearch.reset(new Vector2d(port / size, port % size), new TradeWaterStep(board, tribe));
+
+            for (int i = firstPort; i < ports.size(); ++i) {
+                int other = ports.get(i);
+                if(other != port && waterSearch.reaches(other / size, other % size))
+                    join(port / size, port % size, other / size, other % size);
+            }
+        }
+
+        private void join(int x0, int y0, int x1, int y1)
+        {
+            int a = x1 * size + y1;
+            if(!inNetwork[a]) return;
+            int root0 = find(x0 * size + y0), root1 = find(a);
+            if(root0 != root1)
+                parent[root1] = root0;
+        }
+
+        private int find(int tile)
+        {
+            while(parent[tile] != tile)
+            {
+                //Path halving
+                parent[tile] = parent[parent[tile]];
+                tile = parent[tile];
+            }
+            return tile;
         }
     }
 
     /**
-     * Private class that is used by Pathfinding to determine city connectivity in a graph.
-     * Considers connection between ports for the connectivity between cities
+     * Private class that is used by Pathfinding to determine water node connectivity in a graph, considering
+     * also distance between friendly ports.
      */
-    private class TradeNetworkStep implements NeighbourHelper
+    private class TradeWaterStep implements NeighbourHelper
     {
-        //Grid that determines which position belong to the trade network. Adjacent points are connected
-        private boolean [][]connected;
-
-        //List of network links between non-adjacent tiles.
-        private HashMap<Vector2d, ArrayList<Vector2d>> jumpLinks;
+        //Board of the game and tribe trading. Water tiles that are visible and not enemy can be navigated.
+        private final Board board;
+        private final Tribe tribe;
 
-        /**
-         * Creates a trade network step helper
-         * @param connected list of connected tiles.
-         */
-        TradeNetworkStep (boolean [][]connected)
+        TradeWaterStep(Board board, Tribe tribe)
         {
-            this.connected = connected;
-            this.jumpLinks = new HashMap<>();
+            this.board = board;
+            this.tribe = tribe;
         }
 
         /**
-         * Returns the neighbours of a given node in this data structure. Considers the jump links between
-         * non-adjacent node.
+         * Returns the neighbours of a given node in this data structure.
          * @param from position from which we need neighbours
          * @param costFrom is the total move cost computed up to "from"
          * @return  all the adjacent neighbours to tile in position "from"
@@ -229,56 +402,27 @@ class TradeNetwork
         public ArrayList<PathNode> getNeighbours(Vector2d from, double costFrom) {
 
             ArrayList<PathNode> neighbours = new ArrayList<>();
-            double stepCost = 1.0;
+            forEachNeighbour(from.x, from.y, costFrom, (x, y, stepCost) -> neighbours.add(new PathNode(new Vector2d(x, y), stepCost)));
+            return neighbours;
+        }
 
-            for(Vector2d tile : from.neighborhood(1, 0, size)) {
-                if(connected[tile.x][tile.y])
-                {
-                    neighbours.add(new PathNode(tile, stepCost));
-                }
-            }
+        @Override
+        public void forEachNeighbour(int fromX, int fromY, double costFrom, NeighbourConsumer consumer) {
+            double stepCost = 1.0;
+            if(costFrom+stepCost > TribesConfig.PORT_TRADE_DISTANCE)
+                return;
 
-            //Now, add the jump link neighbours
-            if(jumpLinks.containsKey(from))
-            {
-                ArrayList<Vector2d> connected = jumpLinks.get(from);
-                for(Vector2d to: connected)
-                {
-                    neighbours.add(new PathNode(to, stepCost));
+            for(int x = Math.max(fromX - 1, 0); x <= Math.min(fromX + 1, size - 1); x++) {
+                for(int y = Math.max(fromY - 1, 0); y <= Math.min(fromY + 1, size - 1); y++) {
+                    if((x != fromX || y != fromY) && isNavigable(board, tribe, x, y))
+                        consumer.accept(x, y, stepCost);
                 }
             }
-
-
-            return neighbours;
         }
 
-
-        /**
-         * Adds a jump link between two positions
-         * @param from one end of the link
-         * @param to the other end of the link
-         * @param reverse true if another link from 'to' to 'from' must also be created
-         */
         @Override
         public void addJumpLink(Vector2d from, Vector2d to, boolean reverse) {
-            addAtoB(from, to);
-            if(reverse) addAtoB(to, from);
-        }
-
-        /**
-         * Adds a jump link from 'from' to 'to' to the list of jump links.
-         * @param from one end of the link
-         * @param to the other end of the link
-         */
-        private void addAtoB(Vector2d from, Vector2d to)
-        {
-            if(!jumpLinks.containsKey(from))
-                jumpLinks.put(from, new ArrayList<>());
-
-            ArrayList<Vector2d> connected = jumpLinks.get(from);
-            connected.add(to);
+            //No jump links
         }
     }
-
-
 }
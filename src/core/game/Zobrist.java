@@ -0,0 +1,161 @@
+package core.game;
+
+import core.Diplomacy;
+import core.Types;
+import core.actors.Actor;
+import core.actors.Building;
+import core.actors.City;
+import core.actors.Temple;
+import core.actors.Tribe;
+import core.actors.units.Unit;
+
+import java.util.Map;
+
+/**
+ * Zobrist keys of the features of a game state (see GameState.getHash()). The hash of a state is the XOR of the keys
+ * of all its features, so it's updated as the state changes by XORing out the key of the old value of a feature and
+ * XORing in the key of the new one. Keys are derived from the feature, its position and its value with a 64-bit
+ * mixing function instead of being drawn into a table, so they're the same for every board size, game and run.
+ */
+public final class Zobrist {
+
+    // Features of the game state.
+    static final int TILE = 1, CITY_TILE = 2, ROAD = 3, UNIT = 4, CITY = 5, TRIBE = 6, VISIBLE = 7,
+            ACTIVE_TRIBE = 8, TICK = 9, ALLEGIANCE = 10, TEMPLE = 11, MONUMENT = 12;
+
+    private Zobrist() {}
+
+    /**
+     * Key of a feature with a value at a position.
+     * @param feature feature of the game state.
+     * @param index position of the feature (i.e. see tileIndex()).
+     * @param value value of the feature.
+     * @return the key.
+     */
+    static long key(int feature, int index, long value)
+    {
+        return mix(mix(((long) feature << 32) | (index & 0xFFFFFFFFL)) ^ value);
+    }
+
+    /**
+     * Index of a tile, which doesn't depend on the size of the board.
+     */
+    static int tileIndex(int x, int y)
+    {
+        return (x << 16) | y;
+    }
+
+    /**
+     * Key of a tile being visible for a tribe (see Tribe.getVisibleHash()).
+     * @param x x coordinate of the tile.
+     * @param y y coordinate of the tile.
+     * @return the key.
+     */
+    public static long visibleKey(int x, int y)
+    {
+        return key(VISIBLE, tileIndex(x, y), 1);
+    }
+
+    /**
+     * Key of a unit or a city, from its type, position, tribe and attributes (for units, also the city they belong
+     * to; for cities, also the level of their temples). Actor ids are left out, except as the city of a unit, so the
+     * same units and cities created in a different order have the same key.
+     * @param actor unit or city, null if there's none.
+     * @return the key, 0 for null or other actors.
+     */
+    static long actorKey(Actor actor)
+    {
+        if(actor instanceof Unit)
+        {
+            Unit u = (Unit) actor;
+            long h = key(UNIT, tileIndex(u.getPosition().x, u.getPosition().y), u.getType().ordinal());
+            h = combine(h, u.getTribeId());
+            h = combine(h, u.getCurrentHP());
+            h = combine(h, u.getMaxHP());
+            h = combine(h, u.getKills());
+            h = combine(h, u.isVeteran() ? 1 : 0);
+            h = combine(h, u.getCityId());
+            return combine(h, u.getStatus().ordinal());
+        }
+        if(actor instanceof City)
+        {
+            City c = (City) actor;
+            long h = key(CITY, tileIndex(c.getPosition().x, c.getPosition().y), c.getTribeId());
+            h = combine(h, c.getLevel());
+            h = combine(h, c.getPopulation());
+            h = combine(h, c.getProduction());
+            h = combine(h, c.isCapital() ? 1 : 0);
+            h = combine(h, c.hasWalls() ? 1 : 0);
+            h = combine(h, c.getBound());
+            h = combine(h, c.getPointsWorth());
+            h = combine(h, c.getNumUnits());
+
+            //Temples are XORed in, so the order in which they were built doesn't matter.
+            long temples = 0;
+            for(Building b : c.getBuildings())
+                if(b instanceof Temple)
+                {
+                    Temple t = (Temple) b;
+                    temples ^= combine(key(TEMPLE, tileIndex(b.position.x, b.position.y), t.getLevel()),
+                            t.getTurnsToScore());
+                }
+            return combine(h, temples);
+        }
+        return 0;
+    }
+
+    /**
+     * Key of a tribe: its stars, score, technologies, visible tiles, monuments and turn counters.
+     * @param t tribe.
+     * @return the key.
+     */
+    static long tribeKey(Tribe t)
+    {
+        long h = key(TRIBE, t.getTribeId(), t.getStars());
+        h = combine(h, t.getScore());
+        h = combine(h, t.getWinner().ordinal());
+        h = combine(h, t.getTechTree().getResearchedBits());
+        h = combine(h, t.getVisibleHash());
+        h = combine(h, t.getNumCities());
+        h = combine(h, t.getnKills());
+        h = combine(h, t.getnPacifistCount());
+        h = combine(h, t.getStarsSent());
+        h = combine(h, t.getHasDeclaredWar() ? 1 : 0);
+
+        long monuments = 0;
+        for(Map.Entry<Types.BUILDING, Types.BUILDING.MONUMENT_STATUS> m : t.getMonuments().entrySet())
+            monuments ^= key(MONUMENT, m.getKey().ordinal(), m.getValue().ordinal());
+        return combine(h, monuments);
+    }
+
+    /**
+     * Key of the allegiances between all tribes.
+     * @param diplomacy diplomacy of the board.
+     * @return the key.
+     */
+    static long diplomacyKey(Diplomacy diplomacy)
+    {
+        int[][] allegiances = diplomacy.getAllegianceStatus();
+        long h = 0;
+        for (int i = 0; i < allegiances.length; i++)
+            for (int j = 0; j < allegiances[i].length; j++)
+                if(allegiances[i][j] != 0)
+                    h ^= key(ALLEGIANCE, i * allegiances.length + j, allegiances[i][j]);
+        return h;
+    }
+
+    private static long combine(long h, long value)
+    {
+        return mix(h ^ (value * 0x9E3779B97F4A7C15L));
+    }
+
+    /**
+     * Finalizer of SplitMix64: a bijective function of 64-bit values whose output bits all depend on all input bits.
+     */
+    private static long mix(long z)
+    {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -10,6 +10,10 @@ import utils.file.IO;
 
 import java.io.FileWriter;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This is a Java port of the level generator created for the game Polytopia adapted to our format.
@@ -26,14 +30,38 @@ public class LevelGenerator {
     private int relief;
     private double initialLand;
     private double landCoefficient;
-    private String[] level;
     private Types.TRIBE[] tribes;
     private double BORDER_EXPANSION = 1/3.0;
     private long seed;
     private Random rnd;
 
-    //JSON that contains all the probability values for all the tribes.
-    private JSONObject data;
+    //Terrain of each tile (its map char), indexed by row * mapSize + column.
+    private byte[] terrain;
+
+    //Resource of each tile: its map char, NO_RESOURCE, BLANK or, in cities, the key k of their tribe as -(k+1).
+    private byte[] resource;
+
+    //Tiles start as "d: ". The blank resource is dropped when the terrain is written, and written by forest villages.
+    private static final byte NO_RESOURCE = 0, BLANK = ' ';
+
+    private static final byte DEEP = (byte) DEEP_WATER.getMapChar(), SHALLOW = (byte) SHALLOW_WATER.getMapChar(),
+            GROUND = (byte) PLAIN.getMapChar(), WOODS = (byte) FOREST.getMapChar(), PEAK = (byte) MOUNTAIN.getMapChar(),
+            TOWN = (byte) CITY.getMapChar(), HAMLET = (byte) VILLAGE.getMapChar();
+
+    //Buffers for the tiles around a tile (see circle() and crossNeighbors()).
+    private final int[] ring = new int[16], cross = new int[4], valid = new int[8];
+
+    //JSON that contains all the probability values for all the tribes. Read once, shared by all generators.
+    private static final JSONObject data = new IO().readJSON("terrainProbs.json");
+
+    //Terrains and resources whose probabilities are used by generate().
+    private static final String[] PROB_NAMES = {"FOREST", "MOUNTAIN", "FRUIT", "CROPS", "ANIMAL", "FISH", "WHALES", "ORE"};
+    private static final int P_FOREST = 0, P_MOUNTAIN = 1, P_FRUIT = 2, P_CROPS = 3, P_ANIMAL = 4, P_FISH = 5,
+            P_WHALES = 6, P_ORE = 7;
+
+    //Probability of each of PROB_NAMES in tiles of no tribe (index 0) and of each tribe (index ordinal + 1),
+    // as getBaseProb(name) * getTribeProb(name, tribe).
+    private static final double[][] probs = computeProbs();
 
     private boolean LEVELGEN_VERBOSE = false;
 
@@ -47,13 +75,6 @@ public class LevelGenerator {
 
         //Initialize with default values.
         init(11, 3, 4, 0.5, new Types.TRIBE[]{XIN_XI, OUMAJI});
-
-        //Read the JSON that contains all the probability values for all the tribes.
-        try {
-            this.data =  new IO().readJSON("terrainProbs.json");
-        } catch(Exception e) {
-            e.printStackTrace();
-        }
     }
 
     /**
@@ -64,12 +85,63 @@ public class LevelGenerator {
         this.smoothing = smoothing;
         this.relief = relief;
         this.initialLand = initialLand;
-        this.level = new String[mapSize*mapSize];
+        this.terrain = new byte[mapSize*mapSize];
+        this.resource = new byte[mapSize*mapSize];
         this.tribes = tribes;
         this.landCoefficient = (0.5 + relief) / 9;
 
         //Initialize the level with deep water.
-        for(int i = 0; i < mapSize*mapSize; i++){ level[i] = "d: "; }
+        Arrays.fill(terrain, DEEP);
+        Arrays.fill(resource, BLANK);
+    }
+
+    /**
+     * Generates levels for several seeds in parallel, all with the same parameters. Each level is the same one
+     * generate() creates for its seed.
+     * @param seeds seeds of the levels.
+     * @param mapSize size of the levels.
+     * @param smoothing smoothing passes (see init()).
+     * @param relief relief (see init()).
+     * @param initialLand initial proportion of land (see init()).
+     * @param tribes tribes in the levels.
+     * @param nThreads number of threads to generate the levels with.
+     * @return the lines of each level (see gelLevelLines()), in the same order as the seeds.
+     */
+    public static String[][] generate(long[] seeds, int mapSize, int smoothing, int relief, double initialLand,
+                                      Types.TRIBE[] tribes, int nThreads)
+    {
+        String[][] levels = new String[seeds.length][];
+        AtomicInteger next = new AtomicInteger();
+        Runnable batch = () -> {
+            int i;
+            while((i = next.getAndIncrement()) < seeds.length)
+            {
+                LevelGenerator levelGen = new LevelGenerator(seeds[i]);
+                levelGen.init(mapSize, smoothing, relief, initialLand, tribes);
+                levelGen.generate();
+                levels[i] = levelGen.gelLevelLines();
+            }
+        };
+
+        if(nThreads <= 1)
+        {
+            batch.run();
+            return levels;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+        ArrayList<Future<?>> futures = new ArrayList<>();
+        for(int i = 0; i < nThreads; i++)
+            futures.add(pool.submit(batch));
+        try {
+            for (Future<?> f : futures)
+                f.get();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            pool.shutdown();
+        }
+        return levels;
     }
 
     /**
@@ -78,145 +150,135 @@ public class LevelGenerator {
     public void generate() {
 
         if (LEVELGEN_VERBOSE) System.out.println("Generating level with seed: " + this.seed);
+        int nTiles = mapSize*mapSize;
 
         //Randomly replace half of the tiles with ground.
         if (LEVELGEN_VERBOSE) System.out.println("Randomly replace half of the tiles with ground.");
         int i = 0;
-        while(i < mapSize*mapSize*initialLand) {
-            int index = randomInt(0, mapSize*mapSize);
-            if(getTerrain(index) == DEEP_WATER.getMapChar()) {
+        while(i < nTiles*initialLand) {
+            int index = randomInt(0, nTiles);
+            if(terrain[index] == DEEP) {
                 i++;
-                writeTile(index, ""+PLAIN.getMapChar(), null);
+                setTerrain(index, GROUND);
             }
         }
 
-        //Turning random water/ground grid into something smooth.
+        //Turning random water/ground grid into something smooth. Tiles turned to ground stay so in later passes.
         if (LEVELGEN_VERBOSE) System.out.println("Turning random water/ground grid into something smooth.");
-        ArrayList<Integer> toBeGround = new ArrayList<>();
+        boolean[] toBeGround = new boolean[nTiles];
 
         for (i = 0; i < smoothing; i++) {
-            for (int cell = 0; cell < mapSize * mapSize; cell++) {
+            for (int cell = 0; cell < nTiles; cell++) {
 
+                int tile_count = circle(cell, 1, ring);
                 int water_count = 0;
-                int tile_count = 0;
-                for (int n : disk(cell, 1)) {
-                    if (getTerrain(n) == DEEP_WATER.getMapChar()) {
+                for (int k = 0; k < tile_count; k++) {
+                    if (terrain[ring[k]] == DEEP) {
                         water_count++;
                     }
-                    tile_count++;
                 }
+                if (terrain[cell] == DEEP) {
+                    water_count++;
+                }
+                tile_count++;
 
                 if (water_count / (double) tile_count <= landCoefficient)
-                    toBeGround.add(cell);
+                    toBeGround[cell] = true;
             }
 
-            for (int cell = 0; cell < mapSize * mapSize; cell++) {
-                if(toBeGround.contains(cell))
-                {
-                    writeTile(cell, ""+PLAIN.getMapChar(), null);
-                }else {
-                    writeTile(cell, "" + DEEP_WATER.getMapChar(), null);
-                }
+            for (int cell = 0; cell < nTiles; cell++) {
+                setTerrain(cell, toBeGround[cell] ? GROUND : DEEP);
             }
         }
 
         // Capital distribution
         if (LEVELGEN_VERBOSE) System.out.println("Capital distribution");
-        ArrayList<Integer> capitalCells = new ArrayList<>();
-        HashMap<Integer, Integer> capitalMap = new HashMap<>();
-        // make a map of potential (ground) tiles associated with numbers (0 by default)
-        for (Types.TRIBE tribe : tribes) {
-            for (int row = 2; row < mapSize - 2; row++) {
-                for (int column = 2; column < mapSize - 2; column++) {
-                    if (getTerrain(row * mapSize + column) == PLAIN.getMapChar()) {
-                        capitalMap.put(row * mapSize + column, 0);
-                    }
-                }
-            }
-        }
+        int[] capitalCells = new int[tribes.length];
+        int nCapitals = 0;
+        int[] candidates = capitalCandidates();
+        int[] candidateDistance = new int[candidates.length];
         for (Types.TRIBE tribe : tribes) {
             int max = 0;
-            // this number is a sum of distances between the tile and all capitals
-            Iterator capitalIterator = capitalMap.entrySet().iterator();
-            while (capitalIterator.hasNext()) {
-                Map.Entry cell = (Map.Entry)capitalIterator.next();
-                cell.setValue(mapSize);
-                for (int capital_cell : capitalCells) {
-                    cell.setValue(Math.min((int)cell.getValue(), distance((int)cell.getKey(), capital_cell, mapSize)));
+            // this number is the distance between the tile and the closest capital
+            for (int c = 0; c < candidates.length; c++) {
+                int dist = mapSize;
+                for (int k = 0; k < nCapitals; k++) {
+                    dist = Math.min(dist, distance(candidates[c], capitalCells[k], mapSize));
                 }
-                max = Math.max(max, (int)cell.getValue());
+                candidateDistance[c] = dist;
+                max = Math.max(max, dist);
             }
             //Count how many potential capital positions are at a maximum distance
             int len = 0;
-            capitalIterator = capitalMap.entrySet().iterator();
-            while (capitalIterator.hasNext()) {
-                Map.Entry cell = (Map.Entry)capitalIterator.next();
-                if ((int)cell.getValue() == max) {
+            for (int dist : candidateDistance) {
+                if (dist == max) {
                     len++;
                 }
             }
 
-            // we want to find a tile with a maximum sum
+            // we want to find a tile with a maximum distance
             int randCell = randomInt(0, len);
-            capitalIterator = capitalMap.entrySet().iterator();
-            while (capitalIterator.hasNext()) {
-                Map.Entry cell = (Map.Entry) capitalIterator.next();
-                if ((int)cell.getValue() == max) {
+            for (int c = 0; c < candidates.length; c++) {
+                if (candidateDistance[c] == max) {
                     if (randCell == 0) {
-                        capitalCells.add((int)cell.getKey());
-                        if(LEVELGEN_VERBOSE) System.out.println("Adding a capital for tribe " + tribe + " at tile " + cell.getKey() + " with a max distance of " + cell.getValue());
+                        capitalCells[nCapitals++] = candidates[c];
+                        if(LEVELGEN_VERBOSE) System.out.println("Adding a capital for tribe " + tribe + " at tile " + candidates[c] + " with a max distance of " + max);
                     }
                     randCell--;
                 }
             }
         }
-        for (i = 0; i < capitalCells.size(); i++) {
-            writeTile((capitalCells.get(i) / mapSize) * mapSize + (capitalCells.get(i) % mapSize), ""+CITY.getMapChar(), String.valueOf(tribes[i].getKey()));
+        for (i = 0; i < nCapitals; i++) {
+            writeTile(capitalCells[i], TOWN, (byte) -(tribes[i].getKey() + 1));
         }
 
         // Terrain distribution
         if (LEVELGEN_VERBOSE) System.out.println("Terrain distribution");
-        ArrayList<Integer> doneTiles = new ArrayList<>();
-        ArrayList<ArrayList<Integer>> activeTiles = new ArrayList<>(); // done tiles that generate terrain around them
-        Types.TRIBE[] tileOwner = new Types.TRIBE[mapSize*mapSize];
-
-        for (i = 0; i < capitalCells.size(); i++) {
-            doneTiles.add(i, capitalCells.get(i));
-            ArrayList<Integer> cap = new ArrayList<>();
-            cap.add(capitalCells.get(i));
-            activeTiles.add(i, cap);
+        boolean[] done = new boolean[nTiles];
+        int nDone = 0;
+        int[][] activeTiles = new int[nCapitals][nTiles]; // done tiles that generate terrain around them
+        int[] nActive = new int[nCapitals];
+        Types.TRIBE[] tileOwner = new Types.TRIBE[nTiles];
+
+        for (i = 0; i < nCapitals; i++) {
+            done[capitalCells[i]] = true;
+            nDone++;
+            activeTiles[i][0] = capitalCells[i];
+            nActive[i] = 1;
         }
         // We will start from capital tiles and evenly expand until the whole map is covered
-        while (doneTiles.size() != mapSize*mapSize) {
+        while (nDone != nTiles) {
             for (i = 0; i < tribes.length; i++) {
-                if (!activeTiles.get(i).isEmpty()) {
-                    int randNumber = randomInt(0, activeTiles.get(i).size());
-                    int randCell = activeTiles.get(i).get(randNumber);
+                if (nActive[i] > 0) {
+                    int randNumber = randomInt(0, nActive[i]);
+                    int randCell = activeTiles[i][randNumber];
 
-                    ArrayList<Integer> neighbours = circle(randCell, 1);
+                    int nNeighbours = circle(randCell, 1, ring);
 
-                    ArrayList<Integer> validNeighbours = new ArrayList<>();
-                    for(int n : neighbours){
-                        if(!doneTiles.contains(n) && getTerrain(n) != DEEP_WATER.getMapChar()){
-                            validNeighbours.add(n);
+                    int nValid = 0;
+                    for (int k = 0; k < nNeighbours; k++) {
+                        if (!done[ring[k]] && terrain[ring[k]] != DEEP) {
+                            valid[nValid++] = ring[k];
                         }
                     }
                     // If there are no land tiles around, accept water tiles
-                    if (validNeighbours.isEmpty()) {
-                        for(int n : neighbours){
-                            if(!doneTiles.contains(n)){
-                                validNeighbours.add(n);
+                    if (nValid == 0) {
+                        for (int k = 0; k < nNeighbours; k++) {
+                            if (!done[ring[k]]) {
+                                valid[nValid++] = ring[k];
                             }
                         }
                     }
-                    if (!validNeighbours.isEmpty()) {
-                        int new_rand_number = randomInt(0, validNeighbours.size());
-                        int new_rand_cell = validNeighbours.get(new_rand_number);
+                    if (nValid > 0) {
+                        int new_rand_cell = valid[randomInt(0, nValid)];
                         tileOwner[new_rand_cell] = tribes[i];
-                        activeTiles.get(i).add(new_rand_cell);
-                        doneTiles.add(new_rand_cell);
+                        activeTiles[i][nActive[i]++] = new_rand_cell;
+                        done[new_rand_cell] = true;
+                        nDone++;
                     } else {
-                        activeTiles.get(i).remove(randNumber); // deactivate tiles surrounded with done tiles
+                        // deactivate tiles surrounded with done tiles
+                        System.arraycopy(activeTiles[i], randNumber + 1, activeTiles[i], randNumber, nActive[i] - randNumber - 1);
+                        nActive[i]--;
                     }
                 }
             }
@@ -224,49 +286,43 @@ public class LevelGenerator {
 
         // Generate forest, mountains.
         if (LEVELGEN_VERBOSE) System.out.println("Generate forest, mountains");
-        for (int cell = 0; cell < mapSize*mapSize; cell++) {
-            if (getTerrain(cell) == PLAIN.getMapChar()) {
+        for (int cell = 0; cell < nTiles; cell++) {
+            if (terrain[cell] == GROUND) {
                 double rand = rnd.nextDouble(); // 0 (---forest---)--nothing--(-mountain-) 1
-                if (rand < getBaseProb("FOREST") * getTribeProb("FOREST", tileOwner[cell])) {
-                    writeTile(cell,""+FOREST.getMapChar(), null);
-                } else if (rand > 1 - getBaseProb("MOUNTAIN") * getTribeProb("MOUNTAIN", tileOwner[cell])) {
-                    writeTile(cell,""+MOUNTAIN.getMapChar(), null);
+                if (rand < prob(P_FOREST, tileOwner[cell])) {
+                    setTerrain(cell, WOODS);
+                } else if (rand > 1 - prob(P_MOUNTAIN, tileOwner[cell])) {
+                    setTerrain(cell, PEAK);
                 }
             }
         }
 
-        ArrayList<Integer> villageMap = new ArrayList<Integer>(mapSize*mapSize);
-
-        // Initialize with zeros.
-        for(i = 0; i < mapSize*mapSize; i++) {
-            villageMap.add(0);
-        }
+        int[] villageMap = new int[nTiles];
 
         // -1 - water far away
         // 0 - far away
         // 1 - border expansion
         // 2 - initial territory
         // 3 - village
-        for (int cell = 0; cell < mapSize*mapSize; cell++) {
+        for (int cell = 0; cell < nTiles; cell++) {
             int row = cell / mapSize;
             int column = cell % mapSize;
-            if (getTerrain(cell) == DEEP_WATER.getMapChar() || getTerrain(cell) == MOUNTAIN.getMapChar()) {
-                villageMap.set(cell, -1);
+            if (terrain[cell] == DEEP || terrain[cell] == PEAK) {
+                villageMap[cell] = -1;
             } else if (row == 0 || row == mapSize - 1 || column == 0 || column == mapSize - 1) {
-                villageMap.set(cell, -1); // villages don't spawn next to the map border
-            } else {
-                villageMap.set(cell, 0);
+                villageMap[cell] = -1; // villages don't spawn next to the map border
             }
         }
 
         // Replace some ocean with shallow water
         if (LEVELGEN_VERBOSE) System.out.println("Replace some ocean with shallow water");
-        for (int cell = 0; cell < mapSize*mapSize; cell++) {
-            if (getTerrain(cell) == DEEP_WATER.getMapChar()) {
-                for (int neighbour : crossNeighbors(cell)) {
-                    char terrainN = getTerrain(neighbour);
-                    if(terrainN == PLAIN.getMapChar() || terrainN == FOREST.getMapChar() || terrainN == MOUNTAIN.getMapChar()){
-                        writeTile(neighbour, ""+SHALLOW_WATER.getMapChar(), null);
+        for (int cell = 0; cell < nTiles; cell++) {
+            if (terrain[cell] == DEEP) {
+                int nNeighbours = crossNeighbors(cell, cross);
+                for (int k = 0; k < nNeighbours; k++) {
+                    byte terrainN = terrain[cross[k]];
+                    if(terrainN == GROUND || terrainN == WOODS || terrainN == PEAK){
+                        setTerrain(cross[k], SHALLOW);
                         break;
                     }
                 }
@@ -274,64 +330,55 @@ public class LevelGenerator {
         }
 
         // Mark tiles next to capitals according to the notation
-        int villageCount = 0;
-        for (int capital : capitalCells){
-            villageMap.set(capital, 3);
-            for (int cell : circle(capital, 1)){
-                villageMap.set(cell, Math.max(villageMap.get(cell), 2));
-            }
-            for (int cell : circle(capital, 2)){
-                villageMap.set(cell, Math.max(villageMap.get(cell), 1));
-            }
+        for (i = 0; i < nCapitals; i++){
+            markVillage(villageMap, capitalCells[i]);
         }
 
         // Generate villages & mark tiles next to them
         // We will place villages until there are none of "far away" (villageMap == 0) tiles.
-        while(villageMap.contains(0)) {
-            int new_village = villageMap.indexOf(0);
-            villageMap.set(new_village, 3);
-            for (int cell : circle(new_village, 1)) {
-                villageMap.set(cell, Math.max(villageMap.get(cell), 2));
+        // Marks only go up, so the first far away tile is never before the last one found.
+        int new_village = 0;
+        while (true) {
+            while (new_village < nTiles && villageMap[new_village] != 0) {
+                new_village++;
             }
-            for (int cell : circle(new_village, 2)) {
-                villageMap.set(cell, Math.max(villageMap.get(cell), 1));
+            if (new_village == nTiles) {
+                break;
             }
+            markVillage(villageMap, new_village);
         }
 
         // Generate resources
         if (LEVELGEN_VERBOSE) System.out.println("Generate resources");
-        for (int cell = 0; cell < mapSize*mapSize; cell++) {
-            if(getTerrain(cell) == PLAIN.getMapChar()) {
-                double fruit = getBaseProb("FRUIT") * getTribeProb("FRUIT", tileOwner[cell]);
-                double crop = getBaseProb("CROPS") * getTribeProb("CROPS", tileOwner[cell]);
-                if (getTerrain(cell) != CITY.getMapChar()) {
-                    if (villageMap.get(cell) == 3) {
-                        writeTile(cell, ""+VILLAGE.getMapChar(), null);
-                    } else if (proc(villageMap, cell, fruit * (1 - crop / 2))) {
-                        writeTile(cell, null, ""+FRUIT.getMapChar());
-                    } else if (proc(villageMap, cell, crop * (1 - fruit / 2))) {
-                        writeTile(cell, null, ""+CROPS.getMapChar());
-                    }
+        for (int cell = 0; cell < nTiles; cell++) {
+            byte t = terrain[cell];
+            if(t == GROUND) {
+                double fruit = prob(P_FRUIT, tileOwner[cell]);
+                double crop = prob(P_CROPS, tileOwner[cell]);
+                if (villageMap[cell] == 3) {
+                    setTerrain(cell, HAMLET);
+                } else if (proc(villageMap, cell, fruit * (1 - crop / 2))) {
+                    resource[cell] = (byte) FRUIT.getMapChar();
+                } else if (proc(villageMap, cell, crop * (1 - fruit / 2))) {
+                    resource[cell] = (byte) CROPS.getMapChar();
                 }
-            } else if(getTerrain(cell) == FOREST.getMapChar()) {
-                if (getTerrain(cell) != CITY.getMapChar()) {
-                    if (villageMap.get(cell) == 3) {
-                        writeTile(cell, ""+VILLAGE.getMapChar(), " ");
-                    } else if (proc(villageMap, cell, getBaseProb("ANIMAL") * getTribeProb("ANIMAL", tileOwner[cell]))) {
-                        writeTile(cell, null, ""+ANIMAL.getMapChar());
-                    }
+            } else if(t == WOODS) {
+                if (villageMap[cell] == 3) {
+                    writeTile(cell, HAMLET, BLANK);
+                } else if (proc(villageMap, cell, prob(P_ANIMAL, tileOwner[cell]))) {
+                    resource[cell] = (byte) ANIMAL.getMapChar();
                 }
-            } else if(getTerrain(cell) == SHALLOW_WATER.getMapChar()) {
-                if (proc(villageMap, cell, getBaseProb("FISH") * getTribeProb("FISH", tileOwner[cell]))) {
-                    writeTile(cell, null, ""+FISH.getMapChar());
+            } else if(t == SHALLOW) {
+                if (proc(villageMap, cell, prob(P_FISH, tileOwner[cell]))) {
+                    resource[cell] = (byte) FISH.getMapChar();
                 }
-            } else if(getTerrain(cell) == DEEP_WATER.getMapChar()) {
-                if (proc(villageMap, cell, getBaseProb("WHALES") * getTribeProb("WHALES", tileOwner[cell]))) {
-                    writeTile(cell, null, ""+WHALES.getMapChar());
+            } else if(t == DEEP) {
+                if (proc(villageMap, cell, prob(P_WHALES, tileOwner[cell]))) {
+                    resource[cell] = (byte) WHALES.getMapChar();
                 }
-            } else if(getTerrain(cell) == MOUNTAIN.getMapChar()) {
-                if (proc(villageMap, cell, getBaseProb("ORE") * getTribeProb("ORE", tileOwner[cell]))) {
-                    writeTile(cell, null, ""+ORE.getMapChar());
+            } else if(t == PEAK) {
+                if (proc(villageMap, cell, prob(P_ORE, tileOwner[cell]))) {
+                    resource[cell] = (byte) ORE.getMapChar();
                 }
             }
         }
@@ -339,33 +386,44 @@ public class LevelGenerator {
         // Ruins generation.
         if (LEVELGEN_VERBOSE) System.out.println("Ruins generation");
 
-        int ruins_number = (int) Math.round((mapSize*mapSize)/40.0);
+        int ruins_number = (int) Math.round(nTiles/40.0);
         int water_ruins_number = (int) Math.round(ruins_number/3.0);
         int ruins_count = 0;
         int water_ruins_count = 0;
 
+        // We are reusing villageMap even though it is irrelevant in this context but it has useful info for ruin placement.
+        // Candidates are listed again only when villageMap changes.
+        int[] ruinCandidates = new int[nTiles];
+        int nCandidates = 0;
+        boolean candidatesValid = false;
 
         while (ruins_count < ruins_number) {
 
-            // We are reusing villageMap even though it is irrelevant in this context but it has useful info for ruin placement.
-            ArrayList<Integer> ruinCandidates = new ArrayList<>();
-            for(i=0; i < villageMap.size(); i++) {
-                int cell = villageMap.get(i);
-                if(cell == 0 || cell == 1 || cell == -1) {
-                    ruinCandidates.add(i);
+            if (!candidatesValid) {
+                nCandidates = 0;
+                for (i = 0; i < nTiles; i++) {
+                    int cell = villageMap[i];
+                    if (cell == 0 || cell == 1 || cell == -1) {
+                        ruinCandidates[nCandidates++] = i;
+                    }
                 }
+                candidatesValid = true;
             }
 
-            int ruin = ruinCandidates.get(randomInt(0,ruinCandidates.size()));
-            if (getTerrain(ruin) != SHALLOW_WATER.getMapChar() && (water_ruins_count < water_ruins_number || getTerrain(ruin) != DEEP_WATER.getMapChar())) {
-                writeTile(ruin, null, ""+RUINS.getMapChar());
-                if (getTerrain(ruin) == DEEP_WATER.getMapChar()) {
+            int ruin = ruinCandidates[randomInt(0, nCandidates)];
+            if (terrain[ruin] != SHALLOW && (water_ruins_count < water_ruins_number || terrain[ruin] != DEEP)) {
+                resource[ruin] = (byte) RUINS.getMapChar();
+                if (terrain[ruin] == DEEP) {
                     water_ruins_count++;
                 }
 
                 //This avoids having contiguous ruins and favours dispersion.
-                for (int neighbour : circle(villageMap.get(ruin), 1)) {
-                    villageMap.set(neighbour, Math.max(villageMap.get(neighbour), 2));
+                int nNeighbours = circle(villageMap[ruin], 1, ring);
+                for (int k = 0; k < nNeighbours; k++) {
+                    if (villageMap[ring[k]] < 2) {
+                        villageMap[ring[k]] = 2;
+                        candidatesValid = false;
+                    }
                 }
 
                 ruins_count++;
@@ -374,7 +432,8 @@ public class LevelGenerator {
 
         // Re-adjust starting tiles around capitals
         if (LEVELGEN_VERBOSE) System.out.println("Re-adjust starting tiles around capitals");
-        for(int capital : capitalCells) {
+        for (i = 0; i < nCapitals; i++) {
+            int capital = capitalCells[i];
             int owner = Integer.parseInt(getResource(capital));
 
             if(owner == (char)IMPERIUS.getKey()) {
@@ -385,6 +444,47 @@ public class LevelGenerator {
         }
     }
 
+    /**
+     * Returns the tiles where capitals can be placed: ground tiles at least two tiles away from the map border,
+     * in the iteration order of a HashSet of their indices (the order capitals are picked from).
+     * @return indices of the tiles.
+     */
+    private int[] capitalCandidates() {
+        HashSet<Integer> cells = new HashSet<>();
+        if (tribes.length > 0) {
+            for (int row = 2; row < mapSize - 2; row++) {
+                for (int column = 2; column < mapSize - 2; column++) {
+                    if (terrain[row * mapSize + column] == GROUND) {
+                        cells.add(row * mapSize + column);
+                    }
+                }
+            }
+        }
+        int[] candidates = new int[cells.size()];
+        int c = 0;
+        for (int cell : cells) {
+            candidates[c++] = cell;
+        }
+        return candidates;
+    }
+
+    /**
+     * Marks a village (or capital) and the tiles around it in the village map.
+     * @param villageMap village map (see generate()).
+     * @param village index of the village.
+     */
+    private void markVillage(int[] villageMap, int village) {
+        villageMap[village] = 3;
+        int nNeighbours = circle(village, 1, ring);
+        for (int k = 0; k < nNeighbours; k++) {
+            villageMap[ring[k]] = Math.max(villageMap[ring[k]], 2);
+        }
+        nNeighbours = circle(village, 2, ring);
+        for (int k = 0; k < nNeighbours; k++) {
+            villageMap[ring[k]] = Math.max(villageMap[ring[k]], 1);
+        }
+    }
+
     /**
      * Counts the instances of a resource that exists on the starting tiles that surround a capital.
      * @param resource the resource to be counted.
@@ -393,9 +493,9 @@ public class LevelGenerator {
      */
     public int checkResources(char resource, int capital) {
         int resources = 0;
-        for (int neighbour : circle(capital, 1)) {
-            String resourceStr = getResource(neighbour);
-            if(!resourceStr.isEmpty() && resourceStr.charAt(0) == resource){
+        int nNeighbours = circle(capital, 1, ring);
+        for (int k = 0; k < nNeighbours; k++) {
+            if(this.resource[ring[k]] == (byte) resource){
                 resources++;
             }
         }
@@ -413,21 +513,49 @@ public class LevelGenerator {
         int resources = checkResources(resource, capital);
         while (resources < quantity) {
             int pos = randomInt(0, 8);
-            ArrayList<Integer> territory = circle(capital, 1);
-            writeTile(territory.get(pos), ""+terrain, ""+resource);
-            for (int neighbour : crossNeighbors(territory.get(pos))) {
-                if (getTerrain(neighbour) == DEEP_WATER.getMapChar()) {
-                    writeTile(neighbour, ""+SHALLOW_WATER.getMapChar(), null);
+            circle(capital, 1, ring);
+            int tile = ring[pos];
+            writeTile(tile, (byte) terrain, (byte) resource);
+            int nNeighbours = crossNeighbors(tile, cross);
+            for (int k = 0; k < nNeighbours; k++) {
+                if (this.terrain[cross[k]] == DEEP) {
+                    setTerrain(cross[k], SHALLOW);
                 }
             }
             resources = checkResources(resource, capital);
         }
     }
+
     /**
      * Utility function used in the generator.
      */
-    public boolean proc(ArrayList<Integer> villageMap, int cell, double probability) {
-        return (villageMap.get(cell) == 2 && rnd.nextDouble() < probability) || (villageMap.get(cell) == 1 && rnd.nextDouble() < probability * BORDER_EXPANSION);
+    private boolean proc(int[] villageMap, int cell, double probability) {
+        return (villageMap[cell] == 2 && rnd.nextDouble() < probability) || (villageMap[cell] == 1 && rnd.nextDouble() < probability * BORDER_EXPANSION);
+    }
+
+    /**
+     * Probability of a terrain or resource in a tile.
+     * @param name index of the terrain or resource in PROB_NAMES.
+     * @param tribe tribe the tile belongs to, or null.
+     * @return getBaseProb(name) * getTribeProb(name, tribe).
+     */
+    private static double prob(int name, Types.TRIBE tribe) {
+        return probs[name][tribe == null ? 0 : tribe.ordinal() + 1];
+    }
+
+    private static double[][] computeProbs() {
+        if (data == null) {
+            return null;
+        }
+        double[][] p = new double[PROB_NAMES.length][Types.TRIBE.values().length + 1];
+        for (int i = 0; i < PROB_NAMES.length; i++) {
+            double base = data.getJSONObject(PROB_NAMES[i]).getDouble("BASE");
+            p[i][0] = base * 1.0;
+            for (Types.TRIBE tribe : Types.TRIBE.values()) {
+                p[i][tribe.ordinal() + 1] = base * data.getJSONObject(PROB_NAMES[i]).getDouble(tribe.toString());
+            }
+        }
+        return p;
     }
 
     /**
@@ -459,13 +587,20 @@ public class LevelGenerator {
      * @param terrain the desired type of terrain.
      * @param resource the desired type of resource.
      */
-    public void writeTile(int index, String terrain, String resource) {
-        if(terrain == null) {
-            level[index] = "" + getTerrain(index) + ':' + resource;
-        }else if(resource == null) {
-            level[index] = terrain + ':' + getResource(index);
-        }else {
-            level[index] = terrain + ':' + resource;
+    private void writeTile(int index, byte terrain, byte resource) {
+        this.terrain[index] = terrain;
+        this.resource[index] = resource;
+    }
+
+    /**
+     * Writes the terrain of a tile, keeping its resource.
+     * @param index the index of the tile that needs to be written.
+     * @param terrain the desired type of terrain.
+     */
+    private void setTerrain(int index, byte terrain) {
+        this.terrain[index] = terrain;
+        if(resource[index] == BLANK) {
+            resource[index] = NO_RESOURCE;
         }
     }
 
@@ -475,31 +610,38 @@ public class LevelGenerator {
      * @return the character that represents the specific terrain (consult TERRAIN enum).
      */
     public char getTerrain(int index) {
-        return level[index].split(":")[0].charAt(0);
+        return (char) terrain[index];
     }
 
-
-//    public char getResource(int index) {
-//        return level[index].split(":")[1].charAt(0);
-////        try {
-////            return level[index].split(":")[1].charAt(0);
-////        } catch(Exception e) {
-////            return '';
-////        }
-//    }
     /**
      * Returns a tile's resource at a specified position.
      * @param index the desired position.
-     * @return the character that represents the specific resource (consult RESOURCE enum).
+     * @return the character that represents the specific resource (consult RESOURCE enum), or the key of the tribe
+     * for cities.
      */
     public String getResource(int index)
     {
-        String[] pieces = level[index].split(":");
-        if(pieces.length > 1)
-            if(pieces[1].charAt(0) == ' ')
-                return "";
-            else return pieces[1];
-        else return "";
+        byte r = resource[index];
+        if(r == NO_RESOURCE || r == BLANK)
+            return "";
+        else if(r < 0)
+            return String.valueOf(-r - 1);
+        else return String.valueOf((char) r);
+    }
+
+    /**
+     * Appends a tile of the level, in the format of level files.
+     * @param sb string to append to.
+     * @param index index of the tile.
+     */
+    private void appendTile(StringBuilder sb, int index)
+    {
+        sb.append((char) terrain[index]).append(':');
+        byte r = resource[index];
+        if(r < 0)
+            sb.append(-r - 1);
+        else if(r != NO_RESOURCE)
+            sb.append((char) r);
     }
 
     /**
@@ -513,20 +655,21 @@ public class LevelGenerator {
     }
 
     /**
-     * Returns the indices of the map that lie on a circle.
+     * Finds the indices of the map that lie on a circle.
      * @param center center of the circle.
      * @param radius radius of the circle.
-     * @return an ArrayList of indices.
+     * @param circle array where the indices are written, of size 8 * radius at least.
+     * @return the number of indices written.
      */
-    public ArrayList<Integer> circle(int center, int radius) {
-        ArrayList<Integer> circle = new ArrayList<>();
+    private int circle(int center, int radius, int[] circle) {
+        int n = 0;
         int row = center / mapSize;
         int column = center % mapSize;
         int i = row - radius;
         if (i >= 0 && i < mapSize) {
             for (int j = column - radius; j < column + radius; j++) {
                 if (j >= 0 && j < mapSize) {
-                    circle.add(i * mapSize + j);
+                    circle[n++] = i * mapSize + j;
                 }
             }
         }
@@ -534,7 +677,7 @@ public class LevelGenerator {
         if (i >= 0 && i < mapSize) {
             for (int j = column + radius; j > column - radius; j--) {
                 if (j >= 0 && j < mapSize) {
-                    circle.add(i * mapSize + j);
+                    circle[n++] = i * mapSize + j;
                 }
             }
         }
@@ -542,7 +685,7 @@ public class LevelGenerator {
         if (j >= 0 && j < mapSize) {
             for (i = row + radius; i > row - radius; i--) {
                 if (i >= 0 && i < mapSize) {
-                    circle.add(i * mapSize + j);
+                    circle[n++] = i * mapSize + j;
                 }
             }
         }
@@ -550,50 +693,36 @@ public class LevelGenerator {
         if (j >= 0 && j < mapSize) {
             for (i = row - radius; i < row + radius; i++) {
                 if (i >= 0 && i < mapSize) {
-                    circle.add(i * mapSize + j);
+                    circle[n++] = i * mapSize + j;
                 }
             }
         }
-        return circle;
+        return n;
     }
 
     /**
-     * Returns the indices of the map that lie on and inside a circle including the center.
-     * @param center center of the circle.
-     * @param radius radius of the circle.
-     * @return an ArrayList of indices.
-     */
-    public ArrayList<Integer> disk(int center, int radius) {
-        ArrayList<Integer> round = new ArrayList<>();
-        for (int r = 1; r <= radius; r++) {
-            round.addAll(circle(center, r));
-        }
-        round.add(center);
-        return round;
-    }
-
-    /**
-     * Returns the indices of the map that lie on the cross pattern.
+     * Finds the indices of the map that lie on the cross pattern.
      * @param center center of the cross.
-     * @return an ArrayList of indices.
+     * @param plus_sign array where the indices are written, of size 4 at least.
+     * @return the number of indices written.
      */
-    public ArrayList<Integer> crossNeighbors(int center) {
-        ArrayList<Integer> plus_sign = new ArrayList<>();
+    private int crossNeighbors(int center, int[] plus_sign) {
+        int n = 0;
         int row = center / mapSize;
         int column = center % mapSize;
         if (column > 0) {
-            plus_sign.add(center - 1);
+            plus_sign[n++] = center - 1;
         }
         if (column < mapSize - 1) {
-            plus_sign.add(center + 1);
+            plus_sign[n++] = center + 1;
         }
         if (row > 0) {
-            plus_sign.add(center - mapSize);
+            plus_sign[n++] = center - mapSize;
         }
         if (row < mapSize - 1) {
-            plus_sign.add(center + mapSize);
+            plus_sign[n++] = center + mapSize;
         }
-        return plus_sign;
+        return n;
     }
 
     // we use pythagorean distances
@@ -612,20 +741,7 @@ public class LevelGenerator {
     public void toCSV(String filename) {
         try {
             FileWriter writer = new FileWriter(filename);
-            writer.append(level[0]);
-            writer.append(',');
-            for(int i = 1; i < mapSize*mapSize; i++) {
-                if(i % mapSize == 0) {
-                    writer.append('\n');
-                    writer.append(level[i]);
-                    writer.append(',');
-                } else if(i % mapSize == mapSize - 1) {
-                    writer.append(level[i]);
-                }else {
-                    writer.append(level[i]);
-                    writer.append(',');
-                }
-            }
+            writer.append(String.join("\n", gelLevelLines()));
             writer.flush();
             writer.close();
         } catch (Exception e) {
@@ -637,22 +753,7 @@ public class LevelGenerator {
      * Prints the generated level in console.
      */
     public void print() {
-        StringBuffer writer = new StringBuffer();
-        writer.append(level[0]);
-        writer.append(',');
-        for (int i = 1; i < mapSize * mapSize; i++) {
-            if (i % mapSize == 0) {
-                writer.append('\n');
-                writer.append(level[i]);
-                writer.append(',');
-            } else if (i % mapSize == mapSize - 1) {
-                writer.append(level[i]);
-            } else {
-                writer.append(level[i]);
-                writer.append(',');
-            }
-        }
-        System.out.println(writer);
+        System.out.println(String.join("\n", gelLevelLines()));
     }
 
     /**
@@ -661,21 +762,16 @@ public class LevelGenerator {
     public String[] gelLevelLines()
     {
         String[] allLines = new String[mapSize];
-        int lineCounter = 0;
-
-        StringBuffer line = new StringBuffer();
-        line.append(level[0]);
-        line.append(',');
-        for (int i = 1; i < mapSize * mapSize; i++) {
-            if (i % mapSize == mapSize - 1) {
-                line.append(level[i]);
-                allLines[lineCounter] = line.toString();
-                lineCounter++;
-                line = new StringBuffer();
-            } else {
-                line.append(level[i]);
-                line.append(',');
+        StringBuilder line = new StringBuilder(mapSize * 4);
+        for (int row = 0; row < mapSize; row++) {
+            line.setLength(0);
+            for (int column = 0; column < mapSize; column++) {
+                if (column > 0) {
+                    line.append(',');
+                }
+                appendTile(line, row * mapSize + column);
             }
+            allLines[row] = line.toString();
         }
         return allLines;
     }
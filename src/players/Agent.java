@@ -37,6 +37,17 @@ public abstract class Agent {
      */
     public void result(GameState gs, double reward) {}
 
+    /**
+     * Indicates if this agent must receive its own copy of the game state in act(). Agents that only read the game
+     * state they receive during act(), and don't use information of other tribes that copies for a player hide
+     * (their stars, technologies, etc.), can return false. They then receive a view of the game state, which is
+     * only copied if it's modified (see GameState.view()).
+     * @return true if act() must receive a copy of the game state.
+     */
+    public boolean needsObservationCopy() {
+        return true;
+    }
+
     /**
      * Getter for player ID field.
      * @return - this player's ID.
@@ -100,7 +111,7 @@ public abstract class Agent {
         for(Action act : unitActions)
             if(!(act.getActionType() == Types.ACTION.DISBAND))
                 unitGoodActions.add(act);
-        if(!unitActions.isEmpty()) availableTypes.add(ACTION_TYPE.UNIT);
+        if(!unitGoodActions.isEmpty()) availableTypes.add(ACTION_TYPE.UNIT);
 
         ArrayList<Action> tribeActions = gs.getTribeActions();
         if(tribeActions.size() > 1) availableTypes.add(ACTION_TYPE.TRIBE); //>1, we need to have something else than EndTurn only.
@@ -0,0 +1,107 @@
+package players;
+
+import core.game.GameState;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Creates and evaluates the individuals of a population for the evolutionary agents (RHEA, OEP), with one or more
+ * threads. Each individual is built by a task from a game state and a random generator of its own, seeded from the
+ * caller's in the order of the tasks:
+ *   - With 1 thread, the tasks run one after the other in the caller's thread, on the state given.
+ *   - With more threads (run in SearchThreads), each thread works on its own copy of the state and takes the next
+ *     task left until there are none.
+ * The work that uses the caller's random generator for the whole population (e.g. selecting the parents) is done
+ * when preparing the tasks, always in the caller's thread and in order. Tasks that only use their own random generator
+ * (also for the random events of the states they simulate, see GameState.copy(Random)) build the same individuals
+ * whatever the number of threads and whichever thread runs them.
+ */
+public class PopulationEvaluator
+{
+    /**
+     * Builds one individual of the population.
+     */
+    public interface Task<T>
+    {
+        /**
+         * @param gs game state to build the individual from. It's shared by the tasks of the same thread, so it must
+         *           be copied, not modified.
+         * @param rnd random generator for this task, only used by it.
+         * @return the individual.
+         */
+        T run(GameState gs, Random rnd);
+    }
+
+    private final int nThreads;
+
+    /**
+     * @param nThreads number of threads that run the tasks.
+     */
+    public PopulationEvaluator(int nThreads)
+    {
+        this.nThreads = nThreads;
+    }
+
+    /**
+     * Runs n tasks.
+     * @param gs game state the individuals are built from.
+     * @param n number of tasks.
+     * @param prepare creates task i, in the caller's thread and in order.
+     * @param rnd caller's random generator.
+     * @return the individuals built, in the order of the tasks.
+     */
+    public <T> ArrayList<T> run(GameState gs, int n, IntFunction<Task<T>> prepare, Random rnd)
+    {
+        ArrayList<T> results = new ArrayList<>(n);
+        if(nThreads <= 1 || n <= 1)
+        {
+            for (int i = 0; i < n; i++) {
+                Task<T> task = prepare.apply(i);
+                results.add(task.run(gs, new Random(rnd.nextLong())));
+            }
+            return results;
+        }
+
+        ArrayList<Task<T>> tasks = new ArrayList<>(n);
+        long[] seeds = new long[n];
+        for (int i = 0; i < n; i++) {
+            tasks.add(prepare.apply(i));
+            seeds[i] = rnd.nextLong();
+        }
+
+        //Threads take the next task left until there are none.
+        Object[] built = new Object[n];
+        AtomicInteger next = new AtomicInteger();
+        ArrayList<Future<?>> workers = new ArrayList<>();
+        for (int w = 0; w < Math.min(nThreads, n); w++) {
+            //Copying a state changes its copy-on-write bookkeeping: copies for the threads are made here.
+            GameState state = gs.copy();
+            workers.add(SearchThreads.submit(() -> {
+                int i;
+                while ((i = next.getAndIncrement()) < n)
+                    built[i] = tasks.get(i).run(state, new Random(seeds[i]));
+            }));
+        }
+        try {
+            for (Future<?> f : workers)
+                f.get();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+
+        for (Object individual : built) {
+            @SuppressWarnings("unchecked")
+            T t = (T) individual;
+            results.add(t);
+        }
+        return results;
+    }
+
+    public int getNumThreads() {
+        return nThreads;
+    }
+}
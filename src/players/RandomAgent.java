@@ -31,4 +31,9 @@ public class RandomAgent extends Agent {
     public Agent copy() {
         return null;
     }
+
+    @Override
+    public boolean needsObservationCopy() {
+        return false; //The game state is only read to pick an action.
+    }
 }
@@ -0,0 +1,34 @@
+package players;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads shared by all the agents that search with more than one thread. A thread is created when there's no idle
+ * one to run a task, and dies after a minute idle, so agents don't need to release threads when their games are over.
+ * Threads are daemon threads, so they never keep the program running.
+ */
+public final class SearchThreads
+{
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    private static final ExecutorService pool = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "search-" + threadCount.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    private SearchThreads() {}
+
+    /**
+     * Runs a task in one of the shared threads.
+     * @param task task to run.
+     * @return future to wait for the task.
+     */
+    public static Future<?> submit(Runnable task)
+    {
+        return pool.submit(task);
+    }
+}
@@ -46,6 +46,11 @@ public class SimpleAgent extends Agent {
         return new SimpleAgent(seed);
     }
 
+    @Override
+    public boolean needsObservationCopy() {
+        return false; //The game state is only read to rank the actions.
+    }
+
     @Override
     public Action act(GameState gs, ElapsedCpuTimer ect) {
         //Gather all available actions:
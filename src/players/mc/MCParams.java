@@ -6,4 +6,7 @@ public class MCParams extends AlgParams
 {
     public int ROLLOUT_LENGTH = 20;
     public int N_ROLLOUT_MULT = 3;
+
+    // Parallel rollouts. With more than 1 thread, the budget (stop_type) is shared by all threads.
+    public int NUM_THREADS = 1;
 }
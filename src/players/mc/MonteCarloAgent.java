@@ -6,21 +6,29 @@ import core.actions.tribeactions.EndTurn;
 import core.actors.Tribe;
 import core.game.GameState;
 import players.Agent;
+import players.SearchThreads;
 import players.heuristics.StateHeuristic;
 import utils.ElapsedCpuTimer;
 import utils.stats.StatSummary;
 
 import java.util.ArrayList;
 import java.util.Random;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
 
 public class MonteCarloAgent extends Agent {
 
+    //With a time budget, rollouts stop when fewer than these milliseconds are left.
+    private static final int REMAINING_LIMIT = 5;
+
     private Random m_rnd;
     private MCParams params;
     private StateHeuristic heuristic;
     private int lastTurn;
     private int actionTurnCounter;
-    private int fmCalls;
+    private AtomicInteger fmCalls = new AtomicInteger();
 
     public MonteCarloAgent(long seed, MCParams params)
     {
@@ -52,7 +60,7 @@ public class MonteCarloAgent extends Agent {
         if(numActions == 1)
             return allActions.get(0); //EndTurn, it's possible.
 
-        fmCalls = 0;
+        fmCalls.set(0);
         boolean end = false;
 
         //Take one type of action at random. With Prioritize Root == true, we focus only on one subset of actions for the root (see determineActionGroup)
@@ -63,27 +71,25 @@ public class MonteCarloAgent extends Agent {
 
 
         params.num_iterations = rootActions.size() * params.N_ROLLOUT_MULT;
+        if(params.NUM_THREADS > 1)
+            return parallelRollouts(gs, rootActions, ect);
+
         StatSummary[] scores = new StatSummary[rootActions.size()];
 
         Action bestAction = null;
         double maxQ = Double.NEGATIVE_INFINITY;
         int nRollouts = 0;
+        double acumTimeTaken = 0;
         while (!end)
         {
-            int rootActionIndex = m_rnd.nextInt(rootActions.size());
+            long rolloutStart = System.nanoTime();
+            int rootActionIndex = randomRootAction(rootActions, m_rnd);
             Action act = rootActions.get(rootActionIndex);
 
-            //Let's avoid unwanted EndTurn actions
-            while(act.getActionType() == Types.ACTION.END_TURN)
-            {
-                rootActionIndex = m_rnd.nextInt(rootActions.size());
-                act = rootActions.get(rootActionIndex);
-            }
-
 //            System.out.println("----- " + gs.getTick() + ":" + actionTurnCounter + ":" + nRollouts + " ------ " + gs.getActiveTribeID());
 
             //Another rollout
-            double score = rollout(gs, act);
+            double score = rollout(gs, act, m_rnd);
             nRollouts++;
 
             //Update scores and keep a reference to the action with the highest average.
@@ -98,10 +104,16 @@ public class MonteCarloAgent extends Agent {
             }
 
             //Stop conditions:
-            if(params.stop_type == params.STOP_FMCALLS && fmCalls >= params.num_fmcalls)
+            if(params.stop_type == params.STOP_FMCALLS && fmCalls.get() >= params.num_fmcalls)
                 end = true;
             if(params.stop_type == params.STOP_ITERATIONS && nRollouts >= params.num_iterations)
                 end = true;
+            if(params.stop_type == params.STOP_TIME)
+            {
+                acumTimeTaken += (System.nanoTime() - rolloutStart) / 1000000.0;
+                long remaining = ect.remainingTimeMillis();
+                end = remaining <= 2 * acumTimeTaken / nRollouts || remaining <= REMAINING_LIMIT;
+            }
         }
 
 //        System.out.println("[Tribe: " + playerID + "] Tick " +  gs.getTick() + ", num actions: " + rootActions.size() +
@@ -112,15 +124,117 @@ public class MonteCarloAgent extends Agent {
     }
 
 
+    /**
+     * Runs the rollouts with params.NUM_THREADS threads. Each thread plays its own rollouts, from its own copy of the
+     * game state and with its own random generator (seeded from this agent's), and adds their scores up to the
+     * statistics of the root actions. The search budget is shared by all threads, which run in SearchThreads.
+     * @param gs current game state.
+     * @param rootActions actions the rollouts start with.
+     * @param ect timer with the time left for this turn.
+     * @return the root action with the highest average score.
+     */
+    private Action parallelRollouts(GameState gs, ArrayList<Action> rootActions, ElapsedCpuTimer ect)
+    {
+        int nThreads = params.NUM_THREADS;
+        //The timer measures the CPU time of this thread, which waits for the rollouts: give workers a wall-clock deadline.
+        long deadline = System.nanoTime() + ect.remainingTimeMillis() * 1000000L;
+        AtomicInteger nRollouts = new AtomicInteger();
+        DoubleAdder[] scores = new DoubleAdder[rootActions.size()];
+        LongAdder[] visits = new LongAdder[rootActions.size()];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = new DoubleAdder();
+            visits[i] = new LongAdder();
+        }
+
+        ArrayList<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < nThreads; i++) {
+            Random rnd = new Random(m_rnd.nextLong());
+            GameState state = gs.copy();
+            workers.add(SearchThreads.submit(() -> rollouts(state, rootActions, rnd, deadline, nRollouts, scores, visits)));
+        }
+        try {
+            for (Future<?> f : workers)
+                f.get();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+
+        Action bestAction = null;
+        double maxQ = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < scores.length; i++) {
+            long n = visits[i].sum();
+            if(n > 0 && scores[i].sum() / n > maxQ)
+            {
+                maxQ = scores[i].sum() / n;
+                bestAction = rootActions.get(i);
+            }
+        }
+        return bestAction;
+    }
+
+    /**
+     * Plays rollouts in a worker thread until the budget, shared with the other threads, runs out.
+     * @param gs this thread's copy of the current game state.
+     * @param rootActions actions the rollouts start with.
+     * @param rnd this thread's random generator.
+     * @param deadline System.nanoTime() at which the time budget runs out.
+     * @param nRollouts rollouts played by all threads.
+     * @param scores sum of the scores of the rollouts started with each root action.
+     * @param visits number of rollouts started with each root action.
+     */
+    private void rollouts(GameState gs, ArrayList<Action> rootActions, Random rnd, long deadline,
+                          AtomicInteger nRollouts, DoubleAdder[] scores, LongAdder[] visits)
+    {
+        double acumTimeTaken = 0;
+        int numRollouts = 0;
+        boolean end = false;
+        while(!end)
+        {
+            long rolloutStart = System.nanoTime();
+            int rootActionIndex = randomRootAction(rootActions, rnd);
+            double score = rollout(gs, rootActions.get(rootActionIndex), rnd);
+            scores[rootActionIndex].add(score);
+            visits[rootActionIndex].increment();
+            numRollouts++;
+            int totalRollouts = nRollouts.incrementAndGet();
+
+            //Stop conditions:
+            if(params.stop_type == params.STOP_FMCALLS)
+                end = fmCalls.get() >= params.num_fmcalls;
+            else if(params.stop_type == params.STOP_ITERATIONS)
+                end = totalRollouts >= params.num_iterations;
+            else if(params.stop_type == params.STOP_TIME)
+            {
+                acumTimeTaken += (System.nanoTime() - rolloutStart) / 1000000.0;
+                double remaining = (deadline - System.nanoTime()) / 1000000.0;
+                end = remaining <= 2 * acumTimeTaken / numRollouts || remaining <= REMAINING_LIMIT;
+            }
+        }
+    }
+
+    /**
+     * Picks a root action at random to start a rollout with, avoiding unwanted EndTurn actions.
+     * @return index of the action in rootActions.
+     */
+    private int randomRootAction(ArrayList<Action> rootActions, Random rnd)
+    {
+        int rootActionIndex;
+        do {
+            rootActionIndex = rnd.nextInt(rootActions.size());
+        } while(rootActions.get(rootActionIndex).getActionType() == Types.ACTION.END_TURN);
+        return rootActionIndex;
+    }
+
     /**
      * Executes a Monte Carlo rollout.
      * @param gs current game state (a copy)
      * @param act action to start the rollout with.
+     * @param rnd random generator for the actions of the rollout.
      * @return the score of the state found at the end of the rollout, as evaluated by a heuristic
      */
-    private double rollout(GameState gs, Action act)
+    private double rollout(GameState gs, Action act, Random rnd)
     {
-        GameState gsCopy = copyGameState(gs);
+        GameState gsCopy = copyGameState(gs, rnd);
         boolean end = false;
         int step = 0;
         int turnEndCountDown = params.FORCE_TURN_END; // We force an EndTurn action every FORCE_TURN_END actions in the rollout.
@@ -156,7 +270,7 @@ public class MonteCarloAgent extends Agent {
             end = gsCopy.isGameOver() || (step == params.ROLLOUT_LENGTH);
 
             // ... or 3) we have no more thinking time available (agent's budget)
-            boolean budgetOver = (params.stop_type == params.STOP_FMCALLS && fmCalls >= params.num_fmcalls);
+            boolean budgetOver = (params.stop_type == params.STOP_FMCALLS && fmCalls.get() >= params.num_fmcalls);
             end |= budgetOver;
 
             if(!end)
@@ -176,7 +290,7 @@ public class MonteCarloAgent extends Agent {
                 {
                     //If there are many actions, we select the next action for the rollout at random, avoiding EndTurn.
                     do {
-                        int actIdx = m_rnd.nextInt(numActions);
+                        int actIdx = rnd.nextInt(numActions);
                         act = allActions.get(actIdx);
 
                     }  while(act.getActionType() == Types.ACTION.END_TURN);
@@ -197,15 +311,16 @@ public class MonteCarloAgent extends Agent {
     private void advance(GameState gs, Action act, boolean computeActions)
     {
         gs.advance(act, computeActions);
-        fmCalls++;
+        fmCalls.incrementAndGet();
     }
 
     /**
      * The technology trees of the opponents are always empty (no technology is researched).
      * As a simple case of gamestate injection, we research N technologies (N=turn/2) for them
      * @param gs current game state.
+     * @param rnd random generator to pick the technologies.
      */
-    private void initTribesResearch(GameState gs)
+    private void initTribesResearch(GameState gs, Random rnd)
     {
         int turn = gs.getTick();
         int techsToResearch = (int) (turn / 2.0);
@@ -214,15 +329,20 @@ public class MonteCarloAgent extends Agent {
             if(t.getTribeId() != this.playerID)
             {
                 for(int i = 0; i < techsToResearch; ++i)
-                    t.getTechTree().researchAtRandom(this.m_rnd);
+                    t.getTechTree().researchAtRandom(rnd);
             }
         }
     }
 
     public GameState copyGameState(GameState gs)
+    {
+        return copyGameState(gs, m_rnd);
+    }
+
+    private GameState copyGameState(GameState gs, Random rnd)
     {
         GameState gsCopy = gs.copy();
-        initTribesResearch(gsCopy);
+        initTribesResearch(gsCopy, rnd);
         return gsCopy;
     }
 
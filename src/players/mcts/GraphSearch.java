@@ -0,0 +1,416 @@
+package players.mcts;
+
+import core.actions.Action;
+import core.actions.tribeactions.EndTurn;
+import core.game.GameState;
+import players.heuristics.StateHeuristic;
+import utils.ElapsedCpuTimer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import static core.Types.ACTION.END_TURN;
+
+/**
+ * Monte Carlo Graph Search (MCGS): MCTS on a directed acyclic graph of game states instead of a tree. Nodes are
+ * indexed by the hash of their game state (see GameState.getHash()), so the states reached by playing the same
+ * actions in a different order (e.g. moving unit A and then B, or B and then A) are a single node with all the
+ * statistics of both paths, instead of one subtree per permutation.
+ *
+ * Each node keeps its visits and value, and each edge (action) the number of times it was followed. Selection uses
+ * the value of the child node and the visits of the edge. As a node can be reached through several edges, an edge
+ * may have been followed fewer times than its child has been visited: in that case, the iteration stops at the
+ * child and backs up the child's value instead of rolling out again, so that the edge catches up with what is
+ * already known about the state (Czech et al., "Improving AlphaZero Using Monte-Carlo Graph Search", 2021).
+ * Results are backed up along the path followed by the iteration.
+ */
+class GraphSearch
+{
+    private MCTSParams params;
+    private Random m_rnd;
+    private int playerID;
+    private StateHeuristic rootStateHeuristic;
+
+    private GameState rootState;
+    private Node root;
+
+    //All nodes of the graph but the root, indexed by the hash of their game state.
+    private HashMap<Long, Node> nodes = new HashMap<>();
+
+    private int fmCallsCount;
+    private int iterations;
+    private int transpositionHits;
+
+    //Nodes and edges followed by the current iteration, from the root.
+    private ArrayList<Node> path = new ArrayList<>();
+    private ArrayList<Integer> pathActions = new ArrayList<>();
+
+    /**
+     * Creates the search.
+     * @param p parameters of the search.
+     * @param rnd random generator.
+     * @param playerID id of the player searching.
+     * @param allIDs ids of all players.
+     * @param gs game state at the root, which is not modified.
+     * @param rootActions actions available at the root.
+     */
+    GraphSearch(MCTSParams p, Random rnd, int playerID, ArrayList<Integer> allIDs, GameState gs, ArrayList<Action> rootActions)
+    {
+        this.params = p;
+        this.m_rnd = rnd;
+        this.playerID = playerID;
+        this.rootState = gs;
+        this.rootStateHeuristic = params.getStateHeuristic(playerID, allIDs);
+        this.root = new Node(gs, rootActions);
+    }
+
+    /**
+     * Runs iterations until the budget given by params.stop_type is spent.
+     * @param elapsedTimer timer with the time left for this decision.
+     */
+    void search(ElapsedCpuTimer elapsedTimer)
+    {
+        double avgTimeTaken;
+        double acumTimeTaken = 0;
+        long remaining;
+
+        int remainingLimit = 5;
+        boolean stop = false;
+
+        while(!stop){
+            ElapsedCpuTimer elapsedTimerIteration = new ElapsedCpuTimer();
+            iteration();
+            iterations++;
+
+            //Stopping condition
+            if(params.stop_type == params.STOP_TIME) {
+                acumTimeTaken += (elapsedTimerIteration.elapsedMillis()) ;
+                avgTimeTaken  = acumTimeTaken/iterations;
+                remaining = elapsedTimer.remainingTimeMillis();
+                stop = remaining <= 2 * avgTimeTaken || remaining <= remainingLimit;
+            }else if(params.stop_type == params.STOP_ITERATIONS) {
+                stop = iterations >= params.num_iterations;
+            }else if(params.stop_type == params.STOP_FMCALLS)
+            {
+                stop = fmCallsCount > params.num_fmcalls;
+            }
+        }
+    }
+
+    /**
+     * Runs one iteration: selects a path from the root, expands a new edge (or stops at a state that is already
+     * better known than the edge leading to it), evaluates the last node and backs up the value along the path.
+     */
+    private void iteration()
+    {
+        path.clear();
+        pathActions.clear();
+        path.add(root);
+
+        Node cur = root;
+        int depth = 0;
+        double value;
+        boolean updateLast = true;
+
+        while(true)
+        {
+            if(cur.state.isGameOver() || depth >= params.ROLLOUT_LENGTH)
+            {
+                value = rollOut(cur, depth);
+                break;
+            }
+
+            int action = tryForceEnd(cur.state, depth);
+            boolean expanded = false;
+            if(action == -1)
+                action = cur.notFullyExpanded() ? cur.unexpandedAction(m_rnd) : uct(cur);
+
+            Node child = cur.children[action];
+            if(child == null)
+            {
+                child = expand(cur, action);
+                expanded = true;
+            }else
+            {
+                fmCallsCount++; //Selection steps count as in SingleTreeNode.uct().
+            }
+
+            pathActions.add(action);
+            depth++;
+
+            if(path.contains(child))
+            {
+                //The action leads back to a state in this path. Evaluate the state, without adding a cycle to it.
+                value = rollOut(child, depth);
+                break;
+            }
+            path.add(child);
+
+            if(child.nVisits > cur.edgeVisits[action])
+            {
+                //Transposition: the child was reached through other edges more often than through this one.
+                // Back up what is known about it instead of searching it again.
+                value = child.totValue / child.nVisits;
+                transpositionHits++;
+                updateLast = false;
+                break;
+            }
+
+            if(expanded)
+            {
+                value = rollOut(child, depth);
+                break;
+            }
+            cur = child;
+        }
+
+        backUp(value, updateLast);
+    }
+
+    /**
+     * Creates the node reached by an action from a node, or links the node to the existing one for that state.
+     * @param from node the action is played from.
+     * @param action index of the action in the actions of the node.
+     * @return the child.
+     */
+    private Node expand(Node from, int action)
+    {
+        GameState nextState = from.state.copy();
+        nextState.advance(from.actions.get(action), true);
+        fmCallsCount++;
+
+        long hash = nextState.getHash();
+        Node child = nodes.get(hash);
+        if(child == null)
+        {
+            child = new Node(nextState, nextState.getAllAvailableActions());
+            nodes.put(hash, child);
+        }
+        from.children[action] = child;
+        return child;
+    }
+
+    /**
+     * Picks the action to follow from a fully expanded node with UCT. The value of each action is the one of the
+     * state it leads to, while exploration is given by the times the action was followed from this node.
+     * @param node node to pick the action from.
+     * @return index of the action.
+     */
+    private int uct(Node node)
+    {
+        boolean IamMoving = (node.state.getActiveTribeID() == this.playerID);
+        int which = -1;
+        double bestValue = IamMoving ? -Double.MAX_VALUE : Double.MAX_VALUE;
+        for (int i = 0; i < node.children.length; ++i)
+        {
+            Node child = node.children[i];
+            double childValue = child.totValue / (child.nVisits + params.epsilon);
+            childValue = normalise(childValue, node.bounds[0], node.bounds[1]);
+
+            double uctValue = childValue +
+                    params.K * Math.sqrt(Math.log(node.nVisits + 1) / (node.edgeVisits[i] + params.epsilon));
+            uctValue = noise(uctValue, params.epsilon, this.m_rnd.nextDouble());     //break ties randomly
+
+            if ((IamMoving && uctValue > bestValue) || (!IamMoving && uctValue < bestValue)) {
+                which = i;
+                bestValue = uctValue;
+            }
+        }
+
+        if(which == -1)
+            which = m_rnd.nextInt(node.children.length);
+        return which;
+    }
+
+    /**
+     * Returns the index of the EndTurn action if the turn must be forced to end at this depth (params.FORCE_TURN_END).
+     * @param state state of the node.
+     * @param depth depth of the node in the current path.
+     * @return the index of EndTurn, or -1 if the turn doesn't end here.
+     */
+    private int tryForceEnd(GameState state, int depth)
+    {
+        boolean willForceEnd = (depth > 0 && (depth % params.FORCE_TURN_END) == 0) &&
+                new EndTurn(state.getActiveTribeID()).isFeasible(state);
+        if(!willForceEnd)
+            return -1; //Not the time, or not available.
+
+        ArrayList<Action> availableActions = state.getAllAvailableActions();
+        for (int i = 0; i < availableActions.size(); i++)
+            if(availableActions.get(i).getActionType() == END_TURN)
+                return i;
+        return -1;
+    }
+
+    /**
+     * Rolls out from a node's state and evaluates the state reached. Rollouts from nodes other than the root walk
+     * down the node's state and undo their actions afterwards (params.UNDO_ROLLOUTS), as the state isn't shared
+     * with other threads.
+     * @param node node to roll out from.
+     * @param depth depth of the node in the current path.
+     * @return value of the rollout.
+     */
+    private double rollOut(Node node, int depth)
+    {
+        if(params.ROLOUTS_ENABLED) {
+            boolean undoRollout = params.UNDO_ROLLOUTS && node != root;
+            GameState rolloutState = undoRollout ? node.state : node.state.copy();
+            int thisDepth = depth;
+            while (thisDepth < params.ROLLOUT_LENGTH && !rolloutState.isGameOver()) {
+                int forced = tryForceEnd(rolloutState, thisDepth);
+                ArrayList<Action> available = rolloutState.getAllAvailableActions();
+                Action next = available.get(forced != -1 ? forced : m_rnd.nextInt(available.size()));
+                if(undoRollout) rolloutState.apply(next);
+                else rolloutState.advance(next, true);
+                fmCallsCount++;
+                thisDepth++;
+            }
+            double value = normalise(this.rootStateHeuristic.evaluateState(rootState, rolloutState), 0, 1);
+            if(undoRollout) for(int i = depth; i < thisDepth; i++) rolloutState.undo();
+            return value;
+        }
+
+        return normalise(this.rootStateHeuristic.evaluateState(rootState, node.state), 0, 1);
+    }
+
+    /**
+     * Backs up the value of an iteration along the path it followed.
+     * @param result value of the iteration.
+     * @param updateLast false if the last node of the path is a transposition whose value was backed up, in which
+     *                   case only the edge that leads to it is updated.
+     */
+    private void backUp(double result, boolean updateLast)
+    {
+        for (int i = path.size() - 1; i >= 0; i--)
+        {
+            Node n = path.get(i);
+            if(i < pathActions.size())
+                n.edgeVisits[pathActions.get(i)]++;
+            if(i == path.size() - 1 && !updateLast)
+                continue;
+
+            n.nVisits++;
+            n.totValue += result;
+            if (result < n.bounds[0]) {
+                n.bounds[0] = result;
+            }
+            if (result > n.bounds[1]) {
+                n.bounds[1] = result;
+            }
+        }
+    }
+
+    /**
+     * Picks the action followed most often from the root. If all expanded actions were followed the same number of
+     * times, the one that leads to the state with the best value is picked.
+     * @return index of the action in the root actions.
+     */
+    int mostVisitedAction()
+    {
+        int selected = -1;
+        double bestValue = -Double.MAX_VALUE;
+        boolean allEqual = true;
+        int first = -1;
+
+        for (int i = 0; i < root.children.length; i++) {
+            if(root.children[i] != null)
+            {
+                if(first == -1)
+                    first = root.edgeVisits[i];
+                else if(first != root.edgeVisits[i])
+                    allEqual = false;
+
+                double childValue = noise(root.edgeVisits[i], params.epsilon, this.m_rnd.nextDouble());     //break ties randomly
+                if (childValue > bestValue) {
+                    bestValue = childValue;
+                    selected = i;
+                }
+            }
+        }
+
+        if (selected == -1)
+            return 0;
+
+        if(allEqual)
+        {
+            //If all are equal, we opt to choose for the one with the best Q.
+            bestValue = -Double.MAX_VALUE;
+            for (int i = 0; i < root.children.length; i++) {
+                Node child = root.children[i];
+                if(child != null) {
+                    double childValue = noise(child.totValue / (child.nVisits + params.epsilon), params.epsilon, this.m_rnd.nextDouble());
+                    if (childValue > bestValue) {
+                        bestValue = childValue;
+                        selected = i;
+                    }
+                }
+            }
+        }
+        return selected;
+    }
+
+    int getIterations() { return iterations; }
+    int getTranspositionHits() { return transpositionHits; }
+    int getNumNodes() { return nodes.size() + 1; }
+
+    private double normalise(double a_value, double a_min, double a_max)
+    {
+        if(a_min < a_max)
+            return (a_value - a_min)/(a_max - a_min);
+        else    // if bounds are invalid, then return same value
+            return a_value;
+    }
+
+    private double noise(double input, double epsilon, double random)
+    {
+        return (input + epsilon) * (1.0 + epsilon * (random - 0.5));
+    }
+
+    /**
+     * Game state of the graph, with the statistics of its node and of the edges (actions) that leave it.
+     */
+    private static class Node
+    {
+        private final GameState state;
+        private final ArrayList<Action> actions;
+        private final Node[] children;
+        private final int[] edgeVisits;
+        private int nVisits;
+        private double totValue;
+        private double[] bounds = new double[]{Double.MAX_VALUE, -Double.MAX_VALUE};
+
+        Node(GameState state, ArrayList<Action> actions)
+        {
+            this.state = state;
+            this.actions = actions;
+            this.children = new Node[actions.size()];
+            this.edgeVisits = new int[actions.size()];
+        }
+
+        boolean notFullyExpanded()
+        {
+            for (Node n : children)
+                if (n == null)
+                    return true;
+            return false;
+        }
+
+        /**
+         * Picks an action not expanded yet, at random.
+         */
+        int unexpandedAction(Random rnd)
+        {
+            int bestAction = -1;
+            double bestValue = -1;
+            for (int i = 0; i < children.length; i++) {
+                double x = rnd.nextDouble();
+                if (x > bestValue && children[i] == null) {
+                    bestAction = i;
+                    bestValue = x;
+                }
+            }
+            return bestAction;
+        }
+    }
+}
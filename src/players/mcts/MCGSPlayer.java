@@ -0,0 +1,79 @@
+package players.mcts;
+
+import core.actions.Action;
+import core.actions.tribeactions.EndTurn;
+import core.game.GameState;
+import players.Agent;
+import utils.ElapsedCpuTimer;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * MCTS player that searches a graph of game states instead of a tree (see GraphSearch). It takes the same parameters
+ * as MCTSPlayer, but always searches in a single thread and with its own transposition handling, so
+ * params.NUM_THREADS and params.TRANSPOSITIONS are ignored.
+ */
+public class MCGSPlayer extends Agent {
+
+    private Random m_rnd;
+    private MCTSParams params;
+
+    //Statistics of the last search.
+    private int lastIterations, lastNodes, lastTranspositionHits;
+
+    public MCGSPlayer(long seed)
+    {
+        super(seed);
+        m_rnd = new Random(seed);
+        this.params = new MCTSParams();
+    }
+
+    public MCGSPlayer(long seed, MCTSParams params) {
+        this(seed);
+        this.params = params;
+    }
+
+    public Action act(GameState gs, ElapsedCpuTimer ect) {
+        //Gather all available actions:
+        ArrayList<Action> allActions = gs.getAllAvailableActions();
+
+        if(allActions.size() == 1)
+            return allActions.get(0); //EndTurn, it's possible.
+
+        ArrayList<Action> rootActions = params.PRIORITIZE_ROOT ? determineActionGroup(gs, m_rnd) : allActions;
+        if(rootActions == null)
+            return new EndTurn();
+
+        GraphSearch search = new GraphSearch(params, m_rnd, this.playerID, allPlayerIDs, gs, rootActions);
+        search.search(ect);
+
+        lastIterations = search.getIterations();
+        lastNodes = search.getNumNodes();
+        lastTranspositionHits = search.getTranspositionHits();
+
+        return rootActions.get(search.mostVisitedAction());
+    }
+
+    /**
+     * Returns the number of iterations of the last search.
+     */
+    public int getLastIterations() { return lastIterations; }
+
+    /**
+     * Returns the number of nodes (different game states) of the graph of the last search.
+     */
+    public int getLastNodes() { return lastNodes; }
+
+    /**
+     * Returns the number of iterations of the last search that stopped at a state reached before through other
+     * actions, backing up its value instead of rolling out.
+     */
+    public int getLastTranspositionHits() { return lastTranspositionHits; }
+
+    @Override
+    public Agent copy() {
+        return null;
+    }
+
+}
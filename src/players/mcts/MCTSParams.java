@@ -13,6 +13,15 @@ public class MCTSParams extends AlgParams {
     public double K = Math.sqrt(2);
     public int ROLLOUT_LENGTH = 10;//10;
     public boolean ROLOUTS_ENABLED = true;
+    public boolean UNDO_ROLLOUTS = true; //Rollouts undo their actions on the node's state instead of copying it.
+    public boolean TRANSPOSITIONS = false; //Nodes with the same game state (by hash) share their value statistics.
+
+    // Parallel search. With more than 1 thread, the budget (stop_type) is shared by all threads.
+    public final int ROOT_PARALLEL = 0; //Each thread searches its own tree, visits of the root actions are added up.
+    public final int TREE_PARALLEL = 1; //All threads search the same tree, spread out by virtual loss.
+    public int NUM_THREADS = 1;
+    public int PARALLEL_MODE = ROOT_PARALLEL;
+    public int VIRTUAL_LOSS = 1; //Visits (with the worst value) added to a node for each thread searching below it.
 
     public void setParameterValue(String param, Object value) {
         switch(param) {
@@ -4,16 +4,22 @@ import core.actions.Action;
 import core.actions.tribeactions.EndTurn;
 import core.game.GameState;
 import players.Agent;
+import players.SearchThreads;
 import utils.ElapsedCpuTimer;
 
 import java.util.ArrayList;
 import java.util.Random;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MCTSPlayer extends Agent {
 
     private Random m_rnd;
     private MCTSParams params;
 
+    //Iterations of the last search, by all threads.
+    private int lastIterations;
+
     public MCTSPlayer(long seed)
     {
         super(seed);
@@ -37,16 +43,72 @@ public class MCTSPlayer extends Agent {
         if(rootActions == null)
             return new EndTurn();
 
+        if(params.NUM_THREADS > 1)
+            return rootActions.get(parallelSearch(gs, rootActions, ect));
+
         SingleTreeNode m_root = new SingleTreeNode(params, m_rnd, rootActions.size(), rootActions, this.playerID);
         m_root.setRootGameState(m_root, gs, allPlayerIDs);
 
-        m_root.mctsSearch(ect);
+        lastIterations = m_root.mctsSearch(ect);
 
         return rootActions.get(m_root.mostVisitedAction());
 
     }
 
 
+    /**
+     * Searches with params.NUM_THREADS threads. In root parallelisation each thread searches its own tree, from its own
+     * copy of the game state, and the root actions' visits are added up. In tree parallelisation, all threads search
+     * the same tree. In both cases, the search budget is shared by all threads, which run in SearchThreads.
+     * @param gs current game state.
+     * @param rootActions actions available at the root.
+     * @param ect timer with the time left for this turn.
+     * @return index, in rootActions, of the action to play.
+     */
+    private int parallelSearch(GameState gs, ArrayList<Action> rootActions, ElapsedCpuTimer ect)
+    {
+        int nThreads = params.NUM_THREADS;
+        boolean sharedTree = params.PARALLEL_MODE == params.TREE_PARALLEL;
+        //The timer measures the CPU time of this thread, which waits for the search: give workers a wall-clock deadline.
+        long deadline = System.nanoTime() + ect.remainingTimeMillis() * 1000000L;
+        AtomicInteger iterations = new AtomicInteger();
+        AtomicInteger fmCalls = new AtomicInteger();
+
+        //Each thread gets its own copy of the game state, made before any of them starts: its root state in root
+        // parallelisation, or just the reference for the heuristic when the tree (and its root state) is shared.
+        GameState[] threadStates = new GameState[nThreads];
+        for (int i = 0; i < nThreads; i++)
+            threadStates[i] = gs.copy();
+
+        SingleTreeNode[] roots = new SingleTreeNode[sharedTree ? 1 : nThreads];
+        for (int i = 0; i < roots.length; i++) {
+            roots[i] = new SingleTreeNode(params, new Random(m_rnd.nextLong()), rootActions.size(), rootActions, this.playerID, fmCalls);
+            roots[i].setRootGameState(roots[i], sharedTree ? gs : threadStates[i], allPlayerIDs);
+        }
+
+        ArrayList<Future<?>> searches = new ArrayList<>();
+        for (int i = 0; i < nThreads; i++) {
+            SingleTreeNode root = roots[sharedTree ? 0 : i];
+            GameState threadState = threadStates[i];
+            searches.add(SearchThreads.submit(() -> root.parallelSearch(deadline, iterations, sharedTree, threadState)));
+        }
+        try {
+            for (Future<?> f : searches)
+                f.get();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+
+        lastIterations = iterations.get();
+        return SingleTreeNode.mostVisitedAction(roots);
+    }
+
+    /**
+     * Returns the number of iterations of the last search.
+     */
+    public int getLastIterations() { return lastIterations; }
+
+
     @Override
     public Agent copy() {
         return null;
@@ -8,6 +8,7 @@ import utils.ElapsedCpuTimer;
 
 import java.util.ArrayList;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 import static core.Types.ACTION.*;
 
 class SingleTreeNode
@@ -22,9 +23,18 @@ class SingleTreeNode
     private Random m_rnd;
     private int m_depth;
     private double[] bounds = new double[]{Double.MAX_VALUE, -Double.MAX_VALUE};
-    private int fmCallsCount;
+    private AtomicInteger fmCallsCount; //Forward model calls of the search, only kept by the root (may be shared with other roots).
     private int playerID;
 
+    //Number of threads that are searching below this node (tree parallelisation). Each one counts as
+    // params.VIRTUAL_LOSS visits with the worst value seen, which steers other threads away from this node.
+    private int virtualLoss;
+
+    //Statistics shared by all the nodes of the search with this node's state (params.TRANSPOSITIONS), null if not used.
+    // The table is only kept by the root.
+    private TranspositionTable.Entry transposition;
+    private TranspositionTable transpositions;
+
     private ArrayList<Action> actions;
     private GameState state;
 
@@ -33,13 +43,18 @@ class SingleTreeNode
 
     //From MCTSPlayer
     SingleTreeNode(MCTSParams p, Random rnd, int num_actions, ArrayList<Action> actions, int playerID) {
+        this(p, rnd, num_actions, actions, playerID, new AtomicInteger());
+    }
+
+    //From MCTSPlayer, for a root that shares its forward model calls budget with other roots.
+    SingleTreeNode(MCTSParams p, Random rnd, int num_actions, ArrayList<Action> actions, int playerID, AtomicInteger fmCallsCount) {
         this(p, null, rnd, num_actions, actions, null, playerID, null, null);
+        this.fmCallsCount = fmCallsCount;
     }
 
     private SingleTreeNode(MCTSParams p, SingleTreeNode parent, Random rnd, int num_actions,
                            ArrayList<Action> actions, StateHeuristic sh, int playerID, SingleTreeNode root, GameState state) {
         this.params = p;
-        this.fmCallsCount = 0;
         this.parent = parent;
         this.m_rnd = rnd;
         this.actions = actions;
@@ -64,10 +79,12 @@ class SingleTreeNode
         this.root = root;
         this.rootState = gs;
         this.rootStateHeuristic = params.getStateHeuristic(playerID, allIDs);
+        if(params.TRANSPOSITIONS)
+            this.transpositions = new TranspositionTable();
     }
 
 
-    void mctsSearch(ElapsedCpuTimer elapsedTimer) {
+    int mctsSearch(ElapsedCpuTimer elapsedTimer) {
 
         double avgTimeTaken;
         double acumTimeTaken = 0;
@@ -95,7 +112,52 @@ class SingleTreeNode
                 stop = numIters >= params.num_iterations;
             }else if(params.stop_type == params.STOP_FMCALLS)
             {
-                stop = fmCallsCount > params.num_fmcalls;
+                stop = fmCallsCount.get() > params.num_fmcalls;
+            }
+        }
+        return numIters;
+    }
+
+    /**
+     * Runs iterations of the search in a thread of a parallel search, until the budget shared by all threads is
+     * spent: the time left (as wall-clock time, as the CPU time of the turn is split among threads), the number of
+     * iterations or the number of forward model calls (counted by the root, see SingleTreeNode()).
+     * @param deadline value of System.nanoTime() when the time budget is over.
+     * @param iterations iterations done by all threads.
+     * @param sharedTree true if other threads are searching this same tree (tree parallelisation).
+     * @param referenceState this thread's copy of the root state, which the heuristic compares the states reached
+     *                       with. The root state itself can't be read while other threads copy it.
+     */
+    void parallelSearch(long deadline, AtomicInteger iterations, boolean sharedTree, GameState referenceState) {
+
+        double avgTimeTaken;
+        double acumTimeTaken = 0;
+        double remaining;
+        int numIters = 0;
+
+        int remainingLimit = 5;
+        boolean stop = false;
+
+        while(!stop){
+            long iterationStart = System.nanoTime();
+            SingleTreeNode selected = sharedTree ? sharedTreePolicy() : treePolicy();
+            double delta = selected.rollOut(sharedTree, referenceState);
+            if(sharedTree) sharedBackUp(selected, delta);
+            else backUp(selected, delta);
+            numIters++;
+            int totalIters = iterations.incrementAndGet();
+
+            //Stopping condition
+            if(params.stop_type == params.STOP_TIME) {
+                acumTimeTaken += (System.nanoTime() - iterationStart) / 1000000.0;
+                avgTimeTaken  = acumTimeTaken/numIters;
+                remaining = (deadline - System.nanoTime()) / 1000000.0;
+                stop = remaining <= 2 * avgTimeTaken || remaining <= remainingLimit;
+            }else if(params.stop_type == params.STOP_ITERATIONS) {
+                stop = totalIters >= params.num_iterations;
+            }else if(params.stop_type == params.STOP_FMCALLS)
+            {
+                stop = fmCallsCount.get() > params.num_fmcalls;
             }
         }
     }
@@ -117,6 +179,35 @@ class SingleTreeNode
         return cur;
     }
 
+    /**
+     * Tree policy for a tree searched by several threads. A node's lock guards its children and its statistics,
+     * and it's held while selecting (or expanding) one of its children. Locks are always taken from parent to
+     * child, so threads can't deadlock. Each node in the path gets a virtual loss until the iteration is backed up.
+     * @return the node to roll out from.
+     */
+    private SingleTreeNode sharedTreePolicy() {
+
+        SingleTreeNode cur = this;
+
+        while (!cur.state.isGameOver() && cur.m_depth < params.ROLLOUT_LENGTH)
+        {
+            SingleTreeNode next;
+            boolean expanded;
+            synchronized (cur) {
+                expanded = cur.notFullyExpanded();
+                next = expanded ? cur.expand() : cur.uct();
+                synchronized (next) {
+                    next.virtualLoss++;
+                }
+            }
+            if (expanded)
+                return next;
+            cur = next;
+        }
+
+        return cur;
+    }
+
     private int tryForceEnd(GameState state, EndTurn endTurn, int depth)
     {
         boolean willForceEnd = (depth > 0 && (depth % params.FORCE_TURN_END) == 0) && endTurn.isFeasible(state);
@@ -162,6 +253,8 @@ class SingleTreeNode
         ArrayList<Action> nextActions = advance(nextState, availableActions.get(bestAction), true);
         SingleTreeNode tn = new SingleTreeNode(params, this, this.m_rnd, nextActions.size(),
                 null, rootStateHeuristic, this.playerID, this.m_depth == 0 ? this : this.root, nextState);
+        if(params.TRANSPOSITIONS)
+            tn.transposition = tn.root.transpositions.get(nextState.getHash());
         children[bestAction] = tn;
         return tn;
     }
@@ -171,10 +264,16 @@ class SingleTreeNode
     private ArrayList<Action> advance(GameState gs, Action act, boolean computeActions)
     {
         gs.advance(act, computeActions);
-        root.fmCallsCount++;
+        root.fmCallsCount.incrementAndGet();
         return gs.getAllAvailableActions();
     }
 
+    private void apply(GameState gs, Action act)
+    {
+        gs.apply(act);
+        root.fmCallsCount.incrementAndGet();
+    }
+
 
     private SingleTreeNode uct() {
 
@@ -189,12 +288,29 @@ class SingleTreeNode
             {
                 SingleTreeNode child = children[i];
 
-                double hvVal = child.totValue;
-                double childValue =  hvVal / (child.nVisits + params.epsilon);
+                double hvVal;
+                int childVisits, valueVisits;
+                synchronized (child) {
+                    //Virtual visits of other threads count with the worst value for the player moving here.
+                    int virtualVisits = child.virtualLoss * params.VIRTUAL_LOSS;
+                    double virtualValue = virtualVisits == 0 ? 0 : virtualVisits * (IamMoving ? bounds[0] : bounds[1]);
+                    childVisits = child.nVisits + virtualVisits;
+                    if(child.transposition != null) {
+                        //The value of the child's state comes from all iterations through it, exploration from this edge.
+                        synchronized (child.transposition) {
+                            hvVal = child.transposition.getTotValue() + virtualValue;
+                            valueVisits = child.transposition.getVisits() + virtualVisits;
+                        }
+                    } else {
+                        hvVal = child.totValue + virtualValue;
+                        valueVisits = childVisits;
+                    }
+                }
+                double childValue =  hvVal / (valueVisits + params.epsilon);
                 childValue = normalise(childValue, bounds[0], bounds[1]);
 
                 double uctValue = childValue +
-                        params.K * Math.sqrt(Math.log(this.nVisits + 1) / (child.nVisits + params.epsilon));
+                        params.K * Math.sqrt(Math.log(this.nVisits + 1) / (childVisits + params.epsilon));
 
                 uctValue = noise(uctValue, params.epsilon, this.m_rnd.nextDouble());     //break ties randomly
                 vals[i] = uctValue;
@@ -240,27 +356,51 @@ class SingleTreeNode
         // runs over the same tree node would have different outcomes (i.e Examine ruins).
         //advance(state, actions.get(selected.childIdx), true);
 
-        root.fmCallsCount++;
+        root.fmCallsCount.incrementAndGet();
 
         return selected;
     }
 
     private double rollOut()
+    {
+        return rollOut(false, root.rootState);
+    }
+
+    /**
+     * Rolls out from this node's state and evaluates the state reached.
+     * @param sharedTree true if other threads are searching this tree. The node's state can't be modified then, so
+     *                   it's copied (holding the node's lock) rather than walked down and undone, and only read
+     *                   holding that lock.
+     * @param referenceState state the heuristic compares the state reached with: the root state, or a copy of it.
+     * @return value of the rollout.
+     */
+    private double rollOut(boolean sharedTree, GameState referenceState)
     {
         if(params.ROLOUTS_ENABLED) {
-            GameState rolloutState = state.copy();
+            //The rollout can walk down this node's state and undo its actions afterwards, instead of copying it.
+            // The root state is the reference for the heuristic, so that one is always copied.
+            boolean undoRollout = !sharedTree && params.UNDO_ROLLOUTS && state != root.rootState;
+            GameState rolloutState;
+            if(undoRollout) rolloutState = state;
+            else synchronized (this) { rolloutState = state.copy(); }
             int thisDepth = this.m_depth;
             while (!finishRollout(rolloutState, thisDepth)) {
                 EndTurn endTurn = new EndTurn(rolloutState.getActiveTribeID());
                 int bestAction = tryForceEnd(rolloutState, endTurn, thisDepth);
                 Action next = (bestAction != -1) ? endTurn : rolloutState.getAllAvailableActions().get(m_rnd.nextInt(rolloutState.getAllAvailableActions().size()));
-                advance(rolloutState, next, true);
+                if(undoRollout) apply(rolloutState, next);
+                else advance(rolloutState, next, true);
                 thisDepth++;
             }
-            return normalise(this.rootStateHeuristic.evaluateState(root.rootState, rolloutState), 0, 1);
+            double value = normalise(this.rootStateHeuristic.evaluateState(referenceState, rolloutState), 0, 1);
+            if(undoRollout) for(int i = this.m_depth; i < thisDepth; i++) rolloutState.undo();
+            return value;
         }
 
-        return normalise(this.rootStateHeuristic.evaluateState(root.rootState, this.state), 0, 1);
+        if(sharedTree) synchronized (this) {
+            return normalise(this.rootStateHeuristic.evaluateState(referenceState, this.state), 0, 1);
+        }
+        return normalise(this.rootStateHeuristic.evaluateState(referenceState, this.state), 0, 1);
     }
 
     private boolean finishRollout(GameState rollerState, int depth)
@@ -286,29 +426,87 @@ class SingleTreeNode
             if (result > n.bounds[1]) {
                 n.bounds[1] = result;
             }
+            if (n.transposition != null)
+                n.transposition.add(result);
+            n = n.parent;
+        }
+    }
+
+
+    /**
+     * Backs up the result of an iteration in a tree searched by several threads (see sharedTreePolicy()),
+     * removing the virtual loss of the nodes in the path.
+     */
+    private void sharedBackUp(SingleTreeNode node, double result)
+    {
+        SingleTreeNode n = node;
+        while(n != null)
+        {
+            synchronized (n) {
+                if (n.parent != null)
+                    n.virtualLoss--;
+                n.nVisits++;
+                n.totValue += result;
+                if (result < n.bounds[0]) {
+                    n.bounds[0] = result;
+                }
+                if (result > n.bounds[1]) {
+                    n.bounds[1] = result;
+                }
+            }
+            if (n.transposition != null)
+                n.transposition.add(result);
             n = n.parent;
         }
     }
 
 
     int mostVisitedAction() {
+        return mostVisitedAction(new SingleTreeNode[]{this});
+    }
+
+    /**
+     * Picks the most visited action of several trees searched from the same root actions (root parallelisation),
+     * adding up the visits each tree gave to each action.
+     * @param roots roots of the trees.
+     * @return index of the most visited action.
+     */
+    static int mostVisitedAction(SingleTreeNode[] roots) {
+        SingleTreeNode firstRoot = roots[0];
+        int nActions = firstRoot.children.length;
+        int[] visits = new int[nActions];
+        double[] values = new double[nActions];
+        boolean[] expanded = new boolean[nActions];
+        for (SingleTreeNode r : roots) {
+            for (int i = 0; i < nActions; i++) {
+                if (r.children[i] != null) {
+                    visits[i] += r.children[i].nVisits;
+                    values[i] += r.children[i].totValue;
+                    expanded[i] = true;
+                }
+            }
+        }
+        return firstRoot.mostVisitedAction(visits, values, expanded);
+    }
+
+    private int mostVisitedAction(int[] visits, double[] values, boolean[] expanded) {
         int selected = -1;
         double bestValue = -Double.MAX_VALUE;
         boolean allEqual = true;
         double first = -1;
 
-        for (int i=0; i<children.length; i++) {
+        for (int i=0; i<visits.length; i++) {
 
-            if(children[i] != null)
+            if(expanded[i])
             {
                 if(first == -1)
-                    first = children[i].nVisits;
-                else if(first != children[i].nVisits)
+                    first = visits[i];
+                else if(first != visits[i])
                 {
                     allEqual = false;
                 }
 
-                double childValue = children[i].nVisits;
+                double childValue = visits[i];
                 childValue = noise(childValue, params.epsilon, this.m_rnd.nextDouble());     //break ties randomly
                 if (childValue > bestValue) {
                     bestValue = childValue;
@@ -323,21 +521,21 @@ class SingleTreeNode
         }else if(allEqual)
         {
             //If all are equal, we opt to choose for the one with the best Q.
-            selected = bestAction();
+            selected = bestAction(visits, values, expanded);
         }
 
         return selected;
     }
 
-    private int bestAction()
+    private int bestAction(int[] visits, double[] values, boolean[] expanded)
     {
         int selected = -1;
         double bestValue = -Double.MAX_VALUE;
 
-        for (int i=0; i<children.length; i++) {
+        for (int i=0; i<visits.length; i++) {
 
-            if(children[i] != null) {
-                double childValue = children[i].totValue / (children[i].nVisits + params.epsilon);
+            if(expanded[i]) {
+                double childValue = values[i] / (visits[i] + params.epsilon);
                 childValue = noise(childValue, params.epsilon, this.m_rnd.nextDouble());     //break ties randomly
                 if (childValue > bestValue) {
                     bestValue = childValue;
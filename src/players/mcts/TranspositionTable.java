@@ -0,0 +1,55 @@
+package players.mcts;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Statistics of the game states reached during a search, indexed by their hash (see GameState.getHash()). Tree nodes
+ * with the same state (reached by playing the same actions in a different order) share one entry, so the value of
+ * that state is estimated from all the iterations that went through it, whatever path they took to get there.
+ * It can be used by several threads at the same time.
+ */
+public class TranspositionTable
+{
+    private final ConcurrentHashMap<Long, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the entry of a game state, creating it if the state wasn't reached before.
+     * @param hash hash of the game state.
+     * @return the entry of the state.
+     */
+    public Entry get(long hash)
+    {
+        return entries.computeIfAbsent(hash, h -> new Entry());
+    }
+
+    /**
+     * Returns the number of different states in this table.
+     * @return number of entries.
+     */
+    public int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Visits and accumulated value of the iterations that went through a game state.
+     */
+    public static class Entry
+    {
+        private int nVisits;
+        private double totValue;
+
+        /**
+         * Adds the result of an iteration that went through this state.
+         * @param result value of the iteration.
+         */
+        public synchronized void add(double result)
+        {
+            nVisits++;
+            totValue += result;
+        }
+
+        public synchronized int getVisits() { return nVisits; }
+        public synchronized double getTotValue() { return totValue; }
+    }
+}
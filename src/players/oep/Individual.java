@@ -1,14 +1,18 @@
 package players.oep;
 
 import core.actions.Action;
-import core.game.GameState;
 
 import java.util.ArrayList;
 
+/**
+ * Sequence of actions of the population of OEPAgent. It doesn't keep the game state its actions reach, which is only
+ * needed to score it (when the individual is created): just the hash of that state (see GameState.getHash()), as a
+ * fingerprint to tell individuals that reach the same state.
+ */
 public class Individual implements Comparable<Individual>{
 
     private ArrayList<Action> actions;
-    private GameState gs;
+    private long fingerprint;
     private double value = 0;
 
     public Individual(ArrayList<Action> actions) {
@@ -19,16 +23,16 @@ public class Individual implements Comparable<Individual>{
         return actions;
     }
 
-    public GameState getGs(){
-        return gs;
+    public long getFingerprint(){
+        return fingerprint;
     }
 
     public double getValue(){
         return value;
     }
 
-    public void setGs(GameState gs) {
-        this.gs = gs;
+    public void setFingerprint(long fingerprint) {
+        this.fingerprint = fingerprint;
     }
 
     public void setValue(double value) {
@@ -9,11 +9,14 @@ import core.actors.City;
 import core.actors.units.Unit;
 import core.game.GameState;
 import players.Agent;
+import players.PopulationEvaluator;
 import players.heuristics.StateHeuristic;
 import utils.ElapsedCpuTimer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 public class OEPAgent extends Agent {
@@ -23,9 +26,18 @@ public class OEPAgent extends Agent {
     private OEPParams params;
 
     private Individual bestIndividual;
-    private int fmCallsCount;
-    private int fmCallsRun;
-    private GameState root;
+    //Forward model calls in this call to act(), and in the current generation. The tasks of the evaluator add to them,
+    // and they're only read in this thread between generations, once all of them are done.
+    private AtomicInteger fmCallsCount = new AtomicInteger();
+    private AtomicInteger fmCallsRun = new AtomicInteger();
+    private PopulationEvaluator evaluator;
+
+    //Scores of the states reached by the individuals created in this call to act(), by their hash.
+    private ConcurrentHashMap<Long, Double> scores = new ConcurrentHashMap<>();
+
+    //Individuals evaluated in the last call to act(), and the time it took.
+    private AtomicInteger evaluations = new AtomicInteger();
+    private long lastNanos;
 
 
     public OEPAgent(long seed, OEPParams params) {
@@ -36,39 +48,45 @@ public class OEPAgent extends Agent {
 
     @Override
     public Action act(GameState gs, ElapsedCpuTimer ect) {
+        long start = System.nanoTime();
         double avgTimeTaken;
         double acumTimeTaken = 0;
-        long remaining;
+        double remaining;
         int numIters = 0;
-        fmCallsCount = 0;
+        fmCallsCount.set(0);
+        evaluations.set(0);
 
         int remainingLimit = 5;
         boolean stop = false;
 
+        //The timer measures the CPU time of this thread, which waits for the threads that evaluate the population.
+        boolean parallel = params.NUM_THREADS > 1;
+        long deadline = start + ect.remainingTimeMillis() * 1000000L;
+        if(evaluator == null)
+            evaluator = new PopulationEvaluator(params.NUM_THREADS);
+
+        //Individuals are scored when they're created, and only keep the hash of the state they reach. Getting it here
+        // first makes the copies of gs keep it up to date from there.
+        this.heuristic = params.getStateHeuristic(playerID, allPlayerIDs);
+        scores.clear();
+        gs.getHash();
 
         //create a population of individuals defined in param
-        ArrayList<Individual> population = new ArrayList<>();
-        for(int i = 0; i < params.POP_SIZE; i++){
-            population.add(randomActions(gs.copy()));
-        }
+        ArrayList<Individual> population = evaluator.run(gs, params.POP_SIZE,
+                i -> (state, rnd) -> randomActions(state, rnd), m_rnd);
 
-        this.heuristic = params.getStateHeuristic(playerID, allPlayerIDs);
-        fmCallsRun = 0;
+        fmCallsRun.set(0);
 
         this.bestIndividual = null;
-        this.root = gs.copy();
 
         //keep going until time limit gone
         while(!stop){
 
             numIters ++;
             ElapsedCpuTimer elapsedTimerIteration = new ElapsedCpuTimer();
-            fmCallsRun = 0;
+            long iterationStart = System.nanoTime();
 
-            // rate each individual and sort them
-            for(Individual individual : population){
-                individual.setValue(eval( individual));
-            }
+            // sort the individuals, rated when created
             Collections.sort(population, Collections.reverseOrder());
             this.bestIndividual = population.get(population.size() - 1);
 
@@ -78,10 +96,17 @@ public class OEPAgent extends Agent {
                 population.remove(0);
             }
 
-            if(((fmCallsCount > params.num_fmcalls) || ((numIters == 1) && (fmCallsCount >= (0.9 * params.num_fmcalls))))&& params.stop_type == params.STOP_FMCALLS){
-                //over limit and needs to chose individual and return
-                break;
+            //The budget of forward model calls is checked once per generation, before creating its individuals: it's
+            // over if it's spent, or if what's left is less than what the last generation took.
+            if(params.stop_type == params.STOP_FMCALLS){
+                int used = fmCallsCount.get();
+                if((used > params.num_fmcalls) || ((numIters == 1) && (used >= (0.9 * params.num_fmcalls)))
+                        || (fmCallsRun.get() > (params.num_fmcalls - used))){
+                    //over limit and needs to chose individual and return
+                    break;
+                }
             }
+            fmCallsRun.set(0);
 
             //perform uniform crossover
             boolean even = false;
@@ -94,47 +119,52 @@ public class OEPAgent extends Agent {
                 population.remove(person1);
             }
 
-            population = procreate(gs.copy(), population);
+            population = procreate(gs, population);
 
             if(!even){
-                population.add(crossover(gs.copy(), person1, population.get(m_rnd.nextInt(population.size()))));
+                population.add(crossover(gs, person1, population.get(m_rnd.nextInt(population.size())), m_rnd));
             }
 
-            if(((fmCallsCount > params.num_fmcalls)  || ((numIters == 1) && (fmCallsCount >= (0.9 * params.num_fmcalls)))) && params.stop_type == params.STOP_FMCALLS){
-                //over limit and needs to chose individual and return
-                break;
-            }
-
-            population = shiftPop(gs.copy(),population);
+            population = shiftPop(gs, population);
 
             if(params.stop_type == params.STOP_TIME) {
-                acumTimeTaken += (elapsedTimerIteration.elapsedMillis()) ;
+                acumTimeTaken += parallel ? (System.nanoTime() - iterationStart) / 1000000.0 : elapsedTimerIteration.elapsedMillis();
                 avgTimeTaken  = acumTimeTaken/numIters;
-                remaining = ect.remainingTimeMillis();
+                remaining = parallel ? (deadline - System.nanoTime()) / 1000000.0 : ect.remainingTimeMillis();
                 stop = remaining <= 2 * avgTimeTaken || remaining <= remainingLimit;
             }else if(params.stop_type == params.STOP_ITERATIONS) {
                 stop = numIters >= params.num_iterations;
-            }else if(params.stop_type == params.STOP_FMCALLS){
-                stop = (fmCallsCount > params.num_fmcalls) || (fmCallsRun > (params.num_fmcalls - fmCallsCount));
             }
 
         }
         //System.out.println(numIters);
+        lastNanos = System.nanoTime() - start;
         return  bestIndividual.returnNext();
 
 
     }
 
+    /**
+     * Returns the number of individuals evaluated in the last call to act().
+     */
+    public int getLastEvaluations() { return evaluations.get(); }
+
+    /**
+     * Returns the individuals evaluated per second (of wall-clock time) in the last call to act().
+     */
+    public double getLastEvaluationsPerSecond() { return evaluations.get() / (lastNanos / 1e9); }
+
     @Override
     public Agent copy() {
         return null;
     }
 
-    private Individual randomActions(GameState gs){
+    private Individual randomActions(GameState root, Random rnd){
+        GameState gs = root.copy(rnd);
         ArrayList<Action> individual = new ArrayList<>();
         while ((!gs.isGameOver() && (gs.getActiveTribeID() == getPlayerID())) && (individual.size() < (params.NODE_SIZE-1))){
-            ArrayList<Action> allAvailableActions = this.allGoodActions(gs, m_rnd);
-            Action a = allAvailableActions.get(m_rnd.nextInt(allAvailableActions.size()));
+            ArrayList<Action> allAvailableActions = this.allGoodActions(gs, rnd);
+            Action a = allAvailableActions.get(rnd.nextInt(allAvailableActions.size()));
             if(!(a.getActionType() == Types.ACTION.END_TURN)){
                 advance(gs, a);
                 individual.add(a);
@@ -145,7 +175,7 @@ public class OEPAgent extends Agent {
         }
         //if one less then max node size
         if(individual.size() == (params.NODE_SIZE-1) && (individual.get((params.NODE_SIZE-2)).getActionType() != Types.ACTION.END_TURN)){
-            ArrayList<Action> allAvailableActions = this.allGoodActions(gs, m_rnd);
+            ArrayList<Action> allAvailableActions = this.allGoodActions(gs, rnd);
             Action end = null;
             for(Action a : allAvailableActions){
                 if(a.getActionType() == Types.ACTION.END_TURN){
@@ -156,9 +186,7 @@ public class OEPAgent extends Agent {
             individual.add(end);
         }
 
-        Individual in = new Individual(individual);
-        in.setGs(gs.copy());
-        return in;
+        return score(new Individual(individual), root, gs);
     }
 
     // must be given a even no. of population
@@ -178,9 +206,9 @@ public class OEPAgent extends Agent {
         }
 
 
-        for(int i = 0; i < group1.size(); i++){
-            population.add(crossover(gs.copy(), group1.get(i), group2.get(i)));
-        }
+        //Each parent is in one pair at most: the crossovers don't share the individuals they modify.
+        population.addAll(evaluator.run(gs, group1.size(),
+                i -> (state, rnd) -> crossover(state, group1.get(i), group2.get(i), rnd), m_rnd));
         return population;
     }
 
@@ -208,7 +236,7 @@ public class OEPAgent extends Agent {
     }
 
     //method to perform uniform crossover on two individuals
-    private Individual crossover(GameState clone, Individual individual1, Individual individual2){
+    private Individual crossover(GameState root, Individual individual1, Individual individual2, Random rnd){
         ArrayList<Action> in1 = individual1.getActions();
         ArrayList<Action> in2 = individual2.getActions();
 
@@ -240,7 +268,7 @@ public class OEPAgent extends Agent {
                 }else if(in2amount == 0){
                     child.add(in1.get(i));
                 }else{
-                    int temp = m_rnd.nextInt(100);
+                    int temp = rnd.nextInt(100);
                     if(temp < 50){
                         child.add(in1.get(i));
                         in1amount--;
@@ -251,33 +279,32 @@ public class OEPAgent extends Agent {
                 }
             }
         }
-        Individual in = repair(clone, child);
+        Individual in = repair(root, child, rnd);
         return in;
     }
     //repair an individual if actions can't be performed with a random action
-    private Individual repair(GameState gs, ArrayList<Action> child){
+    private Individual repair(GameState root, ArrayList<Action> child, Random rnd){
+        GameState gs = root.copy(rnd);
         ArrayList<Action> repairedChild = new ArrayList<>();
         boolean mutated = false;
         for(int a = 0 ;a < child.size(); a ++) {
             if(!(gs.getActiveTribeID() == getPlayerID())){
-                Individual in = new Individual(repairedChild);
-                in.setGs(gs.copy());
-                return in;
+                return score(new Individual(repairedChild), root, gs);
             }
-            int chance = m_rnd.nextInt((int)(params.MUTATION_RATE * 100));
-            if((m_rnd.nextInt(100) < chance) && !mutated){
-                Action ac = mutation(gs.copy());
+            int chance = rnd.nextInt((int)(params.MUTATION_RATE * 100));
+            if((rnd.nextInt(100) < chance) && !mutated){
+                Action ac = mutation(gs, rnd);
                 advance(gs, ac);
                 repairedChild.add(ac);
                 mutated = true;
             }else{
-                GameState copy = gs.copy();
+                GameState copy = gs.copy(rnd);
                 boolean added = false;
                 try {
-                    boolean done = checkActionFeasibility(child.get(a), gs.copy());
+                    boolean done = checkActionFeasibility(child.get(a), gs);
                     if (!done) {
-                        ArrayList<Action> allAvailableActions = this.allGoodActions(gs.copy(), m_rnd);
-                        Action ac = allAvailableActions.get(m_rnd.nextInt(allAvailableActions.size()));
+                        ArrayList<Action> allAvailableActions = this.allGoodActions(gs, rnd);
+                        Action ac = allAvailableActions.get(rnd.nextInt(allAvailableActions.size()));
                         advance(gs,ac);
                         repairedChild.add(ac);
                         added = true;
@@ -295,12 +322,10 @@ public class OEPAgent extends Agent {
         }
 
         if(!(gs.getActiveTribeID() == getPlayerID())){
-            Individual in = new Individual(repairedChild);
-            in.setGs(gs.copy());
-            return in;
+            return score(new Individual(repairedChild), root, gs);
         }
 
-        ArrayList<Action> allAvailableActions = this.allGoodActions(gs, m_rnd);
+        ArrayList<Action> allAvailableActions = this.allGoodActions(gs, rnd);
         Action end = null;
         for(Action a : allAvailableActions){
             if(a.getActionType() == Types.ACTION.END_TURN){
@@ -310,31 +335,26 @@ public class OEPAgent extends Agent {
         }
         repairedChild.add(end);
 
-        Individual in = new Individual(repairedChild);
-        in.setGs(gs);
-        return in;
+        return score(new Individual(repairedChild), root, gs);
     }
 
     //give a random possible move as a mutation
-    private Action mutation(GameState gs){
-        ArrayList<Action> allAvailableActions = this.allGoodActions(gs, m_rnd);
-        return  allAvailableActions.get(m_rnd.nextInt(allAvailableActions.size()));
+    private Action mutation(GameState gs, Random rnd){
+        ArrayList<Action> allAvailableActions = this.allGoodActions(gs, rnd);
+        return  allAvailableActions.get(rnd.nextInt(allAvailableActions.size()));
     }
 
     private ArrayList<Individual> shiftPop(GameState gs, ArrayList<Individual> population){
         ArrayList<Individual> newPop = new ArrayList<>();
 
-        shift(gs.copy(), population.get(population.size()-1));
-        newPop.add(population.get(population.size()-1));
+        Individual best = population.get(population.size()-1);
+        shift(gs.copy(m_rnd), best);
+        newPop.add(best);
 
-        for(int i = 1; i < (params.POP_SIZE/2); i++){
-            Individual ind = mutateInd(population.get(population.size()-1), gs.copy());
-            newPop.add(ind);
-        }
-
-        for(int i = newPop.size(); i < params.POP_SIZE; i++){
-            newPop.add(randomActions(gs.copy()));
-        }
+        //From 1 to params.POP_SIZE/2, mutate the best individual. The rest are new random individuals.
+        int mutants = params.POP_SIZE/2 - 1;
+        newPop.addAll(evaluator.run(gs, params.POP_SIZE - newPop.size(), i -> i < mutants ?
+                (state, rnd) -> mutateInd(best, state, rnd) : (state, rnd) -> randomActions(state, rnd), m_rnd));
 
         return newPop;
     }
@@ -359,7 +379,7 @@ public class OEPAgent extends Agent {
         int i = j;
         while((!gs.isGameOver() && (gs.getActiveTribeID() == getPlayerID())) && i < params.NODE_SIZE)
         {
-            ArrayList<Action> allAvailableActions = this.allGoodActions(gs.copy(), m_rnd);
+            ArrayList<Action> allAvailableActions = this.allGoodActions(gs, m_rnd);
             Action ac = allAvailableActions.get(m_rnd.nextInt(allAvailableActions.size()));
             individual.getActions().add(ac);
             advance(gs, ac);
@@ -367,48 +387,58 @@ public class OEPAgent extends Agent {
         }
 
         //Eval individual
-        double score = heuristic.evaluateState(clone,gs);
-        individual.setValue(score);
-        individual.setGs(gs.copy());
+        score(individual, clone, gs);
     }
 
-    private Individual mutateInd(Individual individual, GameState gs){
+    private Individual mutateInd(Individual individual, GameState root, Random rnd){
+        GameState gs = root.copy(rnd);
         ArrayList<Action> child = new ArrayList<>();
 
         for(int a = 0 ;a < individual.getActions().size(); a ++) {
             if (!(gs.getActiveTribeID() == getPlayerID())) {
-                Individual in = new Individual(child);
-                in.setGs(gs.copy());
-                return in;
+                return score(new Individual(child), root, gs);
             }
-            int chance = m_rnd.nextInt((int) (params.MUTATION_RATE * 100));
-            if ((m_rnd.nextInt(100) < chance) ) {
-                Action ac = mutation(gs.copy());
+            int chance = rnd.nextInt((int) (params.MUTATION_RATE * 100));
+            if ((rnd.nextInt(100) < chance) ) {
+                Action ac = mutation(gs, rnd);
                 advance(gs, ac);
                 child.add(ac);
             }else{
-                if(checkActionFeasibility(individual.getActions().get(a), gs.copy())){
+                if(checkActionFeasibility(individual.getActions().get(a), gs)){
                     advance(gs,individual.getActions().get(a));
                     child.add(individual.getActions().get(a));
                 }
                 else{
-                    ArrayList<Action> allAvailableActions = this.allGoodActions(gs.copy(), m_rnd);
-                    Action ac = allAvailableActions.get(m_rnd.nextInt(allAvailableActions.size()));
+                    ArrayList<Action> allAvailableActions = this.allGoodActions(gs, rnd);
+                    Action ac = allAvailableActions.get(rnd.nextInt(allAvailableActions.size()));
                     advance(gs,ac);
                     child.add(ac);
                 }
             }
         }
 
-        Individual in = new Individual(child);
-        in.setGs(gs.copy());
-        return in;
+        return score(new Individual(child), root, gs);
     }
 
-    public double eval( Individual actionSet){
-        GameState gs = actionSet.getGs();
-        return heuristic.evaluateState(this.root.copy(),gs.copy());
-        //return heuristic.evaluateState(gs.copy());
+    /**
+     * Rates an individual with the state its actions reach, and keeps the hash of that state as its fingerprint.
+     * Individuals that reach a state already rated in this call to act() get its score without evaluating it again.
+     * @param in individual to rate.
+     * @param root state the actions of the individual are played from.
+     * @param gs state they reach.
+     * @return the individual.
+     */
+    private Individual score(Individual in, GameState root, GameState gs){
+        evaluations.incrementAndGet();
+        long fingerprint = gs.getHash();
+        Double score = scores.get(fingerprint);
+        if(score == null){
+            score = heuristic.evaluateState(root, gs);
+            scores.put(fingerprint, score);
+        }
+        in.setFingerprint(fingerprint);
+        in.setValue(score);
+        return in;
     }
 
     private boolean checkActionFeasibility(Action a, GameState gs)
@@ -441,8 +471,8 @@ public class OEPAgent extends Agent {
     }
 
     private void advance(GameState gs, Action move){
-        this.fmCallsCount++;
-        this.fmCallsRun++;
+        this.fmCallsCount.incrementAndGet();
+        this.fmCallsRun.incrementAndGet();
         gs.advance(move,true);
     }
 }
\ No newline at end of file
@@ -9,4 +9,7 @@ public class OEPParams extends AlgParams {
     public double KILL_RATE = 0.5;
     public int NODE_SIZE = 20;
     public int TOURNAMENT_SIZE = 5;
+
+    // Threads the population is built and rated with (see players.PopulationEvaluator).
+    public int NUM_THREADS = 1;
 }
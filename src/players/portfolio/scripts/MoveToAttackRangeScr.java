@@ -31,8 +31,7 @@ public class MoveToAttackRangeScr extends BaseScript {
             public double ofInterest(GameState gs, Actor ac, int posX, int posY) {
                 Board b = gs.getBoard();
                 int attackRange = ((Unit)ac).RANGE;
-                Vector2d targetPos = new Vector2d(posX, posY);
-                List<Vector2d> neighs = targetPos.neighborhood(attackRange, 0, b.getSize());
+                List<Vector2d> neighs = Vector2d.neighborhood(posX, posY, attackRange, b.getSize());
 
                 int maxTargets = neighs.size();
                 int numTargets = 0;
@@ -30,8 +30,7 @@ public class MoveToDivergeScr extends BaseScript {
             @Override
             public double ofInterest(GameState gs, Actor ac, int posX, int posY) {
                 Board b = gs.getBoard();
-                Vector2d targetPos = new Vector2d(posX, posY);
-                List<Vector2d> neighs = targetPos.neighborhood(1, 0, b.getSize());
+                List<Vector2d> neighs = Vector2d.neighborhood(posX, posY, 1, b.getSize());
 
                 int maxAllies = neighs.size();
                 int numAllies = 0;
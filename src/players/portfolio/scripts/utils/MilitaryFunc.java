@@ -7,7 +7,6 @@ import core.actions.tribeactions.ResearchTech;
 import core.actions.unitactions.Attack;
 import core.actions.unitactions.Convert;
 import core.actions.unitactions.Move;
-import core.actions.unitactions.command.AttackCommand;
 import core.actors.Actor;
 import core.actors.units.Unit;
 import core.game.Board;
@@ -81,7 +80,7 @@ public class MilitaryFunc {
                     case DAMAGE:
                         GameState gsCopy = gs.copy();
                         int currHP = target.getCurrentHP();
-                        new AttackCommand().execute(act, gsCopy);
+                        Types.ACTION.ATTACK.getCommand().execute(act, gsCopy);
                         int nextHP = target.getCurrentHP();
                         int diff = nextHP - currHP;
                         if(nextHP <= 0)
@@ -22,6 +22,8 @@ public class PortfolioMCTSParams extends AlgParams {
     public double B = 1.3;
     public int ROLLOUT_LENGTH = 20;//10;
     public boolean ROLOUTS_ENABLED = true;
+    public boolean UNDO_ROLLOUTS = true; //Rollouts undo their actions on the node's state instead of copying it.
+    public boolean TRANSPOSITIONS = false; //Nodes with the same game state (by hash) share their value statistics.
     private Portfolio portfolio;
     public boolean PRUNING = true;
     public boolean PROGBIAS = true;
@@ -4,6 +4,7 @@ import core.actions.Action;
 import core.game.GameState;
 import players.heuristics.PruneHeuristic;
 import players.heuristics.StateHeuristic;
+import players.mcts.TranspositionTable;
 import players.portfolio.ActionAssignment;
 import utils.ElapsedCpuTimer;
 import utils.Utils;
@@ -35,6 +36,11 @@ public class PortfolioTreeNode
     private StateHeuristic rootStateHeuristic;
     private PruneHeuristic rootPruneHeuristic;
 
+    //Statistics shared by all the nodes of the search with this node's state (params.TRANSPOSITIONS), null if not used.
+    // The table is only kept by the root.
+    private TranspositionTable.Entry transposition;
+    private TranspositionTable transpositions;
+
     //From MCTSPlayer
     PortfolioTreeNode(PortfolioMCTSParams p, Random rnd, int playerID) {
         this(p, null, rnd, 0, null, null, null, playerID, null, null);
@@ -77,6 +83,8 @@ public class PortfolioTreeNode
         this.children = new PortfolioTreeNode[this.actions.size()];
         this.pruned = null;
         this.rootPruneHeuristic = params.getPruneHeuristic();
+        if(params.TRANSPOSITIONS)
+            this.transpositions = new TranspositionTable();
 
 //        System.out.println("N Actions at root: " + this.actions.size());
 //        for(ActionAssignment aas : this.actions)
@@ -156,6 +164,8 @@ public class PortfolioTreeNode
         ArrayList<ActionAssignment> nextActions = advance(nextState, actions.get(bestAction), true);
         PortfolioTreeNode tn = new PortfolioTreeNode(params, this, this.m_rnd, nextActions.size(),
                 nextActions, rootStateHeuristic, rootPruneHeuristic, this.playerID, this.m_depth == 0 ? this : this.root, nextState);
+        if(params.TRANSPOSITIONS)
+            tn.transposition = tn.root.transpositions.get(nextState.getHash());
         children[bestAction] = tn;
         return tn;
     }
@@ -206,8 +216,10 @@ public class PortfolioTreeNode
 
                 PortfolioTreeNode child = children[i];
 
-                double hvVal = child.totValue;
-                double childValue = hvVal / (child.nVisits + params.epsilon);
+                //With transpositions, the value of the child's state comes from all iterations through it.
+                double hvVal = child.transposition != null ? child.transposition.getTotValue() : child.totValue;
+                int valueVisits = child.transposition != null ? child.transposition.getVisits() : child.nVisits;
+                double childValue = hvVal / (valueVisits + params.epsilon);
                 childValue = Utils.normalise(childValue, bounds[0], bounds[1]);
                 double exploreValue = Math.sqrt(Math.log(this.nVisits + 1) / (child.nVisits + params.epsilon));
                 double progBias = rootPruneHeuristic.evaluatePrune(state, actions.get(i)) / (child.nVisits + params.epsilon);
@@ -271,15 +283,24 @@ public class PortfolioTreeNode
     private double rollOut()
     {
         if(params.ROLOUTS_ENABLED) {
-            GameState rolloutState = state.copy();
+            //The rollout can walk down this node's state and undo its actions afterwards, instead of copying it.
+            // The root state is the reference for the heuristic, so that one is always copied.
+            boolean undoRollout = params.UNDO_ROLLOUTS && state != root.rootState;
+            GameState rolloutState = undoRollout ? state : state.copy();
             int thisDepth = this.m_depth;
             while (!finishRollout(rolloutState, thisDepth)) {
                 ArrayList<ActionAssignment> allActionPairs = params.getPortfolio().produceActionAssignments(rolloutState);
                 ActionAssignment next = allActionPairs.get(m_rnd.nextInt(allActionPairs.size()));
-                advance(rolloutState, next, true);
+                if(undoRollout) {
+                    rolloutState.apply(next.getAction());
+                    root.fmCallsCount++;
+                }
+                else advance(rolloutState, next, true);
                 thisDepth++;
             }
-            return Utils.normalise(this.rootStateHeuristic.evaluateState(root.rootState, rolloutState), 0, 1);
+            double value = Utils.normalise(this.rootStateHeuristic.evaluateState(root.rootState, rolloutState), 0, 1);
+            if(undoRollout) for(int i = this.m_depth; i < thisDepth; i++) rolloutState.undo();
+            return value;
         }
 
         return Utils.normalise(this.rootStateHeuristic.evaluateState(root.rootState, this.state), 0, 1);
@@ -308,6 +329,8 @@ public class PortfolioTreeNode
             if (result > n.bounds[1]) {
                 n.bounds[1] = result;
             }
+            if (n.transposition != null)
+                n.transposition.add(result);
             n = n.parent;
         }
     }
@@ -8,21 +8,33 @@ import core.actors.City;
 import core.actors.units.Unit;
 import core.game.GameState;
 import players.Agent;
+import players.PopulationEvaluator;
 import players.heuristics.StateHeuristic;
 import utils.ElapsedCpuTimer;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class RHEAAgent extends Agent {
 
+    //With a time budget, the search stops when fewer than these milliseconds are left.
+    private static final int REMAINING_LIMIT = 5;
+
     private Random m_rnd;
     private StateHeuristic heuristic;
     private RHEAParams params;
 
     private ArrayList<Genome> pop;
-    private int fmcalls;
+    //Forward model calls in this call to act(). The tasks of the evaluator add to it, and it's only read in this thread
+    // between generations, once all of them are done.
+    private AtomicInteger fmcalls = new AtomicInteger();
+    private PopulationEvaluator evaluator;
+
+    //Individuals evaluated in the last call to act(), and the time it took.
+    private AtomicInteger evaluations = new AtomicInteger();
+    private long lastNanos;
     private int currentTurn;
     private boolean newTurn = true;
     private int actionInTurn = 0;
@@ -38,8 +50,12 @@ public class RHEAAgent extends Agent {
     @Override
     public Action act(GameState gs, ElapsedCpuTimer ect) {
 
+        long start = System.nanoTime();
         this.heuristic = params.getStateHeuristic(playerID, allPlayerIDs);
-        this.fmcalls = 0;
+        this.fmcalls.set(0);
+        this.evaluations.set(0);
+        if(evaluator == null)
+            evaluator = new PopulationEvaluator(params.NUM_THREADS);
 
         if (currentTurn != gs.getTick()){
             currentTurn = gs.getTick();
@@ -54,55 +70,63 @@ public class RHEAAgent extends Agent {
             pop = shiftPopulation(gs);
             actionInTurn++;
         }
-        rheaLoop(gs);
+        rheaLoop(gs, ect);
         newTurn = false;
 
         Action toExecute = pop.get(0).getActions().get(0);
 //        System.out.println(currentTurn + ":" + actionInTurn + ": toExecute: " + toExecute);
+        lastNanos = System.nanoTime() - start;
 
         return toExecute;
     }
 
-    private void rheaLoop(GameState gs)
+    private void rheaLoop(GameState gs, ElapsedCpuTimer ect)
     {
         boolean end = false;
         int numIters = 0;
+        double acumTimeTaken = 0;
+        //The timer measures the CPU time of this thread, which waits for the threads that evaluate the population.
+        long deadline = System.nanoTime() + ect.remainingTimeMillis() * 1000000L;
         while (!end){
+            long iterationStart = System.nanoTime();
             Collections.sort(pop);
             pop = nextGeneration(gs);
             numIters++;
 
+            //The budget is checked once per generation, when all its individuals have been evaluated.
             if(params.stop_type == params.STOP_FMCALLS)
-                end = this.fmcalls >= params.num_fmcalls;
+                end = this.fmcalls.get() >= params.num_fmcalls;
             else if(params.stop_type == params.STOP_ITERATIONS)
                 end = numIters >= params.num_iterations;
-
+            else if(params.stop_type == params.STOP_TIME)
+            {
+                acumTimeTaken += (System.nanoTime() - iterationStart) / 1000000.0;
+                double remaining = params.NUM_THREADS > 1 ? (deadline - System.nanoTime()) / 1000000.0 : ect.remainingTimeMillis();
+                end = remaining <= 2 * acumTimeTaken / numIters || remaining <= REMAINING_LIMIT;
+            }
         }
         //System.out.println(fmcalls);
         Collections.sort(pop);
     }
 
     private void init(GameState gs){
-        pop = new ArrayList<>();
-        for(int i = 0; i < params.POP_SIZE; i++){
-            pop.add(newRandomIndividual(gs));
-        }
+        pop = evaluator.run(gs, params.POP_SIZE, i -> this::newRandomIndividual, m_rnd);
     }
 
-    private Genome newRandomIndividual(GameState gs)
+    private Genome newRandomIndividual(GameState gs, Random rnd)
     {
         //New individual
         ArrayList<Action> actions = new ArrayList<>();
-        GameState gsCopy = gs.copy();
+        GameState gsCopy = gs.copy(rnd);
 
         while (!gsCopy.isGameOver() && actions.size() < params.INDIVIDUAL_LENGTH){
-            Action a = getRandomAction(gsCopy);
+            Action a = getRandomAction(gsCopy, rnd);
             advance(gsCopy, a, true);
             actions.add(a);
         }
 
         Genome g = new Genome(actions);
-        double score = heuristic.evaluateState(gs, gsCopy);
+        double score = evaluate(gs, gsCopy);
         g.setValue(score);
         return g;
     }
@@ -112,26 +136,21 @@ public class RHEAAgent extends Agent {
         ArrayList<Genome> newPop = new ArrayList<>();
 
         //We shift the first individual, which is the only one that is likely to be feasible
-        shift(gs, pop.get(0));
-        newPop.add(pop.get(0));
-
-        //From 1 to (1+params.MUTATE_BEST), mutate the best individual
-        for(int i = 1; i < 1+params.MUTATE_BEST && i < params.POP_SIZE; ++i) {
-            Genome gen = mutate(pop.get(0), gs);
-            newPop.add(gen);
-        }
-
-        //From 1+params.MUTATE_BEST to params.POP_SIZE, generate at random
-        for(int i = 1+params.MUTATE_BEST; i < params.POP_SIZE; i++){
-            newPop.add(newRandomIndividual(gs));
-        }
+        Genome best = pop.get(0);
+        shift(gs, best);
+        newPop.add(best);
+
+        //From 1 to (1+params.MUTATE_BEST), mutate the best individual. From 1+params.MUTATE_BEST to params.POP_SIZE,
+        // generate at random
+        newPop.addAll(evaluator.run(gs, params.POP_SIZE - 1, i -> i < params.MUTATE_BEST ?
+                (state, rnd) -> mutate(best, state, rnd) : this::newRandomIndividual, m_rnd));
         return newPop;
     }
 
     private void shift(GameState gs, Genome individual)
     {
         //shift buffer
-        GameState clone = gs.copy();
+        GameState clone = gs.copy(m_rnd);
         individual.shift();
 
         //advance the new game state
@@ -152,24 +171,24 @@ public class RHEAAgent extends Agent {
         int i = j;
         while(!clone.isGameOver() && i < params.INDIVIDUAL_LENGTH)
         {
-            Action newAction = getRandomAction(clone);
+            Action newAction = getRandomAction(clone, m_rnd);
             individual.getActions().add(newAction);
             advance(clone, newAction, true);
             i++;
         }
 
         //Eval individual
-        double score = heuristic.evaluateState(gs, clone);
+        double score = evaluate(gs, clone);
         individual.setValue(score);
     }
 
-    private Action getRandomAction(GameState gs)
+    private Action getRandomAction(GameState gs, Random rnd)
     {
         if(gs.isGameOver())
             return null;
 
-        ArrayList<Action> allAvailableActions = this.allGoodActions(gs, m_rnd);  //gs.getAllAvailableActions();
-        return allAvailableActions.get(m_rnd.nextInt(allAvailableActions.size()));
+        ArrayList<Action> allAvailableActions = this.allGoodActions(gs, rnd);  //gs.getAllAvailableActions();
+        return allAvailableActions.get(rnd.nextInt(allAvailableActions.size()));
     }
 
     private ArrayList<Genome> nextGeneration(GameState gs){
@@ -180,18 +199,20 @@ public class RHEAAgent extends Agent {
             newPop.add(pop.get(0));
         }
 
-        while (newPop.size() < params.POP_SIZE){
-            Genome g;
+        //The parents are selected before the offspring is created, from the current population.
+        newPop.addAll(evaluator.run(gs, params.POP_SIZE - newPop.size(), i -> {
             if(params.POP_SIZE > 1)
             {
-                g = newIndividual(gs);
+                int[] parentsIdx = selection();
+                return (state, rnd) -> newIndividual(state, parentsIdx, rnd);
             }else{
-                Genome gMut = mutate(pop.get(0), gs);
-                g = (gMut.getValue() >= pop.get(0).getValue()) ? gMut : pop.get(0);
+                Genome best = pop.get(0);
+                return (state, rnd) -> {
+                    Genome gMut = mutate(best, state, rnd);
+                    return (gMut.getValue() >= best.getValue()) ? gMut : best;
+                };
             }
-
-            newPop.add(g);
-        }
+        }, m_rnd));
         return newPop;
     }
 
@@ -243,14 +264,13 @@ public class RHEAAgent extends Agent {
         return new int[]{p1idx, p2idx};
     }
 
-    private Genome newIndividual(GameState state){
+    private Genome newIndividual(GameState state, int[] parentsIdx, Random rnd){
 
         //The two parents to cross:
-        int[] parentsIdx = selection();
         ArrayList<Action> newIndividual = new ArrayList<>();
 
         //Uniform crossover
-        GameState crossState = state.copy();
+        GameState crossState = state.copy(rnd);
         int actIdx = 0;
 
         while(!crossState.isGameOver() && actIdx < params.INDIVIDUAL_LENGTH)
@@ -259,16 +279,16 @@ public class RHEAAgent extends Agent {
             boolean feasibleAction;
 
             //Let's see first if we are to mutate this gene.
-            boolean mutate = m_rnd.nextDouble() < params.MUTATION_RATE;
+            boolean mutate = rnd.nextDouble() < params.MUTATION_RATE;
             if(mutate)
             {
-                candidate = getRandomAction(crossState);
+                candidate = getRandomAction(crossState, rnd);
                 feasibleAction = true;
                 //System.out.println("mutated");
             }else
             {
                 //No mutation, crossover
-                boolean firstParent = m_rnd.nextDouble()<0.5;
+                boolean firstParent = rnd.nextDouble()<0.5;
                 Genome from = firstParent ? pop.get(parentsIdx[0]) : pop.get(parentsIdx[1]);
                 if(actIdx < from.getActions().size()) {
                     candidate = from.getActions().get(actIdx);
@@ -304,7 +324,7 @@ public class RHEAAgent extends Agent {
         int curSize = newIndividual.size();
         while(!crossState.isGameOver() && curSize < params.INDIVIDUAL_LENGTH)
         {
-            Action a = getRandomAction(crossState);
+            Action a = getRandomAction(crossState, rnd);
             advance(crossState, a, true);
             newIndividual.add(a);
 
@@ -312,15 +332,15 @@ public class RHEAAgent extends Agent {
         }
 
         Genome newInd = new Genome(newIndividual);
-        double score = heuristic.evaluateState(state, crossState);
+        double score = evaluate(state, crossState);
         newInd.setValue(score);
         return newInd;
     }
 
-    private Genome mutate(Genome gen, GameState state){
+    private Genome mutate(Genome gen, GameState state, Random rnd){
 
         ArrayList<Action> newIndividual = new ArrayList<>();
-        GameState crossState = state.copy();
+        GameState crossState = state.copy(rnd);
         int actIdx = 0;
 
         while(!crossState.isGameOver() && actIdx < gen.getActions().size())
@@ -328,10 +348,10 @@ public class RHEAAgent extends Agent {
             Action candidate;
 
             //Let's see first if we are to mutate this gene.
-            boolean mutate = m_rnd.nextDouble() < params.MUTATION_RATE;
+            boolean mutate = rnd.nextDouble() < params.MUTATION_RATE;
             if(mutate)
             {
-                candidate = getRandomAction(crossState);
+                candidate = getRandomAction(crossState, rnd);
             }else
             {
                 //No mutation, keep it if possible
@@ -340,7 +360,7 @@ public class RHEAAgent extends Agent {
                 if(!feasibleAction)
                 {
                     //Generate at random anyway.
-                    candidate = getRandomAction(crossState);
+                    candidate = getRandomAction(crossState, rnd);
                 }
             }
 
@@ -350,7 +370,7 @@ public class RHEAAgent extends Agent {
         }
 
         Genome newInd = new Genome(newIndividual);
-        double score = heuristic.evaluateState(state, crossState);
+        double score = evaluate(state, crossState);
         newInd.setValue(score);
 
         return newInd;
@@ -388,7 +408,13 @@ public class RHEAAgent extends Agent {
     private void advance(GameState gs, Action act, boolean computeActions)
     {
         gs.advance(act, computeActions);
-        fmcalls++;
+        fmcalls.incrementAndGet();
+    }
+
+    private double evaluate(GameState gsOld, GameState gsNew)
+    {
+        evaluations.incrementAndGet();
+        return heuristic.evaluateState(gsOld, gsNew);
     }
 
     private double noise(double input, double epsilon, double random)
@@ -396,6 +422,16 @@ public class RHEAAgent extends Agent {
         return (input + epsilon) * (1.0 + epsilon * (random - 0.5));
     }
 
+    /**
+     * Returns the number of individuals evaluated in the last call to act().
+     */
+    public int getLastEvaluations() { return evaluations.get(); }
+
+    /**
+     * Returns the individuals evaluated per second (of wall-clock time) in the last call to act().
+     */
+    public double getLastEvaluationsPerSecond() { return evaluations.get() / (lastNanos / 1e9); }
+
     @Override
     public Agent copy() {
         return null;
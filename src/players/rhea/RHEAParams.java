@@ -11,6 +11,9 @@ public class RHEAParams extends AlgParams {
     public int MUTATE_BEST = 9;
     public boolean ELITISM = true;
 
+    // Threads that create and evaluate the individuals of the population (see players.PopulationEvaluator).
+    public int NUM_THREADS = 1;
+
     public void print() {
         System.out.println("RHEA Params:");
         System.out.println("\tPop Size: " + POP_SIZE);
@@ -19,6 +22,7 @@ public class RHEAParams extends AlgParams {
         System.out.println("\tTournament Size: " + TOURNAMENT_SIZE);
         System.out.println("\tMutate best: " + MUTATE_BEST);
         System.out.println("\tElitism: " + ELITISM);
+        System.out.println("\tThreads: " + NUM_THREADS);
     }
 
 }
\ No newline at end of file
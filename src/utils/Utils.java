@@ -1,5 +1,7 @@
 package utils;
 
+import java.util.SplittableRandom;
+
 public class Utils
 {
     public static double normalise(double a_value, double a_min, double a_max)
@@ -9,4 +11,16 @@ public class Utils
         else    // if bounds are invalid, then return same value
             return a_value;
     }
+
+    /**
+     * Derives a seed from another one and a key, so that runs of many games can give each game (and each use within
+     * it) its own seed, independent of the order games are played in.
+     * @param seed seed of the run.
+     * @param key identifies the seed derived, i.e. a combination of the index of the game and what it's used for.
+     * @return the seed.
+     */
+    public static long deriveSeed(long seed, long key)
+    {
+        return new SplittableRandom(seed + 0x9E3779B97F4A7C15L * key).nextLong();
+    }
 }
@@ -270,9 +270,94 @@ public class Vector2d
         return x * 100000 + y;
     }
 
-    private record CacheKey(int x, int y, int radius, int min, int max) {}
+    /**
+     * Neighborhoods of a given radius of all the tiles of a square board. The neighbours of tile x,y are the entries
+     * start(x, y) to end(x, y) - 1, in the same order as neighborhood() returns them. Tables are immutable and shared
+     * by all games and threads (see neighborhoods()).
+     */
+    public static final class Neighborhoods
+    {
+        public final int radius, size;
+
+        //Entries of tile x,y start at start[x * size + y], and end where the next tile's start.
+        private final int[] start;
+        private final int[] xs, ys;
+
+        //Neighbours of each tile as an unmodifiable list.
+        private final List<Vector2d>[] lists;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Neighborhoods(int radius, int size)
+        {
+            this.radius = radius;
+            this.size = size;
+            start = new int[size * size + 1];
+            int n = 0;
+            for (int x = 0; x < size; x++)
+                for (int y = 0; y < size; y++) {
+                    start[x * size + y] = n;
+                    n += (Math.min(x + radius, size - 1) - Math.max(x - radius, 0) + 1) *
+                            (Math.min(y + radius, size - 1) - Math.max(y - radius, 0) + 1) - 1;
+                }
+            start[size * size] = n;
+
+            xs = new int[n];
+            ys = new int[n];
+            lists = new List[size * size];
+            for (int x = 0; x < size; x++)
+                for (int y = 0; y < size; y++) {
+                    int t = x * size + y, e = start[t];
+                    Vector2d[] neighbours = new Vector2d[start[t + 1] - e];
+                    for (Vector2d v : calculateNeighborhood(x, y, radius, 0, size)) {
+                        neighbours[e - start[t]] = v;
+                        xs[e] = v.x;
+                        ys[e++] = v.y;
+                    }
+                    lists[t] = Collections.unmodifiableList(Arrays.asList(neighbours));
+                }
+        }
+
+        public int start(int x, int y) { return start[x * size + y]; }
+        public int end(int x, int y) { return start[x * size + y + 1]; }
+        public int x(int i) { return xs[i]; }
+        public int y(int i) { return ys[i]; }
+
+        /**
+         * @return the neighbours of tile x,y, as an unmodifiable list.
+         */
+        public List<Vector2d> of(int x, int y) { return lists[x * size + y]; }
+    }
 
-    private static Map<CacheKey, List<Vector2d>> neighborhoodCache = new HashMap<>();
+    // Tables by radius and board size, created when first needed. Published arrays are never modified: a new one
+    // replaces them when a table is added, so they can be read by any thread without locking.
+    private static volatile Neighborhoods[][] neighborhoods = new Neighborhoods[0][];
+
+    /**
+     * Gets the table of neighborhoods of a radius for the tiles of a board.
+     * @param radius the size of the neighborhood (radius = 1, gives a 3x3 neighborhood ).
+     * @param size size of the board.
+     * @return the table, shared by all callers.
+     */
+    public static Neighborhoods neighborhoods(int radius, int size) {
+        Neighborhoods[][] tables = neighborhoods;
+        if(radius < tables.length && size < tables[radius].length && tables[radius][size] != null)
+            return tables[radius][size];
+        return addNeighborhoods(radius, size);
+    }
+
+    private static synchronized Neighborhoods addNeighborhoods(int radius, int size) {
+        Neighborhoods[][] tables = Arrays.copyOf(neighborhoods, Math.max(neighborhoods.length, radius + 1));
+        for (int r = 0; r < tables.length; r++)
+            if(tables[r] == null) tables[r] = new Neighborhoods[0];
+        if(size < tables[radius].length && tables[radius][size] != null)
+            return tables[radius][size]; //Added by another thread.
+
+        tables[radius] = Arrays.copyOf(tables[radius], Math.max(tables[radius].length, size + 1));
+        Neighborhoods table = new Neighborhoods(radius, size);
+        tables[radius][size] = table;
+        neighborhoods = tables;
+        return table;
+    }
 
     /**
      * Returns a list a neighbouring vectors from target for a given radius. This vector's x,y is
@@ -280,20 +365,31 @@ public class Vector2d
      * @param radius the size of the neighborhood (radius = 1, gives a 3x3 neighborhood ).
      * @param min the minimum value to keep it in bounds (inclusive).
      * @param max the maximum value to keep it in bounds (exclusive).
-     * @return A list of neighbors.
+     * @return A list of neighbors, which can't be modified.
      */
     public List<Vector2d> neighborhood(int radius, int min, int max) {
-        return neighborhoodCache.computeIfAbsent(new CacheKey(x, y, radius, min, max), Vector2d::calculateNeighborhood);
+        if(min == 0 && x >= 0 && y >= 0 && x < max && y < max)
+            return neighborhoods(radius, max).of(x, y);
+        return Collections.unmodifiableList(calculateNeighborhood(x, y, radius, min, max));
+    }
+
+    /**
+     * Returns the neighbours of tile x,y of a board for a given radius, as neighborhood() does.
+     * @param size size of the board.
+     * @return A list of neighbors, which can't be modified.
+     */
+    public static List<Vector2d> neighborhood(int x, int y, int radius, int size) {
+        return neighborhoods(radius, size).of(x, y);
     }
 
-    private static List<Vector2d> calculateNeighborhood(CacheKey k) {
+    private static List<Vector2d> calculateNeighborhood(int x, int y, int radius, int min, int max) {
         List<Vector2d> vectors = new ArrayList<>(8);
 
-        for(int i = k.x - k.radius; i <= k.x + k.radius; i++) {
-            for(int j = k.y - k.radius; j <= k.y + k.radius; j++) {
+        for(int i = x - radius; i <= x + radius; i++) {
+            for(int j = y - radius; j <= y + radius; j++) {
 
                 //Not x,y and within established bounds
-                if((i != k.x || j != k.y) && (i >= k.min && j >= k.min && i < k.max && j < k.max))
+                if((i != x || j != y) && (i >= min && j >= min && i < max && j < max))
                 {
                     vectors.add(new Vector2d(i, j));
                 }
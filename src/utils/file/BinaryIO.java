@@ -0,0 +1,68 @@
+package utils.file;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * Helpers to write and read the structures of the game state that appear in binary savegames (see
+ * core.game.GameSaver), so the code that writes them and the one that reads them agree on their format.
+ */
+public class BinaryIO
+{
+    /**
+     * Writes an array of booleans, packed 8 to a byte.
+     * @param buf buffer to write to.
+     * @param bits array to write. Its length is not written.
+     */
+    public static void putBits(ByteBuffer buf, boolean[] bits)
+    {
+        for (int i = 0; i < bits.length; i += 8)
+        {
+            int b = 0;
+            for (int j = 0; j < 8 && i + j < bits.length; j++)
+                if (bits[i + j]) b |= 1 << j;
+            buf.put((byte) b);
+        }
+    }
+
+    /**
+     * Reads an array of booleans written by putBits().
+     * @param buf buffer to read from.
+     * @param bits array to fill, of the length of the written array.
+     */
+    public static void getBits(ByteBuffer buf, boolean[] bits)
+    {
+        for (int i = 0; i < bits.length; i += 8)
+        {
+            int b = buf.get();
+            for (int j = 0; j < 8 && i + j < bits.length; j++)
+                bits[i + j] = (b & (1 << j)) != 0;
+        }
+    }
+
+    /**
+     * Writes a list of ids (i.e. of actors), preceded by its size.
+     * @param buf buffer to write to.
+     * @param ids list to write.
+     */
+    public static void putIds(ByteBuffer buf, ArrayList<Integer> ids)
+    {
+        buf.putShort((short) ids.size());
+        for (int id : ids)
+            buf.putInt(id);
+    }
+
+    /**
+     * Reads a list of ids written by putIds().
+     * @param buf buffer to read from.
+     * @return the list of ids.
+     */
+    public static ArrayList<Integer> getIds(ByteBuffer buf)
+    {
+        int n = buf.getShort();
+        ArrayList<Integer> ids = new ArrayList<>(n);
+        for (int i = 0; i < n; i++)
+            ids.add(buf.getInt());
+        return ids;
+    }
+}
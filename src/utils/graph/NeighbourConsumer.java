@@ -0,0 +1,12 @@
+package utils.graph;
+
+public interface NeighbourConsumer
+{
+    /**
+     * Receives a node adjacent to the one being expanded (see NeighbourHelper.forEachNeighbour()).
+     * @param x x coordinate of the adjacent node.
+     * @param y y coordinate of the adjacent node.
+     * @param stepCost cost of moving to the adjacent node.
+     */
+    void accept(int x, int y, double stepCost);
+}
@@ -14,6 +14,21 @@ public interface NeighbourHelper
      */
     ArrayList<PathNode> getNeighbours(Vector2d from, double costFrom);
 
+    /**
+     * Passes all nodes adjacent to (x, y) to a consumer, in the same order as getNeighbours() returns them.
+     * Helpers should override this to avoid creating objects for each neighbour, as the Pathfinder calls it for
+     * every node it expands.
+     * @param x x coordinate of the node to find adjacent nodes of.
+     * @param y y coordinate of the node to find adjacent nodes of.
+     * @param costFrom Accummulated cost up to (x, y)
+     * @param consumer receives each adjacent node and the cost of moving to it.
+     */
+    default void forEachNeighbour(int x, int y, double costFrom, NeighbourConsumer consumer)
+    {
+        for (PathNode n : getNeighbours(new Vector2d(x, y), costFrom))
+            consumer.accept(n.getX(), n.getY(), n.getTotalCost());
+    }
+
     /**
      * Adds a jump link from 'from' to 'to'
      * @param from start of the jump link
@@ -3,40 +3,95 @@ package utils.graph;
 import utils.Vector2d;
 
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.PriorityQueue;
+import java.util.Arrays;
 
 /**
  * Created by dperez on 13/01/16.
+ * Dijkstra search from a root tile over a grid of the given size. All search state is kept in primitive arrays
+ * indexed by tile (x * size + y), which are reused by all searches of this pathfinder (see reset()), and the
+ * neighbours of each node are obtained with NeighbourHelper.forEachNeighbour(). Hence, a search doesn't create any
+ * object unless results are requested as PathNode lists.
+ * Searches are lazy: the first query after a reset runs the search, and later queries reuse its results.
  */
-public class Pathfinder
+public class Pathfinder implements NeighbourConsumer
 {
-    public PathNode root;
+    private Vector2d rootPos;
     private NeighbourHelper provider;
-    private ArrayList<PathNode> destinationsFromStart;
-    private PriorityQueue<PathNode> openList;
-    private HashSet<PathNode> visited;
+    private final int size;
 
-    public Pathfinder(Vector2d rootPos, NeighbourHelper provider)
+    //Stamp of the current search. A tile has been reached in this search only if its entry in 'settled' has this value.
+    private int stamp;
+    private final int[] settled;
+
+    //Total cost and parent tile (-1 for the root) of each tile reached.
+    private final double[] cost;
+    private final int[] parent;
+
+    //Tiles reached (root excluded), in the order they were settled.
+    private final int[] reached;
+    private int nReached;
+    private boolean searched;
+
+    //Open list: a binary heap of entries (cost, tile, parent tile), ordered by cost.
+    private double[] openCost;
+    private int[] openTile, openParent;
+    private int openSize;
+
+    //Node being expanded, which is the parent of the neighbours received in accept().
+    private int expandedTile;
+    private double expandedCost;
+
+    /**
+     * Creates a pathfinder for a grid. Use reset() to set the search.
+     * @param size size of the (square) grid.
+     */
+    public Pathfinder(int size)
     {
-        root = new PathNode(rootPos, 0.0);
-        this.provider = provider;
-        destinationsFromStart = new ArrayList<>();
-        openList = new PriorityQueue<>();
-        visited = new HashSet<>();
+        this.size = size;
+        settled = new int[size * size];
+        cost = new double[size * size];
+        parent = new int[size * size];
+        reached = new int[size * size];
+        openCost = new double[size * size];
+        openTile = new int[size * size];
+        openParent = new int[size * size];
     }
 
+    /**
+     * Creates a pathfinder for a search from a root position.
+     * @param rootPos position to start the search from.
+     * @param provider provides the neighbours of each node and the cost of moving to them.
+     * @param size size of the (square) grid.
+     */
+    public Pathfinder(Vector2d rootPos, NeighbourHelper provider, int size)
+    {
+        this(size);
+        reset(rootPos, provider);
+    }
 
-    private ArrayList<PathNode> calculatePath(PathNode node)
+    /**
+     * Sets a new search in this pathfinder, discarding the results of the previous one.
+     * @param rootPos position to start the search from.
+     * @param provider provides the neighbours of each node and the cost of moving to them.
+     */
+    public void reset(Vector2d rootPos, NeighbourHelper provider)
+    {
+        this.rootPos = rootPos;
+        this.provider = provider;
+        searched = false;
+    }
+
+    private ArrayList<PathNode> calculatePath(int tile)
     {
         ArrayList<PathNode> path = new ArrayList<>();
-        while(node != null)
+        PathNode child = null;
+        while(parent[tile] != -1) //to avoid adding the start node.
         {
-            if(node.getParent() != null) //to avoid adding the start node.
-            {
-                path.add(0,node);
-            }
-            node = node.getParent();
+            PathNode node = new PathNode(new Vector2d(tile / size, tile % size), cost[tile]);
+            if(child != null) child.setParent(node);
+            path.add(0, node);
+            child = node;
+            tile = parent[tile];
         }
         return path;
     }
@@ -44,50 +99,144 @@ public class Pathfinder
     //Dijkstraa to all possible destinations. Returns nodes of all destinations.
     public ArrayList<PathNode> findPaths()
     {
-        return _dijkstra();
+        _dijkstra();
+        ArrayList<PathNode> destinationsFromStart = new ArrayList<>(nReached);
+        for (int i = 0; i < nReached; i++)
+        {
+            int tile = reached[i];
+            destinationsFromStart.add(new PathNode(new Vector2d(tile / size, tile % size), cost[tile]));
+        }
+        return destinationsFromStart;
     }
 
     public ArrayList<PathNode> findPathTo(Vector2d goalPosition)
     {
-        return _findPath(goalPosition);
+        return reaches(goalPosition.x, goalPosition.y) ? calculatePath(goalPosition.x * size + goalPosition.y) : null;
+    }
+
+    /**
+     * Returns the number of tiles reachable from the root (not including the root).
+     * Use getReachedX(i) and getReachedY(i) to access them, ordered by increasing cost.
+     */
+    public int getNumReached()
+    {
+        _dijkstra();
+        return nReached;
+    }
+
+    public int getSize() { return size; }
+    public int getReachedX(int i) { return reached[i] / size; }
+    public int getReachedY(int i) { return reached[i] % size; }
+
+    /**
+     * Indicates if a tile can be reached from the root. The root itself is not considered reached.
+     * @param x x coordinate of the tile.
+     * @param y y coordinate of the tile.
+     * @return true if there is a path from the root to x, y
+     */
+    public boolean reaches(int x, int y)
+    {
+        _dijkstra();
+        int tile = x * size + y;
+        return settled[tile] == stamp && parent[tile] != -1;
     }
 
+    private void _dijkstra()
+    {
+        if(searched)
+            return;
+        searched = true;
+
+        if(++stamp == 0)
+        {
+            //Stamps wrapped around, entries from old searches could be taken as current.
+            Arrays.fill(settled, 0);
+            stamp = 1;
+        }
+        nReached = 0;
+        openSize = 0;
+
+        int rootTile = rootPos.x * size + rootPos.y;
+        offer(0.0, rootTile, -1);
+        while (openSize > 0)
+        {
+            double currentCost = openCost[0];
+            int current = openTile[0];
+            int currentParent = openParent[0];
+            poll();
+
+            if (settled[current] == stamp) continue;
+            settled[current] = stamp;
+            cost[current] = currentCost;
+            parent[current] = currentParent;
+            if (currentParent != -1) reached[nReached++] = current;
+
+            expandedTile = current;
+            expandedCost = currentCost;
+            provider.forEachNeighbour(current / size, current % size, currentCost, this);
+        }
+    }
 
-    private ArrayList<PathNode> _dijkstra()
+    @Override
+    public void accept(int x, int y, double stepCost)
     {
-        destinationsFromStart.clear();
-        openList.clear();
-        visited.clear();
+        int tile = x * size + y;
+        if (settled[tile] != stamp)
+            offer(expandedCost + stepCost, tile, expandedTile);
+    }
 
-        openList.add(root);
-        while (!openList.isEmpty())
+    /**
+     * Adds an entry to the open list. Ties are broken as java.util.PriorityQueue does, so results are
+     * the same as with the previous object-based implementation.
+     */
+    private void offer(double c, int tile, int par)
+    {
+        if (openSize == openCost.length)
         {
-            PathNode current = openList.poll();
-            if (visited.contains(current)) continue;
-            visited.add(current);
-            if (current != root) destinationsFromStart.add(current);
-
-            ArrayList<PathNode> neighbours = provider.getNeighbours(current.getPosition(), current.getTotalCost());
-            for (PathNode nb : neighbours) {
-                if (!visited.contains(nb)) {
-                    nb.setTotalCost(current.getTotalCost() + nb.getTotalCost());
-                    nb.setParent(current);
-                    openList.add(nb);
-                }
-            }
+            openCost = Arrays.copyOf(openCost, openSize * 2);
+            openTile = Arrays.copyOf(openTile, openSize * 2);
+            openParent = Arrays.copyOf(openParent, openSize * 2);
         }
 
-        return destinationsFromStart;
+        int k = openSize++;
+        while (k > 0)
+        {
+            int p = (k - 1) >>> 1;
+            if (Double.compare(c, openCost[p]) >= 0) break;
+            setOpen(k, openCost[p], openTile[p], openParent[p]);
+            k = p;
+        }
+        setOpen(k, c, tile, par);
     }
 
-    private ArrayList<PathNode> _findPath(Vector2d goal)
+    /**
+     * Removes the entry with the lowest cost from the open list.
+     */
+    private void poll()
     {
-        ArrayList<PathNode> reachable = _dijkstra();
-        for (PathNode n: reachable) {
-            if (n.getX() == goal.x && n.getY() == goal.y) {
-                return calculatePath(n);
-            }
+        int n = --openSize;
+        if (n == 0) return;
+
+        double c = openCost[n];
+        int tile = openTile[n], par = openParent[n];
+        int k = 0, half = n >>> 1;
+        while (k < half)
+        {
+            int child = (k << 1) + 1;
+            int right = child + 1;
+            if (right < n && Double.compare(openCost[child], openCost[right]) > 0)
+                child = right;
+            if (Double.compare(c, openCost[child]) <= 0) break;
+            setOpen(k, openCost[child], openTile[child], openParent[child]);
+            k = child;
         }
-        return null;
+        setOpen(k, c, tile, par);
+    }
+
+    private void setOpen(int k, double c, int tile, int par)
+    {
+        openCost[k] = c;
+        openTile[k] = tile;
+        openParent[k] = par;
     }
 }
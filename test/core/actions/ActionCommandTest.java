@@ -0,0 +1,34 @@
+package core.actions;
+
+import core.Types;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The commands of Types.ACTION are shared by all game states and threads, so they can't have state of their own.
+ */
+class ActionCommandTest
+{
+    @Test
+    void commandsHaveNoState()
+    {
+        for(Types.ACTION type : Types.ACTION.values())
+        {
+            //No action of this type is ever created, so it has no command.
+            if(type == Types.ACTION.CLIMB_MOUNTAIN)
+                continue;
+
+            ActionCommand command = type.getCommand();
+            assertNotNull(command, "No command for " + type);
+            for(Class<?> c = command.getClass(); c != Object.class; c = c.getSuperclass())
+                for(Field f : c.getDeclaredFields())
+                    assertTrue(Modifier.isStatic(f.getModifiers()) && Modifier.isFinal(f.getModifiers()),
+                            "ActionCommand " + c.getSimpleName() + " (" + type + ") has state: " + f.getName());
+        }
+    }
+}
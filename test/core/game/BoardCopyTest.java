@@ -0,0 +1,83 @@
+package core.game;
+
+import core.actions.Action;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Copies of a game state share its tile layers and actors until either of them modifies them (see Board.copy()), so
+ * playing actions on one must leave the other as it was.
+ */
+class BoardCopyTest
+{
+    private static final long SEED = 7;
+    private static final int STEPS = 200;
+
+    @Test
+    void copyDoesNotChangeOriginal()
+    {
+        for(String level : new String[]{TestStates.LEVEL_2P, TestStates.LEVEL_4P})
+        {
+            GameState gs = TestStates.midGameState(level, STEPS, SEED);
+            byte[] before = state(gs);
+            play(gs.copy(), STEPS, new Random(SEED));
+            assertArrayEquals(before, state(gs), level);
+        }
+    }
+
+    @Test
+    void originalDoesNotChangeCopy()
+    {
+        for(String level : new String[]{TestStates.LEVEL_2P, TestStates.LEVEL_4P})
+        {
+            GameState gs = TestStates.midGameState(level, STEPS, SEED);
+            GameState copy = gs.copy();
+            byte[] before = state(copy);
+            play(gs, STEPS, new Random(SEED));
+            assertArrayEquals(before, state(copy), level);
+        }
+    }
+
+    @Test
+    void playerCopyDoesNotChangeOriginal()
+    {
+        GameState gs = TestStates.midGameState(TestStates.LEVEL_4P, STEPS, SEED);
+        byte[] before = state(gs);
+        for(int i = 0; i < gs.getTribes().length; i++)
+        {
+            GameState copy = gs.copy(i);
+            copy.computePlayerActions(copy.getActiveTribe());
+            play(copy, STEPS, new Random(SEED + i));
+        }
+        assertArrayEquals(before, state(gs));
+    }
+
+    /**
+     * Plays random actions on a game state, copying it after each one, so it keeps sharing its actors.
+     */
+    private static void play(GameState gs, int steps, Random rnd)
+    {
+        for(int i = 0; i < steps && !gs.isGameOver(); i++)
+        {
+            ArrayList<Action> actions = gs.getAllAvailableActions();
+            gs.advance(actions.get(rnd.nextInt(actions.size())), true);
+            gs.copy();
+        }
+    }
+
+    /**
+     * Writes the full state of a game (see GameSaver.writeState()).
+     */
+    private static byte[] state(GameState gs)
+    {
+        ByteBuffer buf = ByteBuffer.allocate(1 << 22);
+        GameSaver.writeState(gs, buf);
+        return Arrays.copyOf(buf.array(), buf.position());
+    }
+}
@@ -0,0 +1,86 @@
+package core.game;
+
+import core.Types;
+import core.actions.Action;
+import core.actors.City;
+import core.actors.Temple;
+import core.actors.Tribe;
+import core.actors.units.Unit;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * The hash of a board kept up to date as actions are played (see Board.getHash()) is the same as the one computed
+ * from scratch, which is what Constants.CHECK_STATE_HASH checks while playing, and covers all the state of the board.
+ */
+class BoardHashTest
+{
+    private static final long SEED = 11;
+    private static final int STEPS = 1500;
+
+    @Test
+    void updatedHashMatchesHashFromScratch()
+    {
+        for(String level : new String[]{TestStates.LEVEL_2P, TestStates.LEVEL_4P})
+        {
+            GameState gs = TestStates.midGameState(level, 0, SEED);
+            Random rnd = new Random(SEED);
+            for(int i = 0; i < STEPS && !gs.isGameOver(); i++)
+            {
+                ArrayList<Action> actions = gs.getAllAvailableActions();
+                Action action = actions.get(rnd.nextInt(actions.size()));
+                //Give a second chance to ending the turn so tribes grow.
+                if(action.getActionType() == Types.ACTION.END_TURN)
+                    action = actions.get(rnd.nextInt(actions.size()));
+
+                gs.advance(action, true);
+                if(action.getActionType() == Types.ACTION.END_TURN && gs.getActiveTribeID() == 0)
+                    gs.incTick();
+
+                Board board = gs.getBoard();
+                assertEquals(board.computeHash(), board.getHash(), level + ", after " + action);
+            }
+        }
+    }
+
+    @Test
+    void hashCoversTemplesMonumentsAndCitiesOfUnits()
+    {
+        GameState gs = TestStates.midGameState(TestStates.LEVEL_2P, 0, SEED);
+        Board board = gs.getBoard();
+        Tribe tribe = gs.getTribe(0);
+        City capital = (City) board.getActor(tribe.getCapitalID());
+
+        Temple temple = new Temple(capital.getPosition().x, capital.getPosition().y, Types.BUILDING.TEMPLE,
+                capital.getActorId());
+        //Actors are changed through getActorForWrite() after each hash, as the forward model does.
+        long hash = assertHashChanges(board, board.getHash(),
+                () -> ((City) board.getActorForWrite(capital.getActorId())).getBuildings().add(temple));
+        hash = assertHashChanges(board, hash, () -> ((City) board.getActorForWrite(capital.getActorId())).getBuildings()
+                .forEach(b -> { if(b instanceof Temple) ((Temple) b).newTurn(); }));
+
+        hash = assertHashChanges(board, hash, () -> tribe.getMonuments().put(Types.BUILDING.PARK_OF_FORTUNE,
+                Types.BUILDING.MONUMENT_STATUS.AVAILABLE));
+
+        int unitId = capital.getUnitsID().get(0);
+        assertHashChanges(board, hash, () -> ((Unit) board.getActorForWrite(unitId)).setCityId(-1));
+    }
+
+    /**
+     * Changes a board and checks that its hash changes, and that it's still the same as the one computed from scratch.
+     * @return the new hash.
+     */
+    private static long assertHashChanges(Board board, long hash, Runnable change)
+    {
+        change.run();
+        long newHash = board.getHash();
+        assertNotEquals(hash, newHash);
+        assertEquals(board.computeHash(), newHash);
+        return newHash;
+    }
+}
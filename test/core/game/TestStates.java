@@ -0,0 +1,42 @@
+package core.game;
+
+import core.Types;
+import core.actions.Action;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Game states for the tests, reached by playing seeded random actions on the levels in levels/.
+ */
+public class TestStates
+{
+    public static final String LEVEL_2P = "levels/SampleLevel2p.csv";
+    public static final String LEVEL_4P = "levels/SampleLevel4p_2.csv";
+
+    /**
+     * Plays random actions from the start of a level.
+     * @param level file with the level to play.
+     * @param steps number of actions to play.
+     * @param seed seed of the game and the actions played.
+     * @return the game state after the actions have been played.
+     */
+    public static GameState midGameState(String level, int steps, long seed)
+    {
+        Random rnd = new Random(seed);
+        GameState gs = new GameState(new Random(seed), Types.GAME_MODE.CAPITALS);
+        gs.init(level);
+        gs.initTurn(gs.getTribe(0));
+        gs.computePlayerActions(gs.getTribe(0));
+
+        for(int i = 0; i < steps && !gs.isGameOver(); i++)
+        {
+            ArrayList<Action> actions = gs.getAllAvailableActions();
+            Action action = actions.get(rnd.nextInt(actions.size()));
+            gs.advance(action, true);
+            if(action.getActionType() == Types.ACTION.END_TURN && gs.getActiveTribeID() == 0)
+                gs.incTick();
+        }
+        return gs;
+    }
+}
@@ -0,0 +1,81 @@
+package players;
+
+import core.actions.Action;
+import core.game.GameState;
+import core.game.TestStates;
+import org.junit.jupiter.api.Test;
+import players.oep.OEPAgent;
+import players.oep.OEPParams;
+import players.rhea.RHEAAgent;
+import players.rhea.RHEAParams;
+import utils.ElapsedCpuTimer;
+
+import java.util.ArrayList;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * The evolutionary agents decide the same with the same seed whatever the number of threads their population is
+ * evaluated with.
+ */
+class PopulationEvaluatorTest
+{
+    private static final long SEED = 42;
+    private static final int FM_CALLS = 2000;
+    private static final int THREADS = 4;
+    private static final int DECISIONS = 4;
+
+    @Test
+    void rheaDecidesTheSameWithAnyNumberOfThreads()
+    {
+        assertSameDecisions(threads -> {
+            RHEAParams params = new RHEAParams();
+            params.stop_type = params.STOP_FMCALLS;
+            params.num_fmcalls = FM_CALLS;
+            params.heuristic_method = params.DIFF_HEURISTIC;
+            params.NUM_THREADS = threads;
+            return new RHEAAgent(SEED, params);
+        });
+    }
+
+    @Test
+    void oepDecidesTheSameWithAnyNumberOfThreads()
+    {
+        assertSameDecisions(threads -> {
+            OEPParams params = new OEPParams();
+            params.stop_type = params.STOP_FMCALLS;
+            params.num_fmcalls = FM_CALLS;
+            params.heuristic_method = params.DIFF_HEURISTIC;
+            params.NUM_THREADS = threads;
+            return new OEPAgent(SEED, params);
+        });
+    }
+
+    /**
+     * Makes an agent with 1 thread and another with several decide from the same states, one after the other, and
+     * checks that they take the same actions.
+     * @param agent creates the agent, given the number of threads.
+     */
+    private void assertSameDecisions(IntFunction<Agent> agent)
+    {
+        Agent sequential = agent.apply(1);
+        Agent parallel = agent.apply(THREADS);
+        for(int d = 0; d < DECISIONS; d++)
+        {
+            GameState gs = TestStates.midGameState(TestStates.LEVEL_2P, 100, SEED + d);
+            ArrayList<Integer> allIds = new ArrayList<>();
+            for(int i = 0; i < gs.getTribes().length; i++)
+                allIds.add(i);
+            sequential.setPlayerIDs(gs.getActiveTribeID(), allIds);
+            parallel.setPlayerIDs(gs.getActiveTribeID(), allIds);
+
+            Action expected = sequential.act(gs.copy(), new ElapsedCpuTimer());
+            Action actual = parallel.act(gs.copy(), new ElapsedCpuTimer());
+            assertNotNull(expected);
+            assertEquals(expected, actual, "Decision " + d + ": " + expected + " with 1 thread, " + actual +
+                    " with " + THREADS);
+        }
+    }
+}